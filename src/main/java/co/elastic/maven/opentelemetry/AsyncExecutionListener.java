@@ -0,0 +1,372 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ExecutionListener} handing over the events to its delegate on a dedicated thread through a bounded queue
+ * ({@code -Dotel.instrumentation.maven.listener.async.enabled=true}), so that the work of the delegate doesn't extend
+ * the mojo executions on the Maven builder threads.
+ *
+ * The events are dispatched in the order they are received, so in order for each project, as {@link DeferredEvent}s
+ * capturing the project and the time of the event. When the queue is full, the builder threads wait for the consumer,
+ * up to the given timeout, rather than losing events. {@link #sessionEnded(ExecutionEvent)} waits for the pending
+ * events to be dispatched, up to the given timeout, then the consumer thread stops. The end of the session is never
+ * lost: if the consumer doesn't make room in time, the pending events are skipped and the end of the session is
+ * dispatched on the calling thread.
+ */
+public class AsyncExecutionListener implements ExecutionListener {
+    static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ExecutionListener delegate;
+    private final BlockingQueue<DeferredEvent> queue;
+    private final long drainTimeoutMillis;
+    /**
+     * Visible for testing
+     */
+    final Thread consumer;
+
+    /**
+     * Stops the consumer thread when the end of the session is dispatched on the calling thread
+     */
+    private static final DeferredEvent STOP = new DeferredEvent(ExecutionEvent.Type.SessionEnded, null, null, null, null, 0);
+
+    /**
+     * Anchor of the time of the events: {@link System#nanoTime()} is monotonic and precise, not
+     * {@link System#currentTimeMillis()}
+     */
+    private final long anchorEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private final long anchorNanoTime = System.nanoTime();
+
+    private final AtomicLong enqueuedEvents = new AtomicLong();
+    private final AtomicLong dispatchedEvents = new AtomicLong();
+    private final AtomicLong blockedEvents = new AtomicLong();
+
+    public AsyncExecutionListener(@Nonnull ExecutionListener delegate, int queueCapacity, long drainTimeoutMillis) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        this.consumer = new Thread(this::dispatchEvents, "otel-execution-listener");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    private void dispatchEvents() {
+        try {
+            DeferredEvent event;
+            do {
+                event = queue.take();
+                if (event == STOP) {
+                    break;
+                }
+                try {
+                    dispatch(event);
+                } catch (RuntimeException e) {
+                    logger.error("Silently skip exception", e);
+                }
+                synchronized (dispatchedEvents) {
+                    dispatchedEvents.incrementAndGet();
+                    dispatchedEvents.notifyAll();
+                }
+            } while (event.getType() != ExecutionEvent.Type.SessionEnded);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.debug("OpenTelemetry: Execution events dispatched, {} events waited for the queue", blockedEvents);
+    }
+
+    private void dispatch(@Nonnull DeferredEvent event) {
+        switch (event.getType()) {
+            case ProjectDiscoveryStarted:
+                delegate.projectDiscoveryStarted(event);
+                break;
+            case SessionStarted:
+                delegate.sessionStarted(event);
+                break;
+            case SessionEnded:
+                delegate.sessionEnded(event);
+                break;
+            case ProjectSkipped:
+                delegate.projectSkipped(event);
+                break;
+            case ProjectStarted:
+                delegate.projectStarted(event);
+                break;
+            case ProjectSucceeded:
+                delegate.projectSucceeded(event);
+                break;
+            case ProjectFailed:
+                delegate.projectFailed(event);
+                break;
+            case MojoSkipped:
+                delegate.mojoSkipped(event);
+                break;
+            case MojoStarted:
+                delegate.mojoStarted(event);
+                break;
+            case MojoSucceeded:
+                delegate.mojoSucceeded(event);
+                break;
+            case MojoFailed:
+                delegate.mojoFailed(event);
+                break;
+            case ForkStarted:
+                delegate.forkStarted(event);
+                break;
+            case ForkSucceeded:
+                delegate.forkSucceeded(event);
+                break;
+            case ForkFailed:
+                delegate.forkFailed(event);
+                break;
+            case ForkedProjectStarted:
+                delegate.forkedProjectStarted(event);
+                break;
+            case ForkedProjectSucceeded:
+                delegate.forkedProjectSucceeded(event);
+                break;
+            case ForkedProjectFailed:
+                delegate.forkedProjectFailed(event);
+                break;
+            default:
+                logger.debug("OpenTelemetry: Skip unknown execution event {}", event.getType());
+        }
+    }
+
+    /**
+     * @return the number of the event, {@code -1} if the event could not be enqueued
+     */
+    private long enqueue(@Nonnull ExecutionEvent.Type type, @Nonnull ExecutionEvent event) {
+        return enqueue(newDeferredEvent(type, event));
+    }
+
+    @Nonnull
+    private DeferredEvent newDeferredEvent(@Nonnull ExecutionEvent.Type type, @Nonnull ExecutionEvent event) {
+        // the project of the session of the event is reset at the end of the project
+        return new DeferredEvent(type, event.getSession(), event.getProject(), event.getMojoExecution(),
+                event.getException(), anchorEpochNanos + (System.nanoTime() - anchorNanoTime));
+    }
+
+    /**
+     * @return the number of the event, {@code -1} if the event could not be enqueued
+     */
+    private long enqueue(@Nonnull DeferredEvent deferredEvent) {
+        ExecutionEvent.Type type = deferredEvent.getType();
+        if (!queue.offer(deferredEvent)) {
+            blockedEvents.incrementAndGet();
+            try {
+                if (!queue.offer(deferredEvent, drainTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    if (type != ExecutionEvent.Type.SessionEnded) {
+                        logger.warn("OpenTelemetry: Execution events not processed within " + drainTimeoutMillis + "ms, skip " + type + " event");
+                    }
+                    return -1;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+        return enqueuedEvents.incrementAndGet();
+    }
+
+    @Override
+    public void projectDiscoveryStarted(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.ProjectDiscoveryStarted, event);
+    }
+
+    @Override
+    public void sessionStarted(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.SessionStarted, event);
+    }
+
+    /**
+     * Wait for the dispatch of the pending events, the delegate typically flushes the telemetry at the end of the
+     * session
+     */
+    @Override
+    public void sessionEnded(ExecutionEvent event) {
+        DeferredEvent deferredEvent = newDeferredEvent(ExecutionEvent.Type.SessionEnded, event);
+        long eventNumber = enqueue(deferredEvent);
+        if (eventNumber < 0) {
+            dispatchSessionEnded(deferredEvent);
+            return;
+        }
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+        try {
+            synchronized (dispatchedEvents) {
+                long remainingNanos;
+                while (dispatchedEvents.get() < eventNumber && (remainingNanos = deadlineNanos - System.nanoTime()) > 0) {
+                    dispatchedEvents.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos)));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dispatchedEvents.get() < eventNumber) {
+            logger.warn("OpenTelemetry: " + (eventNumber - dispatchedEvents.get()) + " execution events not processed within " + drainTimeoutMillis + "ms, the build is partially traced");
+        }
+    }
+
+    /**
+     * The consumer didn't make room for the end of the session, skip the pending events, stop the consumer and dispatch
+     * the end of the session on the calling thread: the delegate ends the spans in progress and flushes the telemetry
+     */
+    private void dispatchSessionEnded(@Nonnull DeferredEvent event) {
+        List<DeferredEvent> skippedEvents = new ArrayList<>();
+        queue.drainTo(skippedEvents);
+        if (!queue.offer(STOP)) {
+            consumer.interrupt();
+        }
+        logger.warn("OpenTelemetry: Execution events not processed within " + drainTimeoutMillis + "ms, skip " + skippedEvents.size() + " events and end the session");
+        try {
+            delegate.sessionEnded(event);
+        } catch (RuntimeException e) {
+            logger.error("Silently skip exception", e);
+        }
+    }
+
+    @Override
+    public void projectSkipped(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.ProjectSkipped, event);
+    }
+
+    @Override
+    public void projectStarted(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.ProjectStarted, event);
+    }
+
+    @Override
+    public void projectSucceeded(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.ProjectSucceeded, event);
+    }
+
+    @Override
+    public void projectFailed(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.ProjectFailed, event);
+    }
+
+    @Override
+    public void mojoSkipped(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.MojoSkipped, event);
+    }
+
+    @Override
+    public void mojoStarted(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.MojoStarted, event);
+    }
+
+    @Override
+    public void mojoSucceeded(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.MojoSucceeded, event);
+    }
+
+    @Override
+    public void mojoFailed(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.MojoFailed, event);
+    }
+
+    @Override
+    public void forkStarted(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.ForkStarted, event);
+    }
+
+    @Override
+    public void forkSucceeded(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.ForkSucceeded, event);
+    }
+
+    @Override
+    public void forkFailed(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.ForkFailed, event);
+    }
+
+    @Override
+    public void forkedProjectStarted(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.ForkedProjectStarted, event);
+    }
+
+    @Override
+    public void forkedProjectSucceeded(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.ForkedProjectSucceeded, event);
+    }
+
+    @Override
+    public void forkedProjectFailed(ExecutionEvent event) {
+        enqueue(ExecutionEvent.Type.ForkedProjectFailed, event);
+    }
+
+    /**
+     * Copy of an {@link ExecutionEvent} handed over to the consumer thread, with the time of the event
+     */
+    static final class DeferredEvent implements ExecutionEvent {
+        private final Type type;
+        private final MavenSession session;
+        private final MavenProject project;
+        private final MojoExecution mojoExecution;
+        private final Exception exception;
+        private final long epochNanos;
+
+        DeferredEvent(@Nonnull Type type, @Nullable MavenSession session, @Nullable MavenProject project,
+                      @Nullable MojoExecution mojoExecution, @Nullable Exception exception, long epochNanos) {
+            this.type = type;
+            this.session = session;
+            this.project = project;
+            this.mojoExecution = mojoExecution;
+            this.exception = exception;
+            this.epochNanos = epochNanos;
+        }
+
+        @Override
+        public Type getType() {
+            return type;
+        }
+
+        @Override
+        public MavenSession getSession() {
+            return session;
+        }
+
+        @Override
+        public MavenProject getProject() {
+            return project;
+        }
+
+        @Override
+        public MojoExecution getMojoExecution() {
+            return mojoExecution;
+        }
+
+        @Override
+        public Exception getException() {
+            return exception;
+        }
+
+        /**
+         * @return time of the event, in nanoseconds since the epoch
+         */
+        long getEpochNanos() {
+            return epochNanos;
+        }
+    }
+}
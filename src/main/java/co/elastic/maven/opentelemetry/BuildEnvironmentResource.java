@@ -0,0 +1,341 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.semconv.resource.attributes.ResourceAttributes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+/**
+ * Resource attributes describing the build environment (hardware, container limits, OS, JVM and {@code MAVEN_OPTS})
+ * to compare the build durations across build agents.
+ *
+ * The probing of {@code /proc} and of the cgroups runs in a background thread started with {@link #startDetection()},
+ * overlapping with the initialization of the exporters, and its result is cached on disk per machine and JDK for
+ * {@value #CACHE_TTL_MILLIS}ms. Nothing waits for the probing: the probed attributes are added to the resource of the
+ * spans once the detection completes (see {@link DetectedResourceSpanExporter}). The attributes that are cheap to get
+ * (system properties and environment) are never cached.
+ */
+public class BuildEnvironmentResource {
+
+    static final long CACHE_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * cgroup v1 reports an unlimited memory as a value close to {@link Long#MAX_VALUE}
+     */
+    private static final long UNLIMITED_MEMORY_THRESHOLD = 1L << 60;
+
+    private static final Pattern SENSITIVE_SYSTEM_PROPERTY = Pattern.compile(
+            "(-D[^=\\s]*(?:pass|secret|token|key|credential)[^=\\s]*=)(\"[^\"]*\"|\\S+)", Pattern.CASE_INSENSITIVE);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Path cacheDirectory;
+    private final Path rootDirectory;
+    @Nullable
+    private CompletableFuture<Attributes> detection;
+
+    public BuildEnvironmentResource() {
+        this(Paths.get(System.getProperty("user.home"), ".m2", "opentelemetry-maven-extension"), Paths.get("/"));
+    }
+
+    /**
+     * @param rootDirectory root of the {@code /proc} and {@code /sys} file systems, visible for testing
+     */
+    BuildEnvironmentResource(@Nonnull Path cacheDirectory, @Nonnull Path rootDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        this.rootDirectory = rootDirectory;
+    }
+
+    /**
+     * Start probing the build environment, or loading the cached probing, in a daemon thread
+     *
+     * @return the probed attributes, empty if the detection fails
+     */
+    @Nonnull
+    public synchronized CompletableFuture<Attributes> startDetection() {
+        if (detection == null) {
+            detection = CompletableFuture.supplyAsync(this::loadOrDetect, command -> {
+                Thread thread = new Thread(command, "otel-resource-detection");
+                thread.setDaemon(true);
+                thread.start();
+            }).exceptionally(throwable -> {
+                logger.debug("OpenTelemetry: Failure to detect the build environment", throwable);
+                return Attributes.empty();
+            });
+        }
+        return detection;
+    }
+
+    /**
+     * Attributes cheap to get, not cached
+     */
+    @Nonnull
+    static Attributes getRuntimeAttributes() {
+        AttributesBuilder attributesBuilder = Attributes.builder()
+                .put(MavenOtelSemanticAttributes.HOST_CPU_COUNT, Runtime.getRuntime().availableProcessors())
+                .put(ResourceAttributes.HOST_ARCH, System.getProperty("os.arch"))
+                .put(ResourceAttributes.OS_TYPE, getOsType(System.getProperty("os.name")))
+                .put(ResourceAttributes.OS_DESCRIPTION, System.getProperty("os.name") + " " + System.getProperty("os.version"))
+                .put(ResourceAttributes.OS_VERSION, System.getProperty("os.version"))
+                .put(ResourceAttributes.PROCESS_RUNTIME_NAME, System.getProperty("java.runtime.name"))
+                .put(ResourceAttributes.PROCESS_RUNTIME_VERSION, System.getProperty("java.runtime.version"))
+                .put(ResourceAttributes.PROCESS_RUNTIME_DESCRIPTION, System.getProperty("java.vm.vendor") + " " + System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version"));
+        String mavenOpts = System.getenv("MAVEN_OPTS");
+        if (StringUtils.isNotBlank(mavenOpts)) {
+            attributesBuilder.put(MavenOtelSemanticAttributes.MAVEN_OPTS, redactMavenOpts(mavenOpts.trim()));
+        }
+        return attributesBuilder.build();
+    }
+
+    @Nonnull
+    static String getOsType(@Nonnull String osName) {
+        String name = osName.toLowerCase(Locale.ROOT);
+        if (name.startsWith("windows")) {
+            return ResourceAttributes.OsTypeValues.WINDOWS;
+        } else if (name.startsWith("mac")) {
+            return ResourceAttributes.OsTypeValues.DARWIN;
+        } else if (name.startsWith("linux")) {
+            return ResourceAttributes.OsTypeValues.LINUX;
+        }
+        return name.replace(" ", "");
+    }
+
+    /**
+     * Mask the values of the system properties that look like credentials (e.g. {@code -Dgpg.passphrase=...})
+     */
+    @Nonnull
+    static String redactMavenOpts(@Nonnull String mavenOpts) {
+        return SENSITIVE_SYSTEM_PROPERTY.matcher(mavenOpts).replaceAll("$1***");
+    }
+
+    @Nonnull
+    Attributes loadOrDetect() {
+        Path cacheFile = getCacheFile();
+        try {
+            if (Files.isRegularFile(cacheFile) && System.currentTimeMillis() - Files.getLastModifiedTime(cacheFile).toMillis() < CACHE_TTL_MILLIS) {
+                Properties properties = new Properties();
+                try (InputStream in = Files.newInputStream(cacheFile)) {
+                    properties.load(in);
+                }
+                logger.debug("OpenTelemetry: Load build environment from {}", cacheFile);
+                return fromProperties(properties);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("OpenTelemetry: Ignore invalid build environment cache " + cacheFile, e);
+        }
+        Attributes attributes = detect();
+        try {
+            Files.createDirectories(cacheDirectory);
+            Path tmpFile = Files.createTempFile(cacheDirectory, cacheFile.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmpFile)) {
+                toProperties(attributes).store(out, "OpenTelemetry Maven Extension, build environment");
+            }
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("OpenTelemetry: Failure to cache build environment in " + cacheFile, e);
+        }
+        return attributes;
+    }
+
+    /**
+     * Probe {@code /proc} and the cgroups (v2 or v1)
+     */
+    @Nonnull
+    Attributes detect() {
+        AttributesBuilder attributesBuilder = Attributes.builder();
+
+        Long memoryTotal = null;
+        String memTotal = findValue(rootDirectory.resolve("proc/meminfo"), "MemTotal");
+        if (memTotal != null && memTotal.endsWith("kB")) {
+            memoryTotal = parseLong(memTotal.substring(0, memTotal.length() - 2).trim());
+            memoryTotal = memoryTotal == null ? null : memoryTotal * 1024;
+        }
+        if (memoryTotal == null) {
+            memoryTotal = getTotalMemorySize(ManagementFactory.getOperatingSystemMXBean());
+        }
+        if (memoryTotal != null) {
+            attributesBuilder.put(MavenOtelSemanticAttributes.HOST_MEMORY_TOTAL, memoryTotal);
+        }
+        String cpuModel = findValue(rootDirectory.resolve("proc/cpuinfo"), "model name");
+        if (StringUtils.isNotBlank(cpuModel)) {
+            attributesBuilder.put(MavenOtelSemanticAttributes.HOST_CPU_MODEL, cpuModel);
+        }
+
+        Path cgroup = rootDirectory.resolve("sys/fs/cgroup");
+        Double cpuLimit = null;
+        String cpuMax = readFirstLine(cgroup.resolve("cpu.max"));
+        if (cpuMax != null) {
+            String[] quotaAndPeriod = cpuMax.split("\\s+");
+            if (quotaAndPeriod.length == 2) {
+                cpuLimit = getCpuLimit(parseLong(quotaAndPeriod[0]), parseLong(quotaAndPeriod[1]));
+            }
+        } else {
+            cpuLimit = getCpuLimit(parseLong(readFirstLine(cgroup.resolve("cpu/cpu.cfs_quota_us"))), parseLong(readFirstLine(cgroup.resolve("cpu/cpu.cfs_period_us"))));
+        }
+        if (cpuLimit != null) {
+            attributesBuilder.put(MavenOtelSemanticAttributes.CONTAINER_CPU_LIMIT, cpuLimit);
+        }
+        String memoryMax = readFirstLine(cgroup.resolve("memory.max"));
+        Long memoryLimit = parseLong(memoryMax != null ? memoryMax : readFirstLine(cgroup.resolve("memory/memory.limit_in_bytes")));
+        if (memoryLimit != null && memoryLimit > 0 && memoryLimit < UNLIMITED_MEMORY_THRESHOLD) {
+            attributesBuilder.put(MavenOtelSemanticAttributes.CONTAINER_MEMORY_LIMIT, memoryLimit);
+        }
+        return attributesBuilder.build();
+    }
+
+    /**
+     * Invoked reflectively: {@code getTotalMemorySize()} only exists since Java 14 and
+     * {@code getTotalPhysicalMemorySize()} is deprecated since then
+     *
+     * @return {@code null} if not supported by the JVM
+     */
+    @Nullable
+    static Long getTotalMemorySize(@Nonnull OperatingSystemMXBean operatingSystem) {
+        for (String methodName : new String[]{"getTotalMemorySize", "getTotalPhysicalMemorySize"}) {
+            try {
+                Method method = Class.forName("com.sun.management.OperatingSystemMXBean").getMethod(methodName);
+                return (Long) method.invoke(operatingSystem);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // try the next one
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of cores, {@code null} if unlimited ({@code max} or {@code -1})
+     */
+    @Nullable
+    private static Double getCpuLimit(@Nullable Long quota, @Nullable Long period) {
+        if (quota == null || period == null || quota <= 0 || period <= 0) {
+            return null;
+        }
+        return (double) quota / period;
+    }
+
+    @Nonnull
+    private Path getCacheFile() {
+        String hostname = System.getenv("HOSTNAME");
+        if (StringUtils.isBlank(hostname)) {
+            hostname = System.getenv("COMPUTERNAME");
+        }
+        if (StringUtils.isBlank(hostname)) {
+            hostname = readFirstLine(rootDirectory.resolve("etc/hostname"));
+        }
+        String key = hostname + "|" + System.getProperty("java.home") + "|" + System.getProperty("java.vm.version") + "|"
+                + System.getProperty("os.name") + "|" + System.getProperty("os.version") + "|" + System.getProperty("os.arch");
+        try {
+            StringBuilder hash = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8))) {
+                hash.append(String.format("%02x", b));
+            }
+            return cacheDirectory.resolve("build-environment-" + hash.substring(0, 16) + ".properties");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Nonnull
+    private static Properties toProperties(@Nonnull Attributes attributes) {
+        Properties properties = new Properties();
+        attributes.forEach((key, value) -> properties.setProperty(key.getKey(), String.valueOf(value)));
+        return properties;
+    }
+
+    @Nonnull
+    private static Attributes fromProperties(@Nonnull Properties properties) {
+        AttributesBuilder attributesBuilder = Attributes.builder();
+        String memoryTotal = properties.getProperty(MavenOtelSemanticAttributes.HOST_MEMORY_TOTAL.getKey());
+        if (memoryTotal != null) {
+            attributesBuilder.put(MavenOtelSemanticAttributes.HOST_MEMORY_TOTAL, Long.parseLong(memoryTotal));
+        }
+        String cpuModel = properties.getProperty(MavenOtelSemanticAttributes.HOST_CPU_MODEL.getKey());
+        if (cpuModel != null) {
+            attributesBuilder.put(MavenOtelSemanticAttributes.HOST_CPU_MODEL, cpuModel);
+        }
+        String cpuLimit = properties.getProperty(MavenOtelSemanticAttributes.CONTAINER_CPU_LIMIT.getKey());
+        if (cpuLimit != null) {
+            attributesBuilder.put(MavenOtelSemanticAttributes.CONTAINER_CPU_LIMIT, Double.parseDouble(cpuLimit));
+        }
+        String memoryLimit = properties.getProperty(MavenOtelSemanticAttributes.CONTAINER_MEMORY_LIMIT.getKey());
+        if (memoryLimit != null) {
+            attributesBuilder.put(MavenOtelSemanticAttributes.CONTAINER_MEMORY_LIMIT, Long.parseLong(memoryLimit));
+        }
+        return attributesBuilder.build();
+    }
+
+    /**
+     * @return the value of the first {@code name: value} line of the given file (e.g. {@code /proc/meminfo})
+     */
+    @Nullable
+    private static String findValue(@Nonnull Path file, @Nonnull String name) {
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                int separator = line.indexOf(':');
+                if (separator > 0 && line.substring(0, separator).trim().equals(name)) {
+                    return line.substring(separator + 1).trim();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // ignore
+        }
+        return null;
+    }
+
+    @Nullable
+    private static String readFirstLine(@Nonnull Path file) {
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            return lines.isEmpty() ? null : lines.get(0).trim();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Long parseLong(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
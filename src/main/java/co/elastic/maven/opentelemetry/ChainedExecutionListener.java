@@ -11,20 +11,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.stream.Collectors;
+import java.util.Objects;
 
 /**
  * Util class to chain multiple {@link ExecutionListener} as MAven APIs don't offer this capability.
+ *
+ * The listeners are invoked synchronously, in order, on the thread of the event; wrap a listener in an
+ * {@link AsyncExecutionListener} to hand over its events to a dedicated thread.
  */
 public class ChainedExecutionListener implements ExecutionListener {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final Collection<ExecutionListener> listeners;
+    /**
+     * Immutable, iterated without allocation on each event
+     */
+    private final ExecutionListener[] listeners;
 
     public ChainedExecutionListener() {
-        this.listeners = new LinkedList<>();
+        this.listeners = new ExecutionListener[0];
     }
 
     /**
@@ -32,7 +36,7 @@ public class ChainedExecutionListener implements ExecutionListener {
      * @param listeners {@code null} values are filtered
      */
     public ChainedExecutionListener(ExecutionListener... listeners) {
-        this.listeners =  Arrays.asList(listeners).stream().filter(e -> e != null).collect(Collectors.toList());
+        this.listeners = Arrays.stream(listeners).filter(Objects::nonNull).toArray(ExecutionListener[]::new);
     }
 
     @Override
@@ -137,14 +141,10 @@ public class ChainedExecutionListener implements ExecutionListener {
     @Override
     public void mojoSucceeded(ExecutionEvent event) {
         for (ExecutionListener listener : this.listeners) {
-            if (listener == null) {
-                logger.warn("Silently ignore 'null' listener");
-            } else {
-                try {
-                    listener.mojoSucceeded(event);
-                } catch (RuntimeException e) {
-                    logger.error("Silently skip exception", e);
-                }
+            try {
+                listener.mojoSucceeded(event);
+            } catch (RuntimeException e) {
+                logger.error("Silently skip exception", e);
             }
         }
     }
@@ -0,0 +1,183 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * {@link SpanExporter} whose delegate is created in the background (see {@link OpenTelemetrySdkService#initialize()})
+ * so that loading the GRPC stack and connecting to the collector don't delay the start of Maven.
+ *
+ * The batches exported before the delegate is ready are copied to a list of pending batches, bounded to
+ * {@code maxPendingSpans} spans, and reported as exported right away: the worker thread of the
+ * {@link io.opentelemetry.sdk.trace.export.BatchSpanProcessor} waits for the result of each export and would otherwise
+ * be held until the delegate is created. The pending batches are handed over to the delegate as soon as it is
+ * created. The spans exceeding the bound, and the spans exported once {@link #abandon()} is invoked or if the delegate
+ * can't be created, are dropped and counted.
+ */
+public class DeferredSpanExporter implements SpanExporter {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Completed with {@code null} if no delegate could be created (e.g. invalid OTLP file)
+     */
+    private final CompletableFuture<SpanExporter> delegate;
+    private final int maxPendingSpans;
+    private final AtomicLong droppedSpans = new AtomicLong();
+
+    /**
+     * Guarded by {@code this}, {@code null} once handed over to the delegate
+     */
+    private List<Collection<SpanData>> pendingBatches = new ArrayList<>();
+    private int pendingSpans;
+    /**
+     * Completed once the exports of the pending batches are completed
+     */
+    private final CompletableResultCode pendingBatchesExport = new CompletableResultCode();
+
+    /**
+     * @param maxPendingSpans max number of spans waiting for the creation of the delegate
+     */
+    public DeferredSpanExporter(@Nonnull CompletableFuture<SpanExporter> delegate, int maxPendingSpans) {
+        this.delegate = delegate;
+        this.maxPendingSpans = maxPendingSpans;
+        delegate.whenComplete((spanExporter, throwable) -> exportPendingBatches(spanExporter));
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        synchronized (this) {
+            if (pendingBatches != null) {
+                if (pendingSpans + spans.size() > maxPendingSpans) {
+                    logger.debug("OpenTelemetry: Span exporter not created yet and {} spans pending, drop {} spans", pendingSpans, spans.size());
+                    droppedSpans.addAndGet(spans.size());
+                    return CompletableResultCode.ofFailure();
+                }
+                // the BatchSpanProcessor reuses the collection of its batch once the export returns
+                pendingBatches.add(new ArrayList<>(spans));
+                pendingSpans += spans.size();
+                return CompletableResultCode.ofSuccess();
+            }
+        }
+        return whenDelegateReady(spanExporter -> spanExporter.export(spans), () -> {
+            logger.debug("OpenTelemetry: No span exporter, drop {} spans", spans.size());
+            droppedSpans.addAndGet(spans.size());
+            return CompletableResultCode.ofFailure();
+        });
+    }
+
+    /**
+     * Hand over the pending batches to the delegate, or drop them if no delegate could be created
+     */
+    private void exportPendingBatches(@Nullable SpanExporter spanExporter) {
+        final List<Collection<SpanData>> pendingBatches;
+        synchronized (this) {
+            pendingBatches = this.pendingBatches;
+            this.pendingBatches = null;
+            this.pendingSpans = 0;
+        }
+        final List<CompletableResultCode> results = new ArrayList<>(pendingBatches.size());
+        for (Collection<SpanData> batch : pendingBatches) {
+            if (spanExporter == null) {
+                logger.debug("OpenTelemetry: No span exporter, drop {} spans", batch.size());
+                droppedSpans.addAndGet(batch.size());
+                continue;
+            }
+            try {
+                results.add(spanExporter.export(batch));
+            } catch (RuntimeException e) {
+                logger.debug("OpenTelemetry: Failure of the span exporter", e);
+            }
+        }
+        CompletableResultCode.ofAll(results).whenComplete(pendingBatchesExport::succeed);
+    }
+
+    /**
+     * @param action   invoked with the delegate once created
+     * @param fallback invoked if no delegate could be created
+     * @return completed with the result of the action or of the fallback
+     */
+    @Nonnull
+    private CompletableResultCode whenDelegateReady(@Nonnull Function<SpanExporter, CompletableResultCode> action, @Nonnull Supplier<CompletableResultCode> fallback) {
+        final CompletableResultCode result = new CompletableResultCode();
+        delegate.whenComplete((spanExporter, throwable) -> {
+            final CompletableResultCode delegateResult;
+            try {
+                delegateResult = spanExporter == null ? fallback.get() : action.apply(spanExporter);
+            } catch (RuntimeException e) {
+                logger.debug("OpenTelemetry: Failure of the span exporter", e);
+                result.fail();
+                return;
+            }
+            delegateResult.whenComplete(() -> {
+                if (delegateResult.isSuccess()) {
+                    result.succeed();
+                } else {
+                    result.fail();
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Stop waiting for the delegate, used when the shutdown deadline is reached before the end of the initialization:
+     * the pending batches are dropped
+     */
+    public void abandon() {
+        delegate.complete(null);
+    }
+
+    /**
+     * @return the number of spans dropped because the delegate was not created in time or could not be created
+     */
+    public long getDroppedSpans() {
+        return droppedSpans.get();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return afterPendingBatches(SpanExporter::flush);
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return afterPendingBatches(SpanExporter::shutdown);
+    }
+
+    /**
+     * @return completed with the result of the action, invoked with the delegate once the pending batches are exported
+     */
+    @Nonnull
+    private CompletableResultCode afterPendingBatches(@Nonnull Function<SpanExporter, CompletableResultCode> action) {
+        final CompletableResultCode result = new CompletableResultCode();
+        pendingBatchesExport.whenComplete(() -> {
+            CompletableResultCode actionResult = whenDelegateReady(action, CompletableResultCode::ofSuccess);
+            actionResult.whenComplete(() -> {
+                if (actionResult.isSuccess()) {
+                    result.succeed();
+                } else {
+                    result.fail();
+                }
+            });
+        });
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.data.StatusData;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * {@link SpanData} delegating to another one, to override some of its properties when the span has already ended
+ */
+abstract class DelegatingSpanData implements SpanData {
+    private final SpanData delegate;
+
+    DelegatingSpanData(@Nonnull SpanData delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public SpanKind getKind() {
+        return delegate.getKind();
+    }
+
+    @Override
+    public SpanContext getSpanContext() {
+        return delegate.getSpanContext();
+    }
+
+    @Override
+    public SpanContext getParentSpanContext() {
+        return delegate.getParentSpanContext();
+    }
+
+    @Override
+    public StatusData getStatus() {
+        return delegate.getStatus();
+    }
+
+    @Override
+    public long getStartEpochNanos() {
+        return delegate.getStartEpochNanos();
+    }
+
+    @Override
+    public Attributes getAttributes() {
+        return delegate.getAttributes();
+    }
+
+    @Override
+    public List<EventData> getEvents() {
+        return delegate.getEvents();
+    }
+
+    @Override
+    public List<LinkData> getLinks() {
+        return delegate.getLinks();
+    }
+
+    @Override
+    public long getEndEpochNanos() {
+        return delegate.getEndEpochNanos();
+    }
+
+    @Override
+    public boolean hasEnded() {
+        return delegate.hasEnded();
+    }
+
+    @Override
+    public int getTotalRecordedEvents() {
+        return delegate.getTotalRecordedEvents();
+    }
+
+    @Override
+    public int getTotalRecordedLinks() {
+        return delegate.getTotalRecordedLinks();
+    }
+
+    @Override
+    public int getTotalAttributeCount() {
+        return delegate.getTotalAttributeCount();
+    }
+
+    @Override
+    public InstrumentationLibraryInfo getInstrumentationLibraryInfo() {
+        return delegate.getInstrumentationLibraryInfo();
+    }
+
+    @Override
+    public Resource getResource() {
+        return delegate.getResource();
+    }
+}
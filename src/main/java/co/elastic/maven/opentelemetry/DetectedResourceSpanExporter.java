@@ -0,0 +1,74 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link SpanExporter} adding to the resource of the spans the attributes of the build environment detected in the
+ * background (see {@link BuildEnvironmentResource}), the resource of the SDK being created before the end of the
+ * detection. The attributes of the resource of the SDK (e.g. {@code OTEL_RESOURCE_ATTRIBUTES}) take precedence.
+ */
+public class DetectedResourceSpanExporter implements SpanExporter {
+    private final SpanExporter delegate;
+    private final Resource resource;
+    private final Resource detectedResource;
+    private final Resource mergedResource;
+
+    /**
+     * @param resource resource of the SDK
+     */
+    public DetectedResourceSpanExporter(@Nonnull SpanExporter delegate, @Nonnull Resource resource, @Nonnull Attributes detectedAttributes) {
+        this.delegate = delegate;
+        this.resource = resource;
+        this.detectedResource = Resource.create(detectedAttributes);
+        this.mergedResource = detectedResource.merge(resource);
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        List<SpanData> enrichedSpans = new ArrayList<>(spans.size());
+        for (SpanData span : spans) {
+            // all the spans share the resource of the SDK
+            Resource spanResource = span.getResource();
+            enrichedSpans.add(new DetectedResourceSpanData(span, spanResource == resource ? mergedResource : detectedResource.merge(spanResource)));
+        }
+        return delegate.export(enrichedSpans);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return delegate.shutdown();
+    }
+
+    private static class DetectedResourceSpanData extends DelegatingSpanData {
+        private final Resource resource;
+
+        DetectedResourceSpanData(@Nonnull SpanData delegate, @Nonnull Resource resource) {
+            super(delegate);
+            this.resource = resource;
+        }
+
+        @Override
+        public Resource getResource() {
+            return resource;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.common.Attributes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link MojoDurationBaseline} persisted in a local file so that each developer's build learns the usual durations of
+ * its mojo executions from the previous builds, without any backend.
+ *
+ * The file is an append-only sequence of binary records ({@link DataOutputStream#writeUTF(String) key} of the mojo
+ * execution, duration in nanoseconds) after a header: the durations of a build are appended at the end of the build
+ * with a single write. Replaying the records in order rebuilds the rolling windows of the last
+ * {@value InMemoryMojoDurationBaseline#WINDOW_SIZE} durations of each mojo execution. Once the file exceeds its max
+ * size, or if its last record is truncated, it is compacted: rewritten with the windows of the mojo executions recorded
+ * most recently, up to half of the max size, and atomically moved in place.
+ *
+ * The file is loaded in a daemon thread overlapping with the start of Maven. Concurrent builds on the same machine
+ * append to the same file; a compaction may lose the durations appended concurrently, the baseline being best effort.
+ */
+public class FileMojoDurationBaseline extends InMemoryMojoDurationBaseline {
+
+    static final long DEFAULT_MAX_FILE_SIZE = 1024 * 1024;
+    static final long LOADING_TIMEOUT_MILLIS = 1_000;
+
+    /**
+     * "OMDB", OpenTelemetry Maven Duration Baseline
+     */
+    private static final int MAGIC = 0x4f4d4442;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Path file;
+    private final long maxFileSize;
+    private final FutureTask<Boolean> loading;
+    private volatile boolean loadingAbandoned;
+    /**
+     * Records of the durations recorded since the last {@link #store()}
+     */
+    private final ByteArrayOutputStream pendingRecords = new ByteArrayOutputStream();
+    private final DataOutputStream pendingRecordsOutput = new DataOutputStream(pendingRecords);
+
+    /**
+     * @param maxFileSize size above which the file is compacted
+     */
+    public FileMojoDurationBaseline(@Nonnull Path file, long maxFileSize) {
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.loading = new FutureTask<>(this::load);
+    }
+
+    /**
+     * Default location of the file, next to the cache of the {@link BuildEnvironmentResource}
+     */
+    @Nonnull
+    public static Path getDefaultFile() {
+        return Paths.get(System.getProperty("user.home"), ".m2", "opentelemetry-maven-extension", "mojo-durations.bin");
+    }
+
+    /**
+     * Start loading the file in a daemon thread
+     */
+    public void startLoading() {
+        Thread thread = new Thread(loading, "otel-baseline-loading");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public long getP50Nanos(@Nonnull Attributes mojoSpanAttributes) {
+        awaitLoading();
+        return super.getP50Nanos(mojoSpanAttributes);
+    }
+
+    @Override
+    public long getP95Nanos(@Nonnull Attributes mojoSpanAttributes) {
+        awaitLoading();
+        return super.getP95Nanos(mojoSpanAttributes);
+    }
+
+    @Override
+    public void record(@Nonnull Attributes mojoSpanAttributes, long durationNanos) {
+        String key = getKey(mojoSpanAttributes);
+        if (key == null) {
+            return;
+        }
+        awaitLoading();
+        record(key, durationNanos);
+        synchronized (pendingRecords) {
+            try {
+                writeRecord(pendingRecordsOutput, key, durationNanos);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the file is loaded, {@code false} if its loading failed or is abandoned
+     */
+    boolean awaitLoading() {
+        if (loadingAbandoned) {
+            return false;
+        }
+        try {
+            return loading.get(LOADING_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.debug("OpenTelemetry: Mojo duration baseline {} not loaded within {}ms, skip it", file, LOADING_TIMEOUT_MILLIS);
+        } catch (ExecutionException e) {
+            logger.debug("OpenTelemetry: Failure to load the mojo duration baseline " + file, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        loadingAbandoned = true;
+        return false;
+    }
+
+    /**
+     * @return {@code false} if the file is missing, too large, invalid or ends with a truncated record, it is then
+     * rewritten on {@link #store()}
+     */
+    boolean load() throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) > 2 * maxFileSize) {
+            return false;
+        }
+        long before = System.nanoTime();
+        byte[] bytes = Files.readAllBytes(file);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (bytes.length < HEADER_SIZE || in.readInt() != MAGIC || in.readByte() != VERSION) {
+            logger.debug("OpenTelemetry: Ignore invalid mojo duration baseline {}", file);
+            return false;
+        }
+        int records = 0;
+        while (in.available() > 0) {
+            try {
+                String key = in.readUTF();
+                long durationNanos = in.readLong();
+                record(key, durationNanos);
+                records++;
+            } catch (EOFException | UTFDataFormatException e) {
+                logger.debug("OpenTelemetry: Ignore truncated or invalid record at the end of the mojo duration baseline {}", file);
+                return false;
+            }
+        }
+        logger.debug("OpenTelemetry: Mojo duration baseline loaded from {} in {}ms, {} durations of {} mojo executions",
+                file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - before), records, getDurationWindows().size());
+        return true;
+    }
+
+    /**
+     * Append the durations recorded since the last invocation to the file, or compact the file. Never fails the build.
+     */
+    public synchronized void store() {
+        byte[] records;
+        synchronized (pendingRecords) {
+            records = pendingRecords.toByteArray();
+            pendingRecords.reset();
+        }
+        if (records.length == 0) {
+            return;
+        }
+        boolean loaded = awaitLoading();
+        try {
+            long fileSize = Files.isRegularFile(file) ? Files.size(file) : 0;
+            // not compacted with the windows of a file not loaded in time, their durations would be lost
+            boolean compaction = fileSize == 0 || (!loadingAbandoned && (!loaded || fileSize + records.length > maxFileSize));
+            if (compaction) {
+                compact();
+            } else {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(records);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                logger.debug("OpenTelemetry: {} bytes of mojo durations appended to {}", records.length, file);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.debug("OpenTelemetry: Failure to store the mojo duration baseline in " + file, e);
+        }
+    }
+
+    /**
+     * Rewrite the file with the windows of the mojo executions recorded most recently, up to half of the max size so
+     * that the following builds append to the file for a while before the next compaction
+     */
+    private void compact() throws IOException {
+        List<Map.Entry<String, DurationWindow>> entries = new ArrayList<>(getDurationWindows().entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, DurationWindow> entry) -> entry.getValue().getLastRecordSequence()).reversed());
+        List<byte[]> windows = new ArrayList<>(entries.size());
+        long size = HEADER_SIZE;
+        for (Map.Entry<String, DurationWindow> entry : entries) {
+            ByteArrayOutputStream window = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(window);
+            for (long durationNanos : entry.getValue().getDurations()) {
+                writeRecord(out, entry.getKey(), durationNanos);
+            }
+            if (size + window.size() > maxFileSize / 2) {
+                break;
+            }
+            size += window.size();
+            windows.add(window.toByteArray());
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tmpFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmpFile))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            // least recently recorded first, replayed in the same order
+            for (int i = windows.size() - 1; i >= 0; i--) {
+                out.write(windows.get(i));
+            }
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("OpenTelemetry: Mojo duration baseline {} compacted to {} bytes, {} mojo executions", file, size, windows.size());
+    }
+
+    private static void writeRecord(@Nonnull DataOutputStream out, @Nonnull String key, long durationNanos) throws IOException {
+        out.writeUTF(key);
+        out.writeLong(durationNanos);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import org.apache.maven.plugin.MojoExecution;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Outbound counterpart of the extraction of the {@code TRACEPARENT} environment variable in
+ * {@link OtelExecutionListener#sessionStarted(org.apache.maven.execution.ExecutionEvent)}: propagates the context of
+ * the span of a mojo execution to the processes forked by the mojo, as the {@code TRACEPARENT} and {@code TRACESTATE}
+ * environment variables, so that the spans of instrumented child processes are children of the mojo execution span.
+ *
+ * The environment variables are added to the {@code environmentVariables} parameter of the mojo execution
+ * configuration, before the configuration of the mojo, for the following goals:
+ * <ul>
+ *     <li>{@code maven-surefire-plugin:test} and {@code maven-failsafe-plugin:integration-test}: forked test JVMs</li>
+ *     <li>{@code exec-maven-plugin:exec}: the {@code exec:java} goal runs in the JVM of Maven and is not supported</li>
+ * </ul>
+ * Environment variables defined in the pom.xml are not overwritten.
+ */
+public class ForkedProcessContextPropagator {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    static boolean isForkingMojo(@Nonnull MojoExecution mojoExecution) {
+        String artifactId = mojoExecution.getPlugin().getArtifactId();
+        String goal = mojoExecution.getGoal();
+        return ("maven-surefire-plugin".equals(artifactId) && "test".equals(goal))
+                || ("maven-failsafe-plugin".equals(artifactId) && "integration-test".equals(goal))
+                || ("exec-maven-plugin".equals(artifactId) && "exec".equals(goal));
+    }
+
+    /**
+     * To invoke on {@link org.apache.maven.execution.ExecutionListener#mojoStarted(org.apache.maven.execution.ExecutionEvent)},
+     * before the mojo is configured
+     */
+    public void injectContext(@Nonnull MojoExecution mojoExecution, @Nonnull Span mojoExecutionSpan) {
+        if (!isForkingMojo(mojoExecution) || !mojoExecutionSpan.getSpanContext().isValid()) {
+            return;
+        }
+        Map<String, String> environmentVariables = new LinkedHashMap<>(2);
+        W3CTraceContextPropagator.getInstance().inject(Context.current().with(mojoExecutionSpan), environmentVariables,
+                (carrier, key, value) -> carrier.put(key.toUpperCase(Locale.ROOT), value));
+
+        Xpp3Dom configuration = mojoExecution.getConfiguration();
+        if (configuration == null) {
+            configuration = new Xpp3Dom("configuration");
+            mojoExecution.setConfiguration(configuration);
+        }
+        Xpp3Dom environmentVariablesParameter = configuration.getChild("environmentVariables");
+        if (environmentVariablesParameter == null) {
+            environmentVariablesParameter = new Xpp3Dom("environmentVariables");
+            configuration.addChild(environmentVariablesParameter);
+        } else if (environmentVariablesParameter.getValue() != null && environmentVariablesParameter.getChildCount() == 0) {
+            // e.g. <environmentVariables>${my.environment}</environmentVariables>
+            logger.debug("OpenTelemetry: Don't propagate the context to {}, environmentVariables defined as an expression", mojoExecution);
+            return;
+        }
+        for (Map.Entry<String, String> environmentVariable : environmentVariables.entrySet()) {
+            if (environmentVariablesParameter.getChild(environmentVariable.getKey()) == null) {
+                Xpp3Dom child = new Xpp3Dom(environmentVariable.getKey());
+                child.setValue(environmentVariable.getValue());
+                environmentVariablesParameter.addChild(child);
+            }
+        }
+        logger.debug("OpenTelemetry: Propagate context to the processes forked by {}: {}", mojoExecution, environmentVariables);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.common.Attributes;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link MojoDurationBaseline} on the last {@value #WINDOW_SIZE} durations of each mojo execution recorded in the JVM.
+ * Only learns across builds when the JVM runs several builds (e.g. Maven Daemon).
+ */
+public class InMemoryMojoDurationBaseline implements MojoDurationBaseline {
+
+    static final int WINDOW_SIZE = 20;
+    /**
+     * Min number of previous durations to compute the percentile
+     */
+    static final int MIN_SAMPLES = 5;
+    /**
+     * Max number of mojo executions tracked
+     */
+    static final int MAX_MOJO_EXECUTIONS = 10_000;
+
+    private final ConcurrentMap<String, DurationWindow> durationWindows = new ConcurrentHashMap<>();
+    /**
+     * Sequence of the recorded durations, to tell the mojo executions recorded recently
+     */
+    private final AtomicLong recordSequence = new AtomicLong();
+
+    @Override
+    public long getP50Nanos(@Nonnull Attributes mojoSpanAttributes) {
+        return getPercentileNanos(getKey(mojoSpanAttributes), 0.50);
+    }
+
+    @Override
+    public long getP95Nanos(@Nonnull Attributes mojoSpanAttributes) {
+        return getPercentileNanos(getKey(mojoSpanAttributes), 0.95);
+    }
+
+    private long getPercentileNanos(@Nullable String key, double percentile) {
+        DurationWindow durationWindow = key == null ? null : durationWindows.get(key);
+        return durationWindow == null ? -1 : durationWindow.getPercentile(percentile);
+    }
+
+    @Override
+    public void record(@Nonnull Attributes mojoSpanAttributes, long durationNanos) {
+        String key = getKey(mojoSpanAttributes);
+        if (key != null) {
+            record(key, durationNanos);
+        }
+    }
+
+    /**
+     * @param key see {@link #getKey(Attributes)}
+     */
+    void record(@Nonnull String key, long durationNanos) {
+        DurationWindow durationWindow = durationWindows.get(key);
+        if (durationWindow == null) {
+            if (durationWindows.size() >= MAX_MOJO_EXECUTIONS) {
+                return;
+            }
+            durationWindow = durationWindows.computeIfAbsent(key, k -> new DurationWindow());
+        }
+        durationWindow.record(durationNanos, recordSequence.incrementAndGet());
+    }
+
+    /**
+     * Visible for the subclasses persisting the durations
+     */
+    @Nonnull
+    Map<String, DurationWindow> getDurationWindows() {
+        return durationWindows;
+    }
+
+    /**
+     * @return {@code null} if the attributes are not the ones of a mojo execution span
+     */
+    @Nullable
+    static String getKey(@Nonnull Attributes mojoSpanAttributes) {
+        String goal = mojoSpanAttributes.get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_GOAL);
+        if (goal == null) {
+            return null;
+        }
+        return mojoSpanAttributes.get(MavenOtelSemanticAttributes.MAVEN_PROJECT_GROUP_ID) + ":"
+                + mojoSpanAttributes.get(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID) + ":"
+                + mojoSpanAttributes.get(MavenOtelSemanticAttributes.MAVEN_PLUGIN_ARTIFACT_ID) + ":"
+                + goal + "@" + mojoSpanAttributes.get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_ID);
+    }
+
+    static class DurationWindow {
+        private final long[] durations = new long[WINDOW_SIZE];
+        private int count;
+        private long lastRecordSequence;
+
+        synchronized void record(long durationNanos, long recordSequence) {
+            durations[count % WINDOW_SIZE] = durationNanos;
+            count++;
+            lastRecordSequence = recordSequence;
+        }
+
+        /**
+         * Nearest-rank percentile, {@code -1} below {@value InMemoryMojoDurationBaseline#MIN_SAMPLES} durations
+         */
+        synchronized long getPercentile(double percentile) {
+            int size = Math.min(count, WINDOW_SIZE);
+            if (size < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sortedDurations = Arrays.copyOf(durations, size);
+            Arrays.sort(sortedDurations);
+            return sortedDurations[Math.max(0, (int) Math.ceil(percentile * size) - 1)];
+        }
+
+        /**
+         * @return the durations of the window, oldest first
+         */
+        @Nonnull
+        synchronized long[] getDurations() {
+            int size = Math.min(count, WINDOW_SIZE);
+            long[] orderedDurations = new long[size];
+            for (int i = 0; i < size; i++) {
+                orderedDurations[i] = durations[(count - size + i) % WINDOW_SIZE];
+            }
+            return orderedDurations;
+        }
+
+        synchronized long getLastRecordSequence() {
+            return lastRecordSequence;
+        }
+    }
+}
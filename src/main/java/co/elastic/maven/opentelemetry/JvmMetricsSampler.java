@@ -0,0 +1,531 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import com.google.protobuf.ByteString;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.proto.metrics.v1.AggregationTemporality;
+import io.opentelemetry.proto.metrics.v1.Exemplar;
+import io.opentelemetry.proto.metrics.v1.Gauge;
+import io.opentelemetry.proto.metrics.v1.InstrumentationLibraryMetrics;
+import io.opentelemetry.proto.metrics.v1.Metric;
+import io.opentelemetry.proto.metrics.v1.NumberDataPoint;
+import io.opentelemetry.proto.metrics.v1.Sum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Observes the Maven JVM during the build to spot the builds slowed down by a heap close to its {@code -Xmx}:
+ * <ul>
+ *     <li>Every {@code otel.instrumentation.maven.jvm.metrics.interval} milliseconds, on a daemon thread and only when
+ *     the metrics are exported, samples the usage of each memory pool, the GC counts and times, the thread count, the
+ *     loaded classes and the CPU utilization of the process. The samples are exported with the other metrics at the
+ *     end of the build (see {@link #writeTo(InstrumentationLibraryMetrics.Builder)}), the highest sample of each
+ *     series linking to the trace of the build as an exemplar.</li>
+ *     <li>Records on the root span of the build the peak usage of each memory pool, the GC count and time, the peak
+ *     thread count and the CPU time of the build (see {@link #addBuildAttributes(Span)}). The peaks are the highest
+ *     samples and threshold crossings of the build, sampled every {@value #PEAKS_SAMPLING_INTERVAL_MILLIS}ms when the
+ *     metrics are not exported: the peaks of the {@link MemoryPoolMXBean}s and of the {@link ThreadMXBean} are
+ *     global to the JVM and are not reset.</li>
+ *     <li>Adds an event to the root span each time a memory pool crosses
+ *     {@code otel.instrumentation.maven.jvm.memory.threshold} percent of its max size, notified by the JVM through the
+ *     usage thresholds of the {@link MemoryPoolMXBean}s.</li>
+ * </ul>
+ * The measures not supported by the JVM are skipped.
+ */
+public class JvmMetricsSampler {
+    public static final String MEMORY_USAGE_METRIC = "process.runtime.jvm.memory.usage";
+    public static final String GC_COUNT_METRIC = "process.runtime.jvm.gc.count";
+    public static final String GC_TIME_METRIC = "process.runtime.jvm.gc.time";
+    public static final String THREADS_METRIC = "process.runtime.jvm.threads.count";
+    public static final String CLASSES_METRIC = "process.runtime.jvm.classes.loaded";
+    public static final String CPU_UTILIZATION_METRIC = "process.runtime.jvm.cpu.utilization";
+
+    public static final String MEMORY_THRESHOLD_EXCEEDED_EVENT = "memory pool usage threshold exceeded";
+
+    static final long DEFAULT_INTERVAL_MILLIS = 10_000;
+    static final long DEFAULT_MEMORY_THRESHOLD_PERCENT = 90;
+    /**
+     * Sampling interval of the peaks when the samples are not exported
+     */
+    static final long PEAKS_SAMPLING_INTERVAL_MILLIS = 1_000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * {@code 0} to not sample periodically, only the build attributes and the threshold events are then recorded
+     */
+    private final long intervalMillis;
+    private final long memoryThresholdPercent;
+
+    /*
+     * The MXBeans and the series are initialized on the sampling thread, loading the management classes of the JVM
+     * takes tens of milliseconds that are not spent on the start of Maven
+     */
+    private MemoryMXBean memoryMXBean;
+    private List<MemoryPoolMXBean> memoryPoolMXBeans;
+    private List<GarbageCollectorMXBean> garbageCollectorMXBeans;
+    private ThreadMXBean threadMXBean;
+    private ClassLoadingMXBean classLoadingMXBean;
+    /**
+     * {@code null} if the JVM doesn't provide the CPU time of the process
+     */
+    @Nullable
+    private com.sun.management.OperatingSystemMXBean operatingSystemMXBean;
+    private final int availableProcessors = Runtime.getRuntime().availableProcessors();
+
+    private Series[] memoryUsages;
+    private Series[] gcCounts;
+    private Series[] gcTimes;
+    private final Series threads = new Series(Attributes.empty(), true);
+    private final Series classes = new Series(Attributes.empty(), true);
+    private final Series cpuUtilization = new Series(Attributes.empty(), false);
+
+    /**
+     * Highest used memory of each memory pool, also updated by the threshold notifications of the JVM
+     */
+    private AtomicLongArray peakMemoryUsages;
+    private long[] memoryMaxes;
+    private Map<String, Integer> memoryPoolIndexes;
+    private int peakThreadCount;
+
+    private final List<ThresholdCrossing> thresholdCrossings = Collections.synchronizedList(new ArrayList<>());
+    private final Map<MemoryPoolMXBean, Long> initialUsageThresholds = new HashMap<>();
+    @Nullable
+    private NotificationListener thresholdListener;
+
+    private long startEpochNanos;
+    private long[] startGcCounts;
+    private long[] startGcTimes;
+    private long startCpuTimeNanos = -1;
+    private long previousCpuTimeNanos = -1;
+    private long previousNanoTime;
+
+    @Nullable
+    private ScheduledExecutorService executor;
+    private boolean initialized;
+    private boolean stopped;
+    @Nullable
+    private volatile SpanContext buildSpanContext;
+
+    public JvmMetricsSampler(long intervalMillis, long memoryThresholdPercent) {
+        this.intervalMillis = intervalMillis;
+        this.memoryThresholdPercent = memoryThresholdPercent;
+    }
+
+    /**
+     * Start the observation of the JVM in the background, see {@link #initialize()}
+     */
+    public synchronized void start() {
+        startEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "otel-jvm-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::initialize);
+        long samplingIntervalMillis = intervalMillis > 0 ? intervalMillis : PEAKS_SAMPLING_INTERVAL_MILLIS;
+        executor.scheduleAtFixedRate(this::sample, samplingIntervalMillis, samplingIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Set the usage thresholds of the memory pools and take the first sample
+     */
+    private synchronized void initialize() {
+        if (stopped) {
+            return;
+        }
+        try {
+            memoryMXBean = ManagementFactory.getMemoryMXBean();
+            memoryPoolMXBeans = ManagementFactory.getMemoryPoolMXBeans();
+            garbageCollectorMXBeans = ManagementFactory.getGarbageCollectorMXBeans();
+            threadMXBean = ManagementFactory.getThreadMXBean();
+            classLoadingMXBean = ManagementFactory.getClassLoadingMXBean();
+            operatingSystemMXBean = getCpuTimeMXBean();
+
+            this.memoryUsages = new Series[memoryPoolMXBeans.size()];
+            this.peakMemoryUsages = new AtomicLongArray(memoryPoolMXBeans.size());
+            this.memoryMaxes = new long[memoryPoolMXBeans.size()];
+            this.memoryPoolIndexes = new HashMap<>();
+            for (int i = 0; i < memoryUsages.length; i++) {
+                MemoryPoolMXBean memoryPoolMXBean = memoryPoolMXBeans.get(i);
+                memoryUsages[i] = new Series(Attributes.of(
+                        MavenOtelSemanticAttributes.JVM_MEMORY_TYPE, memoryPoolMXBean.getType() == MemoryType.HEAP ? "heap" : "non_heap",
+                        MavenOtelSemanticAttributes.JVM_MEMORY_POOL, memoryPoolMXBean.getName()), true);
+                peakMemoryUsages.set(i, -1);
+                memoryMaxes[i] = -1;
+                memoryPoolIndexes.put(memoryPoolMXBean.getName(), i);
+            }
+            this.gcCounts = new Series[garbageCollectorMXBeans.size()];
+            this.gcTimes = new Series[garbageCollectorMXBeans.size()];
+            for (int i = 0; i < gcCounts.length; i++) {
+                Attributes attributes = Attributes.of(MavenOtelSemanticAttributes.JVM_GC_NAME, garbageCollectorMXBeans.get(i).getName());
+                gcCounts[i] = new Series(attributes, true);
+                gcTimes[i] = new Series(attributes, true);
+            }
+            this.startGcCounts = new long[garbageCollectorMXBeans.size()];
+            this.startGcTimes = new long[garbageCollectorMXBeans.size()];
+            for (int i = 0; i < garbageCollectorMXBeans.size(); i++) {
+                startGcCounts[i] = garbageCollectorMXBeans.get(i).getCollectionCount();
+                startGcTimes[i] = garbageCollectorMXBeans.get(i).getCollectionTime();
+            }
+            startCpuTimeNanos = getProcessCpuTime();
+            previousCpuTimeNanos = startCpuTimeNanos;
+            previousNanoTime = System.nanoTime();
+            setUsageThresholds();
+            initialized = true;
+        } catch (RuntimeException e) {
+            logger.debug("OpenTelemetry: Failure to observe the JVM", e);
+            return;
+        }
+        sample();
+    }
+
+    private void setUsageThresholds() {
+        if (memoryThresholdPercent <= 0 || !(memoryMXBean instanceof NotificationEmitter)) {
+            return;
+        }
+        for (MemoryPoolMXBean memoryPoolMXBean : memoryPoolMXBeans) {
+            MemoryUsage usage = memoryPoolMXBean.getUsage();
+            if (memoryPoolMXBean.isUsageThresholdSupported() && usage != null && usage.getMax() > 0) {
+                initialUsageThresholds.put(memoryPoolMXBean, memoryPoolMXBean.getUsageThreshold());
+                memoryPoolMXBean.setUsageThreshold(usage.getMax() / 100 * memoryThresholdPercent);
+            }
+        }
+        NotificationListener thresholdListener = (Notification notification, Object handback) -> {
+            if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+                Integer memoryPoolIndex = memoryPoolIndexes.get(info.getPoolName());
+                if (memoryPoolIndex != null) {
+                    // the usage may have dropped by the next sample
+                    peakMemoryUsages.accumulateAndGet(memoryPoolIndex, info.getUsage().getUsed(), Math::max);
+                }
+                thresholdCrossings.add(new ThresholdCrossing(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()),
+                        info.getPoolName(), info.getUsage().getUsed(), info.getUsage().getMax()));
+            }
+        };
+        ((NotificationEmitter) memoryMXBean).addNotificationListener(thresholdListener, null, null);
+        this.thresholdListener = thresholdListener;
+    }
+
+    /**
+     * Stop the periodic sampling, take a last sample and restore the usage thresholds of the memory pools, can be
+     * invoked several times. Waits for the end of the initialization if it is in progress, or initializes the sampler
+     * if the initialization is still pending (short build) so that the build is observed at least at its end.
+     */
+    public void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor != null) {
+            // cancels the periodic sampling, a pending initialization is skipped
+            executor.shutdown();
+        }
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            if (executor != null && !initialized) {
+                initialize();
+            }
+            stopped = true;
+            sample();
+            restoreUsageThresholds();
+        }
+    }
+
+    private void restoreUsageThresholds() {
+        NotificationListener thresholdListener = this.thresholdListener;
+        if (thresholdListener != null) {
+            try {
+                ((NotificationEmitter) memoryMXBean).removeNotificationListener(thresholdListener);
+            } catch (ListenerNotFoundException e) {
+                // already removed
+            }
+            this.thresholdListener = null;
+        }
+        initialUsageThresholds.forEach(MemoryPoolMXBean::setUsageThreshold);
+        initialUsageThresholds.clear();
+    }
+
+    /**
+     * Update the peaks and, if the metrics are exported, record the samples
+     */
+    synchronized void sample() {
+        if (!initialized) {
+            return;
+        }
+        try {
+            long epochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+            for (int i = 0; i < memoryUsages.length; i++) {
+                MemoryUsage usage = memoryPoolMXBeans.get(i).getUsage();
+                if (usage != null) {
+                    peakMemoryUsages.accumulateAndGet(i, usage.getUsed(), Math::max);
+                    memoryMaxes[i] = usage.getMax();
+                    if (intervalMillis > 0) {
+                        memoryUsages[i].add(epochNanos, usage.getUsed());
+                    }
+                }
+            }
+            int threadCount = threadMXBean.getThreadCount();
+            peakThreadCount = Math.max(peakThreadCount, threadCount);
+            if (intervalMillis <= 0) {
+                return;
+            }
+            for (int i = 0; i < gcCounts.length; i++) {
+                GarbageCollectorMXBean garbageCollectorMXBean = garbageCollectorMXBeans.get(i);
+                long collectionCount = garbageCollectorMXBean.getCollectionCount();
+                long collectionTime = garbageCollectorMXBean.getCollectionTime();
+                if (collectionCount >= 0 && startGcCounts[i] >= 0) {
+                    gcCounts[i].add(epochNanos, collectionCount - startGcCounts[i]);
+                }
+                if (collectionTime >= 0 && startGcTimes[i] >= 0) {
+                    gcTimes[i].add(epochNanos, collectionTime - startGcTimes[i]);
+                }
+            }
+            threads.add(epochNanos, threadCount);
+            classes.add(epochNanos, classLoadingMXBean.getLoadedClassCount());
+            long cpuTimeNanos = getProcessCpuTime();
+            long nanoTime = System.nanoTime();
+            if (cpuTimeNanos >= 0 && previousCpuTimeNanos >= 0 && nanoTime > previousNanoTime) {
+                cpuUtilization.add(epochNanos, (cpuTimeNanos - previousCpuTimeNanos) / ((double) (nanoTime - previousNanoTime) * availableProcessors));
+            }
+            previousCpuTimeNanos = cpuTimeNanos;
+            previousNanoTime = nanoTime;
+        } catch (RuntimeException e) {
+            // an exception would cancel the periodic sampling
+            logger.debug("OpenTelemetry: Failure to sample the JVM metrics", e);
+        }
+    }
+
+    /**
+     * Record on the given span (typically the root span of the build) the peak usage of each memory pool, the GC
+     * count and time, the peak thread count and the CPU time since {@link #start()}, and an event per memory pool
+     * usage threshold crossing. The span becomes the exemplar of the exported samples.
+     */
+    public synchronized void addBuildAttributes(@Nonnull Span span) {
+        this.buildSpanContext = span.getSpanContext();
+        if (!initialized) {
+            // build shorter than the initialization
+            return;
+        }
+        if (!stopped) {
+            sample();
+        }
+        List<String> memoryPools = new ArrayList<>(memoryPoolMXBeans.size());
+        for (int i = 0; i < memoryPoolMXBeans.size(); i++) {
+            long peakUsage = peakMemoryUsages.get(i);
+            if (peakUsage >= 0) {
+                memoryPools.add(memoryPoolMXBeans.get(i).getName() + ": " + peakUsage + (memoryMaxes[i] > 0 ? "/" + memoryMaxes[i] : "") + " bytes");
+            }
+        }
+        span.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_JVM_MEMORY_POOLS, memoryPools);
+        long gcCount = 0;
+        long gcTime = 0;
+        for (int i = 0; i < garbageCollectorMXBeans.size(); i++) {
+            gcCount += Math.max(0, garbageCollectorMXBeans.get(i).getCollectionCount() - startGcCounts[i]);
+            gcTime += Math.max(0, garbageCollectorMXBeans.get(i).getCollectionTime() - startGcTimes[i]);
+        }
+        span.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_JVM_GC_COUNT, gcCount);
+        span.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_JVM_GC_TIME, gcTime);
+        span.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_JVM_THREADS_PEAK, peakThreadCount);
+        long cpuTimeNanos = getProcessCpuTime();
+        if (cpuTimeNanos >= 0 && startCpuTimeNanos >= 0) {
+            span.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_JVM_CPU_TIME, TimeUnit.NANOSECONDS.toMillis(cpuTimeNanos - startCpuTimeNanos));
+        }
+        synchronized (thresholdCrossings) {
+            for (ThresholdCrossing thresholdCrossing : thresholdCrossings) {
+                span.addEvent(MEMORY_THRESHOLD_EXCEEDED_EVENT, Attributes.of(
+                                MavenOtelSemanticAttributes.JVM_MEMORY_POOL, thresholdCrossing.poolName,
+                                MavenOtelSemanticAttributes.JVM_MEMORY_USED, thresholdCrossing.used,
+                                MavenOtelSemanticAttributes.JVM_MEMORY_LIMIT, thresholdCrossing.max),
+                        thresholdCrossing.epochNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Visible for testing
+     */
+    synchronized boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * Visible for testing, the crossings are notified asynchronously by the JVM
+     */
+    int getThresholdCrossingCount() {
+        return thresholdCrossings.size();
+    }
+
+    /**
+     * Add the samples taken since {@link #start()} to the given metrics
+     */
+    public synchronized void writeTo(@Nonnull InstrumentationLibraryMetrics.Builder instrumentationLibraryMetrics) {
+        if (!initialized) {
+            return;
+        }
+        addGauge(instrumentationLibraryMetrics, MEMORY_USAGE_METRIC, "Used memory of each memory pool", "By", memoryUsages);
+        addSum(instrumentationLibraryMetrics, GC_COUNT_METRIC, "Garbage collections since the start of the build", "1", gcCounts);
+        addSum(instrumentationLibraryMetrics, GC_TIME_METRIC, "Time spent in garbage collections since the start of the build", "ms", gcTimes);
+        addGauge(instrumentationLibraryMetrics, THREADS_METRIC, "Live threads", "1", threads);
+        addGauge(instrumentationLibraryMetrics, CLASSES_METRIC, "Loaded classes", "1", classes);
+        addGauge(instrumentationLibraryMetrics, CPU_UTILIZATION_METRIC, "CPU utilization of the process, 1 being all the available processors", "1", cpuUtilization);
+    }
+
+    private void addGauge(@Nonnull InstrumentationLibraryMetrics.Builder instrumentationLibraryMetrics, @Nonnull String name,
+                          @Nonnull String description, @Nonnull String unit, @Nonnull Series... series) {
+        Gauge.Builder gauge = Gauge.newBuilder();
+        for (Series s : series) {
+            s.writeTo(gauge::addDataPoints, 0, buildSpanContext);
+        }
+        if (gauge.getDataPointsCount() > 0) {
+            instrumentationLibraryMetrics.addMetrics(Metric.newBuilder().setName(name).setDescription(description).setUnit(unit).setGauge(gauge));
+        }
+    }
+
+    private void addSum(@Nonnull InstrumentationLibraryMetrics.Builder instrumentationLibraryMetrics, @Nonnull String name,
+                        @Nonnull String description, @Nonnull String unit, @Nonnull Series... series) {
+        Sum.Builder sum = Sum.newBuilder()
+                .setAggregationTemporality(AggregationTemporality.AGGREGATION_TEMPORALITY_CUMULATIVE)
+                .setIsMonotonic(true);
+        for (Series s : series) {
+            s.writeTo(sum::addDataPoints, startEpochNanos, buildSpanContext);
+        }
+        if (sum.getDataPointsCount() > 0) {
+            instrumentationLibraryMetrics.addMetrics(Metric.newBuilder().setName(name).setDescription(description).setUnit(unit).setSum(sum));
+        }
+    }
+
+    private long getProcessCpuTime() {
+        com.sun.management.OperatingSystemMXBean operatingSystemMXBean = this.operatingSystemMXBean;
+        return operatingSystemMXBean == null ? -1 : operatingSystemMXBean.getProcessCpuTime();
+    }
+
+    @Nullable
+    private com.sun.management.OperatingSystemMXBean getCpuTimeMXBean() {
+        try {
+            OperatingSystemMXBean operatingSystemMXBean = ManagementFactory.getOperatingSystemMXBean();
+            if (operatingSystemMXBean instanceof com.sun.management.OperatingSystemMXBean) {
+                return (com.sun.management.OperatingSystemMXBean) operatingSystemMXBean;
+            }
+        } catch (LinkageError e) {
+            logger.debug("OpenTelemetry: CPU time of the process not available", e);
+        }
+        return null;
+    }
+
+    /**
+     * Samples of one time series, in arrays rather than in a list of boxed samples
+     */
+    static final class Series {
+        private final Attributes attributes;
+        private final boolean integer;
+        private long[] epochNanos = new long[16];
+        private double[] values = new double[16];
+        private int size;
+
+        Series(@Nonnull Attributes attributes, boolean integer) {
+            this.attributes = attributes;
+            this.integer = integer;
+        }
+
+        void add(long epochNanos, double value) {
+            if (size == values.length) {
+                this.epochNanos = Arrays.copyOf(this.epochNanos, size * 2);
+                this.values = Arrays.copyOf(this.values, size * 2);
+            }
+            this.epochNanos[size] = epochNanos;
+            this.values[size] = value;
+            size++;
+        }
+
+        /**
+         * @param startEpochNanos start of the cumulative sums, {@code 0} for the gauges
+         * @param spanContext     exemplar of the highest sample
+         */
+        void writeTo(@Nonnull Consumer<NumberDataPoint> dataPoints, long startEpochNanos, @Nullable SpanContext spanContext) {
+            int highest = -1;
+            for (int i = 0; i < size; i++) {
+                if (highest < 0 || values[i] > values[highest]) {
+                    highest = i;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                NumberDataPoint.Builder dataPoint = NumberDataPoint.newBuilder()
+                        .setStartTimeUnixNano(startEpochNanos)
+                        .setTimeUnixNano(epochNanos[i]);
+                if (integer) {
+                    dataPoint.setAsInt((long) values[i]);
+                } else {
+                    dataPoint.setAsDouble(values[i]);
+                }
+                attributes.forEach((key, value) -> dataPoint.addAttributes(MetricsSpanProcessor.toProtoAttribute(key, value)));
+                if (i == highest && spanContext != null && spanContext.isSampled()) {
+                    Exemplar.Builder exemplar = Exemplar.newBuilder()
+                            .setTimeUnixNano(epochNanos[i])
+                            .setTraceId(ByteString.copyFrom(spanContext.getTraceIdBytes()))
+                            .setSpanId(ByteString.copyFrom(spanContext.getSpanIdBytes()));
+                    if (integer) {
+                        exemplar.setAsInt((long) values[i]);
+                    } else {
+                        exemplar.setAsDouble(values[i]);
+                    }
+                    dataPoint.addExemplars(exemplar);
+                }
+                dataPoints.accept(dataPoint.build());
+            }
+        }
+    }
+
+    private static final class ThresholdCrossing {
+        final long epochNanos;
+        final String poolName;
+        final long used;
+        final long max;
+
+        ThresholdCrossing(long epochNanos, @Nonnull String poolName, long used, long max) {
+            this.epochNanos = epochNanos;
+            this.poolName = poolName;
+            this.used = used;
+            this.max = max;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Sheds the load in front of the {@link BatchSpanProcessor} rather than letting its queue silently drop spans when
+ * the exporter can't keep up.
+ *
+ * Tracks the number of spans waiting in the queue of the {@link BatchSpanProcessor} (spans ended minus spans handed to
+ * the exporter). Above 90% of the queue capacity (see {@link #LOW_PRIORITY_SPANS_QUEUE_RATIO}), mojo and other child spans are
+ * dropped to keep room for the project spans and the root span; the root span of the build is never dropped.
+ * Dropped spans are counted per trace, that is per build in a long-lived JVM running sequential and concurrent
+ * sessions, and within the trace per project and per plugin, see {@link #addDroppedSpansAttributes(Span)}.
+ *
+ * The queue of the {@link BatchSpanProcessor} is created with {@link #ROOT_SPANS_HEADROOM} extra slots for the root
+ * spans bypassing the limit, so that the {@link BatchSpanProcessor} never drops spans itself: every span handed to it
+ * is eventually handed to the exporter, whatever the outcome of the export (success, failure or timeout), and the
+ * count of queued spans doesn't drift.
+ */
+public class LoadSheddingSpanProcessor implements SpanProcessor {
+
+    static final double LOW_PRIORITY_SPANS_QUEUE_RATIO = 0.9;
+    /**
+     * Max number of projects and of plugins for which dropped spans are detailed
+     */
+    static final int MAX_DROPPED_SPANS_SOURCES = 50;
+    static final String OTHER_SOURCES = "_other_";
+    /**
+     * Slots of the queue of the {@link BatchSpanProcessor} reserved to the root spans, several sessions of a long-lived
+     * JVM may end their root span while the queue is full
+     */
+    static final int ROOT_SPANS_HEADROOM = 16;
+    /**
+     * Max number of traces for which dropped spans are counted, the counters of a trace are evicted when reported on
+     * its root span
+     */
+    static final int MAX_DROPPED_SPANS_TRACES = 64;
+
+    private final SpanProcessor delegate;
+    private final int maxQueueSize;
+    private final int lowPrioritySpansMaxQueueSize;
+
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicLong droppedSpans = new AtomicLong();
+    private final Map<String, DroppedSpans> droppedSpansPerTrace = new ConcurrentHashMap<>();
+
+    private LoadSheddingSpanProcessor(@Nonnull SpanExporter spanExporter, int maxQueueSize, @Nonnull BiFunction<SpanExporter, Integer, SpanProcessor> batchSpanProcessorFactory) {
+        this.maxQueueSize = maxQueueSize;
+        this.lowPrioritySpansMaxQueueSize = (int) (maxQueueSize * LOW_PRIORITY_SPANS_QUEUE_RATIO);
+        this.delegate = batchSpanProcessorFactory.apply(new QueueTrackingSpanExporter(spanExporter), maxQueueSize + ROOT_SPANS_HEADROOM);
+    }
+
+    /**
+     * @param spanExporter              the exporter of the spans
+     * @param maxQueueSize              the max number of queued spans, root spans excepted
+     * @param batchSpanProcessorFactory creates the {@link BatchSpanProcessor} wrapping the given {@link SpanExporter}
+     *                                  with the given max queue size, {@link #ROOT_SPANS_HEADROOM} above
+     *                                  {@code maxQueueSize}
+     */
+    @Nonnull
+    public static LoadSheddingSpanProcessor create(@Nonnull SpanExporter spanExporter, int maxQueueSize, @Nonnull BiFunction<SpanExporter, Integer, SpanProcessor> batchSpanProcessorFactory) {
+        return new LoadSheddingSpanProcessor(spanExporter, maxQueueSize, batchSpanProcessorFactory);
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+        delegate.onStart(parentContext, span);
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return delegate.isStartRequired();
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        if (!span.getSpanContext().isSampled()) {
+            return;
+        }
+        final int queueSize = this.queueSize.incrementAndGet();
+        if (queueSize > maxQueueSize + ROOT_SPANS_HEADROOM) {
+            // even the headroom of the root spans is full, the span would be dropped by the BatchSpanProcessor
+            this.queueSize.decrementAndGet();
+            recordDroppedSpan(span.getSpanContext().getTraceId(), span.toSpanData().getAttributes());
+            return;
+        }
+        if (queueSize > lowPrioritySpansMaxQueueSize && !isRootSpan(span)) {
+            // slow path, the exporter doesn't keep up
+            SpanData spanData = span.toSpanData();
+            boolean lowPrioritySpan = spanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_PLUGIN_ARTIFACT_ID) != null
+                    || spanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID) == null;
+            if (lowPrioritySpan || queueSize >= maxQueueSize) {
+                this.queueSize.decrementAndGet();
+                recordDroppedSpan(spanData.getTraceId(), spanData.getAttributes());
+                return;
+            }
+        }
+        delegate.onEnd(span);
+    }
+
+    /**
+     * Root span of the build, possibly child of a remote span propagated by the CI platform
+     */
+    static boolean isRootSpan(@Nonnull ReadableSpan span) {
+        SpanContext parentSpanContext = span.getParentSpanContext();
+        return !parentSpanContext.isValid() || parentSpanContext.isRemote();
+    }
+
+    private void recordDroppedSpan(@Nonnull String traceId, @Nonnull Attributes attributes) {
+        droppedSpans.incrementAndGet();
+        DroppedSpans droppedSpans = droppedSpansPerTrace.get(traceId);
+        if (droppedSpans == null) {
+            if (droppedSpansPerTrace.size() >= MAX_DROPPED_SPANS_TRACES) {
+                // traces whose root span never ended, only counted in the total
+                return;
+            }
+            droppedSpans = droppedSpansPerTrace.computeIfAbsent(traceId, k -> new DroppedSpans());
+        }
+        droppedSpans.record(attributes);
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return delegate.shutdown();
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+        return delegate.forceFlush();
+    }
+
+    /**
+     * @return the number of spans dropped since the creation of the span processor, all traces included
+     */
+    public long getDroppedSpans() {
+        return droppedSpans.get();
+    }
+
+    /**
+     * @return the number of spans handed to the {@link BatchSpanProcessor} and not yet handed to the exporter
+     */
+    int getQueueSize() {
+        return queueSize.get();
+    }
+
+    /**
+     * Record on the given span (typically the root span of the build) the number of spans of its trace dropped so far,
+     * per project and per plugin formatted as {@code "${artifactId}=${count}"}, and stop counting them.
+     *
+     * @return the number of dropped spans of the trace of the given span
+     */
+    public long addDroppedSpansAttributes(@Nonnull Span span) {
+        DroppedSpans droppedSpans = droppedSpansPerTrace.remove(span.getSpanContext().getTraceId());
+        if (droppedSpans == null) {
+            return 0;
+        }
+        long count = droppedSpans.count.sum();
+        span.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_DROPPED_SPANS, count);
+        span.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_DROPPED_SPANS_PROJECTS, toList(droppedSpans.perProject));
+        span.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_DROPPED_SPANS_PLUGINS, toList(droppedSpans.perPlugin));
+        return count;
+    }
+
+    @Nonnull
+    private static List<String> toList(@Nonnull Map<String, LongAdder> counters) {
+        List<String> result = new ArrayList<>(counters.size());
+        counters.forEach((source, counter) -> result.add(source + "=" + counter.sum()));
+        return result;
+    }
+
+    /**
+     * Dropped spans of a trace
+     */
+    private static class DroppedSpans {
+        final LongAdder count = new LongAdder();
+        final Map<String, LongAdder> perProject = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> perPlugin = new ConcurrentHashMap<>();
+
+        void record(@Nonnull Attributes attributes) {
+            count.increment();
+            increment(perProject, attributes.get(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID));
+            increment(perPlugin, attributes.get(MavenOtelSemanticAttributes.MAVEN_PLUGIN_ARTIFACT_ID));
+        }
+
+        private static void increment(@Nonnull Map<String, LongAdder> counters, @Nullable String source) {
+            if (source == null) {
+                return;
+            }
+            LongAdder counter = counters.get(source);
+            if (counter == null) {
+                counter = counters.computeIfAbsent(counters.size() < MAX_DROPPED_SPANS_SOURCES ? source : OTHER_SOURCES, k -> new LongAdder());
+            }
+            counter.increment();
+        }
+    }
+
+    /**
+     * Decrements the number of queued spans when the {@link BatchSpanProcessor} hands them over to the exporter, before
+     * the export that may fail or time out: the {@link BatchSpanProcessor} doesn't retry
+     */
+    private class QueueTrackingSpanExporter implements SpanExporter {
+        private final SpanExporter delegate;
+
+        QueueTrackingSpanExporter(@Nonnull SpanExporter delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletableResultCode export(Collection<SpanData> spans) {
+            queueSize.addAndGet(-spans.size());
+            return delegate.export(spans);
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return delegate.flush();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return delegate.shutdown();
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import com.google.protobuf.ByteString;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.ArrayValue;
+import io.opentelemetry.proto.common.v1.InstrumentationLibrary;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.metrics.v1.AggregationTemporality;
+import io.opentelemetry.proto.metrics.v1.Exemplar;
+import io.opentelemetry.proto.metrics.v1.Histogram;
+import io.opentelemetry.proto.metrics.v1.HistogramDataPoint;
+import io.opentelemetry.proto.metrics.v1.InstrumentationLibraryMetrics;
+import io.opentelemetry.proto.metrics.v1.Metric;
+import io.opentelemetry.proto.metrics.v1.NumberDataPoint;
+import io.opentelemetry.proto.metrics.v1.ResourceMetrics;
+import io.opentelemetry.proto.metrics.v1.Sum;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingDecision;
+import io.opentelemetry.sdk.trace.samplers.SamplingResult;
+import io.opentelemetry.semconv.trace.attributes.SemanticAttributes;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates in memory, during the build, histograms of the duration of the mojo executions, of the projects and of
+ * the build, computed from the spans created by the {@link OtelExecutionListener}, and of the test cases (see
+ * {@link #recordTestDuration(Attributes, double, long, SpanContext)}). The histograms are exported once,
+ * at the end of the build, as an OTLP {@link ExportMetricsServiceRequest} (see {@link #toExportMetricsServiceRequest(Resource)}).
+ *
+ * Each bucket of the histograms holds an exemplar linking to the last sampled span that fell in the bucket.
+ *
+ * Combined with the {@link #recordOnlySampler()}, the spans are recorded to compute the metrics but are not exported.
+ */
+public class MetricsSpanProcessor implements SpanProcessor {
+
+    public static final String MOJO_DURATION_METRIC = "maven.mojo.duration";
+    public static final String PROJECT_DURATION_METRIC = "maven.project.duration";
+    public static final String BUILD_DURATION_METRIC = "maven.build.duration";
+    public static final String TEST_DURATION_METRIC = "maven.test.duration";
+    public static final String RESOLUTION_METRIC = "maven.resolution.requests";
+
+    /**
+     * Boundaries, in milliseconds, of the buckets of the duration histograms
+     */
+    static final double[] DURATION_BOUNDARIES_MILLIS = {10, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000, 60_000, 120_000, 300_000, 600_000, 1_800_000};
+
+    private final long startEpochNanos;
+
+    private final Map<Attributes, DurationHistogram> mojoDurations = new ConcurrentHashMap<>();
+    private final Map<Attributes, DurationHistogram> projectDurations = new ConcurrentHashMap<>();
+    private final Map<Attributes, DurationHistogram> buildDurations = new ConcurrentHashMap<>();
+    private final Map<Attributes, DurationHistogram> testDurations = new ConcurrentHashMap<>();
+    private final Map<Attributes, LongAdder> resolutions = new ConcurrentHashMap<>();
+
+    public MetricsSpanProcessor() {
+        this.startEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+
+    /**
+     * {@link Sampler} recording all the spans without sampling them so that the spans feed the
+     * {@link MetricsSpanProcessor} without being exported
+     */
+    @Nonnull
+    public static Sampler recordOnlySampler() {
+        return RecordOnlySampler.INSTANCE;
+    }
+
+    /**
+     * {@link Sampler} recording the spans not sampled by the given sampler so that all the spans feed the
+     * {@link MetricsSpanProcessor}, only the sampled spans being exported
+     */
+    @Nonnull
+    public static Sampler recordingSampler(@Nonnull Sampler delegate) {
+        return new RecordingSampler(delegate);
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        SpanData spanData = span.toSpanData();
+        Attributes attributes = spanData.getAttributes();
+        String projectArtifactId = attributes.get(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID);
+        if (projectArtifactId == null || attributes.get(SemanticAttributes.CODE_NAMESPACE) != null) {
+            // not a span of the build, a project or a mojo. Tests are recorded through recordTestDuration()
+            return;
+        }
+        double durationMillis = (spanData.getEndEpochNanos() - spanData.getStartEpochNanos()) / 1_000_000d;
+
+        final Map<Attributes, DurationHistogram> histograms;
+        final AttributesBuilder seriesAttributes = Attributes.builder();
+        if (attributes.get(MavenOtelSemanticAttributes.MAVEN_PLUGIN_ARTIFACT_ID) != null) {
+            histograms = mojoDurations;
+            copy(attributes, MavenOtelSemanticAttributes.MAVEN_PLUGIN_GROUP_ID, seriesAttributes);
+            copy(attributes, MavenOtelSemanticAttributes.MAVEN_PLUGIN_ARTIFACT_ID, seriesAttributes);
+            copy(attributes, MavenOtelSemanticAttributes.MAVEN_EXECUTION_GOAL, seriesAttributes);
+            copy(attributes, MavenOtelSemanticAttributes.MAVEN_EXECUTION_LIFECYCLE_PHASE, seriesAttributes);
+        } else if (LoadSheddingSpanProcessor.isRootSpan(span)) {
+            histograms = buildDurations;
+        } else {
+            histograms = projectDurations;
+            copy(attributes, MavenOtelSemanticAttributes.MAVEN_PROJECT_GROUP_ID, seriesAttributes);
+            copy(attributes, MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, seriesAttributes);
+        }
+        histograms.computeIfAbsent(seriesAttributes.build(), k -> new DurationHistogram())
+                .record(durationMillis, spanData.getEndEpochNanos(), span.getSpanContext());
+    }
+
+    /**
+     * Record the duration of a test case, typically read from the reports of the Surefire and Failsafe plugins
+     *
+     * @param seriesAttributes attributes identifying the series of the {@value #TEST_DURATION_METRIC} histogram
+     * @param spanContext      span of the test case or, if the test case has no span, of its test class
+     */
+    public void recordTestDuration(@Nonnull Attributes seriesAttributes, double durationMillis, long epochNanos, @Nonnull SpanContext spanContext) {
+        testDurations.computeIfAbsent(seriesAttributes, k -> new DurationHistogram())
+                .record(durationMillis, epochNanos, spanContext);
+    }
+
+    /**
+     * Record resolutions of artifacts or metadata, typically counted by the {@link OtelRepositoryListener}
+     *
+     * @param seriesAttributes attributes identifying the series of the {@value #RESOLUTION_METRIC} counter
+     */
+    public void recordResolutions(@Nonnull Attributes seriesAttributes, long count) {
+        resolutions.computeIfAbsent(seriesAttributes, k -> new LongAdder()).add(count);
+    }
+
+    private static void copy(@Nonnull Attributes source, @Nonnull AttributeKey<String> key, @Nonnull AttributesBuilder target) {
+        String value = source.get(key);
+        if (value != null) {
+            target.put(key, value);
+        }
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    /**
+     * Snapshot of the cumulative histograms since the start of the build
+     */
+    @Nonnull
+    public ExportMetricsServiceRequest toExportMetricsServiceRequest(@Nonnull Resource resource) {
+        return toExportMetricsServiceRequest(resource, null);
+    }
+
+    /**
+     * Snapshot of the cumulative histograms since the start of the build and samples of the given
+     * {@link JvmMetricsSampler}
+     */
+    @Nonnull
+    public ExportMetricsServiceRequest toExportMetricsServiceRequest(@Nonnull Resource resource, @Nullable JvmMetricsSampler jvmMetricsSampler) {
+        long epochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        io.opentelemetry.proto.resource.v1.Resource.Builder protoResource = io.opentelemetry.proto.resource.v1.Resource.newBuilder();
+        resource.getAttributes().forEach((key, value) -> protoResource.addAttributes(toProtoAttribute(key, value)));
+
+        InstrumentationLibraryMetrics.Builder instrumentationLibraryMetrics = InstrumentationLibraryMetrics.newBuilder()
+                .setInstrumentationLibrary(InstrumentationLibrary.newBuilder().setName("io.opentelemetry.contrib.maven"));
+        addHistogram(instrumentationLibraryMetrics, MOJO_DURATION_METRIC, "Duration of the mojo executions", mojoDurations, epochNanos);
+        addHistogram(instrumentationLibraryMetrics, PROJECT_DURATION_METRIC, "Duration of the builds of the projects", projectDurations, epochNanos);
+        addHistogram(instrumentationLibraryMetrics, BUILD_DURATION_METRIC, "Duration of the builds", buildDurations, epochNanos);
+        addHistogram(instrumentationLibraryMetrics, TEST_DURATION_METRIC, "Duration of the test cases", testDurations, epochNanos);
+        addCounter(instrumentationLibraryMetrics, RESOLUTION_METRIC, "Resolutions of artifacts and metadata, by repository and type", resolutions, epochNanos);
+        if (jvmMetricsSampler != null) {
+            jvmMetricsSampler.writeTo(instrumentationLibraryMetrics);
+        }
+
+        return ExportMetricsServiceRequest.newBuilder()
+                .addResourceMetrics(ResourceMetrics.newBuilder()
+                        .setResource(protoResource)
+                        .addInstrumentationLibraryMetrics(instrumentationLibraryMetrics))
+                .build();
+    }
+
+    private void addHistogram(@Nonnull InstrumentationLibraryMetrics.Builder instrumentationLibraryMetrics, @Nonnull String name, @Nonnull String description,
+                              @Nonnull Map<Attributes, DurationHistogram> histograms, long epochNanos) {
+        if (histograms.isEmpty()) {
+            return;
+        }
+        Histogram.Builder histogram = Histogram.newBuilder().setAggregationTemporality(AggregationTemporality.AGGREGATION_TEMPORALITY_CUMULATIVE);
+        histograms.forEach((attributes, durationHistogram) -> {
+            HistogramDataPoint.Builder dataPoint = HistogramDataPoint.newBuilder()
+                    .setStartTimeUnixNano(startEpochNanos)
+                    .setTimeUnixNano(epochNanos);
+            attributes.forEach((key, value) -> dataPoint.addAttributes(toProtoAttribute(key, value)));
+            for (double boundary : DURATION_BOUNDARIES_MILLIS) {
+                dataPoint.addExplicitBounds(boundary);
+            }
+            durationHistogram.writeTo(dataPoint);
+            histogram.addDataPoints(dataPoint);
+        });
+        instrumentationLibraryMetrics.addMetrics(Metric.newBuilder()
+                .setName(name)
+                .setDescription(description)
+                .setUnit("ms")
+                .setHistogram(histogram));
+    }
+
+    private void addCounter(@Nonnull InstrumentationLibraryMetrics.Builder instrumentationLibraryMetrics, @Nonnull String name, @Nonnull String description,
+                            @Nonnull Map<Attributes, LongAdder> counters, long epochNanos) {
+        if (counters.isEmpty()) {
+            return;
+        }
+        Sum.Builder sum = Sum.newBuilder()
+                .setAggregationTemporality(AggregationTemporality.AGGREGATION_TEMPORALITY_CUMULATIVE)
+                .setIsMonotonic(true);
+        counters.forEach((attributes, counter) -> {
+            NumberDataPoint.Builder dataPoint = NumberDataPoint.newBuilder()
+                    .setStartTimeUnixNano(startEpochNanos)
+                    .setTimeUnixNano(epochNanos)
+                    .setAsInt(counter.sum());
+            attributes.forEach((key, value) -> dataPoint.addAttributes(toProtoAttribute(key, value)));
+            sum.addDataPoints(dataPoint);
+        });
+        instrumentationLibraryMetrics.addMetrics(Metric.newBuilder()
+                .setName(name)
+                .setDescription(description)
+                .setUnit("1")
+                .setSum(sum));
+    }
+
+    /**
+     * Equivalent of the {@code CommonAdapter} of the OTLP exporter that is not public
+     */
+    @Nonnull
+    static KeyValue toProtoAttribute(@Nonnull AttributeKey<?> key, @Nonnull Object value) {
+        final AnyValue anyValue;
+        if (value instanceof List) {
+            ArrayValue.Builder arrayValue = ArrayValue.newBuilder();
+            for (Object element : (List<?>) value) {
+                arrayValue.addValues(toProtoAnyValue(element));
+            }
+            anyValue = AnyValue.newBuilder().setArrayValue(arrayValue).build();
+        } else {
+            anyValue = toProtoAnyValue(value);
+        }
+        return KeyValue.newBuilder().setKey(key.getKey()).setValue(anyValue).build();
+    }
+
+    @Nonnull
+    private static AnyValue toProtoAnyValue(@Nonnull Object value) {
+        if (value instanceof Boolean) {
+            return AnyValue.newBuilder().setBoolValue((Boolean) value).build();
+        } else if (value instanceof Long) {
+            return AnyValue.newBuilder().setIntValue((Long) value).build();
+        } else if (value instanceof Double) {
+            return AnyValue.newBuilder().setDoubleValue((Double) value).build();
+        } else {
+            return AnyValue.newBuilder().setStringValue(String.valueOf(value)).build();
+        }
+    }
+
+    /**
+     * Histogram of durations in milliseconds with an exemplar per bucket
+     */
+    static class DurationHistogram {
+        private long count;
+        private double sum;
+        private final long[] bucketCounts = new long[DURATION_BOUNDARIES_MILLIS.length + 1];
+        private final Exemplar[] exemplars = new Exemplar[DURATION_BOUNDARIES_MILLIS.length + 1];
+
+        synchronized void record(double durationMillis, long epochNanos, @Nonnull SpanContext spanContext) {
+            int bucket = Arrays.binarySearch(DURATION_BOUNDARIES_MILLIS, durationMillis);
+            // the upper boundary is inclusive
+            bucket = bucket >= 0 ? bucket : -bucket - 1;
+            count++;
+            sum += durationMillis;
+            bucketCounts[bucket]++;
+            if (spanContext.isSampled()) {
+                exemplars[bucket] = Exemplar.newBuilder()
+                        .setAsDouble(durationMillis)
+                        .setTimeUnixNano(epochNanos)
+                        .setTraceId(ByteString.copyFrom(spanContext.getTraceIdBytes()))
+                        .setSpanId(ByteString.copyFrom(spanContext.getSpanIdBytes()))
+                        .build();
+            }
+        }
+
+        synchronized void writeTo(@Nonnull HistogramDataPoint.Builder dataPoint) {
+            dataPoint.setCount(count).setSum(sum);
+            for (int i = 0; i < bucketCounts.length; i++) {
+                dataPoint.addBucketCounts(bucketCounts[i]);
+                if (exemplars[i] != null) {
+                    dataPoint.addExemplars(exemplars[i]);
+                }
+            }
+        }
+    }
+
+    private static class RecordOnlySampler implements Sampler {
+        static final RecordOnlySampler INSTANCE = new RecordOnlySampler();
+        private static final SamplingResult RECORD_ONLY = SamplingResult.create(SamplingDecision.RECORD_ONLY);
+
+        @Override
+        public SamplingResult shouldSample(Context parentContext, String traceId, String name, SpanKind spanKind,
+                                           Attributes attributes, List<LinkData> parentLinks) {
+            return RECORD_ONLY;
+        }
+
+        @Override
+        public String getDescription() {
+            return "RecordOnlySampler";
+        }
+    }
+
+    private static class RecordingSampler implements Sampler {
+        private static final SamplingResult RECORD_ONLY = SamplingResult.create(SamplingDecision.RECORD_ONLY);
+        private final Sampler delegate;
+
+        RecordingSampler(@Nonnull Sampler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public SamplingResult shouldSample(Context parentContext, String traceId, String name, SpanKind spanKind,
+                                           Attributes attributes, List<LinkData> parentLinks) {
+            SamplingResult samplingResult = delegate.shouldSample(parentContext, traceId, name, spanKind, attributes, parentLinks);
+            return samplingResult.getDecision() == SamplingDecision.DROP ? RECORD_ONLY : samplingResult;
+        }
+
+        @Override
+        public String getDescription() {
+            return "RecordingSampler{" + delegate.getDescription() + "}";
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.common.Attributes;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Usual duration of the mojo executions, identified by the attributes of their span (project, plugin, goal and
+ * execution id), to detect the mojo executions slower than usual.
+ */
+public interface MojoDurationBaseline {
+
+    /**
+     * @param mojoSpanAttributes attributes of the span of the mojo execution
+     * @return the median of the previous durations of the mojo execution in nanoseconds, {@code -1} if unknown
+     */
+    long getP50Nanos(@Nonnull Attributes mojoSpanAttributes);
+
+    /**
+     * @param mojoSpanAttributes attributes of the span of the mojo execution
+     * @return the 95th percentile of the previous durations of the mojo execution in nanoseconds, {@code -1} if unknown
+     */
+    long getP95Nanos(@Nonnull Attributes mojoSpanAttributes);
+
+    void record(@Nonnull Attributes mojoSpanAttributes, long durationNanos);
+}
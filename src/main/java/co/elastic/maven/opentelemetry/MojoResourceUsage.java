@@ -0,0 +1,143 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.trace.Span;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resources used by the current thread and the garbage collector, sampled on the Maven builder thread at the start and
+ * at the end of a mojo execution to tell whether a slow mojo is CPU-bound, allocation-heavy or blocked. The deltas are
+ * added to the span of the mojo execution.
+ *
+ * Each measure is skipped when the JVM doesn't support it: thread CPU time disabled, no
+ * {@code com.sun.management.ThreadMXBean} for the allocated bytes, thread contention monitoring not enabled for the
+ * blocked and waited times (enabling it slows down the monitors of the whole JVM). The GC counts and times are the ones
+ * of the whole JVM, including the collections caused by the concurrent mojo executions of a parallel build.
+ */
+final class MojoResourceUsage {
+    static final long UNAVAILABLE = -1;
+
+    private static final Logger logger = LoggerFactory.getLogger(MojoResourceUsage.class);
+
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private static final List<GarbageCollectorMXBean> garbageCollectorMXBeans = ManagementFactory.getGarbageCollectorMXBeans();
+    /**
+     * {@code null} if the JVM doesn't provide the allocated bytes of the threads
+     */
+    @Nullable
+    private static final com.sun.management.ThreadMXBean allocationMXBean = getAllocationMXBean();
+
+    final long cpuTimeNanos;
+    final long allocatedBytes;
+    final long gcCount;
+    final long gcTimeMillis;
+    final long blockedTimeMillis;
+    final long waitedTimeMillis;
+
+    MojoResourceUsage(long cpuTimeNanos, long allocatedBytes, long gcCount, long gcTimeMillis, long blockedTimeMillis, long waitedTimeMillis) {
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.gcCount = gcCount;
+        this.gcTimeMillis = gcTimeMillis;
+        this.blockedTimeMillis = blockedTimeMillis;
+        this.waitedTimeMillis = waitedTimeMillis;
+    }
+
+    /**
+     * Sample the resources used so far by the current thread and by the garbage collector, never fails
+     */
+    @Nonnull
+    static MojoResourceUsage sample() {
+        long threadId = Thread.currentThread().getId();
+
+        long cpuTimeNanos = UNAVAILABLE;
+        long allocatedBytes = UNAVAILABLE;
+        long gcCount = UNAVAILABLE;
+        long gcTimeMillis = UNAVAILABLE;
+        long blockedTimeMillis = UNAVAILABLE;
+        long waitedTimeMillis = UNAVAILABLE;
+        try {
+            // -1 if disabled
+            cpuTimeNanos = threadMXBean.getCurrentThreadCpuTime();
+        } catch (UnsupportedOperationException e) {
+            // not supported by the JVM
+        }
+        com.sun.management.ThreadMXBean allocationMXBean = MojoResourceUsage.allocationMXBean;
+        if (allocationMXBean != null) {
+            allocatedBytes = allocationMXBean.getThreadAllocatedBytes(threadId);
+        }
+        for (GarbageCollectorMXBean garbageCollectorMXBean : garbageCollectorMXBeans) {
+            long collectionCount = garbageCollectorMXBean.getCollectionCount();
+            long collectionTime = garbageCollectorMXBean.getCollectionTime();
+            if (collectionCount >= 0) {
+                gcCount = Math.max(gcCount, 0) + collectionCount;
+            }
+            if (collectionTime >= 0) {
+                gcTimeMillis = Math.max(gcTimeMillis, 0) + collectionTime;
+            }
+        }
+        if (threadMXBean.isThreadContentionMonitoringSupported() && threadMXBean.isThreadContentionMonitoringEnabled()) {
+            // without stack trace, doesn't need a safepoint
+            ThreadInfo threadInfo = threadMXBean.getThreadInfo(threadId);
+            if (threadInfo != null) {
+                blockedTimeMillis = threadInfo.getBlockedTime();
+                waitedTimeMillis = threadInfo.getWaitedTime();
+            }
+        }
+        return new MojoResourceUsage(cpuTimeNanos, allocatedBytes, gcCount, gcTimeMillis, blockedTimeMillis, waitedTimeMillis);
+    }
+
+    /**
+     * Add the resources used since the given sample to the span, the measures unavailable in either sample are skipped
+     */
+    void addDeltaAttributes(@Nonnull MojoResourceUsage start, @Nonnull Span span) {
+        if (cpuTimeNanos >= 0 && start.cpuTimeNanos >= 0) {
+            span.setAttribute(MavenOtelSemanticAttributes.MAVEN_EXECUTION_CPU_TIME, TimeUnit.NANOSECONDS.toMillis(cpuTimeNanos - start.cpuTimeNanos));
+        }
+        if (allocatedBytes >= 0 && start.allocatedBytes >= 0) {
+            span.setAttribute(MavenOtelSemanticAttributes.MAVEN_EXECUTION_ALLOCATED_BYTES, allocatedBytes - start.allocatedBytes);
+        }
+        if (gcCount >= 0 && start.gcCount >= 0) {
+            span.setAttribute(MavenOtelSemanticAttributes.MAVEN_EXECUTION_GC_COUNT, gcCount - start.gcCount);
+        }
+        if (gcTimeMillis >= 0 && start.gcTimeMillis >= 0) {
+            span.setAttribute(MavenOtelSemanticAttributes.MAVEN_EXECUTION_GC_TIME, gcTimeMillis - start.gcTimeMillis);
+        }
+        if (blockedTimeMillis >= 0 && start.blockedTimeMillis >= 0) {
+            span.setAttribute(MavenOtelSemanticAttributes.MAVEN_EXECUTION_BLOCKED_TIME, blockedTimeMillis - start.blockedTimeMillis);
+        }
+        if (waitedTimeMillis >= 0 && start.waitedTimeMillis >= 0) {
+            span.setAttribute(MavenOtelSemanticAttributes.MAVEN_EXECUTION_WAITED_TIME, waitedTimeMillis - start.waitedTimeMillis);
+        }
+    }
+
+    @Nullable
+    private static com.sun.management.ThreadMXBean getAllocationMXBean() {
+        try {
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+                if (allocationMXBean.isThreadAllocatedMemorySupported() && allocationMXBean.isThreadAllocatedMemoryEnabled()) {
+                    return allocationMXBean;
+                }
+            }
+        } catch (LinkageError | UnsupportedOperationException e) {
+            logger.debug("OpenTelemetry: Allocated bytes of the threads not available", e);
+        }
+        return null;
+    }
+}
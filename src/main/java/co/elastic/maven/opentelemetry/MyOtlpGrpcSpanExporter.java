@@ -5,40 +5,146 @@
 
 package co.elastic.maven.opentelemetry;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
 import io.grpc.ManagedChannel;
+import io.opentelemetry.exporter.otlp.internal.SpanAdapter;
 import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceResponse;
+import io.opentelemetry.proto.collector.metrics.v1.MetricsServiceGrpc;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceResponse;
+import io.opentelemetry.proto.collector.trace.v1.TraceServiceGrpc;
 import io.opentelemetry.sdk.common.CompletableResultCode;
 import io.opentelemetry.sdk.trace.data.SpanData;
-import io.opentelemetry.sdk.trace.export.SpanExporter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Wrapper of {@link OtlpGrpcSpanExporter} to temporarily fix <a href="https://github.com/cyrille-leclerc/opentelemetry-maven-extension/issues/1">NoClassDefFoundError on GRPC classes after the Maven build is finished #1</a>
  * thanks to a workaround of <a href="https://github.com/open-telemetry/opentelemetry-java/issues/3521">OtlpGrpcExporter/Netty still active after SdkTracerProvider#shutdown() #3521</a>
+ *
+ * The spans are sent by GRPC stubs on the channel rather than by the {@link OtlpGrpcSpanExporter} to support the
+ * compression ({@code otel.exporter.otlp.compression}) and the split of the large batches
+ * ({@code otel.exporter.otlp.max.request.size}).
  */
-public class MyOtlpGrpcSpanExporter implements SpanExporter {
+public class MyOtlpGrpcSpanExporter implements OtlpExporter {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     final OtlpGrpcSpanExporter otlpGrpcSpanExporter;
     final ManagedChannel managedChannel;
+    final long timeoutNanos;
+    final int maxRequestSize;
+    private final TraceServiceGrpc.TraceServiceFutureStub traceServiceStub;
+    private final MetricsServiceGrpc.MetricsServiceFutureStub metricsServiceStub;
 
-    MyOtlpGrpcSpanExporter(OtlpGrpcSpanExporter otlpGrpcSpanExporter, ManagedChannel managedChannel) {
+    /**
+     * @param compression {@code null} or {@code gzip}
+     */
+    MyOtlpGrpcSpanExporter(OtlpGrpcSpanExporter otlpGrpcSpanExporter, ManagedChannel managedChannel, long timeoutNanos,
+                           @Nullable String compression, int maxRequestSize) {
         this.otlpGrpcSpanExporter = otlpGrpcSpanExporter;
         this.managedChannel = managedChannel;
+        this.timeoutNanos = timeoutNanos;
+        this.maxRequestSize = maxRequestSize;
+        TraceServiceGrpc.TraceServiceFutureStub traceServiceStub = TraceServiceGrpc.newFutureStub(managedChannel);
+        MetricsServiceGrpc.MetricsServiceFutureStub metricsServiceStub = MetricsServiceGrpc.newFutureStub(managedChannel);
+        if (compression != null) {
+            traceServiceStub = traceServiceStub.withCompression(compression);
+            metricsServiceStub = metricsServiceStub.withCompression(compression);
+        }
+        this.traceServiceStub = traceServiceStub;
+        this.metricsServiceStub = metricsServiceStub;
     }
 
     public static MyOtlpGrpcSpanExporterBuilder builder() {
         return new MyOtlpGrpcSpanExporterBuilder();
     }
 
+    /**
+     * Batches larger than {@link #maxRequestSize} are split in several requests sent in parallel over the channel
+     */
     @Override
     public CompletableResultCode export(Collection<SpanData> spans) {
-        return otlpGrpcSpanExporter.export(spans);
+        List<ExportTraceServiceRequest> requests = SpanBatchSplitter.split(spans,
+                chunk -> ExportTraceServiceRequest.newBuilder().addAllResourceSpans(SpanAdapter.toProtoResourceSpans(chunk)).build(),
+                ExportTraceServiceRequest::getSerializedSize, maxRequestSize);
+        if (requests.size() == 1) {
+            return export(requests.get(0), spans.size() + " spans");
+        }
+        logger.debug("OpenTelemetry: Split batch of " + spans.size() + " spans in " + requests.size() + " requests");
+        List<CompletableResultCode> results = new ArrayList<>(requests.size());
+        for (ExportTraceServiceRequest request : requests) {
+            results.add(export(request, "request " + (results.size() + 1) + "/" + requests.size() + " of a batch of " + spans.size() + " spans"));
+        }
+        return CompletableResultCode.ofAll(results);
+    }
+
+    @Override
+    public CompletableResultCode export(ExportTraceServiceRequest request) {
+        return export(request, "OTLP request with " + request.getResourceSpansCount() + " resource spans");
+    }
+
+    private CompletableResultCode export(ExportTraceServiceRequest request, String description) {
+        final CompletableResultCode result = new CompletableResultCode();
+        Futures.addCallback(
+                traceServiceStub
+                        .withDeadlineAfter(timeoutNanos, TimeUnit.NANOSECONDS)
+                        .export(request),
+                new FutureCallback<ExportTraceServiceResponse>() {
+                    @Override
+                    public void onSuccess(ExportTraceServiceResponse response) {
+                        result.succeed();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        logger.warn("Failure to export " + description + ": " + t.getMessage());
+                        result.fail();
+                    }
+                },
+                MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /**
+     * Export metrics through the GRPC channel of the spans
+     */
+    @Override
+    public CompletableResultCode export(ExportMetricsServiceRequest request) {
+        final CompletableResultCode result = new CompletableResultCode();
+        Futures.addCallback(
+                metricsServiceStub
+                        .withDeadlineAfter(timeoutNanos, TimeUnit.NANOSECONDS)
+                        .export(request),
+                new FutureCallback<ExportMetricsServiceResponse>() {
+                    @Override
+                    public void onSuccess(ExportMetricsServiceResponse response) {
+                        result.succeed();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        logger.warn("Failure to export OTLP metrics request: " + t.getMessage());
+                        result.fail();
+                    }
+                },
+                MoreExecutors.directExecutor());
+        return result;
+    }
+
+    @Override
+    public void connect() {
+        managedChannel.getState(true);
     }
 
     @Override
@@ -53,10 +159,20 @@ public class MyOtlpGrpcSpanExporter implements SpanExporter {
 
     @Override
     public void close() {
+        close(20, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Shutdown the exporter and the GRPC managed channel within the given timeout. The managed channel is forcefully
+     * shut down if the timeout is exceeded.
+     */
+    @Override
+    public void close(long timeout, TimeUnit unit) {
+        final long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
         {
             logger.debug("Shutdown otlpGrpcSpanExporter...");
             long before = System.nanoTime();
-            final CompletableResultCode spanExporterShutdown = otlpGrpcSpanExporter.shutdown().join(10, TimeUnit.SECONDS);
+            final CompletableResultCode spanExporterShutdown = otlpGrpcSpanExporter.shutdown().join(Math.max(0, deadlineNanos - before), TimeUnit.NANOSECONDS);
             if (spanExporterShutdown.isSuccess()) {
                 logger.debug("OtlpGrpcSpanExporter shutdown in " + Duration.ofNanos(System.nanoTime() - before).toMillis() + "ms");
             } else {
@@ -68,14 +184,16 @@ public class MyOtlpGrpcSpanExporter implements SpanExporter {
             long before = System.nanoTime();
             this.managedChannel.shutdown();
             try {
-                boolean terminated = this.managedChannel.awaitTermination(10, TimeUnit.SECONDS);
+                boolean terminated = this.managedChannel.awaitTermination(Math.max(0, deadlineNanos - before), TimeUnit.NANOSECONDS);
                 if (terminated) {
                     logger.debug("GRPC managed channel shutdown in " + Duration.ofNanos(System.nanoTime() - before).toMillis() + "ms");
                 } else {
-                    logger.warn("Failure to shutdown GRPC managed channel in " + Duration.ofNanos(System.nanoTime() - before).toMillis() + "ms");
+                    logger.warn("Failure to shutdown GRPC managed channel in " + Duration.ofNanos(System.nanoTime() - before).toMillis() + "ms, force shutdown");
+                    this.managedChannel.shutdownNow();
                 }
             } catch (InterruptedException e) {
                 logger.warn("Silently ignore " + e, e);
+                this.managedChannel.shutdownNow();
             }
         }
     }
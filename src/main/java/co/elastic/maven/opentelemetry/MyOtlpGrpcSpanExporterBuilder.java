@@ -33,6 +33,8 @@ public class MyOtlpGrpcSpanExporterBuilder {
     private String endpointAsString;
     private Metadata metadata = null;
     private byte[] trustedCertificatesPem = null;
+    private String compression = null;
+    private int maxRequestSize = SpanBatchSplitter.DEFAULT_MAX_REQUEST_SIZE;
 
     MyOtlpGrpcSpanExporterBuilder() {
 
@@ -52,6 +54,29 @@ public class MyOtlpGrpcSpanExporterBuilder {
         return this;
     }
 
+    /**
+     * @param compression {@code gzip} or {@code none}
+     */
+    public MyOtlpGrpcSpanExporterBuilder setCompression(String compression) {
+        requireNonNull(compression, "compression");
+        if (!compression.equals("gzip") && !compression.equals("none")) {
+            throw new IllegalArgumentException("Unsupported compression method, must be gzip or none: " + compression);
+        }
+        this.compression = compression.equals("none") ? null : compression;
+        return this;
+    }
+
+    /**
+     * @param maxRequestSize max size in bytes of the uncompressed requests, larger batches of spans are split
+     */
+    public MyOtlpGrpcSpanExporterBuilder setMaxRequestSize(int maxRequestSize) {
+        if (maxRequestSize <= 0) {
+            throw new IllegalArgumentException("Invalid max request size, must be positive: " + maxRequestSize);
+        }
+        this.maxRequestSize = maxRequestSize;
+        return this;
+    }
+
     public MyOtlpGrpcSpanExporterBuilder addHeader(String key, String value) {
         if (metadata == null) {
             metadata = new Metadata();
@@ -93,7 +118,7 @@ public class MyOtlpGrpcSpanExporterBuilder {
                 .setChannel(channel)
                 .setTimeout(this.timeoutNanos, TimeUnit.NANOSECONDS)
                 .build();
-        return new MyOtlpGrpcSpanExporter(otlpGrpcSpanExporter, channel);
+        return new MyOtlpGrpcSpanExporter(otlpGrpcSpanExporter, channel, this.timeoutNanos, this.compression, this.maxRequestSize);
     }
 
     /**
@@ -10,15 +10,19 @@ import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.OpenTelemetry;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
 import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
 import io.opentelemetry.sdk.OpenTelemetrySdk;
 import io.opentelemetry.sdk.common.CompletableResultCode;
 import io.opentelemetry.sdk.resources.Resource;
 import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SdkTracerProviderBuilder;
 import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
 import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
 import io.opentelemetry.semconv.resource.attributes.ResourceAttributes;
 import org.apache.maven.rtinfo.RuntimeInformation;
 import org.codehaus.plexus.component.annotations.Component;
@@ -30,9 +34,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Service to configure the {@link OpenTelemetry} instance.
@@ -50,42 +66,278 @@ public class OpenTelemetrySdkService implements Initializable, Disposable {
     @Requirement
     private RuntimeInformation runtimeInformation;
 
-    private OpenTelemetrySdk openTelemetrySdk;
+    /**
+     * SDK built in the background by {@link #initialize()}, {@code null} if neither traces nor metrics are exported
+     * or once disposed, see {@link #awaitSdk()}
+     */
+    private volatile CompletableFuture<OpenTelemetrySdk> sdkInitialization;
 
     private Tracer tracer;
 
+    static final String INSTRUMENTATION_NAME = "io.opentelemetry.contrib.maven";
+
     private SpanExporter spanExporter;
 
+    /**
+     * Exporters created in the background by {@link #initialize()}
+     */
+    private CompletableFuture<Exporters> exporters;
+
+    private DeferredSpanExporter deferredSpanExporter;
+
+    private long shutdownTimeoutMillis = DEFAULT_SHUTDOWN_TIMEOUT_MILLIS;
+
+    /**
+     * {@link System#nanoTime()} deadline of the shutdown, defined when the final flush starts
+     */
+    private Long shutdownDeadlineNanos;
+
+    /**
+     * Completion of the last final flush (spans and metrics), see {@link #startFinalFlush()}
+     */
+    private CompletableResultCode finalFlush;
+
+    static final long DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+
+    static final String OTLP_PROTOCOL_GRPC = "grpc";
+    static final String OTLP_PROTOCOL_HTTP_PROTOBUF = "http/protobuf";
+
+    static final String OTLP_COMPRESSION_GZIP = "gzip";
+    static final String OTLP_COMPRESSION_NONE = "none";
+
+    static final long DEFAULT_BSP_SCHEDULE_DELAY_MILLIS = 5_000;
+    static final int DEFAULT_BSP_MAX_QUEUE_SIZE = 2_048;
+    static final int DEFAULT_BSP_MAX_EXPORT_BATCH_SIZE = 512;
+    static final long DEFAULT_BSP_EXPORT_TIMEOUT_MILLIS = 30_000;
+
+    static final long DEFAULT_REGRESSION_THRESHOLD_MILLIS = 1_000;
+
+    private LoadSheddingSpanProcessor loadSheddingSpanProcessor;
+
+    private MetricsSpanProcessor metricsSpanProcessor;
+
+    private CompletableResultCode metricsExportResult;
+
+    /**
+     * {@code null} if the observation of the JVM is disabled or stopped by the end of the last session
+     */
+    private JvmMetricsSampler jvmMetricsSampler;
+
+    private boolean jvmMetricsEnabled;
+    private long jvmMetricsIntervalMillis;
+    private long jvmMemoryThresholdPercent;
+
+    /**
+     * Maven sessions in progress, several sequential and concurrent sessions share the SDK in a long-lived JVM (e.g.
+     * Maven Daemon)
+     */
+    private int activeSessions;
+
+    /**
+     * {@code null} if the local baseline of the mojo durations is disabled
+     */
+    private FileMojoDurationBaseline mojoDurationBaseline;
+
+    private long regressionThresholdMillis = DEFAULT_REGRESSION_THRESHOLD_MILLIS;
+
+    private Resource resource;
+
+    private final BuildEnvironmentResource buildEnvironmentResource = new BuildEnvironmentResource();
+
+    /**
+     * Attributes of the build environment detected in the background, added to the resource once detected
+     */
+    private CompletableFuture<Attributes> detectedResourceAttributes = CompletableFuture.completedFuture(Attributes.empty());
+
+    public OpenTelemetrySdkService() {
+    }
+
+    /**
+     * Visible for testing, the {@link RuntimeInformation} is otherwise injected by Plexus
+     */
+    OpenTelemetrySdkService(@Nonnull RuntimeInformation runtimeInformation) {
+        this.runtimeInformation = runtimeInformation;
+    }
+
+    /**
+     * Time given to the SDK to hand over the pending spans to the spool once the shutdown timeout is exceeded
+     */
+    private static final long SHUTDOWN_GRACE_PERIOD_MILLIS = 500;
+
+    /**
+     * Invoked at the start of each Maven session. The SDK, its exporters and their connection are created once per JVM
+     * by {@link #initialize()} and reused by the following sessions of a long-lived JVM (e.g. Maven Daemon); only the
+     * observation of the JVM, stopped at the end of the previous sessions, is restarted.
+     */
+    public synchronized void sessionStarted() {
+        this.activeSessions++;
+        if (awaitSdk() != null && this.jvmMetricsEnabled && this.jvmMetricsSampler == null) {
+            startJvmMetricsSampler();
+        }
+    }
+
+    /**
+     * Start flushing the spans at the end of the Maven session so that the export overlaps with the teardown of Maven,
+     * or, in a long-lived JVM, with the wait for the next session. Starts the countdown of the
+     * {@code otel.instrumentation.maven.shutdown.timeout} deadline of {@link #dispose()}.
+     */
+    public synchronized void startFinalFlush() {
+        if (this.activeSessions > 0) {
+            this.activeSessions--;
+        }
+        final OpenTelemetrySdk openTelemetrySdk = awaitSdk();
+        if (openTelemetrySdk == null) {
+            return;
+        }
+        logger.debug("OpenTelemetry: Start final flush of the SDK Trace Provider...");
+        this.shutdownDeadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+        final CompletableResultCode spansFlush = openTelemetrySdk.getSdkTracerProvider().forceFlush();
+        this.finalFlush = spansFlush;
+        final JvmMetricsSampler jvmMetricsSampler = this.jvmMetricsSampler;
+        if (jvmMetricsSampler != null && this.activeSessions == 0) {
+            // restarted by the next session
+            jvmMetricsSampler.stop();
+            this.jvmMetricsSampler = null;
+        }
+        if (this.metricsSpanProcessor != null) {
+            logger.debug("OpenTelemetry: Export metrics...");
+            // cumulative since the initialization of the SDK, each session exports the metrics of the JVM so far
+            // the build environment is added to the resource if detected by now
+            final Resource resource = Resource.create(this.detectedResourceAttributes.getNow(Attributes.empty())).merge(this.resource);
+            final ExportMetricsServiceRequest request = this.metricsSpanProcessor.toExportMetricsServiceRequest(resource, jvmMetricsSampler);
+            final CompletableResultCode result = new CompletableResultCode();
+            // don't wait for the end of the initialization of the exporters
+            this.exporters.whenComplete((exporters, throwable) -> {
+                if (exporters == null || exporters.metricsExporter == null) {
+                    result.fail();
+                } else {
+                    CompletableResultCode exportResult = exporters.metricsExporter.export(request);
+                    exportResult.whenComplete(() -> {
+                        if (exportResult.isSuccess()) {
+                            result.succeed();
+                        } else {
+                            result.fail();
+                        }
+                    });
+                }
+            });
+            // the metrics are cumulative, the export of the last session supersedes the previous ones
+            this.metricsExportResult = result;
+            this.finalFlush = CompletableResultCode.ofAll(Arrays.asList(spansFlush, result));
+        }
+    }
+
+    /**
+     * Shutdown the SDK within the {@code otel.instrumentation.maven.shutdown.timeout}, started at the beginning of the
+     * final flush if still in progress (see {@link #startFinalFlush()}), or when disposing otherwise. Spans that are
+     * not exported by the deadline are spooled or dropped and reported in the logs (see {@link SpoolingSpanExporter}).
+     */
     @Override
     public synchronized void dispose() {
         logger.debug("OpenTelemetry: dispose OpenTelemetrySdkService...");
-        if (this.openTelemetrySdk != null) {
+        final OpenTelemetrySdk openTelemetrySdk = awaitSdk();
+        if (openTelemetrySdk != null) {
+            if (this.jvmMetricsSampler != null) {
+                this.jvmMetricsSampler.stop();
+            }
+            final long deadlineNanos = getShutdownDeadlineNanos();
+            final Exporters exporters = awaitExporters(deadlineNanos);
+            if (exporters == null && this.deferredSpanExporter != null) {
+                logger.warn("OpenTelemetry: Span exporters not initialized within the shutdown timeout of " + shutdownTimeoutMillis + "ms, drop the spans");
+                this.deferredSpanExporter.abandon();
+            }
+            final List<SpanExporter> spanExporters = exporters == null ? Collections.emptyList() : exporters.spanExporters;
             logger.debug("OpenTelemetry: Shutdown SDK Trace Provider...");
             long before = System.currentTimeMillis();
-            final CompletableResultCode sdkProviderShutdown = this.openTelemetrySdk.getSdkTracerProvider().shutdown();
-            sdkProviderShutdown.join(10, TimeUnit.SECONDS);
+            final CompletableResultCode sdkProviderShutdown = openTelemetrySdk.getSdkTracerProvider().shutdown();
+            sdkProviderShutdown.join(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (!sdkProviderShutdown.isDone()) {
+                logger.debug("OpenTelemetry: Shutdown timeout of " + shutdownTimeoutMillis + "ms exceeded, stop waiting for the span exporters");
+                for (SpanExporter spanExporter : spanExporters) {
+                    if (spanExporter instanceof SpoolingSpanExporter) {
+                        ((SpoolingSpanExporter) spanExporter).onShutdownDeadlineExceeded();
+                    }
+                }
+                // the batches in flight are completed and the queued spans are now diverted to the spool without
+                // waiting for the network, drain the span processor before closing the spool
+                sdkProviderShutdown.join(SHUTDOWN_GRACE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            }
             if (sdkProviderShutdown.isSuccess()) {
                 logger.debug("OpenTelemetry: SDK Trace Provider shutdown in " + (System.currentTimeMillis() - before) + " ms");
             } else {
                 logger.warn("OpenTelemetry: Failure to shutdown SDK Trace Provider in " + (System.currentTimeMillis() - before) + " ms, done: " + sdkProviderShutdown.isDone() + " success: " + sdkProviderShutdown.isSuccess());
             }
+            if (this.metricsExportResult != null) {
+                this.metricsExportResult.join(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (!this.metricsExportResult.isSuccess()) {
+                    logger.warn("OpenTelemetry: Failure to export metrics within the shutdown timeout of " + shutdownTimeoutMillis + "ms");
+                }
+            }
             // fix https://github.com/cyrille-leclerc/opentelemetry-maven-extension/issues/1
             // working around https://github.com/open-telemetry/opentelemetry-java/issues/3521
-            try {
-                this.spanExporter.close();
-            } catch (NoClassDefFoundError error) {
-                if (logger.isDebugEnabled()) {
-                    logger.warn("OpenTelemetry: NoClassDefFoundError shutting down SpanExporter: " + error.getMessage(), error);
+            if (exporters != null && exporters.metricsExporter != null && spanExporters.isEmpty()) {
+                // metrics only, the exporter is not closed with the span exporters
+                exporters.metricsExporter.close(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            final List<SpoolingSpanExporter> spoolingSpanExporters = new ArrayList<>();
+            for (SpanExporter spanExporter : spanExporters) {
+                try {
+                    if (spanExporter instanceof SpoolingSpanExporter) {
+                        SpoolingSpanExporter spoolingSpanExporter = (SpoolingSpanExporter) spanExporter;
+                        spoolingSpanExporter.close(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                        spoolingSpanExporters.add(spoolingSpanExporter);
+                    } else {
+                        spanExporter.close();
+                    }
+                } catch (NoClassDefFoundError error) {
+                    if (logger.isDebugEnabled()) {
+                        logger.warn("OpenTelemetry: NoClassDefFoundError shutting down SpanExporter: " + error.getMessage(), error);
+                    } else {
+                        logger.warn("OpenTelemetry: NoClassDefFoundError shutting down SpanExporter: " + error.getMessage());
+                    }
+                }
+            }
+            if (!sdkProviderShutdown.isDone()) {
+                // the spans still queued in the span processor are now dropped right away, count them in the summary
+                sdkProviderShutdown.join(SHUTDOWN_GRACE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            for (SpoolingSpanExporter spoolingSpanExporter : spoolingSpanExporters) {
+                if (spoolingSpanExporter.hasUnexportedSpans()) {
+                    logger.warn("OpenTelemetry: Spans not exported within the shutdown timeout of " + shutdownTimeoutMillis + "ms or failed to be exported, " + spoolingSpanExporter.getSummary());
                 } else {
-                    logger.warn("OpenTelemetry: NoClassDefFoundError shutting down SpanExporter: " + error.getMessage());
+                    logger.debug("OpenTelemetry: " + spoolingSpanExporter.getSummary());
                 }
             }
-            GlobalOpenTelemetry.resetForTest();
-            this.openTelemetrySdk = null;
+            if (this.deferredSpanExporter != null && this.deferredSpanExporter.getDroppedSpans() > 0) {
+                logger.warn("OpenTelemetry: " + this.deferredSpanExporter.getDroppedSpans() + " spans dropped because the span exporters were not initialized in time or failed to initialize");
+            }
+            this.sdkInitialization = null;
+            this.exporters = null;
+            this.deferredSpanExporter = null;
+            this.loadSheddingSpanProcessor = null;
+            this.metricsSpanProcessor = null;
+            this.metricsExportResult = null;
+            this.jvmMetricsSampler = null;
+            this.shutdownDeadlineNanos = null;
+            this.finalFlush = null;
         }
         logger.debug("OpenTelemetry: OpenTelemetrySdkService disposed");
     }
 
+    /**
+     * The deadline of the final flush only applies while this flush is in progress within its window. In a long-lived
+     * JVM, the service is disposed long after the final flush of the last session, start a new countdown.
+     */
+    private long getShutdownDeadlineNanos() {
+        final long now = System.nanoTime();
+        final Long shutdownDeadlineNanos = this.shutdownDeadlineNanos;
+        final CompletableResultCode finalFlush = this.finalFlush;
+        if (shutdownDeadlineNanos != null && shutdownDeadlineNanos - now > 0 && finalFlush != null && !finalFlush.isDone()) {
+            return shutdownDeadlineNanos;
+        }
+        return now + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+    }
+
     /**
      * TODO add support for `OTEL_EXPORTER_OTLP_CERTIFICATE`
      */
@@ -95,63 +347,474 @@ public class OpenTelemetrySdkService implements Initializable, Disposable {
         // OTEL_EXPORTER_OTLP_ENDPOINT
         String otlpEndpoint = System.getProperty("otel.exporter.otlp.endpoint",
                 System.getenv("OTEL_EXPORTER_OTLP_ENDPOINT"));
-        if (StringUtils.isBlank(otlpEndpoint)) {
-            logger.debug("OpenTelemetry: No -Dotel.exporter.otlp.endpoint property or OTEL_EXPORTER_OTLP_ENDPOINT environment variable found, use a NOOP tracer");
+        // OTEL_EXPORTER_OTLP_FILE
+        String otlpFile = System.getProperty("otel.exporter.otlp.file",
+                System.getenv("OTEL_EXPORTER_OTLP_FILE"));
+
+        // OTEL_INSTRUMENTATION_MAVEN_RESOURCE_DETECTION_ENABLED
+        final boolean resourceDetectionEnabled = !"false".equalsIgnoreCase(System.getProperty("otel.instrumentation.maven.resource.detection.enabled",
+                System.getenv("OTEL_INSTRUMENTATION_MAVEN_RESOURCE_DETECTION_ENABLED")));
+        if (resourceDetectionEnabled && (StringUtils.isNotBlank(otlpEndpoint) || StringUtils.isNotBlank(otlpFile))) {
+            // overlaps with the initialization of the exporters, nothing waits for it
+            this.detectedResourceAttributes = buildEnvironmentResource.startDetection();
+        }
+
+        // OTEL_INSTRUMENTATION_MAVEN_SHUTDOWN_TIMEOUT
+        this.shutdownTimeoutMillis = OtelUtils.getLongConfiguration("otel.instrumentation.maven.shutdown.timeout", "OTEL_INSTRUMENTATION_MAVEN_SHUTDOWN_TIMEOUT", DEFAULT_SHUTDOWN_TIMEOUT_MILLIS);
+
+        // OTEL_TRACES_EXPORTER, OTEL_METRICS_EXPORTER
+        final boolean tracesEnabled = !"none".equals(System.getProperty("otel.traces.exporter", System.getenv("OTEL_TRACES_EXPORTER")));
+        final boolean metricsEnabled = "otlp".equals(System.getProperty("otel.metrics.exporter", System.getenv("OTEL_METRICS_EXPORTER")))
+                && StringUtils.isNotBlank(otlpEndpoint);
+
+        final boolean spansExported = tracesEnabled && (StringUtils.isNotBlank(otlpEndpoint) || StringUtils.isNotBlank(otlpFile));
+        if (metricsEnabled) {
+            this.metricsSpanProcessor = new MetricsSpanProcessor();
+        }
+
+        // OTEL_INSTRUMENTATION_MAVEN_BASELINE_ENABLED, enabled by default when the build is observed
+        final String baselineEnabled = System.getProperty("otel.instrumentation.maven.baseline.enabled",
+                System.getenv("OTEL_INSTRUMENTATION_MAVEN_BASELINE_ENABLED"));
+        if ("true".equalsIgnoreCase(baselineEnabled) || ((spansExported || metricsSpanProcessor != null) && !"false".equalsIgnoreCase(baselineEnabled))) {
+            // OTEL_INSTRUMENTATION_MAVEN_BASELINE_FILE
+            final String baselineFile = System.getProperty("otel.instrumentation.maven.baseline.file",
+                    System.getenv("OTEL_INSTRUMENTATION_MAVEN_BASELINE_FILE"));
+            this.mojoDurationBaseline = new FileMojoDurationBaseline(StringUtils.isBlank(baselineFile) ? FileMojoDurationBaseline.getDefaultFile() : Paths.get(baselineFile),
+                    FileMojoDurationBaseline.DEFAULT_MAX_FILE_SIZE);
+            // overlaps with the start of Maven
+            this.mojoDurationBaseline.startLoading();
+            this.regressionThresholdMillis = OtelUtils.getLongConfiguration("otel.instrumentation.maven.baseline.regression.threshold",
+                    "OTEL_INSTRUMENTATION_MAVEN_BASELINE_REGRESSION_THRESHOLD", DEFAULT_REGRESSION_THRESHOLD_MILLIS);
+        }
+
+        if (!spansExported && metricsSpanProcessor == null) {
+            logger.debug("OpenTelemetry: No -Dotel.exporter.otlp.endpoint or -Dotel.exporter.otlp.file property or OTEL_EXPORTER_OTLP_ENDPOINT or OTEL_EXPORTER_OTLP_FILE environment variable found, use a NOOP tracer");
             GlobalOpenTelemetry.set(OpenTelemetry.noop());
+            this.tracer = GlobalOpenTelemetry.getTracer(INSTRUMENTATION_NAME);
         } else {
-            // OtlpGrpcSpanExporterBuilder spanExporterBuilder = OtlpGrpcSpanExporter.builder();
-            MyOtlpGrpcSpanExporterBuilder spanExporterBuilder = MyOtlpGrpcSpanExporter.builder();
-            spanExporterBuilder.setEndpoint(otlpEndpoint);
-
-            // OTEL_EXPORTER_OTLP_HEADERS
-            String otlpExporterHeadersAsString = System.getProperty("otel.exporter.otlp.headers",
-                    System.getenv("OTEL_EXPORTER_OTLP_HEADERS"));
-            Map<String, String> otlpExporterHeaders = OtelUtils.getCommaSeparatedMap(otlpExporterHeadersAsString);
-            otlpExporterHeaders.forEach(spanExporterBuilder::addHeader);
+            // building the SDK, loading the GRPC stack and connecting to the collector overlap with the start of Maven
+            // and the discovery of the projects, the first Maven session waits for the SDK (see awaitSdk()) and the
+            // spans ended before the exporters are ready wait in the queue of the batch span processor
+            this.exporters = new CompletableFuture<>();
+            this.sdkInitialization = new CompletableFuture<>();
+            final CompletableFuture<Exporters> exporters = this.exporters;
+            final CompletableFuture<OpenTelemetrySdk> sdkInitialization = this.sdkInitialization;
+            Thread initializationThread = new Thread(() -> {
+                try {
+                    sdkInitialization.complete(newOpenTelemetrySdk(otlpEndpoint, otlpFile, spansExported, resourceDetectionEnabled));
+                } catch (RuntimeException | LinkageError e) {
+                    logger.warn("OpenTelemetry: Failure to initialize the SDK, use a NOOP tracer", e);
+                    this.tracer = OpenTelemetry.noop().getTracer(INSTRUMENTATION_NAME);
+                    sdkInitialization.completeExceptionally(e);
+                    exporters.completeExceptionally(e);
+                    return;
+                }
+                try {
+                    exporters.complete(newExporters(otlpEndpoint, otlpFile, spansExported, metricsEnabled));
+                } catch (RuntimeException | LinkageError e) {
+                    logger.warn("OpenTelemetry: Failure to initialize the exporters to " + (StringUtils.isNotBlank(otlpEndpoint) ? otlpEndpoint : otlpFile), e);
+                    exporters.completeExceptionally(e);
+                }
+            }, "otel-sdk-initialization");
+            initializationThread.setDaemon(true);
+            initializationThread.start();
+        }
+    }
 
-            // OTEL_EXPORTER_OTLP_TIMEOUT
-            String otlpExporterTimeoutMillis = System.getProperty("otel.exporter.otlp.timeout",
-                    System.getenv("OTEL_EXPORTER_OTLP_TIMEOUT"));
-            if (StringUtils.isNotBlank(otlpExporterTimeoutMillis)) {
+    /**
+     * Build the SDK and start the observation of the JVM, invoked in the background by {@link #initialize()} before
+     * the creation of the exporters
+     */
+    @Nonnull
+    private OpenTelemetrySdk newOpenTelemetrySdk(@Nullable String otlpEndpoint, @Nullable String otlpFile, boolean spansExported, boolean resourceDetectionEnabled) {
+        long before = System.nanoTime();
+        // OTEL_RESOURCE_ATTRIBUTES
+        AttributesBuilder resourceAttributesBuilder = Attributes.builder();
+        Resource mavenResource = getMavenResource();
+        resourceAttributesBuilder.putAll(mavenResource.getAttributes());
+        if (resourceDetectionEnabled) {
+            // the probed attributes are added by the exporters once detected, see DetectedResourceSpanExporter
+            resourceAttributesBuilder.putAll(BuildEnvironmentResource.getRuntimeAttributes());
+        }
+        String otelResourceAttributesAsString = System.getProperty("otel.resource.attributes",
+                System.getenv("OTEL_RESOURCE_ATTRIBUTES"));
+        if (StringUtils.isNotBlank(otelResourceAttributesAsString)) {
+            Map<String, String> otelResourceAttributes = OtelUtils.getCommaSeparatedMap(otelResourceAttributesAsString);
+            // see io.opentelemetry.sdk.autoconfigure.EnvironmentResource.getAttributes
+            otelResourceAttributes.forEach(resourceAttributesBuilder::put);
+        }
+        final Attributes resourceAttributes = resourceAttributesBuilder.build();
+        this.resource = Resource.create(resourceAttributes);
+        SdkTracerProviderBuilder sdkTracerProviderBuilder = SdkTracerProvider.builder().setResource(resource);
+
+        if (metricsSpanProcessor != null) {
+            logger.debug("OpenTelemetry: Export OpenTelemetry metrics to {} with attributes: {}", otlpEndpoint, resourceAttributes);
+            sdkTracerProviderBuilder.addSpanProcessor(metricsSpanProcessor);
+        }
+        if (!spansExported) {
+            logger.debug("OpenTelemetry: Export of the traces disabled, spans are only recorded to compute the metrics");
+            sdkTracerProviderBuilder.setSampler(MetricsSpanProcessor.recordOnlySampler());
+        } else {
+            configureSpanExport(sdkTracerProviderBuilder, StringUtils.isNotBlank(otlpEndpoint) ? otlpEndpoint : otlpFile, resourceAttributes);
+        }
+
+        OpenTelemetrySdk openTelemetrySdk = OpenTelemetrySdk.builder()
+                .setTracerProvider(sdkTracerProviderBuilder.build())
+                .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
+                .buildAndRegisterGlobal();
+        this.tracer = GlobalOpenTelemetry.getTracer(INSTRUMENTATION_NAME);
+
+        // OTEL_INSTRUMENTATION_MAVEN_JVM_METRICS_ENABLED
+        this.jvmMetricsEnabled = !"false".equalsIgnoreCase(System.getProperty("otel.instrumentation.maven.jvm.metrics.enabled",
+                System.getenv("OTEL_INSTRUMENTATION_MAVEN_JVM_METRICS_ENABLED")));
+        if (jvmMetricsEnabled) {
+            // the samples are only needed to export the metrics, the root span only records the peaks and totals
+            this.jvmMetricsIntervalMillis = metricsSpanProcessor == null ? 0 : OtelUtils.getLongConfiguration("otel.instrumentation.maven.jvm.metrics.interval",
+                    "OTEL_INSTRUMENTATION_MAVEN_JVM_METRICS_INTERVAL", JvmMetricsSampler.DEFAULT_INTERVAL_MILLIS);
+            this.jvmMemoryThresholdPercent = OtelUtils.getLongConfiguration("otel.instrumentation.maven.jvm.memory.threshold",
+                    "OTEL_INSTRUMENTATION_MAVEN_JVM_MEMORY_THRESHOLD", JvmMetricsSampler.DEFAULT_MEMORY_THRESHOLD_PERCENT);
+            // overlaps with the start of Maven, before the first session
+            startJvmMetricsSampler();
+        }
+        logger.debug("OpenTelemetry: SDK initialized in the background in {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - before));
+        return openTelemetrySdk;
+    }
+
+    /**
+     * Wait for the end of the initialization of the SDK started in the background by {@link #initialize()}, usually
+     * completed before the start of the first Maven session
+     *
+     * @return {@code null} if neither traces nor metrics are exported, if the SDK failed to initialize or once disposed
+     */
+    @Nullable
+    private OpenTelemetrySdk awaitSdk() {
+        CompletableFuture<OpenTelemetrySdk> sdkInitialization = this.sdkInitialization;
+        if (sdkInitialization == null) {
+            return null;
+        }
+        try {
+            return sdkInitialization.join();
+        } catch (CompletionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    private void startJvmMetricsSampler() {
+        this.jvmMetricsSampler = new JvmMetricsSampler(jvmMetricsIntervalMillis, jvmMemoryThresholdPercent);
+        this.jvmMetricsSampler.start();
+    }
+
+    /**
+     * Create the exporters, invoked in the background by {@link #initialize()}: loading the GRPC stack and connecting
+     * to the collector are the slowest steps of the initialization of the extension
+     */
+    @Nonnull
+    private Exporters newExporters(@Nullable String otlpEndpoint, @Nullable String otlpFile, boolean spansExported, boolean metricsEnabled) {
+        long before = System.nanoTime();
+        Exporters exporters = new Exporters();
+        OtlpExporter otlpExporter = null;
+        if (StringUtils.isNotBlank(otlpEndpoint) && (spansExported || metricsEnabled)) {
+            otlpExporter = newOtlpExporter(otlpEndpoint);
+            otlpExporter.connect();
+        }
+        if (metricsEnabled) {
+            exporters.metricsExporter = otlpExporter;
+        }
+
+        if (otlpExporter != null && spansExported) {
+            // OTEL_EXPORTER_OTLP_SPOOL_FILE
+            String otlpSpoolFile = System.getProperty("otel.exporter.otlp.spool.file",
+                    System.getenv("OTEL_EXPORTER_OTLP_SPOOL_FILE"));
+            OtlpFileSpanExporter spool = null;
+            if (StringUtils.isNotBlank(otlpSpoolFile)) {
                 try {
-                    spanExporterBuilder.setTimeout(Duration.ofMillis(Long.parseLong(otlpExporterTimeoutMillis)));
+                    spool = OtlpFileSpanExporter.create(Paths.get(otlpSpoolFile));
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("OpenTelemetry: Skip invalid OTLP spool file " + otlpSpoolFile, e);
+                }
+            }
+            exporters.spanExporters.add(new SpoolingSpanExporter(otlpExporter, spool));
+        }
+        if (StringUtils.isNotBlank(otlpFile) && spansExported) {
+            try {
+                exporters.spanExporters.add(OtlpFileSpanExporter.create(Paths.get(otlpFile)));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("OpenTelemetry: Skip invalid OTLP file " + otlpFile, e);
+            }
+        }
+        logger.debug("OpenTelemetry: Exporters initialized in the background in {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - before));
+        return exporters;
+    }
+
+    /**
+     * @return {@code null} if the exporters are not initialized by the given {@link System#nanoTime()} deadline or
+     * failed to initialize
+     */
+    @Nullable
+    private Exporters awaitExporters(long deadlineNanos) {
+        try {
+            return this.exporters.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void configureSpanExport(@Nonnull SdkTracerProviderBuilder sdkTracerProviderBuilder, @Nonnull String destination, @Nonnull Attributes resourceAttributes) {
+        logger.debug("OpenTelemetry: Export OpenTelemetry traces to {} with attributes: {}", destination, resourceAttributes);
+
+        // OTEL_BSP_SCHEDULE_DELAY, OTEL_BSP_MAX_QUEUE_SIZE, OTEL_BSP_MAX_EXPORT_BATCH_SIZE, OTEL_BSP_EXPORT_TIMEOUT
+        final long bspScheduleDelayMillis = OtelUtils.getLongConfiguration("otel.bsp.schedule.delay", "OTEL_BSP_SCHEDULE_DELAY", DEFAULT_BSP_SCHEDULE_DELAY_MILLIS);
+        final int bspMaxQueueSize = (int) OtelUtils.getLongConfiguration("otel.bsp.max.queue.size", "OTEL_BSP_MAX_QUEUE_SIZE", DEFAULT_BSP_MAX_QUEUE_SIZE);
+        final int bspMaxExportBatchSize = (int) OtelUtils.getLongConfiguration("otel.bsp.max.export.batch.size", "OTEL_BSP_MAX_EXPORT_BATCH_SIZE", DEFAULT_BSP_MAX_EXPORT_BATCH_SIZE);
+        final long bspExportTimeoutMillis = OtelUtils.getLongConfiguration("otel.bsp.export.timeout", "OTEL_BSP_EXPORT_TIMEOUT", DEFAULT_BSP_EXPORT_TIMEOUT_MILLIS);
+        logger.debug("OpenTelemetry: Batch span processor schedule delay: {}ms, max queue size: {}, max export batch size: {}, export timeout: {}ms",
+                bspScheduleDelayMillis, bspMaxQueueSize, bspMaxExportBatchSize, bspExportTimeoutMillis);
+        final Resource resource = this.resource;
+        final CompletableFuture<SpanExporter> delegate = this.exporters.thenApply(Exporters::getSpanExporter)
+                .thenCombine(this.detectedResourceAttributes, (spanExporter, detectedAttributes) ->
+                        spanExporter == null || detectedAttributes.isEmpty() ? spanExporter : new DetectedResourceSpanExporter(spanExporter, resource, detectedAttributes));
+        // the spans waiting for the exporters are bounded like the queue of the span processor
+        this.deferredSpanExporter = new DeferredSpanExporter(delegate, bspMaxQueueSize);
+        this.spanExporter = deferredSpanExporter;
+
+        // OTEL_TRACES_SAMPLER, OTEL_TRACES_SAMPLER_ARG
+        final String sampler = System.getProperty("otel.traces.sampler", System.getenv("OTEL_TRACES_SAMPLER"));
+        final String samplerArg = System.getProperty("otel.traces.sampler.arg", System.getenv("OTEL_TRACES_SAMPLER_ARG"));
+        Sampler headSampler = newHeadSampler(sampler, samplerArg);
+        logger.debug("OpenTelemetry: Sampler: {}", headSampler.getDescription());
+        sdkTracerProviderBuilder.setSampler(metricsSpanProcessor == null ? headSampler : MetricsSpanProcessor.recordingSampler(headSampler));
+        if (TailSamplingSpanExporter.INTERESTING_BUILDS_SAMPLER.equals(sampler)) {
+            long buildDurationThresholdMillis = TailSamplingSpanExporter.DEFAULT_BUILD_DURATION_THRESHOLD_MILLIS;
+            if (StringUtils.isNotBlank(samplerArg)) {
+                try {
+                    buildDurationThresholdMillis = Long.parseLong(samplerArg.trim());
                 } catch (NumberFormatException e) {
-                    logger.warn("OpenTelemetry: Skip invalid OTLP timeout " + otlpExporterTimeoutMillis, e);
+                    logger.warn("OpenTelemetry: Skip invalid otel.traces.sampler.arg " + samplerArg, e);
                 }
             }
+            final int maxBufferedSpans = (int) OtelUtils.getLongConfiguration("otel.traces.sampler.max.buffered.spans", "OTEL_TRACES_SAMPLER_MAX_BUFFERED_SPANS", TailSamplingSpanExporter.DEFAULT_MAX_BUFFERED_SPANS);
+            logger.debug("OpenTelemetry: Tail sampling of the builds, build duration threshold: {}ms, max buffered spans: {}", buildDurationThresholdMillis, maxBufferedSpans);
+            this.spanExporter = new TailSamplingSpanExporter(spanExporter, TimeUnit.MILLISECONDS.toNanos(buildDurationThresholdMillis),
+                    maxBufferedSpans, bspMaxExportBatchSize, new InMemoryMojoDurationBaseline());
+        }
 
-            this.spanExporter = spanExporterBuilder.build();
+        this.loadSheddingSpanProcessor = LoadSheddingSpanProcessor.create(spanExporter, bspMaxQueueSize,
+                (exporter, maxQueueSize) -> BatchSpanProcessor.builder(exporter)
+                        .setScheduleDelay(bspScheduleDelayMillis, TimeUnit.MILLISECONDS)
+                        .setMaxQueueSize(maxQueueSize)
+                        .setMaxExportBatchSize(bspMaxExportBatchSize)
+                        .setExporterTimeout(bspExportTimeoutMillis, TimeUnit.MILLISECONDS)
+                        .build());
+        sdkTracerProviderBuilder.addSpanProcessor(loadSheddingSpanProcessor);
+    }
 
-            // OTEL_RESOURCE_ATTRIBUTES
-            AttributesBuilder resourceAttributesBuilder = Attributes.builder();
-            Resource mavenResource = getMavenResource();
-            resourceAttributesBuilder.putAll(mavenResource.getAttributes());
-            String otelResourceAttributesAsString = System.getProperty("otel.resource.attributes",
-                    System.getenv("OTEL_RESOURCE_ATTRIBUTES"));
-            if (StringUtils.isNotBlank(otelResourceAttributesAsString)) {
-                Map<String, String> otelResourceAttributes = OtelUtils.getCommaSeparatedMap(otelResourceAttributesAsString);
-                // see io.opentelemetry.sdk.autoconfigure.EnvironmentResource.getAttributes
-                otelResourceAttributes.forEach(resourceAttributesBuilder::put);
+    /**
+     * Head sampler of the builds, mimics the {@code otel.traces.sampler} values of the SDK Autoconfigure: the sampling
+     * decision is made on the root span of the build (or by the CI platform propagating the {@code TRACEPARENT}) and
+     * applies to all the spans of the build. The {@code interesting_builds} tail sampling records all the builds.
+     *
+     * @param sampler    {@code always_on}, {@code always_off}, {@code traceidratio}, {@code parentbased_always_on}
+     *                   (default), {@code parentbased_always_off}, {@code parentbased_traceidratio} or
+     *                   {@code interesting_builds}
+     * @param samplerArg ratio of the {@code traceidratio} samplers, default {@code 1.0}
+     */
+    @Nonnull
+    Sampler newHeadSampler(@Nullable String sampler, @Nullable String samplerArg) {
+        if (StringUtils.isBlank(sampler)) {
+            return Sampler.parentBased(Sampler.alwaysOn());
+        }
+        double ratio = 1.0;
+        if (sampler.endsWith("traceidratio") && StringUtils.isNotBlank(samplerArg)) {
+            try {
+                ratio = Double.parseDouble(samplerArg.trim());
+            } catch (NumberFormatException e) {
+                logger.warn("OpenTelemetry: Skip invalid otel.traces.sampler.arg " + samplerArg, e);
             }
-            final Attributes resourceAttributes = resourceAttributesBuilder.build();
+        }
+        switch (sampler) {
+            case "always_on":
+                return Sampler.alwaysOn();
+            case "always_off":
+                return Sampler.alwaysOff();
+            case "traceidratio":
+                return Sampler.traceIdRatioBased(ratio);
+            case "parentbased_always_off":
+                return Sampler.parentBased(Sampler.alwaysOff());
+            case "parentbased_traceidratio":
+                return Sampler.parentBased(Sampler.traceIdRatioBased(ratio));
+            case "parentbased_always_on":
+            case TailSamplingSpanExporter.INTERESTING_BUILDS_SAMPLER:
+                return Sampler.parentBased(Sampler.alwaysOn());
+            default:
+                logger.warn("OpenTelemetry: Skip unsupported otel.traces.sampler " + sampler);
+                return Sampler.parentBased(Sampler.alwaysOn());
+        }
+    }
 
-            logger.debug("OpenTelemetry: Export OpenTelemetry traces to {} with attributes: {}", otlpEndpoint, resourceAttributes);
+    /**
+     * OTLP exporter configured with the {@code otel.exporter.otlp.*} system properties and {@code OTEL_EXPORTER_OTLP_*}
+     * environment variables: OTLP/GRPC by default, OTLP/HTTP with {@code otel.exporter.otlp.protocol=http/protobuf}
+     * to not load the GRPC and Netty stack
+     */
+    @Nonnull
+    /**
+     * @return {@code otel.exporter.otlp.max.request.size}, max size in bytes of the OTLP requests
+     */
+    static int getOtlpMaxRequestSize() {
+        // OTEL_EXPORTER_OTLP_MAX_REQUEST_SIZE
+        long otlpMaxRequestSize = OtelUtils.getLongConfiguration("otel.exporter.otlp.max.request.size", "OTEL_EXPORTER_OTLP_MAX_REQUEST_SIZE", SpanBatchSplitter.DEFAULT_MAX_REQUEST_SIZE);
+        if (otlpMaxRequestSize <= 0 || otlpMaxRequestSize > Integer.MAX_VALUE) {
+            LoggerFactory.getLogger(OpenTelemetrySdkService.class).warn("OpenTelemetry: Skip invalid otel.exporter.otlp.max.request.size " + otlpMaxRequestSize);
+            otlpMaxRequestSize = SpanBatchSplitter.DEFAULT_MAX_REQUEST_SIZE;
+        }
+        return (int) otlpMaxRequestSize;
+    }
+
+    static OtlpExporter newOtlpExporter(@Nonnull String otlpEndpoint) {
+        // OTEL_EXPORTER_OTLP_HEADERS
+        String otlpExporterHeadersAsString = System.getProperty("otel.exporter.otlp.headers",
+                System.getenv("OTEL_EXPORTER_OTLP_HEADERS"));
+        Map<String, String> otlpExporterHeaders = OtelUtils.getCommaSeparatedMap(otlpExporterHeadersAsString);
 
-            final BatchSpanProcessor batchSpanProcessor = BatchSpanProcessor.builder(spanExporter).build();
-            SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder()
-                    .setResource(Resource.create(resourceAttributes))
-                    .addSpanProcessor(batchSpanProcessor)
-                    .build();
+        // OTEL_EXPORTER_OTLP_TIMEOUT
+        Duration otlpExporterTimeout = null;
+        String otlpExporterTimeoutMillis = System.getProperty("otel.exporter.otlp.timeout",
+                System.getenv("OTEL_EXPORTER_OTLP_TIMEOUT"));
+        if (StringUtils.isNotBlank(otlpExporterTimeoutMillis)) {
+            try {
+                otlpExporterTimeout = Duration.ofMillis(Long.parseLong(otlpExporterTimeoutMillis));
+            } catch (NumberFormatException e) {
+                LoggerFactory.getLogger(OpenTelemetrySdkService.class).warn("OpenTelemetry: Skip invalid OTLP timeout " + otlpExporterTimeoutMillis, e);
+            }
+        }
 
-            this.openTelemetrySdk = OpenTelemetrySdk.builder()
-                    .setTracerProvider(sdkTracerProvider)
-                    .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
-                    .buildAndRegisterGlobal();
+        // OTEL_EXPORTER_OTLP_COMPRESSION
+        String otlpCompression = System.getProperty("otel.exporter.otlp.compression",
+                System.getenv("OTEL_EXPORTER_OTLP_COMPRESSION"));
+        if (StringUtils.isNotBlank(otlpCompression) && !OTLP_COMPRESSION_GZIP.equals(otlpCompression) && !OTLP_COMPRESSION_NONE.equals(otlpCompression)) {
+            LoggerFactory.getLogger(OpenTelemetrySdkService.class).warn("OpenTelemetry: Skip unsupported otel.exporter.otlp.compression " + otlpCompression + ", use " + OTLP_COMPRESSION_NONE);
+            otlpCompression = null;
         }
-        this.tracer = GlobalOpenTelemetry.getTracer("io.opentelemetry.contrib.maven");
+
+        final int otlpMaxRequestSize = getOtlpMaxRequestSize();
+
+        // OTEL_EXPORTER_OTLP_PROTOCOL
+        String otlpProtocol = System.getProperty("otel.exporter.otlp.protocol",
+                System.getenv("OTEL_EXPORTER_OTLP_PROTOCOL"));
+        if (OTLP_PROTOCOL_HTTP_PROTOBUF.equals(otlpProtocol)) {
+            OtlpHttpSpanExporterBuilder spanExporterBuilder = OtlpHttpSpanExporter.builder()
+                    .setEndpoint(otlpEndpoint)
+                    .setMaxRequestSize(otlpMaxRequestSize);
+            otlpExporterHeaders.forEach(spanExporterBuilder::addHeader);
+            if (otlpExporterTimeout != null) {
+                spanExporterBuilder.setTimeout(otlpExporterTimeout);
+            }
+            if (StringUtils.isNotBlank(otlpCompression)) {
+                spanExporterBuilder.setCompression(otlpCompression);
+            }
+            return spanExporterBuilder.build();
+        }
+        if (StringUtils.isNotBlank(otlpProtocol) && !OTLP_PROTOCOL_GRPC.equals(otlpProtocol)) {
+            LoggerFactory.getLogger(OpenTelemetrySdkService.class).warn("OpenTelemetry: Skip unsupported otel.exporter.otlp.protocol " + otlpProtocol + ", use " + OTLP_PROTOCOL_GRPC);
+        }
+        // OtlpGrpcSpanExporterBuilder spanExporterBuilder = OtlpGrpcSpanExporter.builder();
+        MyOtlpGrpcSpanExporterBuilder spanExporterBuilder = MyOtlpGrpcSpanExporter.builder();
+        spanExporterBuilder.setEndpoint(otlpEndpoint);
+        spanExporterBuilder.setMaxRequestSize(otlpMaxRequestSize);
+        otlpExporterHeaders.forEach(spanExporterBuilder::addHeader);
+        if (otlpExporterTimeout != null) {
+            spanExporterBuilder.setTimeout(otlpExporterTimeout);
+        }
+        if (StringUtils.isNotBlank(otlpCompression)) {
+            spanExporterBuilder.setCompression(otlpCompression);
+        }
+        return spanExporterBuilder.build();
+    }
+
+    /**
+     * Record on the given span (typically the root span of the build) the spans dropped because the span exporter
+     * couldn't keep up, see {@link LoadSheddingSpanProcessor}
+     */
+    public void addDroppedSpansAttributes(@Nonnull Span span) {
+        LoadSheddingSpanProcessor loadSheddingSpanProcessor = getLoadSheddingSpanProcessor();
+        if (loadSheddingSpanProcessor != null) {
+            long droppedSpans = loadSheddingSpanProcessor.addDroppedSpansAttributes(span);
+            if (droppedSpans > 0) {
+                logger.warn("OpenTelemetry: " + droppedSpans + " spans dropped because the span exporter couldn't keep up, consider increasing -Dotel.bsp.max.queue.size");
+            }
+        }
+    }
+
+    /**
+     * Record on the given span (typically the root span of the build) the peak memory usages, the GC activity and the
+     * memory threshold crossings of the Maven JVM during the build, see {@link JvmMetricsSampler}
+     */
+    public void addJvmMetricsAttributes(@Nonnull Span span) {
+        awaitSdk();
+        JvmMetricsSampler jvmMetricsSampler = this.jvmMetricsSampler;
+        if (jvmMetricsSampler != null) {
+            jvmMetricsSampler.addBuildAttributes(span);
+        }
+    }
+
+    /**
+     * Persist the durations of the mojo executions recorded during the build in the local baseline, see
+     * {@link FileMojoDurationBaseline#store()}
+     */
+    public void storeMojoDurationBaseline() {
+        FileMojoDurationBaseline mojoDurationBaseline = this.mojoDurationBaseline;
+        if (mojoDurationBaseline != null) {
+            mojoDurationBaseline.store();
+        }
+    }
+
+    /**
+     * @return {@code false} if neither traces nor metrics are exported (no {@code otel.exporter.otlp.endpoint} and no
+     * {@code otel.exporter.otlp.file}) and the local baseline of the mojo durations is not enabled, the build is then
+     * not observed at all
+     */
+    public boolean isEnabled() {
+        return sdkInitialization != null || mojoDurationBaseline != null;
+    }
+
+    /**
+     * @return {@code null} if the local baseline of the mojo durations is disabled
+     */
+    @Nullable
+    public MojoDurationBaseline getMojoDurationBaseline() {
+        return mojoDurationBaseline;
+    }
+
+    /**
+     * @return min difference between the duration of a mojo execution and the median of its baseline for the mojo
+     * execution to be reported as a regression, in milliseconds
+     */
+    public long getRegressionThresholdMillis() {
+        return regressionThresholdMillis;
+    }
+
+    /**
+     * @return {@code null} if the spans are not exported
+     */
+    @Nullable
+    LoadSheddingSpanProcessor getLoadSheddingSpanProcessor() {
+        awaitSdk();
+        return loadSheddingSpanProcessor;
+    }
+
+    /**
+     * @return {@code null} if the export of the metrics is disabled
+     */
+    @Nullable
+    public MetricsSpanProcessor getMetricsSpanProcessor() {
+        return metricsSpanProcessor;
     }
 
     public Tracer getTracer() {
+        awaitSdk();
         if (tracer == null) {
             throw new IllegalStateException("Not initialized");
         }
@@ -168,4 +831,25 @@ public class OpenTelemetrySdkService implements Initializable, Disposable {
         final Attributes attributes = Attributes.of(ResourceAttributes.SERVICE_NAME, MavenOtelSemanticAttributes.ServiceNameValues.SERVICE_NAME_VALUE, ResourceAttributes.SERVICE_VERSION, mavenVersion);
         return Resource.create(attributes);
     }
+
+    /**
+     * Exporters created in the background by {@link #initialize()} and closed by {@link #dispose()}
+     */
+    static class Exporters {
+        final List<SpanExporter> spanExporters = new ArrayList<>();
+        /**
+         * Exporter of the metrics, shares its GRPC channel or HTTP connection with the spans unless the export of the
+         * spans is disabled
+         */
+        @Nullable
+        OtlpExporter metricsExporter;
+
+        @Nullable
+        SpanExporter getSpanExporter() {
+            if (spanExporters.isEmpty()) {
+                return null;
+            }
+            return spanExporters.size() == 1 ? spanExporters.get(0) : SpanExporter.composite(spanExporters);
+        }
+    }
 }
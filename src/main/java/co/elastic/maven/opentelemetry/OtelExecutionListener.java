@@ -6,9 +6,11 @@
 package co.elastic.maven.opentelemetry;
 
 import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import co.elastic.maven.opentelemetry.surefire.SurefireReportsIngester;
 import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanBuilder;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
@@ -20,6 +22,7 @@ import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporterBuilder;
 import io.opentelemetry.sdk.OpenTelemetrySdk;
 import io.opentelemetry.sdk.metrics.SdkMeterProvider;
 import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.ReadableSpan;
 import io.opentelemetry.sdk.trace.SdkTracerProvider;
 import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
 import io.opentelemetry.sdk.trace.export.SpanExporter;
@@ -27,12 +30,15 @@ import io.opentelemetry.semconv.resource.attributes.ResourceAttributes;
 import org.apache.maven.execution.AbstractExecutionListener;
 import org.apache.maven.execution.ExecutionEvent;
 import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenSession;
+import org.apache.maven.execution.ProjectDependencyGraph;
+import org.apache.maven.model.Plugin;
 import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.rtinfo.RuntimeInformation;
-import org.codehaus.plexus.component.annotations.Component;
-import org.codehaus.plexus.component.annotations.Requirement;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystemSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,8 +46,15 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -50,20 +63,65 @@ import java.util.concurrent.atomic.AtomicInteger;
  * ({@link #projectSucceeded(ExecutionEvent)} and {@link #projectFailed(ExecutionEvent)}) rather than on the end of the
  * Maven session  {@link #sessionEnded(ExecutionEvent)} because OpenTelemetry and GRPC classes are unloaded by the Maven
  * classloader before {@link #sessionEnded(ExecutionEvent)} causing {@link NoClassDefFoundError} messages in the logs.
+ *
+ * One instance, with its own {@link SpanRegistry}, per Maven session (see
+ * {@link #registerOtelExecutionListener(MavenSession, OpenTelemetrySdkService)}) so that a long-lived JVM (e.g. Maven
+ * Daemon) runs sequential and concurrent sessions sharing the {@link OpenTelemetrySdkService}.
  */
-@Component(role = ExecutionListener.class, hint = "otel-execution-listener")
 public class OtelExecutionListener extends AbstractExecutionListener {
 
+    static final int MAX_LOGGED_REGRESSIONS = 10;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    @Requirement
-    private SpanRegistry spanRegistry;
+    private final SpanRegistry spanRegistry;
+
+    private final OpenTelemetrySdkService openTelemetrySdkService;
+
+    private final ConcurrentMap<SpanRegistry.ProjectIdentity, ProjectSpanTemplate> projectSpanTemplates = new ConcurrentHashMap<>(32);
+    private final ConcurrentMap<String, PluginSpanTemplate> pluginSpanTemplates = new ConcurrentHashMap<>(32);
+    /**
+     * Resources used by the builder thread at the start of the recorded mojo executions
+     */
+    private final ConcurrentMap<MojoExecution, MojoResourceUsage> mojoResourceUsages = new ConcurrentHashMap<>(32);
+    /**
+     * Start of the mojo executions compared to their baseline, see {@link #getEventNanos(ExecutionEvent)}
+     */
+    private final ConcurrentMap<MojoExecution, Long> mojoStartNanos = new ConcurrentHashMap<>(32);
+    /**
+     * Mojo executions of the session significantly slower than their baseline, summarized at the end of the session
+     */
+    private final Queue<String> regressions = new ConcurrentLinkedQueue<>();
+
+    private final ReactorCriticalPath reactorCriticalPath = new ReactorCriticalPath();
+
+    private final SurefireReportsIngester surefireReportsIngester = new SurefireReportsIngester();
+
+    private final ForkedProcessContextPropagator forkedProcessContextPropagator = new ForkedProcessContextPropagator();
+
+    /**
+     * {@code null} if the repository session of the Maven session was read-only when the extension was registered
+     */
+    @Nullable
+    private volatile OtelTransferListener transferListener;
+
+    /**
+     * {@code null} if the repository session of the Maven session was read-only when the extension was registered
+     */
+    @Nullable
+    private volatile OtelRepositoryListener repositoryListener;
 
-    @Requirement
-    private OpenTelemetrySdkService openTelemetrySdkService;
+    /**
+     * @param spanRegistry spans of the session
+     */
+    OtelExecutionListener(@Nonnull SpanRegistry spanRegistry, @Nonnull OpenTelemetrySdkService openTelemetrySdkService) {
+        this.spanRegistry = spanRegistry;
+        this.openTelemetrySdkService = openTelemetrySdkService;
+    }
 
     @Override
     public void sessionStarted(ExecutionEvent executionEvent) {
+        openTelemetrySdkService.sessionStarted();
         MavenProject project = executionEvent.getSession().getTopLevelProject();
         TextMapGetter<Map<String, String>> getter = new TextMapGetter<Map<String, String>>() {
             @Override
@@ -81,11 +139,13 @@ public class OtelExecutionListener extends AbstractExecutionListener {
         try (Scope scope = context.makeCurrent()) {
             final String spanName = "Build: " + project.getGroupId() + ":" + project.getArtifactId(); // TODO find better name
             logger.debug("OpenTelemetry: Start session span: {}", spanName);
-            Span span = this.openTelemetrySdkService.getTracer().spanBuilder(spanName)
-                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_GROUP_ID, project.getGroupId())
-                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, project.getArtifactId())
-                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_VERSION, project.getVersion())
+            Span span = setStartTimestamp(this.openTelemetrySdkService.getTracer().spanBuilder(spanName)
+                    .setAllAttributes(getProjectSpanTemplate(project).attributes), executionEvent)
                     .startSpan();
+            MavenExecutionRequest request = executionEvent.getSession().getRequest();
+            if (request != null) {
+                span.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_THREADS, request.getDegreeOfConcurrency());
+            }
             spanRegistry.setRootSpan(span);
         }
     }
@@ -93,23 +153,28 @@ public class OtelExecutionListener extends AbstractExecutionListener {
     @Override
     public void projectStarted(ExecutionEvent executionEvent) {
         MavenProject project = executionEvent.getProject();
+        ProjectSpanTemplate projectSpanTemplate = getProjectSpanTemplate(project);
         final Span rootSpan = spanRegistry.getRootSpanNotNull();
         try (Scope scope = rootSpan.makeCurrent()) {
-            final String spanName = project.getGroupId() + ":" + project.getArtifactId();
-            logger.debug("OpenTelemetry: Start project span: {}", spanName);
-            Span span = this.openTelemetrySdkService.getTracer().spanBuilder(spanName)
-                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_GROUP_ID, project.getGroupId())
-                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, project.getArtifactId())
-                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_VERSION, project.getVersion())
+            logger.debug("OpenTelemetry: Start project span: {}", projectSpanTemplate.spanName);
+            Span span = setStartTimestamp(this.openTelemetrySdkService.getTracer().spanBuilder(projectSpanTemplate.spanName)
+                    .setAllAttributes(projectSpanTemplate.attributes), executionEvent)
                     .startSpan();
             spanRegistry.putSpan(span, project);
+            spanRegistry.setCurrentSpan(span, project);
         }
+        reactorCriticalPath.projectStarted(project, getEventNanos(executionEvent));
     }
 
     @Override
     public void projectSucceeded(ExecutionEvent executionEvent) {
         logger.debug("OpenTelemetry: End succeeded project span: {}:{}", executionEvent.getProject().getArtifactId(), executionEvent.getProject().getArtifactId());
-        spanRegistry.removeSpan(executionEvent.getProject()).end();
+        final Span span = spanRegistry.removeSpan(executionEvent.getProject());
+        addResolutionAttributes(executionEvent.getProject(), span);
+        end(span, executionEvent);
+        spanRegistry.setCurrentSpan(null, null);
+        reactorCriticalPath.projectEnded(executionEvent.getProject(), getEventNanos(executionEvent));
+        projectSpanTemplates.remove(new SpanRegistry.ProjectIdentity(executionEvent.getProject()));
     }
 
     @Override
@@ -118,62 +183,335 @@ public class OtelExecutionListener extends AbstractExecutionListener {
         final Span span = spanRegistry.removeSpan(executionEvent.getProject());
         span.setStatus(StatusCode.ERROR);
         span.recordException(executionEvent.getException());
-        span.end();
+        addResolutionAttributes(executionEvent.getProject(), span);
+        end(span, executionEvent);
+        spanRegistry.setCurrentSpan(null, null);
+        reactorCriticalPath.projectEnded(executionEvent.getProject(), getEventNanos(executionEvent));
+        projectSpanTemplates.remove(new SpanRegistry.ProjectIdentity(executionEvent.getProject()));
     }
 
     @Override
     public void mojoStarted(ExecutionEvent executionEvent) {
 
         MojoExecution mojoExecution = executionEvent.getMojoExecution();
+        MavenProject project = executionEvent.getProject();
+        ProjectSpanTemplate projectSpanTemplate = getProjectSpanTemplate(project);
+        PluginSpanTemplate pluginSpanTemplate = getPluginSpanTemplate(mojoExecution.getPlugin());
 
-        Span rootSpan = spanRegistry.getSpan(executionEvent.getProject());
+        Span rootSpan = spanRegistry.getSpan(project);
         try (Scope scope = rootSpan.makeCurrent()) {
 
-            final String spanName = getPluginArtifactIdShortName(mojoExecution.getArtifactId()) + ":" + mojoExecution.getGoal() +
-                    " (" + executionEvent.getMojoExecution().getExecutionId() + ")" +
-                    " @ " + executionEvent.getProject().getArtifactId();
+            final String spanName = new StringBuilder(64)
+                    .append(pluginSpanTemplate.spanNamePrefix).append(mojoExecution.getGoal())
+                    .append(" (").append(mojoExecution.getExecutionId()).append(")")
+                    .append(projectSpanTemplate.mojoSpanNameSuffix)
+                    .toString();
             logger.debug("OpenTelemetry: Start mojo execution: span {}", spanName);
-            Span span = this.openTelemetrySdkService.getTracer().spanBuilder(
-                            spanName)
-
-                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_GROUP_ID, executionEvent.getProject().getGroupId())
-                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, executionEvent.getProject().getArtifactId())
-                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_VERSION, executionEvent.getProject().getVersion())
-
-                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_PLUGIN_GROUP_ID, mojoExecution.getPlugin().getGroupId())
-                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_PLUGIN_ARTIFACT_ID, mojoExecution.getPlugin().getArtifactId())
-                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_PLUGIN_VERSION, mojoExecution.getPlugin().getVersion())
+            Span span = setStartTimestamp(this.openTelemetrySdkService.getTracer().spanBuilder(spanName)
+                    .setAllAttributes(projectSpanTemplate.attributes)
+                    .setAllAttributes(pluginSpanTemplate.attributes)
                     .setAttribute(MavenOtelSemanticAttributes.MAVEN_EXECUTION_GOAL, mojoExecution.getGoal())
                     .setAttribute(MavenOtelSemanticAttributes.MAVEN_EXECUTION_ID, mojoExecution.getExecutionId())
-                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_EXECUTION_LIFECYCLE_PHASE, mojoExecution.getLifecyclePhase())
+                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_EXECUTION_LIFECYCLE_PHASE, mojoExecution.getLifecyclePhase()), executionEvent)
                     .startSpan();
-            spanRegistry.putSpan(span, mojoExecution);
+            spanRegistry.putSpan(span, mojoExecution, project);
+            spanRegistry.setCurrentSpan(span, project);
+            if (openTelemetrySdkService.getMojoDurationBaseline() != null) {
+                mojoStartNanos.put(mojoExecution, getEventNanos(executionEvent));
+            }
+            if (executionEvent instanceof AsyncExecutionListener.DeferredEvent) {
+                logger.debug("OpenTelemetry: Execution events dispatched asynchronously, don't propagate the context to {}", mojoExecution);
+            } else {
+                forkedProcessContextPropagator.injectContext(mojoExecution, span);
+                if (span.isRecording()) {
+                    // last, the work of the listener is not accounted to the mojo
+                    mojoResourceUsages.put(mojoExecution, MojoResourceUsage.sample());
+                }
+            }
+        }
+        if (executionEvent instanceof AsyncExecutionListener.DeferredEvent) {
+            surefireReportsIngester.mojoStarted(mojoExecution, TimeUnit.NANOSECONDS.toMillis(((AsyncExecutionListener.DeferredEvent) executionEvent).getEpochNanos()));
+        } else {
+            surefireReportsIngester.mojoStarted(mojoExecution);
         }
     }
 
     @Override
     public void mojoSucceeded(ExecutionEvent executionEvent) {
         MojoExecution mojoExecution = executionEvent.getMojoExecution();
+        // first, the work of the listener is not accounted to the mojo
+        MojoResourceUsage startResourceUsage = mojoResourceUsages.remove(mojoExecution);
+        MojoResourceUsage endResourceUsage = startResourceUsage == null ? null : MojoResourceUsage.sample();
         logger.debug("OpenTelemetry: End succeeded mojo execution span: {}", mojoExecution);
-        Span mojoExecutionSpan = spanRegistry.removeSpan(mojoExecution);
+        Span mojoExecutionSpan = spanRegistry.removeSpan(mojoExecution, executionEvent.getProject());
+        if (endResourceUsage != null) {
+            endResourceUsage.addDeltaAttributes(startResourceUsage, mojoExecutionSpan);
+        }
+        compareToBaseline(executionEvent, mojoExecutionSpan);
         mojoExecutionSpan.setStatus(StatusCode.OK);
-
-        mojoExecutionSpan.end();
+        ingestSurefireReportsAndEnd(executionEvent, mojoExecutionSpan);
+        spanRegistry.setCurrentSpan(spanRegistry.findSpan(executionEvent.getProject()), executionEvent.getProject());
     }
 
     @Override
     public void mojoFailed(ExecutionEvent executionEvent) {
         MojoExecution mojoExecution = executionEvent.getMojoExecution();
+        // first, the work of the listener is not accounted to the mojo
+        MojoResourceUsage startResourceUsage = mojoResourceUsages.remove(mojoExecution);
+        MojoResourceUsage endResourceUsage = startResourceUsage == null ? null : MojoResourceUsage.sample();
         logger.debug("OpenTelemetry: End failed mojo execution span: {}", mojoExecution);
-        Span mojoExecutionSpan = spanRegistry.removeSpan(mojoExecution);
+        // the duration of a failed execution is not representative
+        mojoStartNanos.remove(mojoExecution);
+        Span mojoExecutionSpan = spanRegistry.removeSpan(mojoExecution, executionEvent.getProject());
+        if (endResourceUsage != null) {
+            endResourceUsage.addDeltaAttributes(startResourceUsage, mojoExecutionSpan);
+        }
         mojoExecutionSpan.setStatus(StatusCode.ERROR, "Mojo Failed"); // TODO verify description
-        mojoExecutionSpan.end();
+        ingestSurefireReportsAndEnd(executionEvent, mojoExecutionSpan);
+        spanRegistry.setCurrentSpan(spanRegistry.findSpan(executionEvent.getProject()), executionEvent.getProject());
+    }
+
+    /**
+     * Compare the duration of the succeeded mojo execution to its baseline, then record it in the baseline. The mojo
+     * execution is a regression when it is slower than the 95th percentile of its baseline and than the median by more
+     * than the {@code otel.instrumentation.maven.baseline.regression.threshold}, ignoring the noise of the short mojos.
+     */
+    private void compareToBaseline(@Nonnull ExecutionEvent executionEvent, @Nonnull Span mojoExecutionSpan) {
+        MojoExecution mojoExecution = executionEvent.getMojoExecution();
+        Long startNanos = mojoStartNanos.remove(mojoExecution);
+        MojoDurationBaseline mojoDurationBaseline = openTelemetrySdkService.getMojoDurationBaseline();
+        if (startNanos == null || mojoDurationBaseline == null) {
+            return;
+        }
+        long durationNanos = getEventNanos(executionEvent) - startNanos;
+        ProjectSpanTemplate projectSpanTemplate = getProjectSpanTemplate(executionEvent.getProject());
+        PluginSpanTemplate pluginSpanTemplate = getPluginSpanTemplate(mojoExecution.getPlugin());
+        Attributes mojoAttributes = Attributes.builder()
+                .putAll(projectSpanTemplate.attributes)
+                .putAll(pluginSpanTemplate.attributes)
+                .put(MavenOtelSemanticAttributes.MAVEN_EXECUTION_GOAL, mojoExecution.getGoal())
+                .put(MavenOtelSemanticAttributes.MAVEN_EXECUTION_ID, mojoExecution.getExecutionId())
+                .build();
+        long p50Nanos = mojoDurationBaseline.getP50Nanos(mojoAttributes);
+        long p95Nanos = mojoDurationBaseline.getP95Nanos(mojoAttributes);
+        mojoDurationBaseline.record(mojoAttributes, durationNanos);
+        if (p50Nanos < 0 || p95Nanos < 0) {
+            return;
+        }
+        boolean regression = durationNanos > p95Nanos
+                && durationNanos - p50Nanos > TimeUnit.MILLISECONDS.toNanos(openTelemetrySdkService.getRegressionThresholdMillis());
+        mojoExecutionSpan.setAttribute(MavenOtelSemanticAttributes.MAVEN_EXECUTION_BASELINE_P50, TimeUnit.NANOSECONDS.toMillis(p50Nanos));
+        mojoExecutionSpan.setAttribute(MavenOtelSemanticAttributes.MAVEN_EXECUTION_BASELINE_P95, TimeUnit.NANOSECONDS.toMillis(p95Nanos));
+        mojoExecutionSpan.setAttribute(MavenOtelSemanticAttributes.MAVEN_EXECUTION_REGRESSION, regression);
+        if (regression) {
+            regressions.add(String.format(Locale.ROOT, "%s%s (%s)%s: %.1fs, usually %.1fs (p95 %.1fs)",
+                    pluginSpanTemplate.spanNamePrefix, mojoExecution.getGoal(), mojoExecution.getExecutionId(), projectSpanTemplate.mojoSpanNameSuffix,
+                    durationNanos / 1e9, p50Nanos / 1e9, p95Nanos / 1e9));
+        }
+    }
+
+    /**
+     * Log the mojo executions of the session significantly slower than their baseline, in the order they ended
+     */
+    private void logRegressions() {
+        List<String> regressions = new ArrayList<>(this.regressions);
+        this.regressions.clear();
+        if (regressions.isEmpty()) {
+            return;
+        }
+        StringBuilder summary = new StringBuilder("OpenTelemetry: ").append(regressions.size())
+                .append(" mojo execution(s) slower than in the previous builds:");
+        for (int i = 0; i < Math.min(regressions.size(), MAX_LOGGED_REGRESSIONS); i++) {
+            summary.append(System.lineSeparator()).append("  ").append(regressions.get(i));
+        }
+        if (regressions.size() > MAX_LOGGED_REGRESSIONS) {
+            summary.append(System.lineSeparator()).append("  ...");
+        }
+        logger.info(summary.toString());
+    }
+
+    private void addResolutionAttributes(@Nonnull MavenProject project, @Nonnull Span projectSpan) {
+        OtelRepositoryListener repositoryListener = this.repositoryListener;
+        if (repositoryListener != null) {
+            repositoryListener.addProjectAttributes(project, projectSpan);
+        }
+    }
+
+    /**
+     * Test spans and metrics of the Surefire and Failsafe mojo executions, ingested in the background, then end the
+     * span of the mojo execution with the time of the event. Never fails the build.
+     */
+    private void ingestSurefireReportsAndEnd(@Nonnull ExecutionEvent executionEvent, @Nonnull Span mojoExecutionSpan) {
+        boolean ingested = false;
+        try {
+            ingested = surefireReportsIngester.mojoEnded(executionEvent.getProject(), executionEvent.getMojoExecution(), mojoExecutionSpan,
+                    openTelemetrySdkService.getTracer(), openTelemetrySdkService.getMetricsSpanProcessor(), getEndEpochNanos(mojoExecutionSpan, executionEvent));
+        } catch (RuntimeException e) {
+            logger.warn("OpenTelemetry: Failure to ingest the Surefire reports of " + executionEvent.getMojoExecution(), e);
+        }
+        if (!ingested) {
+            end(mojoExecutionSpan, executionEvent);
+        }
     }
 
     @Override
     public void sessionEnded(ExecutionEvent event) {
         logger.debug("OpenTelemetry: Maven session ended");
-        spanRegistry.removeRootSpan().end();
+        projectSpanTemplates.clear();
+        pluginSpanTemplates.clear();
+        mojoResourceUsages.clear();
+        mojoStartNanos.clear();
+        // the test spans and the ends of the Surefire mojo execution spans, before the end of the root span
+        surefireReportsIngester.awaitIngestions(SurefireReportsIngester.INGESTION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        // end events lost by the AsyncExecutionListener, don't leave the build without root span
+        List<Span> remainingSpans = spanRegistry.removeRemainingSpans();
+        if (!remainingSpans.isEmpty()) {
+            logger.warn("OpenTelemetry: " + remainingSpans.size() + " mojo execution and project spans not ended by the end of the session, end them");
+            for (Span span : remainingSpans) {
+                end(span, event);
+            }
+        }
+        Span rootSpan = spanRegistry.removeRootSpan();
+        ProjectDependencyGraph projectDependencyGraph = event.getSession() == null ? null : event.getSession().getProjectDependencyGraph();
+        if (projectDependencyGraph != null && rootSpan.isRecording()) {
+            reactorCriticalPath.addCriticalPath(rootSpan, projectDependencyGraph);
+        }
+        reactorCriticalPath.reset();
+        OtelTransferListener transferListener = this.transferListener;
+        if (transferListener != null) {
+            transferListener.addTransferAttributes(rootSpan);
+        }
+        OtelRepositoryListener repositoryListener = this.repositoryListener;
+        if (repositoryListener != null) {
+            repositoryListener.addBuildAttributes(rootSpan);
+            MetricsSpanProcessor metricsSpanProcessor = openTelemetrySdkService.getMetricsSpanProcessor();
+            if (metricsSpanProcessor != null) {
+                repositoryListener.recordMetrics(metricsSpanProcessor);
+            }
+        }
+        openTelemetrySdkService.addDroppedSpansAttributes(rootSpan);
+        openTelemetrySdkService.addJvmMetricsAttributes(rootSpan);
+        end(rootSpan, event);
+        openTelemetrySdkService.startFinalFlush();
+        // overlaps with the final flush
+        logRegressions();
+        openTelemetrySdkService.storeMojoDurationBaseline();
+    }
+
+    /**
+     * Time of the event in nanoseconds, only to compute durations: {@link System#nanoTime()} when the event is
+     * dispatched on the Maven builder thread, the time of the event when dispatched by an {@link AsyncExecutionListener}
+     */
+    private static long getEventNanos(@Nonnull ExecutionEvent executionEvent) {
+        if (executionEvent instanceof AsyncExecutionListener.DeferredEvent) {
+            return ((AsyncExecutionListener.DeferredEvent) executionEvent).getEpochNanos();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Events dispatched by an {@link AsyncExecutionListener} are handled after the fact, their spans are timed with the
+     * time of the event rather than with the clock of the SDK
+     */
+    @Nonnull
+    private static SpanBuilder setStartTimestamp(@Nonnull SpanBuilder spanBuilder, @Nonnull ExecutionEvent executionEvent) {
+        if (executionEvent instanceof AsyncExecutionListener.DeferredEvent) {
+            spanBuilder.setStartTimestamp(((AsyncExecutionListener.DeferredEvent) executionEvent).getEpochNanos(), TimeUnit.NANOSECONDS);
+        }
+        return spanBuilder;
+    }
+
+    /**
+     * @return the time of the event, or the current time of the clock of the SDK that started the span, to end the span
+     * later
+     * @see #setStartTimestamp(SpanBuilder, ExecutionEvent)
+     */
+    private static long getEndEpochNanos(@Nonnull Span span, @Nonnull ExecutionEvent executionEvent) {
+        if (executionEvent instanceof AsyncExecutionListener.DeferredEvent) {
+            return ((AsyncExecutionListener.DeferredEvent) executionEvent).getEpochNanos();
+        }
+        if (span instanceof ReadableSpan) {
+            ReadableSpan readableSpan = (ReadableSpan) span;
+            return readableSpan.toSpanData().getStartEpochNanos() + readableSpan.getLatencyNanos();
+        }
+        return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+
+    /**
+     * @see #setStartTimestamp(SpanBuilder, ExecutionEvent)
+     */
+    private static void end(@Nonnull Span span, @Nonnull ExecutionEvent executionEvent) {
+        if (executionEvent instanceof AsyncExecutionListener.DeferredEvent) {
+            span.end(((AsyncExecutionListener.DeferredEvent) executionEvent).getEpochNanos(), TimeUnit.NANOSECONDS);
+        } else {
+            span.end();
+        }
+    }
+
+    /**
+     * Computed on {@link #projectStarted(ExecutionEvent)} or on first use, evicted at the end of the project. Indexed
+     * by the identity of the project, as the {@link SpanRegistry}, rather than by its GAV.
+     */
+    @Nonnull
+    private ProjectSpanTemplate getProjectSpanTemplate(@Nonnull MavenProject project) {
+        final SpanRegistry.ProjectIdentity projectIdentity = new SpanRegistry.ProjectIdentity(project);
+        ProjectSpanTemplate projectSpanTemplate = projectSpanTemplates.get(projectIdentity);
+        if (projectSpanTemplate == null) {
+            projectSpanTemplate = projectSpanTemplates.computeIfAbsent(projectIdentity, key -> new ProjectSpanTemplate(project));
+        }
+        return projectSpanTemplate;
+    }
+
+    /**
+     * Indexed by {@link Plugin#getKey()} ({@code groupId:artifactId}, cached by the {@link Plugin}) and, when several
+     * versions of a plugin are used in the build, by {@link Plugin#getId()} for the other versions.
+     */
+    @Nonnull
+    private PluginSpanTemplate getPluginSpanTemplate(@Nonnull Plugin plugin) {
+        PluginSpanTemplate pluginSpanTemplate = pluginSpanTemplates.get(plugin.getKey());
+        if (pluginSpanTemplate == null) {
+            pluginSpanTemplate = pluginSpanTemplates.computeIfAbsent(plugin.getKey(), key -> new PluginSpanTemplate(plugin));
+        }
+        if (!Objects.equals(pluginSpanTemplate.version, plugin.getVersion())) {
+            pluginSpanTemplate = pluginSpanTemplates.computeIfAbsent(plugin.getId(), key -> new PluginSpanTemplate(plugin));
+        }
+        return pluginSpanTemplate;
+    }
+
+    /**
+     * Span name and attributes of the project, shared by the span of the project and the spans of its mojo executions
+     */
+    private static class ProjectSpanTemplate {
+        final String spanName;
+        final String mojoSpanNameSuffix;
+        final Attributes attributes;
+
+        ProjectSpanTemplate(@Nonnull MavenProject project) {
+            this.spanName = project.getGroupId() + ":" + project.getArtifactId();
+            this.mojoSpanNameSuffix = " @ " + project.getArtifactId();
+            this.attributes = Attributes.of(
+                    MavenOtelSemanticAttributes.MAVEN_PROJECT_GROUP_ID, project.getGroupId(),
+                    MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, project.getArtifactId(),
+                    MavenOtelSemanticAttributes.MAVEN_PROJECT_VERSION, project.getVersion());
+        }
+    }
+
+    /**
+     * Span name prefix and attributes of the plugin, shared by the spans of all the executions of the plugin
+     */
+    private class PluginSpanTemplate {
+        final String version;
+        final String spanNamePrefix;
+        final Attributes attributes;
+
+        PluginSpanTemplate(@Nonnull Plugin plugin) {
+            this.version = plugin.getVersion();
+            this.spanNamePrefix = getPluginArtifactIdShortName(plugin.getArtifactId()) + ":";
+            this.attributes = Attributes.of(
+                    MavenOtelSemanticAttributes.MAVEN_PLUGIN_GROUP_ID, plugin.getGroupId(),
+                    MavenOtelSemanticAttributes.MAVEN_PLUGIN_ARTIFACT_ID, plugin.getArtifactId(),
+                    MavenOtelSemanticAttributes.MAVEN_PLUGIN_VERSION, plugin.getVersion());
+        }
     }
 
     /**
@@ -197,19 +535,75 @@ public class OtelExecutionListener extends AbstractExecutionListener {
 
 
     /**
-     * Register in given {@link OtelExecutionListener} to the lifecycle of the given {@link MavenSession}
+     * Register a new {@link OtelExecutionListener} to the lifecycle of the given {@link MavenSession}, unless already
+     * registered, see {@link #registerOtelExecutionListener(MavenSession, OtelExecutionListener)}
+     */
+    public static void registerOtelExecutionListener(@Nonnull MavenSession session, @Nonnull OpenTelemetrySdkService openTelemetrySdkService) {
+        if (!openTelemetrySdkService.isEnabled()) {
+            LoggerFactory.getLogger(OtelExecutionListener.class).debug("OpenTelemetry: No exporter configured, OpenTelemetry extension not registered as execution listener.");
+            return;
+        }
+        if (session.getRequest().getExecutionListener() instanceof ChainedExecutionListener) {
+            // registered by OtelLifecycleParticipant#afterSessionStart, resolver listeners included
+            LoggerFactory.getLogger(OtelExecutionListener.class).debug("OpenTelemetry: OpenTelemetry extension already registered as execution listener, skip.");
+            return;
+        }
+        registerOtelExecutionListener(session, new OtelExecutionListener(new SpanRegistry(), openTelemetrySdkService));
+    }
+
+    /**
+     * Register the given {@link OtelExecutionListener} to the lifecycle of the given {@link MavenSession}. Nothing is
+     * registered when the {@link OpenTelemetrySdkService} is disabled so that the extension installed but not
+     * configured (e.g. in {@code .mvn/extensions.xml} of all the repositories) doesn't cost anything per Maven event.
      *
      * @see org.apache.maven.execution.MavenExecutionRequest#setExecutionListener(ExecutionListener)
      */
     public static void registerOtelExecutionListener(@Nonnull MavenSession session, @Nonnull OtelExecutionListener otelExecutionListener) {
+        if (!otelExecutionListener.openTelemetrySdkService.isEnabled()) {
+            LoggerFactory.getLogger(OtelExecutionListener.class).debug("OpenTelemetry: No exporter configured, OpenTelemetry extension not registered as execution listener.");
+            return;
+        }
         @Nullable
         ExecutionListener initialExecutionListener = session.getRequest().getExecutionListener();
         if (initialExecutionListener instanceof ChainedExecutionListener) {
             // already initialized
             LoggerFactory.getLogger(OtelExecutionListener.class).debug("OpenTelemetry: OpenTelemetry extension already registered as execution listener, skip.");
         } else {
-            session.getRequest().setExecutionListener(new ChainedExecutionListener(otelExecutionListener, initialExecutionListener));
+            // OTEL_INSTRUMENTATION_MAVEN_LISTENER_ASYNC_ENABLED
+            final boolean asyncEnabled = "true".equalsIgnoreCase(System.getProperty("otel.instrumentation.maven.listener.async.enabled",
+                    System.getenv("OTEL_INSTRUMENTATION_MAVEN_LISTENER_ASYNC_ENABLED")));
+            ExecutionListener listener = otelExecutionListener;
+            if (asyncEnabled) {
+                long drainTimeoutMillis = OtelUtils.getLongConfiguration("otel.instrumentation.maven.shutdown.timeout", "OTEL_INSTRUMENTATION_MAVEN_SHUTDOWN_TIMEOUT", OpenTelemetrySdkService.DEFAULT_SHUTDOWN_TIMEOUT_MILLIS);
+                listener = new AsyncExecutionListener(otelExecutionListener, AsyncExecutionListener.DEFAULT_QUEUE_CAPACITY, drainTimeoutMillis);
+            }
+            session.getRequest().setExecutionListener(new ChainedExecutionListener(listener, initialExecutionListener));
             LoggerFactory.getLogger(OtelExecutionListener.class).debug("OpenTelemetry: OpenTelemetry extension registered as execution listener. InitialExecutionListener: " + initialExecutionListener);
         }
+        otelExecutionListener.registerResolverListeners(session);
+    }
+
+    /**
+     * Chain an {@link OtelTransferListener} and an {@link OtelRepositoryListener} to the listeners of the repository
+     * session. The repository session is read-only once the projects are read: the resolver is only observed when the
+     * extension is registered by {@link OtelLifecycleParticipant#afterSessionStart(MavenSession)} (extension declared
+     * in {@code .mvn/extensions.xml} or in {@code lib/ext}), not when declared in the {@code pom.xml}.
+     */
+    void registerResolverListeners(@Nonnull MavenSession session) {
+        RepositorySystemSession repositorySession = session.getRepositorySession();
+        if (!(repositorySession instanceof DefaultRepositorySystemSession) || repositorySession.getTransferListener() instanceof OtelTransferListener) {
+            return;
+        }
+        OtelTransferListener transferListener = new OtelTransferListener(repositorySession.getTransferListener(), spanRegistry, openTelemetrySdkService.getTracer());
+        OtelRepositoryListener repositoryListener = new OtelRepositoryListener(repositorySession.getRepositoryListener(), spanRegistry);
+        try {
+            ((DefaultRepositorySystemSession) repositorySession).setTransferListener(transferListener);
+            ((DefaultRepositorySystemSession) repositorySession).setRepositoryListener(repositoryListener);
+            this.transferListener = transferListener;
+            this.repositoryListener = repositoryListener;
+            logger.debug("OpenTelemetry: OpenTelemetry transfer and repository listeners registered");
+        } catch (IllegalStateException e) {
+            logger.debug("OpenTelemetry: Repository session is read-only, artifact transfers and resolutions are not observed");
+        }
     }
 }
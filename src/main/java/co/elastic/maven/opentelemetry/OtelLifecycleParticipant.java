@@ -7,7 +7,6 @@ package co.elastic.maven.opentelemetry;
 
 import org.apache.maven.AbstractMavenLifecycleParticipant;
 import org.apache.maven.MavenExecutionException;
-import org.apache.maven.execution.ExecutionListener;
 import org.apache.maven.execution.MavenSession;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
@@ -15,28 +14,29 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Add the {@link OtelExecutionListener} to the lifecycle of the MAven execution
+ * Add an {@link OtelExecutionListener} to the lifecycle of each Maven session, the {@link OpenTelemetrySdkService} being
+ * shared by the sessions of the JVM
  */
 @Component(role = AbstractMavenLifecycleParticipant.class)
 public class OtelLifecycleParticipant extends AbstractMavenLifecycleParticipant {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    @Requirement(role = ExecutionListener.class, hint = "otel-execution-listener")
-    private OtelExecutionListener otelExecutionListener;
+    @Requirement
+    private OpenTelemetrySdkService openTelemetrySdkService;
 
     /**
      * For an unknown reason, {@link #afterProjectsRead(MavenSession)} is invoked when the module is declared as an extension in pom.xml but {@link #afterSessionStart(MavenSession)} is not invoked
      */
     @Override
     public void afterProjectsRead(MavenSession session) throws MavenExecutionException {
-        OtelExecutionListener.registerOtelExecutionListener(session, this.otelExecutionListener);
+        OtelExecutionListener.registerOtelExecutionListener(session, this.openTelemetrySdkService);
         logger.debug("OpenTelemetry: afterProjectsRead");
     }
 
     @Override
     public void afterSessionStart(MavenSession session) throws MavenExecutionException {
-        OtelExecutionListener.registerOtelExecutionListener(session, this.otelExecutionListener);
+        OtelExecutionListener.registerOtelExecutionListener(session, this.openTelemetrySdkService);
         logger.debug("OpenTelemetry: afterSessionStart");
     }
 
@@ -0,0 +1,308 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes.ResolutionTypeValues;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.trace.Span;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RepositoryListener;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.ArtifactRepository;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts, per project and per repository, the artifacts resolved from the local repository, the artifacts downloaded
+ * from remote repositories and the metadata and snapshot checks sent to remote repositories, to measure the
+ * effectiveness of the local repository cache. No span is created, the counts are recorded on the project spans
+ * ({@link #addProjectAttributes(MavenProject, Span)}), on the root span ({@link #addBuildAttributes(Span)}) and in the
+ * {@value MetricsSpanProcessor#RESOLUTION_METRIC} metric ({@link #recordMetrics(MetricsSpanProcessor)}).
+ *
+ * Chained to the {@link RepositoryListener} of the Maven session.
+ */
+public class OtelRepositoryListener implements RepositoryListener {
+
+    /**
+     * Key of the resolutions not triggered by a project (e.g. resolution of the build extensions)
+     */
+    private static final Object NO_PROJECT = new Object();
+
+    @Nullable
+    private final RepositoryListener delegate;
+    private final SpanRegistry spanRegistry;
+
+    /**
+     * Counters per project ({@link MavenProject} or {@link #NO_PROJECT}) and per repository id
+     */
+    private final ConcurrentMap<Object, ConcurrentMap<String, ResolutionCounters>> resolutionCounters = new ConcurrentHashMap<>();
+
+    public OtelRepositoryListener(@Nullable RepositoryListener delegate, @Nonnull SpanRegistry spanRegistry) {
+        this.delegate = delegate;
+        this.spanRegistry = spanRegistry;
+    }
+
+    @Override
+    public void artifactResolved(RepositoryEvent event) {
+        ArtifactRepository repository = event.getRepository();
+        if (event.getException() == null && repository instanceof LocalRepository) {
+            getCounters(event).local.increment();
+        }
+        if (delegate != null) {
+            delegate.artifactResolved(event);
+        }
+    }
+
+    @Override
+    public void artifactDownloaded(RepositoryEvent event) {
+        if (event.getException() == null && event.getRepository() instanceof RemoteRepository) {
+            getCounters(event).remote.increment();
+        }
+        if (delegate != null) {
+            delegate.artifactDownloaded(event);
+        }
+    }
+
+    @Override
+    public void metadataDownloading(RepositoryEvent event) {
+        if (event.getRepository() instanceof RemoteRepository) {
+            Metadata metadata = event.getMetadata();
+            ResolutionCounters counters = getCounters(event);
+            if (metadata != null && (metadata.getNature() == Metadata.Nature.SNAPSHOT || metadata.getVersion().endsWith("-SNAPSHOT"))) {
+                counters.snapshotChecks.increment();
+            } else {
+                counters.metadataChecks.increment();
+            }
+        }
+        if (delegate != null) {
+            delegate.metadataDownloading(event);
+        }
+    }
+
+    @Override
+    public void artifactDescriptorInvalid(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.artifactDescriptorInvalid(event);
+        }
+    }
+
+    @Override
+    public void artifactDescriptorMissing(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.artifactDescriptorMissing(event);
+        }
+    }
+
+    @Override
+    public void metadataInvalid(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.metadataInvalid(event);
+        }
+    }
+
+    @Override
+    public void artifactResolving(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.artifactResolving(event);
+        }
+    }
+
+    @Override
+    public void metadataResolving(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.metadataResolving(event);
+        }
+    }
+
+    @Override
+    public void metadataResolved(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.metadataResolved(event);
+        }
+    }
+
+    @Override
+    public void artifactDownloading(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.artifactDownloading(event);
+        }
+    }
+
+    @Override
+    public void metadataDownloaded(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.metadataDownloaded(event);
+        }
+    }
+
+    @Override
+    public void artifactInstalling(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.artifactInstalling(event);
+        }
+    }
+
+    @Override
+    public void artifactInstalled(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.artifactInstalled(event);
+        }
+    }
+
+    @Override
+    public void metadataInstalling(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.metadataInstalling(event);
+        }
+    }
+
+    @Override
+    public void metadataInstalled(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.metadataInstalled(event);
+        }
+    }
+
+    @Override
+    public void artifactDeploying(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.artifactDeploying(event);
+        }
+    }
+
+    @Override
+    public void artifactDeployed(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.artifactDeployed(event);
+        }
+    }
+
+    @Override
+    public void metadataDeploying(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.metadataDeploying(event);
+        }
+    }
+
+    @Override
+    public void metadataDeployed(RepositoryEvent event) {
+        if (delegate != null) {
+            delegate.metadataDeployed(event);
+        }
+    }
+
+    @Nonnull
+    private ResolutionCounters getCounters(@Nonnull RepositoryEvent event) {
+        MavenProject project = OtelTransferListener.findProject(event.getTrace());
+        if (project == null) {
+            project = spanRegistry.getCurrentProject();
+        }
+        ArtifactRepository repository = event.getRepository();
+        return resolutionCounters.computeIfAbsent(project == null ? NO_PROJECT : project, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(repository.getId(), k -> new ResolutionCounters());
+    }
+
+    /**
+     * Record on the span of the given project the counts of the resolutions triggered by the project
+     */
+    public void addProjectAttributes(@Nonnull MavenProject project, @Nonnull Span span) {
+        Map<String, ResolutionCounters> countersByRepository = resolutionCounters.get(project);
+        if (countersByRepository != null) {
+            ResolutionCounters total = new ResolutionCounters();
+            countersByRepository.values().forEach(total::add);
+            total.addAttributes(span);
+        }
+    }
+
+    /**
+     * Record on the given span (typically the root span of the build) the total counts and the counts per repository
+     * ({@link MavenOtelSemanticAttributes#MAVEN_BUILD_RESOLUTION_REPOSITORIES}, sorted by repository id)
+     */
+    public void addBuildAttributes(@Nonnull Span span) {
+        if (resolutionCounters.isEmpty()) {
+            return;
+        }
+        ResolutionCounters total = new ResolutionCounters();
+        Map<String, ResolutionCounters> countersByRepository = new TreeMap<>();
+        for (Map<String, ResolutionCounters> projectCounters : resolutionCounters.values()) {
+            projectCounters.forEach((repositoryId, counters) -> {
+                countersByRepository.computeIfAbsent(repositoryId, k -> new ResolutionCounters()).add(counters);
+                total.add(counters);
+            });
+        }
+        total.addAttributes(span);
+        List<String> repositories = new ArrayList<>(countersByRepository.size());
+        countersByRepository.forEach((repositoryId, counters) -> repositories.add(repositoryId + ": " + counters));
+        span.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_RESOLUTION_REPOSITORIES, repositories);
+    }
+
+    /**
+     * Record the counts per project, repository and type of resolution in the
+     * {@value MetricsSpanProcessor#RESOLUTION_METRIC} metric
+     */
+    public void recordMetrics(@Nonnull MetricsSpanProcessor metricsSpanProcessor) {
+        resolutionCounters.forEach((project, countersByRepository) -> countersByRepository.forEach((repositoryId, counters) -> {
+            AttributesBuilder attributesBuilder = Attributes.builder()
+                    .put(MavenOtelSemanticAttributes.MAVEN_RESOLUTION_REPOSITORY_ID, repositoryId);
+            if (project instanceof MavenProject) {
+                attributesBuilder.put(MavenOtelSemanticAttributes.MAVEN_PROJECT_GROUP_ID, ((MavenProject) project).getGroupId());
+                attributesBuilder.put(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, ((MavenProject) project).getArtifactId());
+            }
+            Attributes seriesAttributes = attributesBuilder.build();
+            record(metricsSpanProcessor, seriesAttributes, ResolutionTypeValues.LOCAL, counters.local.sum());
+            record(metricsSpanProcessor, seriesAttributes, ResolutionTypeValues.REMOTE, counters.remote.sum());
+            record(metricsSpanProcessor, seriesAttributes, ResolutionTypeValues.METADATA_CHECK, counters.metadataChecks.sum());
+            record(metricsSpanProcessor, seriesAttributes, ResolutionTypeValues.SNAPSHOT_CHECK, counters.snapshotChecks.sum());
+        }));
+    }
+
+    private static void record(@Nonnull MetricsSpanProcessor metricsSpanProcessor, @Nonnull Attributes seriesAttributes,
+                               @Nonnull String type, long count) {
+        if (count > 0) {
+            metricsSpanProcessor.recordResolutions(seriesAttributes.toBuilder().put(MavenOtelSemanticAttributes.MAVEN_RESOLUTION_TYPE, type).build(), count);
+        }
+    }
+
+    private static class ResolutionCounters {
+        final LongAdder local = new LongAdder();
+        final LongAdder remote = new LongAdder();
+        final LongAdder metadataChecks = new LongAdder();
+        final LongAdder snapshotChecks = new LongAdder();
+
+        void add(@Nonnull ResolutionCounters counters) {
+            local.add(counters.local.sum());
+            remote.add(counters.remote.sum());
+            metadataChecks.add(counters.metadataChecks.sum());
+            snapshotChecks.add(counters.snapshotChecks.sum());
+        }
+
+        void addAttributes(@Nonnull Span span) {
+            span.setAttribute(MavenOtelSemanticAttributes.MAVEN_RESOLUTION_LOCAL, local.sum());
+            span.setAttribute(MavenOtelSemanticAttributes.MAVEN_RESOLUTION_REMOTE, remote.sum());
+            span.setAttribute(MavenOtelSemanticAttributes.MAVEN_RESOLUTION_METADATA_CHECKS, metadataChecks.sum());
+            span.setAttribute(MavenOtelSemanticAttributes.MAVEN_RESOLUTION_SNAPSHOT_CHECKS, snapshotChecks.sum());
+        }
+
+        @Override
+        public String toString() {
+            return local.sum() + " local, " + remote.sum() + " remote, " + metadataChecks.sum() + " metadata checks, "
+                    + snapshotChecks.sum() + " snapshot checks";
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import org.apache.maven.project.DependencyResolutionRequest;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.RequestTrace;
+import org.eclipse.aether.deployment.DeployRequest;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactDescriptorRequest;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.MetadataRequest;
+import org.eclipse.aether.resolution.VersionRangeRequest;
+import org.eclipse.aether.resolution.VersionRequest;
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+import org.eclipse.aether.transfer.TransferResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Span per download and upload of the Maven resolver, child of the span of the project or of the mojo execution that
+ * triggered the transfer, with the transferred bytes, the throughput, the repository and the number of retries.
+ * Above {@code otel.instrumentation.maven.transfer.max.spans} transfers, the transfers are only aggregated in the
+ * per-repository statistics recorded on the root span of the build (see {@link #addTransferAttributes(Span)}).
+ *
+ * Chained to the {@link TransferListener} of the Maven session (typically the console progress of the downloads).
+ */
+public class OtelTransferListener extends AbstractTransferListener {
+
+    static final long DEFAULT_MAX_TRANSFER_SPANS = 500;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Nullable
+    private final TransferListener delegate;
+    private final SpanRegistry spanRegistry;
+    private final Tracer tracer;
+    private final long maxTransferSpans;
+
+    private final AtomicLong transferSpans = new AtomicLong();
+    private final AtomicLong aggregatedTransfers = new AtomicLong();
+    /**
+     * Transfers in progress, a {@link TransferResource} being shared by all the events of a transfer
+     */
+    private final ConcurrentMap<TransferResource, AtomicInteger> transferAttempts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> repositoryIdsByUrl = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RepositoryStats> repositoryStats = new ConcurrentHashMap<>();
+
+    public OtelTransferListener(@Nullable TransferListener delegate, @Nonnull SpanRegistry spanRegistry, @Nonnull Tracer tracer) {
+        this(delegate, spanRegistry, tracer, OtelUtils.getLongConfiguration("otel.instrumentation.maven.transfer.max.spans",
+                "OTEL_INSTRUMENTATION_MAVEN_TRANSFER_MAX_SPANS", DEFAULT_MAX_TRANSFER_SPANS));
+    }
+
+    OtelTransferListener(@Nullable TransferListener delegate, @Nonnull SpanRegistry spanRegistry, @Nonnull Tracer tracer, long maxTransferSpans) {
+        this.delegate = delegate;
+        this.spanRegistry = spanRegistry;
+        this.tracer = tracer;
+        this.maxTransferSpans = maxTransferSpans;
+    }
+
+    @Override
+    public void transferInitiated(TransferEvent event) throws TransferCancelledException {
+        transferAttempts.put(event.getResource(), new AtomicInteger());
+        if (delegate != null) {
+            delegate.transferInitiated(event);
+        }
+    }
+
+    /**
+     * Invoked on each attempt, the resolver retrying the transfer of a resource with an invalid checksum
+     */
+    @Override
+    public void transferStarted(TransferEvent event) throws TransferCancelledException {
+        AtomicInteger attempts = transferAttempts.get(event.getResource());
+        if (attempts != null) {
+            attempts.incrementAndGet();
+        }
+        if (delegate != null) {
+            delegate.transferStarted(event);
+        }
+    }
+
+    @Override
+    public void transferProgressed(TransferEvent event) throws TransferCancelledException {
+        if (delegate != null) {
+            delegate.transferProgressed(event);
+        }
+    }
+
+    @Override
+    public void transferCorrupted(TransferEvent event) throws TransferCancelledException {
+        if (delegate != null) {
+            delegate.transferCorrupted(event);
+        }
+    }
+
+    @Override
+    public void transferSucceeded(TransferEvent event) {
+        transferEnded(event);
+        if (delegate != null) {
+            delegate.transferSucceeded(event);
+        }
+    }
+
+    @Override
+    public void transferFailed(TransferEvent event) {
+        transferEnded(event);
+        if (delegate != null) {
+            delegate.transferFailed(event);
+        }
+    }
+
+    /**
+     * Never fails the transfer
+     */
+    private void transferEnded(@Nonnull TransferEvent event) {
+        try {
+            TransferResource resource = event.getResource();
+            AtomicInteger attempts = transferAttempts.remove(resource);
+            final long retries = attempts == null ? 0 : Math.max(0, attempts.get() - 1);
+            final long endMillis = System.currentTimeMillis();
+            final long startMillis = resource.getTransferStartTime() > 0 ? Math.min(resource.getTransferStartTime(), endMillis) : endMillis;
+            final long bytes = event.getTransferredBytes();
+            final String type = getTransferType(event.getRequestType());
+            final String repositoryId = getRepositoryId(resource);
+            Exception exception = event.getException();
+            final boolean notFound = exception instanceof ArtifactNotFoundException || exception instanceof MetadataNotFoundException;
+            final boolean failed = exception != null && !notFound;
+
+            repositoryStats.computeIfAbsent(repositoryId, k -> new RepositoryStats())
+                    .record(type, bytes, endMillis - startMillis, retries, failed);
+
+            Span parentSpan = getParentSpan(resource);
+            if (parentSpan == null) {
+                return;
+            }
+            if (transferSpans.incrementAndGet() > maxTransferSpans) {
+                aggregatedTransfers.incrementAndGet();
+                return;
+            }
+            Span span = tracer.spanBuilder(getSpanName(type) + " " + repositoryId)
+                    .setParent(Context.root().with(parentSpan))
+                    .setStartTimestamp(startMillis, TimeUnit.MILLISECONDS)
+                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_TRANSFER_TYPE, type)
+                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_TRANSFER_REPOSITORY_ID, repositoryId)
+                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_TRANSFER_REPOSITORY_URL, resource.getRepositoryUrl())
+                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_TRANSFER_RESOURCE, resource.getResourceName())
+                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_TRANSFER_BYTES, bytes)
+                    .setAttribute(MavenOtelSemanticAttributes.MAVEN_TRANSFER_RETRIES, retries)
+                    .startSpan();
+            if (endMillis > startMillis) {
+                span.setAttribute(MavenOtelSemanticAttributes.MAVEN_TRANSFER_THROUGHPUT, bytes * 1000d / (endMillis - startMillis));
+            }
+            if (notFound) {
+                span.setAttribute(MavenOtelSemanticAttributes.MAVEN_TRANSFER_NOT_FOUND, true);
+            } else if (failed) {
+                span.setStatus(StatusCode.ERROR, exception.getMessage());
+                span.recordException(exception);
+            }
+            span.end(endMillis, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            logger.debug("OpenTelemetry: Failure to trace transfer " + event, e);
+        }
+    }
+
+    /**
+     * The project resolving its dependencies, otherwise the project or mojo execution running in the thread (e.g.
+     * resolution of plugins), otherwise the root span (e.g. downloads parallelized by the resolver)
+     */
+    @Nullable
+    private Span getParentSpan(@Nonnull TransferResource resource) {
+        MavenProject project = findProject(resource.getTrace());
+        Span span = project == null ? null : spanRegistry.findSpan(project);
+        if (span == null) {
+            span = spanRegistry.getCurrentSpan();
+        }
+        return span == null ? spanRegistry.getRootSpan() : span;
+    }
+
+    /**
+     * @return the project whose dependencies are resolved by the given request, {@code null} if not found
+     */
+    @Nullable
+    static MavenProject findProject(@Nullable RequestTrace trace) {
+        for (; trace != null; trace = trace.getParent()) {
+            Object data = trace.getData();
+            if (data instanceof DependencyResolutionRequest) {
+                return ((DependencyResolutionRequest) data).getMavenProject();
+            } else if (data instanceof MavenProject) {
+                return (MavenProject) data;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Id of the repository (or of its mirror) found in the request, otherwise the URL of the repository
+     */
+    @Nonnull
+    private String getRepositoryId(@Nonnull TransferResource resource) {
+        final String url = stripTrailingSlash(resource.getRepositoryUrl());
+        String repositoryId = repositoryIdsByUrl.get(url);
+        if (repositoryId != null) {
+            return repositoryId;
+        }
+        for (RequestTrace trace = resource.getTrace(); trace != null; trace = trace.getParent()) {
+            Object data = trace.getData();
+            List<RemoteRepository> repositories = Collections.emptyList();
+            if (data instanceof ArtifactRequest) {
+                repositories = ((ArtifactRequest) data).getRepositories();
+            } else if (data instanceof MetadataRequest) {
+                repositories = Collections.singletonList(((MetadataRequest) data).getRepository());
+            } else if (data instanceof ArtifactDescriptorRequest) {
+                repositories = ((ArtifactDescriptorRequest) data).getRepositories();
+            } else if (data instanceof VersionRequest) {
+                repositories = ((VersionRequest) data).getRepositories();
+            } else if (data instanceof VersionRangeRequest) {
+                repositories = ((VersionRangeRequest) data).getRepositories();
+            } else if (data instanceof DeployRequest) {
+                repositories = Collections.singletonList(((DeployRequest) data).getRepository());
+            }
+            for (RemoteRepository repository : repositories) {
+                if (repository != null && url.equals(stripTrailingSlash(repository.getUrl()))) {
+                    repositoryIdsByUrl.put(url, repository.getId());
+                    return repository.getId();
+                }
+            }
+        }
+        return url;
+    }
+
+    @Nonnull
+    private static String stripTrailingSlash(@Nullable String url) {
+        if (url == null) {
+            return "";
+        }
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    @Nonnull
+    static String getTransferType(@Nullable TransferEvent.RequestType requestType) {
+        if (requestType == TransferEvent.RequestType.PUT) {
+            return MavenOtelSemanticAttributes.TransferTypeValues.UPLOAD;
+        } else if (requestType == TransferEvent.RequestType.GET_EXISTENCE) {
+            return MavenOtelSemanticAttributes.TransferTypeValues.CHECK;
+        }
+        return MavenOtelSemanticAttributes.TransferTypeValues.DOWNLOAD;
+    }
+
+    @Nonnull
+    private static String getSpanName(@Nonnull String type) {
+        switch (type) {
+            case MavenOtelSemanticAttributes.TransferTypeValues.UPLOAD:
+                return "Upload";
+            case MavenOtelSemanticAttributes.TransferTypeValues.CHECK:
+                return "Check";
+            default:
+                return "Download";
+        }
+    }
+
+    /**
+     * Record on the given span (typically the root span of the build) the transfer statistics of each repository
+     * ({@link MavenOtelSemanticAttributes#MAVEN_BUILD_TRANSFERS}, sorted by repository id) and the number of transfers
+     * without span
+     */
+    public void addTransferAttributes(@Nonnull Span span) {
+        if (repositoryStats.isEmpty()) {
+            return;
+        }
+        List<String> transfers = new ArrayList<>(repositoryStats.size());
+        for (Map.Entry<String, RepositoryStats> entry : new TreeMap<>(repositoryStats).entrySet()) {
+            transfers.add(entry.getKey() + ": " + entry.getValue());
+        }
+        span.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_TRANSFERS, transfers);
+        if (aggregatedTransfers.get() > 0) {
+            span.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_TRANSFERS_AGGREGATED, aggregatedTransfers.get());
+        }
+    }
+
+    /**
+     * Transfers of a repository, the duration being the sum of the durations of the (possibly parallel) transfers
+     */
+    private static class RepositoryStats {
+        final LongAdder downloads = new LongAdder();
+        final LongAdder uploads = new LongAdder();
+        final LongAdder checks = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder durationMillis = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder failures = new LongAdder();
+
+        void record(@Nonnull String type, long bytes, long durationMillis, long retries, boolean failed) {
+            switch (type) {
+                case MavenOtelSemanticAttributes.TransferTypeValues.UPLOAD:
+                    uploads.increment();
+                    break;
+                case MavenOtelSemanticAttributes.TransferTypeValues.CHECK:
+                    checks.increment();
+                    break;
+                default:
+                    downloads.increment();
+            }
+            this.bytes.add(bytes);
+            this.durationMillis.add(durationMillis);
+            this.retries.add(retries);
+            if (failed) {
+                failures.increment();
+            }
+        }
+
+        @Override
+        public String toString() {
+            long durationMillis = this.durationMillis.sum();
+            long bytes = this.bytes.sum();
+            return downloads.sum() + " downloads, " + uploads.sum() + " uploads, " + checks.sum() + " checks, "
+                    + bytes + " bytes in " + durationMillis + "ms ("
+                    + (durationMillis == 0 ? 0 : bytes * 1000 / 1024 / durationMillis) + " KiB/s), "
+                    + retries.sum() + " retries, " + failures.sum() + " failures";
+        }
+    }
+}
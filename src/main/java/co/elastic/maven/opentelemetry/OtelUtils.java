@@ -5,6 +5,8 @@
 
 package co.elastic.maven.opentelemetry;
 
+import org.slf4j.LoggerFactory;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.AbstractMap;
@@ -40,6 +42,23 @@ public class OtelUtils {
                                 Map.Entry::getKey, Map.Entry::getValue, (first, next) -> next, LinkedHashMap::new));
     }
 
+    /**
+     * @return the value of the given system property or, if not defined, of the given environment variable, or the
+     * given default value if not defined or invalid
+     */
+    public static long getLongConfiguration(@Nonnull String systemProperty, @Nonnull String environmentVariable, long defaultValue) {
+        String valueAsString = System.getProperty(systemProperty, System.getenv(environmentVariable));
+        if (StringUtils.isBlank(valueAsString)) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(valueAsString.trim());
+        } catch (NumberFormatException e) {
+            LoggerFactory.getLogger(OtelUtils.class).warn("OpenTelemetry: Skip invalid " + systemProperty + " " + valueAsString, e);
+            return defaultValue;
+        }
+    }
+
     private static List<String> filterBlanksAndNulls(String[] values) {
         return Arrays.stream(values)
                 .map(String::trim)
@@ -0,0 +1,41 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SpanExporter} sending OTLP requests to the collector, implemented over GRPC ({@link MyOtlpGrpcSpanExporter})
+ * and over HTTP ({@link OtlpHttpSpanExporter}) according to {@code otel.exporter.otlp.protocol}.
+ */
+public interface OtlpExporter extends SpanExporter {
+
+    /**
+     * Export an already serialized OTLP request, used to replay the spans recorded by {@link OtlpFileSpanExporter}
+     */
+    CompletableResultCode export(ExportTraceServiceRequest request);
+
+    /**
+     * Export metrics through the connection of the spans
+     */
+    CompletableResultCode export(ExportMetricsServiceRequest request);
+
+    /**
+     * Start connecting to the collector (DNS resolution, TCP and TLS handshakes) ahead of the first export, without
+     * waiting for the connection
+     */
+    void connect();
+
+    /**
+     * Shutdown the exporter and release its connections within the given timeout
+     */
+    void close(long timeout, TimeUnit unit);
+}
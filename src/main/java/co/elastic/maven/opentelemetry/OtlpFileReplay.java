@@ -0,0 +1,228 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import com.google.protobuf.CodedOutputStream;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.trace.v1.InstrumentationLibrarySpans;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.Span;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload to an OTLP endpoint the spans recorded by the {@link OtlpFileSpanExporter}.
+ *
+ * The length-delimited requests of the file are merged in large batches of {@code otel.exporter.otlp.replay.batch.size}
+ * spans (default {@value #DEFAULT_BATCH_SIZE}) sent through the {@link OtlpExporter}, each request being capped to
+ * {@code otel.exporter.otlp.max.request.size} bytes like the batches of the extension (see {@link SpanBatchSplitter}).
+ *
+ * Usage, the OTLP endpoint, protocol, headers and timeout being configured as for the extension:
+ * <pre>{@code
+ * export OTEL_EXPORTER_OTLP_ENDPOINT="http://localhost:4317"
+ * java -cp "opentelemetry-maven-extension.jar:$MAVEN_HOME/lib/*" co.elastic.maven.opentelemetry.OtlpFileReplay target/opentelemetry-traces.otlp
+ * }</pre>
+ */
+public class OtlpFileReplay {
+    static final int DEFAULT_BATCH_SIZE = 5_000;
+    private static final int MAX_REQUESTS_IN_FLIGHT = 4;
+    /**
+     * Max growth of the length prefix of an embedded message, varint of 1 to 5 bytes
+     */
+    private static final int LENGTH_PREFIX_OVERHEAD = 4;
+
+    private final OtlpExporter spanExporter;
+    private final int batchSize;
+    private final int maxRequestSize;
+
+    /**
+     * @param batchSize      max number of spans per request
+     * @param maxRequestSize max size in bytes of a request, a single span larger than the max size is sent as is
+     */
+    public OtlpFileReplay(@Nonnull OtlpExporter spanExporter, int batchSize, int maxRequestSize) {
+        this.spanExporter = spanExporter;
+        this.batchSize = batchSize;
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: OtlpFileReplay <otlp-file>");
+            System.exit(1);
+        }
+        String otlpEndpoint = System.getProperty("otel.exporter.otlp.endpoint",
+                System.getenv("OTEL_EXPORTER_OTLP_ENDPOINT"));
+        if (StringUtils.isBlank(otlpEndpoint)) {
+            System.err.println("No -Dotel.exporter.otlp.endpoint property or OTEL_EXPORTER_OTLP_ENDPOINT environment variable found");
+            System.exit(1);
+        }
+        int batchSize = Integer.parseInt(System.getProperty("otel.exporter.otlp.replay.batch.size", String.valueOf(DEFAULT_BATCH_SIZE)));
+
+        Path path = Paths.get(args[0]);
+        OtlpExporter spanExporter = OpenTelemetrySdkService.newOtlpExporter(otlpEndpoint);
+        ReplayResult result;
+        try {
+            long before = System.nanoTime();
+            result = new OtlpFileReplay(spanExporter, batchSize, OpenTelemetrySdkService.getOtlpMaxRequestSize()).replay(path);
+            System.out.println("Replayed " + result.exportedSpans + " spans from " + path + " to " + otlpEndpoint +
+                    " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - before) + "ms, failed spans: " + result.failedSpans);
+        } finally {
+            spanExporter.close();
+        }
+        // after closing the exporter, System.exit() doesn't run the finally blocks
+        if (result.failedSpans > 0) {
+            System.exit(2);
+        }
+    }
+
+    @Nonnull
+    public ReplayResult replay(@Nonnull Path path) throws IOException {
+        ReplayResult result = new ReplayResult();
+        List<InFlightRequest> inFlightRequests = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 64 * 1024)) {
+            ExportTraceServiceRequest.Builder batch = ExportTraceServiceRequest.newBuilder();
+            int batchSpanCount = 0;
+            long batchRequestSize = 0;
+            ExportTraceServiceRequest record;
+            while ((record = ExportTraceServiceRequest.parseDelimitedFrom(in)) != null) {
+                for (ResourceSpans resourceSpans : record.getResourceSpansList()) {
+                    for (ResourceSpans chunk : split(resourceSpans, maxRequestSize)) {
+                        // the request is the concatenation of its resource spans fields
+                        int chunkSize = CodedOutputStream.computeMessageSize(ExportTraceServiceRequest.RESOURCE_SPANS_FIELD_NUMBER, chunk);
+                        if (batchSpanCount > 0 && batchRequestSize + chunkSize > maxRequestSize) {
+                            send(batch.build(), batchSpanCount, inFlightRequests, result);
+                            batch = ExportTraceServiceRequest.newBuilder();
+                            batchSpanCount = 0;
+                            batchRequestSize = 0;
+                        }
+                        batch.addResourceSpans(chunk);
+                        batchSpanCount += getSpanCount(chunk);
+                        batchRequestSize += chunkSize;
+                    }
+                }
+                if (batchSpanCount >= batchSize) {
+                    send(batch.build(), batchSpanCount, inFlightRequests, result);
+                    batch = ExportTraceServiceRequest.newBuilder();
+                    batchSpanCount = 0;
+                    batchRequestSize = 0;
+                }
+            }
+            if (batchSpanCount > 0) {
+                send(batch.build(), batchSpanCount, inFlightRequests, result);
+            }
+        }
+        while (!inFlightRequests.isEmpty()) {
+            complete(inFlightRequests.remove(0), result);
+        }
+        return result;
+    }
+
+    private void send(@Nonnull ExportTraceServiceRequest request, int spanCount, @Nonnull List<InFlightRequest> inFlightRequests, @Nonnull ReplayResult result) {
+        if (inFlightRequests.size() >= MAX_REQUESTS_IN_FLIGHT) {
+            complete(inFlightRequests.remove(0), result);
+        }
+        inFlightRequests.add(new InFlightRequest(spanExporter.export(request), spanCount));
+    }
+
+    private void complete(@Nonnull InFlightRequest inFlightRequest, @Nonnull ReplayResult result) {
+        // the export timeout is enforced by the deadline of the gRPC call
+        inFlightRequest.resultCode.join(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        if (inFlightRequest.resultCode.isSuccess()) {
+            result.exportedSpans += inFlightRequest.spanCount;
+        } else {
+            result.failedSpans += inFlightRequest.spanCount;
+        }
+    }
+
+    /**
+     * Split the given resource spans, typically a batch of the extension recorded in a single resource spans, in
+     * resource spans of the same resource and instrumentation libraries whose field of the request doesn't exceed the
+     * given max size. A single span larger than the max size is kept as is.
+     */
+    @Nonnull
+    static List<ResourceSpans> split(@Nonnull ResourceSpans resourceSpans, int maxSize) {
+        if (CodedOutputStream.computeMessageSize(ExportTraceServiceRequest.RESOURCE_SPANS_FIELD_NUMBER, resourceSpans) <= maxSize) {
+            return Collections.singletonList(resourceSpans);
+        }
+        List<ResourceSpans> chunks = new ArrayList<>();
+        ResourceSpans emptyResourceSpans = resourceSpans.toBuilder().clearInstrumentationLibrarySpans().build();
+        int emptyResourceSpansSize = CodedOutputStream.computeMessageSize(ExportTraceServiceRequest.RESOURCE_SPANS_FIELD_NUMBER, emptyResourceSpans) + LENGTH_PREFIX_OVERHEAD;
+        ResourceSpans.Builder chunk = null;
+        int chunkSize = 0;
+        for (InstrumentationLibrarySpans instrumentationLibrarySpans : resourceSpans.getInstrumentationLibrarySpansList()) {
+            InstrumentationLibrarySpans emptyInstrumentationLibrarySpans = instrumentationLibrarySpans.toBuilder().clearSpans().build();
+            int emptyInstrumentationLibrarySpansSize = CodedOutputStream.computeMessageSize(ResourceSpans.INSTRUMENTATION_LIBRARY_SPANS_FIELD_NUMBER, emptyInstrumentationLibrarySpans) + LENGTH_PREFIX_OVERHEAD;
+            InstrumentationLibrarySpans.Builder instrumentationLibrarySpansChunk = null;
+            for (Span span : instrumentationLibrarySpans.getSpansList()) {
+                int spanSize = CodedOutputStream.computeMessageSize(InstrumentationLibrarySpans.SPANS_FIELD_NUMBER, span);
+                if (instrumentationLibrarySpansChunk != null && chunkSize + spanSize > maxSize) {
+                    chunks.add(chunk.addInstrumentationLibrarySpans(instrumentationLibrarySpansChunk).build());
+                    chunk = null;
+                    instrumentationLibrarySpansChunk = null;
+                }
+                if (chunk == null) {
+                    chunk = emptyResourceSpans.toBuilder();
+                    chunkSize = emptyResourceSpansSize;
+                }
+                if (instrumentationLibrarySpansChunk == null) {
+                    instrumentationLibrarySpansChunk = emptyInstrumentationLibrarySpans.toBuilder();
+                    chunkSize += emptyInstrumentationLibrarySpansSize;
+                }
+                instrumentationLibrarySpansChunk.addSpans(span);
+                chunkSize += spanSize;
+            }
+            if (instrumentationLibrarySpansChunk != null) {
+                chunk.addInstrumentationLibrarySpans(instrumentationLibrarySpansChunk);
+            }
+        }
+        if (chunk != null) {
+            chunks.add(chunk.build());
+        }
+        return chunks;
+    }
+
+    static int getSpanCount(@Nonnull ResourceSpans resourceSpans) {
+        int spanCount = 0;
+        for (InstrumentationLibrarySpans instrumentationLibrarySpans : resourceSpans.getInstrumentationLibrarySpansList()) {
+            spanCount += instrumentationLibrarySpans.getSpansCount();
+        }
+        return spanCount;
+    }
+
+    private static class InFlightRequest {
+        final CompletableResultCode resultCode;
+        final int spanCount;
+
+        InFlightRequest(CompletableResultCode resultCode, int spanCount) {
+            this.resultCode = resultCode;
+            this.spanCount = spanCount;
+        }
+    }
+
+    public static class ReplayResult {
+        long exportedSpans;
+        long failedSpans;
+
+        public long getExportedSpans() {
+            return exportedSpans;
+        }
+
+        public long getFailedSpans() {
+            return failedSpans;
+        }
+    }
+}
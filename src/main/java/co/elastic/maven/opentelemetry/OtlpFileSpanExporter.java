@@ -0,0 +1,157 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import com.google.protobuf.CodedOutputStream;
+import io.opentelemetry.exporter.otlp.internal.SpanAdapter;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * {@link SpanExporter} writing the spans to a local file as a stream of length-delimited OTLP
+ * {@link ExportTraceServiceRequest} protobuf messages (see {@link com.google.protobuf.MessageLite#writeDelimitedTo(java.io.OutputStream)}).
+ *
+ * Designed for build agents without connectivity to the OpenTelemetry collector: the file is later uploaded with
+ * {@link OtlpFileReplay}.
+ *
+ * Spans are serialized in a heap buffer that is written to the {@link FileChannel} when full or on {@link #flush()},
+ * the file is only synced to the disk on {@link #shutdown()}. As spans are exported by the thread of the
+ * {@link io.opentelemetry.sdk.trace.export.BatchSpanProcessor}, writing the file adds no latency to the build.
+ */
+public class OtlpFileSpanExporter implements SpanExporter {
+    private static final int DEFAULT_BUFFER_SIZE_IN_BYTES = 64 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Path path;
+    private final FileChannel fileChannel;
+    private final ByteBuffer buffer;
+    private boolean shutdown = false;
+
+    OtlpFileSpanExporter(@Nonnull Path path, @Nonnull FileChannel fileChannel, int bufferSizeInBytes) {
+        this.path = path;
+        this.fileChannel = fileChannel;
+        this.buffer = ByteBuffer.allocate(bufferSizeInBytes);
+    }
+
+    /**
+     * @param path file to append the spans to, created if needed
+     */
+    @Nonnull
+    public static OtlpFileSpanExporter create(@Nonnull Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new OtlpFileSpanExporter(path, fileChannel, DEFAULT_BUFFER_SIZE_IN_BYTES);
+    }
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> spans) {
+        if (shutdown) {
+            return CompletableResultCode.ofFailure();
+        }
+        ExportTraceServiceRequest request = ExportTraceServiceRequest.newBuilder()
+                .addAllResourceSpans(SpanAdapter.toProtoResourceSpans(spans))
+                .build();
+        try {
+            write(request);
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            logger.warn("OpenTelemetry: Failure to write " + spans.size() + " spans to " + path, e);
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    private void write(@Nonnull ExportTraceServiceRequest request) throws IOException {
+        int messageSize = request.getSerializedSize();
+        int recordSize = CodedOutputStream.computeUInt32SizeNoTag(messageSize) + messageSize;
+        if (buffer.remaining() < recordSize) {
+            writeBuffer();
+        }
+        ByteBuffer target = recordSize <= buffer.capacity() ? buffer : ByteBuffer.allocate(recordSize);
+        CodedOutputStream out = CodedOutputStream.newInstance(target);
+        out.writeUInt32NoTag(messageSize);
+        request.writeTo(out);
+        out.flush();
+        if (target != buffer) {
+            target.flip();
+            while (target.hasRemaining()) {
+                fileChannel.write(target);
+            }
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            fileChannel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write the buffered spans to the file without syncing it to the disk
+     */
+    @Override
+    public synchronized CompletableResultCode flush() {
+        if (shutdown) {
+            return CompletableResultCode.ofSuccess();
+        }
+        try {
+            writeBuffer();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            logger.warn("OpenTelemetry: Failure to flush spans to " + path, e);
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    /**
+     * Write the buffered spans, sync the file to the disk and close it
+     */
+    @Override
+    public synchronized CompletableResultCode shutdown() {
+        if (shutdown) {
+            return CompletableResultCode.ofSuccess();
+        }
+        shutdown = true;
+        try {
+            writeBuffer();
+            fileChannel.force(false);
+            logger.debug("OpenTelemetry: Spans written to {}", path);
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            logger.warn("OpenTelemetry: Failure to write spans to " + path, e);
+            return CompletableResultCode.ofFailure();
+        } finally {
+            try {
+                fileChannel.close();
+            } catch (IOException e) {
+                logger.warn("OpenTelemetry: Silently ignore failure to close " + path, e);
+            }
+        }
+    }
+
+    @Nonnull
+    public Path getPath() {
+        return path;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * OTLP/HTTP exporter ({@code otel.exporter.otlp.protocol=http/protobuf}) POSTing protobuf requests to the
+ * {@value #TRACES_PATH} and {@value #METRICS_PATH} paths of the endpoint.
+ *
+ * Only relies on the JDK {@link HttpURLConnection} and on the {@link TraceRequestMarshaler}: unlike the
+ * {@link MyOtlpGrpcSpanExporter}, the GRPC and Netty classes and threads are not loaded, which reduces the startup
+ * time and the memory footprint of the extension. The requests are sent sequentially by a single daemon thread, the
+ * JDK keeping the connection alive between requests. With {@code otel.exporter.otlp.compression=gzip}, the requests
+ * are compressed on this thread.
+ */
+public class OtlpHttpSpanExporter implements OtlpExporter {
+    static final String TRACES_PATH = "/v1/traces";
+    static final String METRICS_PATH = "/v1/metrics";
+    private static final String CONTENT_TYPE_PROTOBUF = "application/x-protobuf";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final URL tracesUrl;
+    private final URL metricsUrl;
+    private final Map<String, String> headers;
+    private final int timeoutMillis;
+    private final boolean gzip;
+    private final int maxRequestSize;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "otel-otlp-http-exporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    OtlpHttpSpanExporter(@Nonnull URL tracesUrl, @Nonnull URL metricsUrl, @Nonnull Map<String, String> headers, int timeoutMillis,
+                         boolean gzip, int maxRequestSize) {
+        this.tracesUrl = tracesUrl;
+        this.metricsUrl = metricsUrl;
+        this.headers = headers;
+        this.timeoutMillis = timeoutMillis;
+        this.gzip = gzip;
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    public static OtlpHttpSpanExporterBuilder builder() {
+        return new OtlpHttpSpanExporterBuilder();
+    }
+
+    /**
+     * Batches larger than {@link #maxRequestSize} are split in several requests
+     */
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        List<byte[]> requests = SpanBatchSplitter.split(spans, TraceRequestMarshaler::toByteArray, request -> request.length, maxRequestSize);
+        if (requests.size() == 1) {
+            return send(tracesUrl, requests.get(0), spans.size() + " spans");
+        }
+        logger.debug("OpenTelemetry: Split batch of " + spans.size() + " spans in " + requests.size() + " requests");
+        List<CompletableResultCode> results = new ArrayList<>(requests.size());
+        for (byte[] request : requests) {
+            results.add(send(tracesUrl, request, "request " + (results.size() + 1) + "/" + requests.size() + " of a batch of " + spans.size() + " spans"));
+        }
+        return CompletableResultCode.ofAll(results);
+    }
+
+    @Override
+    public CompletableResultCode export(ExportTraceServiceRequest request) {
+        return send(tracesUrl, request.toByteArray(), "OTLP request with " + request.getResourceSpansCount() + " resource spans");
+    }
+
+    @Override
+    public CompletableResultCode export(ExportMetricsServiceRequest request) {
+        return send(metricsUrl, request.toByteArray(), "OTLP metrics request");
+    }
+
+    /**
+     * Send an empty trace request, valid OTLP request without spans, for the JDK to keep the connection alive for the
+     * following exports
+     */
+    @Override
+    public void connect() {
+        try {
+            executor.execute(() -> post(tracesUrl, new byte[0], "empty request", false));
+        } catch (RejectedExecutionException e) {
+            logger.debug("OpenTelemetry: Exporter shutdown, skip connection");
+        }
+    }
+
+    @Nonnull
+    private CompletableResultCode send(@Nonnull URL url, @Nonnull byte[] body, @Nonnull String description) {
+        final CompletableResultCode result = new CompletableResultCode();
+        try {
+            executor.execute(() -> {
+                if (post(url, body, description, true)) {
+                    result.succeed();
+                } else {
+                    result.fail();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("OpenTelemetry: Exporter shutdown, failure to export " + description);
+            result.fail();
+        }
+        return result;
+    }
+
+    private boolean post(@Nonnull URL url, @Nonnull byte[] body, @Nonnull String description, boolean warnOnFailure) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            byte[] content = body;
+            if (gzip) {
+                content = compress(body);
+                connection.setRequestProperty("Content-Encoding", "gzip");
+            }
+            connection.setFixedLengthStreamingMode(content.length);
+            connection.setRequestProperty("Content-Type", CONTENT_TYPE_PROTOBUF);
+            headers.forEach(connection::setRequestProperty);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(content);
+            }
+            int responseCode = connection.getResponseCode();
+            // consume the response so that the connection is kept alive
+            drain(responseCode < 400 ? connection.getInputStream() : connection.getErrorStream());
+            if (responseCode >= 200 && responseCode < 300) {
+                return true;
+            }
+            log(warnOnFailure, "OpenTelemetry: Failure to export " + description + " to " + url + ": HTTP " + responseCode + " " + connection.getResponseMessage());
+            return false;
+        } catch (IOException | RuntimeException e) {
+            log(warnOnFailure, "OpenTelemetry: Failure to export " + description + " to " + url + ": " + e);
+            if (connection != null) {
+                connection.disconnect();
+            }
+            return false;
+        }
+    }
+
+    private void log(boolean warn, @Nonnull String message) {
+        if (warn) {
+            logger.warn(message);
+        } else {
+            logger.debug(message);
+        }
+    }
+
+    @Nonnull
+    private static byte[] compress(@Nonnull byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try (InputStream closeable = in) {
+            byte[] buffer = new byte[1024];
+            while (closeable.read(buffer) != -1) {
+                // discard
+            }
+        }
+    }
+
+    /**
+     * @return completed once the requests submitted before the flush are sent
+     */
+    @Override
+    public CompletableResultCode flush() {
+        final CompletableResultCode result = new CompletableResultCode();
+        try {
+            executor.execute(result::succeed);
+        } catch (RejectedExecutionException e) {
+            result.succeed();
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        CompletableResultCode result = flush();
+        executor.shutdown();
+        return result;
+    }
+
+    @Override
+    public void close() {
+        close(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Send the pending requests within the given timeout, the requests still pending afterwards are abandoned
+     */
+    @Override
+    public void close(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeout, unit)) {
+                logger.warn("OpenTelemetry: Failure to send the pending OTLP requests in " + unit.toMillis(timeout) + "ms, abandon them");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Silently ignore " + e, e);
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import javax.annotation.Nonnull;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Builder of {@link OtlpHttpSpanExporter}
+ */
+public class OtlpHttpSpanExporterBuilder {
+    private static final long DEFAULT_TIMEOUT_SECS = 10;
+
+    private long timeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT_SECS);
+    private String endpointAsString;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private boolean gzip = false;
+    private int maxRequestSize = SpanBatchSplitter.DEFAULT_MAX_REQUEST_SIZE;
+
+    OtlpHttpSpanExporterBuilder() {
+    }
+
+    public OtlpHttpSpanExporterBuilder setTimeout(Duration timeout) {
+        this.timeoutMillis = timeout.toMillis();
+        return this;
+    }
+
+    /**
+     * @param endpointAsString base URL of the OTLP/HTTP receiver (e.g. {@code http://localhost:4318}), the
+     *                         {@value OtlpHttpSpanExporter#TRACES_PATH} and {@value OtlpHttpSpanExporter#METRICS_PATH}
+     *                         paths are appended
+     */
+    public OtlpHttpSpanExporterBuilder setEndpoint(String endpointAsString) {
+        this.endpointAsString = endpointAsString;
+        return this;
+    }
+
+    /**
+     * @param compression {@code gzip} or {@code none}
+     */
+    public OtlpHttpSpanExporterBuilder setCompression(String compression) {
+        requireNonNull(compression, "compression");
+        if (!compression.equals("gzip") && !compression.equals("none")) {
+            throw new IllegalArgumentException("Unsupported compression method, must be gzip or none: " + compression);
+        }
+        this.gzip = compression.equals("gzip");
+        return this;
+    }
+
+    /**
+     * @param maxRequestSize max size in bytes of the uncompressed requests, larger batches of spans are split
+     */
+    public OtlpHttpSpanExporterBuilder setMaxRequestSize(int maxRequestSize) {
+        if (maxRequestSize <= 0) {
+            throw new IllegalArgumentException("Invalid max request size, must be positive: " + maxRequestSize);
+        }
+        this.maxRequestSize = maxRequestSize;
+        return this;
+    }
+
+    public OtlpHttpSpanExporterBuilder addHeader(String key, String value) {
+        headers.put(key, value);
+        return this;
+    }
+
+    public OtlpHttpSpanExporter build() {
+        String baseUrl = getEndpointAsUri().toString();
+        if (baseUrl.endsWith("/")) {
+            baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+        }
+        try {
+            return new OtlpHttpSpanExporter(new URL(baseUrl + OtlpHttpSpanExporter.TRACES_PATH), new URL(baseUrl + OtlpHttpSpanExporter.METRICS_PATH),
+                    new LinkedHashMap<>(headers), (int) Math.min(Integer.MAX_VALUE, timeoutMillis), gzip, maxRequestSize);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid endpoint, must be a URL: " + endpointAsString, e);
+        }
+    }
+
+    @Nonnull
+    private URI getEndpointAsUri() {
+        requireNonNull(endpointAsString, "endpoint");
+        URI uri;
+        try {
+            uri = new URI(endpointAsString);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid endpoint, must be a URL: " + endpointAsString, e);
+        }
+
+        if (uri.getScheme() == null
+                || (!uri.getScheme().equals("http") && !uri.getScheme().equals("https"))) {
+            throw new IllegalArgumentException(
+                    "Invalid endpoint, must start with http:// or https://: " + uri);
+        }
+        return uri;
+    }
+}
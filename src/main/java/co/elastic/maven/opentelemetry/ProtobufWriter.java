@@ -0,0 +1,153 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Minimal protobuf encoder writing the fields in a growable heap buffer.
+ *
+ * Embedded messages are written in place between {@link #startMessage(int)} and {@link #endMessage()}: their content
+ * is shifted to make room for the length prefix once their size is known, which avoids the intermediate objects and
+ * copies of the generated protobuf classes.
+ */
+final class ProtobufWriter {
+    private static final int WIRE_TYPE_VARINT = 0;
+    private static final int WIRE_TYPE_FIXED64 = 1;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+
+    private byte[] buffer;
+    private int position;
+    /**
+     * Positions of the content of the embedded messages being written
+     */
+    private int[] messageStarts = new int[8];
+    private int depth;
+
+    ProtobufWriter(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    void startMessage(int field) {
+        writeTag(field, WIRE_TYPE_LENGTH_DELIMITED);
+        if (depth == messageStarts.length) {
+            messageStarts = Arrays.copyOf(messageStarts, depth * 2);
+        }
+        messageStarts[depth++] = position;
+    }
+
+    void endMessage() {
+        int start = messageStarts[--depth];
+        int length = position - start;
+        int lengthSize = varintSize(length);
+        ensureCapacity(lengthSize);
+        System.arraycopy(buffer, start, buffer, start + lengthSize, length);
+        position = start;
+        writeVarint(length);
+        position += length;
+    }
+
+    void writeString(int field, @Nonnull String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) >= 0x80) {
+                writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        // ASCII fast path, no intermediate byte array
+        writeTag(field, WIRE_TYPE_LENGTH_DELIMITED);
+        writeVarint(length);
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) value.charAt(i);
+        }
+    }
+
+    void writeBytes(int field, @Nonnull byte[] value) {
+        writeTag(field, WIRE_TYPE_LENGTH_DELIMITED);
+        writeVarint(value.length);
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, buffer, position, value.length);
+        position += value.length;
+    }
+
+    /**
+     * Write the lowercase hex encoded trace or span id as bytes
+     */
+    void writeHexBytes(int field, @Nonnull CharSequence hex) {
+        int length = hex.length() / 2;
+        writeTag(field, WIRE_TYPE_LENGTH_DELIMITED);
+        writeVarint(length);
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) ((Character.digit(hex.charAt(2 * i), 16) << 4) | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+    }
+
+    /**
+     * Write a {@code int64}, {@code uint32} or enum field
+     */
+    void writeInt64(int field, long value) {
+        writeTag(field, WIRE_TYPE_VARINT);
+        writeVarint(value);
+    }
+
+    void writeBool(int field, boolean value) {
+        writeTag(field, WIRE_TYPE_VARINT);
+        writeVarint(value ? 1 : 0);
+    }
+
+    void writeFixed64(int field, long value) {
+        writeTag(field, WIRE_TYPE_FIXED64);
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[position++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    void writeDouble(int field, double value) {
+        writeFixed64(field, Double.doubleToRawLongBits(value));
+    }
+
+    @Nonnull
+    byte[] toByteArray() {
+        if (depth != 0) {
+            throw new IllegalStateException("Embedded message not ended");
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void writeTag(int field, int wireType) {
+        writeVarint((field << 3) | wireType);
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private void ensureCapacity(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+        }
+    }
+}
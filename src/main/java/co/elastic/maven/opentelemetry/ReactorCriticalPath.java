@@ -0,0 +1,189 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import org.apache.maven.execution.ProjectDependencyGraph;
+import org.apache.maven.project.MavenProject;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Critical path of the reactor: the chain of projects, through the {@link ProjectDependencyGraph}, whose cumulated
+ * build durations determine the duration of a parallel build ({@code -T}).
+ *
+ * The durations of the projects are collected on the start and end of each project. At the end of the session, the
+ * critical path is recorded on the root span of the build (see {@link #addCriticalPath(Span, ProjectDependencyGraph)})
+ * with the slack of each project: how much longer the build of the project could take without delaying the build.
+ */
+public class ReactorCriticalPath {
+
+    static final String CRITICAL_PATH_PROJECT_EVENT = "critical path project";
+
+    private final ConcurrentMap<MavenProject, ProjectTiming> projectTimings = new ConcurrentHashMap<>(32);
+
+    /**
+     * @param nanoTime time of the event in nanoseconds, only compared to the times of the other events of the session
+     */
+    void projectStarted(@Nonnull MavenProject project, long nanoTime) {
+        projectTimings.put(project, new ProjectTiming(nanoTime));
+    }
+
+    /**
+     * @param nanoTime time of the event in nanoseconds, only compared to the times of the other events of the session
+     */
+    void projectEnded(@Nonnull MavenProject project, long nanoTime) {
+        ProjectTiming projectTiming = projectTimings.get(project);
+        if (projectTiming != null) {
+            projectTiming.endNanos = nanoTime;
+        }
+    }
+
+    public void reset() {
+        projectTimings.clear();
+    }
+
+    /**
+     * Longest path through the graph weighted by the duration of the projects. Projects that were not built (e.g.
+     * skipped) have a zero duration.
+     */
+    @Nonnull
+    Result computeCriticalPath(@Nonnull ProjectDependencyGraph projectDependencyGraph) {
+        List<MavenProject> sortedProjects = projectDependencyGraph.getSortedProjects();
+        Map<MavenProject, Long> durations = new HashMap<>();
+        // longest path ending with the project, the project included
+        Map<MavenProject, Long> longestPathsTo = new HashMap<>();
+        Map<MavenProject, MavenProject> criticalUpstreamProjects = new HashMap<>();
+        MavenProject lastProject = null;
+        for (MavenProject project : sortedProjects) {
+            long longestUpstreamPath = 0;
+            MavenProject criticalUpstreamProject = null;
+            for (MavenProject upstreamProject : projectDependencyGraph.getUpstreamProjects(project, false)) {
+                Long longestPathToUpstream = longestPathsTo.get(upstreamProject);
+                if (longestPathToUpstream != null && (criticalUpstreamProject == null || longestPathToUpstream > longestUpstreamPath)) {
+                    longestUpstreamPath = longestPathToUpstream;
+                    criticalUpstreamProject = upstreamProject;
+                }
+            }
+            if (criticalUpstreamProject != null) {
+                criticalUpstreamProjects.put(project, criticalUpstreamProject);
+            }
+            long duration = getDurationNanos(project);
+            durations.put(project, duration);
+            longestPathsTo.put(project, longestUpstreamPath + duration);
+            if (lastProject == null || longestPathsTo.get(project) > longestPathsTo.get(lastProject)) {
+                lastProject = project;
+            }
+        }
+        if (lastProject == null) {
+            return new Result(Collections.emptyList(), 0, durations, Collections.emptyMap());
+        }
+        long criticalPathNanos = longestPathsTo.get(lastProject);
+
+        // longest path starting after the project, the project excluded
+        Map<MavenProject, Long> longestPathsFrom = new HashMap<>();
+        for (int i = sortedProjects.size() - 1; i >= 0; i--) {
+            MavenProject project = sortedProjects.get(i);
+            long longestDownstreamPath = 0;
+            for (MavenProject downstreamProject : projectDependencyGraph.getDownstreamProjects(project, false)) {
+                Long longestPathFromDownstream = longestPathsFrom.get(downstreamProject);
+                if (longestPathFromDownstream != null) {
+                    longestDownstreamPath = Math.max(longestDownstreamPath, durations.get(downstreamProject) + longestPathFromDownstream);
+                }
+            }
+            longestPathsFrom.put(project, longestDownstreamPath);
+        }
+        // in the build order so that projects with the same slack remain in the build order once sorted by slack
+        Map<MavenProject, Long> slacks = new LinkedHashMap<>();
+        for (MavenProject project : sortedProjects) {
+            slacks.put(project, criticalPathNanos - longestPathsTo.get(project) - longestPathsFrom.get(project));
+        }
+
+        LinkedList<MavenProject> criticalPath = new LinkedList<>();
+        for (MavenProject project = lastProject; project != null; project = criticalUpstreamProjects.get(project)) {
+            criticalPath.addFirst(project);
+        }
+        return new Result(criticalPath, criticalPathNanos, durations, slacks);
+    }
+
+    private long getDurationNanos(@Nonnull MavenProject project) {
+        ProjectTiming projectTiming = projectTimings.get(project);
+        if (projectTiming == null || projectTiming.endNanos == 0) {
+            return 0;
+        }
+        return projectTiming.endNanos - projectTiming.startNanos;
+    }
+
+    /**
+     * Record on the given root span of the build the critical path (attributes
+     * {@link MavenOtelSemanticAttributes#MAVEN_BUILD_CRITICAL_PATH_PROJECTS} and
+     * {@link MavenOtelSemanticAttributes#MAVEN_BUILD_CRITICAL_PATH_DURATION}), an event per project of the critical path
+     * with its share of the critical path, and the slack of each project
+     * ({@link MavenOtelSemanticAttributes#MAVEN_BUILD_PROJECTS_SLACK}, formatted as {@code "${artifactId}=${slackInMillis}"}
+     * sorted by ascending slack and then by build order).
+     */
+    public void addCriticalPath(@Nonnull Span rootSpan, @Nonnull ProjectDependencyGraph projectDependencyGraph) {
+        Result result = computeCriticalPath(projectDependencyGraph);
+        if (result.criticalPath.isEmpty()) {
+            return;
+        }
+        List<String> criticalPathProjects = new ArrayList<>(result.criticalPath.size());
+        for (MavenProject project : result.criticalPath) {
+            criticalPathProjects.add(project.getArtifactId());
+            long durationNanos = result.durations.get(project);
+            rootSpan.addEvent(CRITICAL_PATH_PROJECT_EVENT, Attributes.of(
+                    MavenOtelSemanticAttributes.MAVEN_PROJECT_GROUP_ID, project.getGroupId(),
+                    MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, project.getArtifactId(),
+                    MavenOtelSemanticAttributes.MAVEN_PROJECT_DURATION, TimeUnit.NANOSECONDS.toMillis(durationNanos),
+                    MavenOtelSemanticAttributes.MAVEN_PROJECT_CRITICAL_PATH_SHARE, result.criticalPathNanos == 0 ? 0 : (double) durationNanos / result.criticalPathNanos));
+        }
+        rootSpan.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_CRITICAL_PATH_PROJECTS, criticalPathProjects);
+        rootSpan.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_CRITICAL_PATH_DURATION, TimeUnit.NANOSECONDS.toMillis(result.criticalPathNanos));
+
+        List<Map.Entry<MavenProject, Long>> slacks = new ArrayList<>(result.slacks.entrySet());
+        slacks.sort(Map.Entry.comparingByValue());
+        List<String> projectsSlack = new ArrayList<>(slacks.size());
+        for (Map.Entry<MavenProject, Long> slack : slacks) {
+            projectsSlack.add(slack.getKey().getArtifactId() + "=" + TimeUnit.NANOSECONDS.toMillis(slack.getValue()));
+        }
+        rootSpan.setAttribute(MavenOtelSemanticAttributes.MAVEN_BUILD_PROJECTS_SLACK, projectsSlack);
+    }
+
+    private static class ProjectTiming {
+        final long startNanos;
+        volatile long endNanos;
+
+        ProjectTiming(long startNanos) {
+            this.startNanos = startNanos;
+        }
+    }
+
+    static class Result {
+        final List<MavenProject> criticalPath;
+        final long criticalPathNanos;
+        final Map<MavenProject, Long> durations;
+        final Map<MavenProject, Long> slacks;
+
+        Result(List<MavenProject> criticalPath, long criticalPathNanos, Map<MavenProject, Long> durations, Map<MavenProject, Long> slacks) {
+            this.criticalPath = criticalPath;
+            this.criticalPathNanos = criticalPathNanos;
+            this.durations = durations;
+            this.slacks = slacks;
+        }
+    }
+}
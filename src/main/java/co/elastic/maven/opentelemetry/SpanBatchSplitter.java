@@ -0,0 +1,61 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.sdk.trace.data.SpanData;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Splits the batches of spans whose OTLP request exceeds {@code otel.exporter.otlp.max.request.size} into several
+ * requests, the collectors rejecting the messages larger than 4MiB by default.
+ */
+final class SpanBatchSplitter {
+    /**
+     * Below the 4MiB default max message size of the GRPC servers, the limit applying to the uncompressed message
+     */
+    static final int DEFAULT_MAX_REQUEST_SIZE = 3 * 1024 * 1024;
+
+    private SpanBatchSplitter() {
+    }
+
+    /**
+     * The batch is split in chunks of the same number of spans, sized according to the size of the request of the
+     * whole batch, then the chunks still too large are split again. A single span larger than the max size is sent
+     * as is.
+     *
+     * @param marshaler   creates the request of the given spans
+     * @param sizer       size in bytes of the request
+     * @param maxSize     max size in bytes of a request
+     * @return the requests, in the order of the spans
+     */
+    @Nonnull
+    static <T> List<T> split(@Nonnull Collection<SpanData> spans, @Nonnull Function<List<SpanData>, T> marshaler,
+                             @Nonnull ToIntFunction<T> sizer, int maxSize) {
+        List<T> requests = new ArrayList<>(1);
+        split(spans instanceof List ? (List<SpanData>) spans : new ArrayList<>(spans), marshaler, sizer, maxSize, requests);
+        return requests;
+    }
+
+    private static <T> void split(@Nonnull List<SpanData> spans, @Nonnull Function<List<SpanData>, T> marshaler,
+                                  @Nonnull ToIntFunction<T> sizer, int maxSize, @Nonnull List<T> requests) {
+        T request = marshaler.apply(spans);
+        int size = sizer.applyAsInt(request);
+        if (size <= maxSize || spans.size() == 1) {
+            requests.add(request);
+            return;
+        }
+        int chunks = (int) Math.min(spans.size(), (size + (long) maxSize - 1) / maxSize);
+        for (int i = 0; i < chunks; i++) {
+            split(spans.subList(i * spans.size() / chunks, (i + 1) * spans.size() / chunks), marshaler, sizer, maxSize, requests);
+        }
+    }
+}
@@ -8,106 +8,262 @@ import io.opentelemetry.api.trace.Span;
 import org.apache.maven.model.Plugin;
 import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.project.MavenProject;
-import org.codehaus.plexus.component.annotations.Component;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
- * Holds the state of the spans in progress
- * FIXME support multi module projects
+ * Holds the state of the spans in progress of a Maven session, see {@link OtelExecutionListener}.
+ *
+ * Thread safe: with multi-threaded builds ({@code mvn -T ...}), the {@link OtelExecutionListener} is invoked
+ * concurrently by the Maven builder threads. The spans are stored in {@link ConcurrentHashMap}s whose
+ * lock striping keeps builder threads from contending on distinct projects and mojo executions.
+ *
+ * Spans are indexed by the identity of the {@link MojoExecution} and {@link MavenProject} instances as Maven passes
+ * the same instances on the start and end events. {@link MojoExecution} doesn't override {@link Object#equals(Object)};
+ * {@link MavenProject} does (groupId:artifactId:version, hash recomputed on each call), so the projects are wrapped in
+ * a {@link ProjectIdentity} whose escape analysis usually removes the allocation. The value based
+ * {@link MojoExecutionKey}, including the coordinates of the project, and {@link MavenProjectKey} are only used as a
+ * fallback when an event is received with another instance than the one used to start the span.
  */
-@Component(role = SpanRegistry.class)
 public class SpanRegistry {
 
-    private Span rootSpan;
+    private final AtomicReference<Span> rootSpan = new AtomicReference<>();
 
-    private final Map<MojoExecutionKey, Span> mojoExecutionKeySpanMap = new HashMap<>();
-    private final Map<MavenProjectKey, Span> mavenProjectKeySpanMap = new HashMap<>();
+    private final ConcurrentMap<MojoExecution, MojoExecutionSpan> mojoExecutionSpanMap = new ConcurrentHashMap<>(64);
+    private final ConcurrentMap<ProjectIdentity, Span> mavenProjectSpanMap = new ConcurrentHashMap<>(32);
+    /**
+     * Span of the project or of the mojo execution running in the thread
+     */
+    private final ThreadLocal<Span> currentSpan = new ThreadLocal<>();
+    private final ThreadLocal<MavenProject> currentProject = new ThreadLocal<>();
 
     @Nullable
     public Span getRootSpan() {
-        return rootSpan;
+        return rootSpan.get();
     }
 
     @Nonnull
     public Span getSpan(@Nonnull MavenProject mavenProject) {
-        final MavenProjectKey key = MavenProjectKey.fromMavenProject(mavenProject);
-        final Span span = this.mavenProjectKeySpanMap.get(key);
+        Span span = this.mavenProjectSpanMap.get(new ProjectIdentity(mavenProject));
+        if (span == null) {
+            span = findSpanByKey(mavenProject);
+        }
         if (span == null) {
             throw new IllegalStateException("Span not started for project " + mavenProject.getGroupId() + ":" + mavenProject.getArtifactId());
         }
         return span;
     }
 
+    /**
+     * @return {@code null} if no span is started for the given project
+     */
+    @Nullable
+    public Span findSpan(@Nonnull MavenProject mavenProject) {
+        Span span = this.mavenProjectSpanMap.get(new ProjectIdentity(mavenProject));
+        return span == null ? findSpanByKey(mavenProject) : span;
+    }
+
+    /**
+     * @return the span of the project or of the mojo execution running in the current thread, {@code null} if none
+     */
+    @Nullable
+    public Span getCurrentSpan() {
+        return currentSpan.get();
+    }
+
+    /**
+     * @return the project built in the current thread, {@code null} if none
+     */
+    @Nullable
+    public MavenProject getCurrentProject() {
+        return currentProject.get();
+    }
+
+    /**
+     * @param span    the span of the project or of the mojo execution starting in the current thread, {@code null} at
+     *                the end of the project
+     * @param project the project built in the current thread, {@code null} at the end of the project
+     */
+    public void setCurrentSpan(@Nullable Span span, @Nullable MavenProject project) {
+        if (span == null) {
+            currentSpan.remove();
+            currentProject.remove();
+        } else {
+            currentSpan.set(span);
+            currentProject.set(project);
+        }
+    }
+
     @Nonnull
     public Span getRootSpanNotNull() {
+        Span rootSpan = this.rootSpan.get();
         if (rootSpan == null) {
             throw new IllegalStateException("Root span not defined");
         }
         return rootSpan;
     }
 
+    /**
+     * @throws IllegalStateException Root span not defined or mojo execution spans still in progress
+     */
     @Nonnull
     public Span removeRootSpan() {
+        Span rootSpan = this.rootSpan.get();
         if (rootSpan == null) {
             throw new IllegalStateException("Root span not defined");
         }
-        if (!this.mojoExecutionKeySpanMap.isEmpty()) {
-            throw new IllegalStateException("Remaining children spans: " + this.mojoExecutionKeySpanMap.keySet().stream().map(MojoExecutionKey::toString).collect(Collectors.joining(", ")));
+        if (!this.mojoExecutionSpanMap.isEmpty()) {
+            throw new IllegalStateException("Remaining children spans: " + this.mojoExecutionSpanMap.entrySet().stream().map(entry -> MojoExecutionKey.fromMojoExecution(entry.getKey(), entry.getValue().project).toString()).collect(Collectors.joining(", ")));
         }
+        this.rootSpan.compareAndSet(rootSpan, null);
         return rootSpan;
     }
 
+    /**
+     * Remove the spans still in progress, whose end events were lost, so that the root span can be removed
+     *
+     * @return the spans of the mojo executions then the spans of the projects
+     */
+    @Nonnull
+    public List<Span> removeRemainingSpans() {
+        List<Span> spans = new ArrayList<>();
+        for (MojoExecution mojoExecution : mojoExecutionSpanMap.keySet()) {
+            MojoExecutionSpan mojoExecutionSpan = mojoExecutionSpanMap.remove(mojoExecution);
+            if (mojoExecutionSpan != null) {
+                spans.add(mojoExecutionSpan.span);
+            }
+        }
+        for (ProjectIdentity project : mavenProjectSpanMap.keySet()) {
+            Span span = mavenProjectSpanMap.remove(project);
+            if (span != null) {
+                spans.add(span);
+            }
+        }
+        return spans;
+    }
+
     public void putSpan(@Nonnull Span span, @Nonnull MavenProject mavenProject) {
-        MavenProjectKey key = MavenProjectKey.fromMavenProject(mavenProject);
-        Span previousSpanForKey = mavenProjectKeySpanMap.put(key, span);
+        Span previousSpanForKey = mavenProjectSpanMap.putIfAbsent(new ProjectIdentity(mavenProject), span);
         if (previousSpanForKey != null) {
-            throw new IllegalStateException();
+            throw new IllegalStateException("Span already started for " + MavenProjectKey.fromMavenProject(mavenProject));
         }
     }
 
     @Nonnull
     public Span removeSpan(@Nonnull MavenProject mavenProject) throws IllegalStateException {
-        MavenProjectKey key = MavenProjectKey.fromMavenProject(mavenProject);
-        Span span = mavenProjectKeySpanMap.remove(key);
+        Span span = mavenProjectSpanMap.remove(new ProjectIdentity(mavenProject));
+        if (span == null) {
+            span = removeSpanByKey(mavenProject);
+        }
         if (span == null) {
-            throw new IllegalStateException();
+            throw new IllegalStateException("Span not found for " + MavenProjectKey.fromMavenProject(mavenProject));
         }
         return span;
     }
 
-    public void putSpan(@Nonnull Span span, @Nonnull MojoExecution mojoExecution) {
-        MojoExecutionKey key = MojoExecutionKey.fromMojoExecution(mojoExecution);
-        Span previousSpanForKey = mojoExecutionKeySpanMap.put(key, span);
+    /**
+     * @param mavenProject the project of the mojo execution, the same plugin execution (e.g. {@code default-compile})
+     *                     runs concurrently in several projects of a multi-threaded build
+     */
+    public void putSpan(@Nonnull Span span, @Nonnull MojoExecution mojoExecution, @Nonnull MavenProject mavenProject) {
+        MojoExecutionSpan previousSpanForKey = mojoExecutionSpanMap.putIfAbsent(mojoExecution, new MojoExecutionSpan(span, mavenProject));
         if (previousSpanForKey != null) {
-            throw new IllegalStateException();
+            throw new IllegalStateException("Span already started for " + MojoExecutionKey.fromMojoExecution(mojoExecution, mavenProject));
         }
     }
 
     @Nonnull
-    public Span removeSpan(@Nonnull MojoExecution mojoExecution) throws IllegalStateException {
-        MojoExecutionKey key = MojoExecutionKey.fromMojoExecution(mojoExecution);
-        Span span = mojoExecutionKeySpanMap.remove(key);
+    public Span removeSpan(@Nonnull MojoExecution mojoExecution, @Nonnull MavenProject mavenProject) throws IllegalStateException {
+        MojoExecutionSpan mojoExecutionSpan = mojoExecutionSpanMap.remove(mojoExecution);
+        Span span = mojoExecutionSpan == null ? removeSpanByKey(mojoExecution, mavenProject) : mojoExecutionSpan.span;
         if (span == null) {
-            throw new IllegalStateException();
+            throw new IllegalStateException("Span not found for " + MojoExecutionKey.fromMojoExecution(mojoExecution, mavenProject));
         }
         return span;
     }
 
+    /**
+     * Slow path, lookup by value of a project registered with another {@link MavenProject} instance
+     */
+    @Nullable
+    private Span findSpanByKey(@Nonnull MavenProject mavenProject) {
+        MavenProjectKey key = MavenProjectKey.fromMavenProject(mavenProject);
+        for (Map.Entry<ProjectIdentity, Span> entry : mavenProjectSpanMap.entrySet()) {
+            if (key.equals(MavenProjectKey.fromMavenProject(entry.getKey().project))) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Slow path, lookup by value of a project registered with another {@link MavenProject} instance
+     */
+    @Nullable
+    private Span removeSpanByKey(@Nonnull MavenProject mavenProject) {
+        MavenProjectKey key = MavenProjectKey.fromMavenProject(mavenProject);
+        for (Map.Entry<ProjectIdentity, Span> entry : mavenProjectSpanMap.entrySet()) {
+            if (key.equals(MavenProjectKey.fromMavenProject(entry.getKey().project)) && mavenProjectSpanMap.remove(entry.getKey(), entry.getValue())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Slow path, lookup by value of a mojo execution registered with another {@link MojoExecution} instance, only
+     * matching the mojo executions of the same project
+     */
+    @Nullable
+    private Span removeSpanByKey(@Nonnull MojoExecution mojoExecution, @Nonnull MavenProject mavenProject) {
+        MojoExecutionKey key = MojoExecutionKey.fromMojoExecution(mojoExecution, mavenProject);
+        for (Map.Entry<MojoExecution, MojoExecutionSpan> entry : mojoExecutionSpanMap.entrySet()) {
+            if (key.equals(MojoExecutionKey.fromMojoExecution(entry.getKey(), entry.getValue().project)) && mojoExecutionSpanMap.remove(entry.getKey(), entry.getValue())) {
+                return entry.getValue().span;
+            }
+        }
+        return null;
+    }
+
     /**
      * @param rootSpan
      * @throws IllegalStateException Root span already defined
      */
     public void setRootSpan(@Nonnull Span rootSpan) throws IllegalStateException {
-        if (this.rootSpan != null) {
-            throw new IllegalStateException("Root span already defined " + this.rootSpan);
+        if (!this.rootSpan.compareAndSet(null, rootSpan)) {
+            throw new IllegalStateException("Root span already defined " + this.rootSpan.get());
+        }
+    }
+
+    /**
+     * Identity of a {@link MavenProject} instance, ignoring {@link MavenProject#equals(Object)}, also used to index the
+     * project span templates of the {@link OtelExecutionListener}
+     */
+    static final class ProjectIdentity {
+        final MavenProject project;
+
+        ProjectIdentity(@Nonnull MavenProject project) {
+            this.project = project;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof ProjectIdentity && ((ProjectIdentity) o).project == project);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(project);
         }
-        this.rootSpan = rootSpan;
     }
 
     private static class MavenProjectKey {
@@ -145,7 +301,22 @@ public class SpanRegistry {
                     '}';
         }
     }
+    /**
+     * Span of a mojo execution and the project it was started for
+     */
+    private static class MojoExecutionSpan {
+        final Span span;
+        final MavenProject project;
+
+        MojoExecutionSpan(@Nonnull Span span, @Nonnull MavenProject project) {
+            this.span = span;
+            this.project = project;
+        }
+    }
+
     private static class MojoExecutionKey {
+        final String projectGroupId;
+        final String projectArtifactId;
         final String executionId;
         final String goal;
         final String groupId;
@@ -154,7 +325,7 @@ public class SpanRegistry {
         final String pluginArtifactId;
 
         @Nonnull
-        public static MojoExecutionKey fromMojoExecution(@Nonnull MojoExecution mojoExecution) {
+        public static MojoExecutionKey fromMojoExecution(@Nonnull MojoExecution mojoExecution, @Nonnull MavenProject mavenProject) {
             if (mojoExecution == null) {
                 throw new NullPointerException("Given MojoExecution is null");
             }
@@ -163,7 +334,9 @@ public class SpanRegistry {
                 throw new NullPointerException("Plugin is null for MojoExecution " + mojoExecution.identify());
 
             }
-            return new MojoExecutionKey(mojoExecution.getExecutionId(),
+            return new MojoExecutionKey(mavenProject.getGroupId(),
+                    mavenProject.getArtifactId(),
+                    mojoExecution.getExecutionId(),
                     mojoExecution.getGoal(),
                     mojoExecution.getGroupId(),
                     mojoExecution.getArtifactId(),
@@ -171,7 +344,9 @@ public class SpanRegistry {
                     plugin.getArtifactId());
         }
 
-        public MojoExecutionKey(String executionId, String goal, String groupId, String artifactId, String pluginGroupId, String pluginArtifactId) {
+        public MojoExecutionKey(String projectGroupId, String projectArtifactId, String executionId, String goal, String groupId, String artifactId, String pluginGroupId, String pluginArtifactId) {
+            this.projectGroupId = projectGroupId;
+            this.projectArtifactId = projectArtifactId;
             this.executionId = executionId;
             this.goal = goal;
             this.groupId = groupId;
@@ -185,18 +360,20 @@ public class SpanRegistry {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             MojoExecutionKey that = (MojoExecutionKey) o;
-            return Objects.equals(executionId, that.executionId) && Objects.equals(goal, that.goal) && Objects.equals(groupId, that.groupId) && Objects.equals(artifactId, that.artifactId) && Objects.equals(pluginGroupId, that.pluginGroupId) && Objects.equals(pluginArtifactId, that.pluginArtifactId);
+            return Objects.equals(projectGroupId, that.projectGroupId) && Objects.equals(projectArtifactId, that.projectArtifactId) && Objects.equals(executionId, that.executionId) && Objects.equals(goal, that.goal) && Objects.equals(groupId, that.groupId) && Objects.equals(artifactId, that.artifactId) && Objects.equals(pluginGroupId, that.pluginGroupId) && Objects.equals(pluginArtifactId, that.pluginArtifactId);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(executionId, goal, groupId, artifactId, pluginGroupId, pluginArtifactId);
+            return Objects.hash(projectGroupId, projectArtifactId, executionId, goal, groupId, artifactId, pluginGroupId, pluginArtifactId);
         }
 
         @Override
         public String toString() {
             return "MojoExecutionKey{" +
-                    "executionId='" + executionId + '\'' +
+                    "projectGroupId='" + projectGroupId + '\'' +
+                    ", projectArtifactId='" + projectArtifactId + '\'' +
+                    ", executionId='" + executionId + '\'' +
                     ", goal='" + goal + '\'' +
                     ", groupId='" + groupId + '\'' +
                     ", artifactId='" + artifactId + '\'' +
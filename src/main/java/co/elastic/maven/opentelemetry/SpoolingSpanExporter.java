@@ -0,0 +1,169 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps the network {@link SpanExporter} to bound the time spent exporting spans at the end of the build.
+ *
+ * Once {@link #onShutdownDeadlineExceeded()} is invoked, the batches still in flight and the batches exported
+ * afterwards are diverted to the spool file (see {@link OtlpFileSpanExporter} and {@link OtlpFileReplay}) rather than
+ * waiting for the network exporter. Batches failing to be exported are spooled as well. Without spool file, these
+ * spans are dropped and reported by {@link #getSummary()}.
+ *
+ * The results of the diverted batches are completed right away so that the {@link
+ * io.opentelemetry.sdk.trace.export.BatchSpanProcessor} stops waiting for them and drains its queue into the spool.
+ * A diverted batch whose network export succeeds afterwards is not counted as exported: it may be received twice by
+ * the backend if the spool is replayed. Batches exported once the spool is closed are dropped and counted.
+ */
+public class SpoolingSpanExporter implements SpanExporter {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final SpanExporter delegate;
+    @Nullable
+    private final OtlpFileSpanExporter spool;
+
+    private final Map<CompletableResultCode, Collection<SpanData>> inFlightBatches = new ConcurrentHashMap<>();
+    private volatile boolean shutdownDeadlineExceeded = false;
+    /**
+     * Guarded by {@code this}, the spool is closed
+     */
+    private boolean closed = false;
+
+    private final AtomicLong exportedSpans = new AtomicLong();
+    private final AtomicLong spooledSpans = new AtomicLong();
+    private final AtomicLong droppedSpans = new AtomicLong();
+
+    public SpoolingSpanExporter(@Nonnull SpanExporter delegate, @Nullable OtlpFileSpanExporter spool) {
+        this.delegate = delegate;
+        this.spool = spool;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        if (shutdownDeadlineExceeded) {
+            return divert(spans);
+        }
+        // completed by the network export or by the diversion on shutdown deadline, whichever comes first
+        final CompletableResultCode result = new CompletableResultCode();
+        inFlightBatches.put(result, spans);
+        final CompletableResultCode exportResult = delegate.export(spans);
+        exportResult.whenComplete(() -> {
+            if (inFlightBatches.remove(result) == null) {
+                // already diverted on shutdown deadline, the spans are spooled or counted as dropped
+                logger.debug("OpenTelemetry: Ignore the late export result of {} spans diverted on shutdown deadline, success: {}", spans.size(), exportResult.isSuccess());
+                return;
+            }
+            if (exportResult.isSuccess()) {
+                exportedSpans.addAndGet(spans.size());
+                result.succeed();
+            } else {
+                divert(spans);
+                result.fail();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Stop waiting for the network exporter: divert the in flight batches and the subsequent ones to the spool.
+     */
+    public void onShutdownDeadlineExceeded() {
+        this.shutdownDeadlineExceeded = true;
+        for (Map.Entry<CompletableResultCode, Collection<SpanData>> inFlightBatch : inFlightBatches.entrySet()) {
+            if (inFlightBatches.remove(inFlightBatch.getKey()) != null) {
+                divert(inFlightBatch.getValue());
+                // not exported by the network exporter, unblocks the span processor waiting for the batch
+                inFlightBatch.getKey().fail();
+            }
+        }
+    }
+
+    @Nonnull
+    private synchronized CompletableResultCode divert(@Nonnull Collection<SpanData> spans) {
+        if (closed) {
+            logger.debug("OpenTelemetry: Drop {} spans exported after the close of the exporter", spans.size());
+            droppedSpans.addAndGet(spans.size());
+            return CompletableResultCode.ofFailure();
+        }
+        if (spool != null && spool.export(spans).isSuccess()) {
+            spooledSpans.addAndGet(spans.size());
+            return CompletableResultCode.ofSuccess();
+        }
+        droppedSpans.addAndGet(spans.size());
+        return CompletableResultCode.ofFailure();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        CompletableResultCode result = delegate.shutdown();
+        closeSpool();
+        return result;
+    }
+
+    /**
+     * Close the network exporter within the given timeout, divert the batches still in flight and then close the
+     * spool. To be invoked once the span processor is drained, the spans exported afterwards are dropped.
+     */
+    public void close(long timeout, TimeUnit unit) {
+        try {
+            if (delegate instanceof OtlpExporter) {
+                ((OtlpExporter) delegate).close(timeout, unit);
+            } else {
+                delegate.shutdown().join(timeout, unit);
+            }
+        } finally {
+            onShutdownDeadlineExceeded();
+            closeSpool();
+        }
+    }
+
+    private synchronized void closeSpool() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (spool != null) {
+            spool.shutdown();
+        }
+    }
+
+    @Override
+    public void close() {
+        close(10, TimeUnit.SECONDS);
+    }
+
+    @Nonnull
+    public String getSummary() {
+        String summary = "exported spans: " + exportedSpans.get();
+        if (spool != null) {
+            summary += ", spans spooled to " + spool.getPath() + ": " + spooledSpans.get();
+        }
+        return summary + ", dropped spans: " + droppedSpans.get();
+    }
+
+    public boolean hasUnexportedSpans() {
+        return spooledSpans.get() > 0 || droppedSpans.get() > 0;
+    }
+}
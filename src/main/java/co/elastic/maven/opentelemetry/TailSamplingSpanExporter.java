@@ -0,0 +1,265 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tail sampling of the builds ({@code -Dotel.traces.sampler=interesting_builds}): buffers in memory the spans of each
+ * build until its root span is exported and exports them only if the build is interesting:
+ * <ul>
+ *     <li>a span has an error status (failed build, project, mojo or test),</li>
+ *     <li>the build lasts longer than the threshold ({@code otel.traces.sampler.arg} in milliseconds),</li>
+ *     <li>a mojo execution lasts longer than the 95th percentile of its {@link MojoDurationBaseline}, or is reported
+ *     as a regression by the local baseline of the execution listener ({@code maven.execution.regression}).</li>
+ * </ul>
+ * Otherwise only the root span of the build is exported, with the sampling decision and the number of discarded spans
+ * as attributes. Once a build is known to be interesting, its spans are exported without being buffered.
+ *
+ * Wraps the exporter of the {@link BatchSpanProcessor} so that buffering doesn't fill up the queue of the batch span
+ * processor. The number of buffered spans is capped, spans above the cap are discarded.
+ */
+public class TailSamplingSpanExporter implements SpanExporter {
+
+    public static final String INTERESTING_BUILDS_SAMPLER = "interesting_builds";
+
+    static final long DEFAULT_BUILD_DURATION_THRESHOLD_MILLIS = 600_000;
+    static final int DEFAULT_MAX_BUFFERED_SPANS = 100_000;
+
+    static final String DECISION_KEPT = "kept";
+    static final String DECISION_ROOT_ONLY = "root_only";
+    static final String REASON_FAILURE = "failure";
+    static final String REASON_BUILD_DURATION = "build_duration";
+    static final String REASON_MOJO_DURATION = "mojo_duration";
+    static final String REASON_INCOMPLETE = "incomplete";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final SpanExporter delegate;
+    private final long buildDurationThresholdNanos;
+    private final int maxBufferedSpans;
+    private final int maxExportBatchSize;
+    private final MojoDurationBaseline mojoDurationBaseline;
+
+    private final ConcurrentMap<String, TraceBuffer> traceBuffers = new ConcurrentHashMap<>();
+    private final AtomicInteger bufferedSpans = new AtomicInteger();
+
+    /**
+     * @param maxExportBatchSize max number of spans per export of the buffered spans to the delegate exporter
+     */
+    public TailSamplingSpanExporter(@Nonnull SpanExporter delegate, long buildDurationThresholdNanos, int maxBufferedSpans,
+                                    int maxExportBatchSize, @Nonnull MojoDurationBaseline mojoDurationBaseline) {
+        this.delegate = delegate;
+        this.buildDurationThresholdNanos = buildDurationThresholdNanos;
+        this.maxBufferedSpans = maxBufferedSpans;
+        this.maxExportBatchSize = Math.max(1, maxExportBatchSize);
+        this.mojoDurationBaseline = mojoDurationBaseline;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        List<SpanData> exportedSpans = new ArrayList<>();
+        for (SpanData span : spans) {
+            String traceId = span.getTraceId();
+            String keepReason = getKeepReason(span);
+            if (isRootSpan(span)) {
+                TraceBuffer traceBuffer = traceBuffers.remove(traceId);
+                if (traceBuffer == null) {
+                    traceBuffer = new TraceBuffer();
+                }
+                traceBuffer.endTrace(span, keepReason, exportedSpans);
+            } else {
+                traceBuffers.computeIfAbsent(traceId, k -> new TraceBuffer()).add(span, keepReason, exportedSpans);
+            }
+        }
+        return exportInBatches(exportedSpans);
+    }
+
+    /**
+     * @return {@code null} if the given span doesn't make the build interesting
+     */
+    @Nullable
+    private String getKeepReason(@Nonnull SpanData span) {
+        if (span.getStatus().getStatusCode() == StatusCode.ERROR) {
+            return REASON_FAILURE;
+        }
+        Attributes attributes = span.getAttributes();
+        Boolean regression = attributes.get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_REGRESSION);
+        if (regression != null) {
+            // already compared to the local baseline by the execution listener
+            return regression ? REASON_MOJO_DURATION : null;
+        }
+        if (attributes.get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_GOAL) != null) {
+            long durationNanos = span.getEndEpochNanos() - span.getStartEpochNanos();
+            long p95Nanos = mojoDurationBaseline.getP95Nanos(attributes);
+            mojoDurationBaseline.record(attributes, durationNanos);
+            if (p95Nanos >= 0 && durationNanos > p95Nanos) {
+                return REASON_MOJO_DURATION;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Root span of the build, possibly child of a remote span propagated by the CI platform
+     */
+    static boolean isRootSpan(@Nonnull SpanData span) {
+        SpanContext parentSpanContext = span.getParentSpanContext();
+        return !parentSpanContext.isValid() || parentSpanContext.isRemote();
+    }
+
+    @Nonnull
+    private CompletableResultCode exportInBatches(@Nonnull List<SpanData> spans) {
+        if (spans.isEmpty()) {
+            return CompletableResultCode.ofSuccess();
+        } else if (spans.size() <= maxExportBatchSize) {
+            return delegate.export(spans);
+        }
+        List<CompletableResultCode> results = new ArrayList<>(spans.size() / maxExportBatchSize + 1);
+        for (int i = 0; i < spans.size(); i += maxExportBatchSize) {
+            results.add(delegate.export(new ArrayList<>(spans.subList(i, Math.min(spans.size(), i + maxExportBatchSize)))));
+        }
+        return CompletableResultCode.ofAll(results);
+    }
+
+    int getBufferedSpans() {
+        return bufferedSpans.get();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return delegate.flush();
+    }
+
+    /**
+     * Spans of builds whose root span was not exported are exported, the outcome of the build being unknown: these
+     * builds are kept as {@link #REASON_INCOMPLETE incomplete} rather than failed
+     */
+    @Override
+    public CompletableResultCode shutdown() {
+        List<SpanData> exportedSpans = new ArrayList<>();
+        int incompleteTraces = 0;
+        for (TraceBuffer traceBuffer : traceBuffers.values()) {
+            if (traceBuffer.keep(REASON_INCOMPLETE, exportedSpans)) {
+                incompleteTraces++;
+            }
+        }
+        traceBuffers.clear();
+        if (!exportedSpans.isEmpty()) {
+            logger.debug("OpenTelemetry: Export {} spans of {} incomplete builds without root span", exportedSpans.size(), incompleteTraces);
+            exportInBatches(exportedSpans);
+        }
+        return delegate.shutdown();
+    }
+
+    /**
+     * Spans of a build, buffered until the end of the build or until the build is known to be interesting
+     */
+    private class TraceBuffer {
+        @Nullable
+        private List<SpanData> spans = new ArrayList<>();
+        @Nullable
+        private String keepReason;
+        private long startEpochNanos = Long.MAX_VALUE;
+        private long discardedSpans;
+
+        synchronized void add(@Nonnull SpanData span, @Nullable String reason, @Nonnull List<SpanData> exportedSpans) {
+            startEpochNanos = Math.min(startEpochNanos, span.getStartEpochNanos());
+            if (reason == null && span.getEndEpochNanos() - startEpochNanos > buildDurationThresholdNanos) {
+                reason = REASON_BUILD_DURATION;
+            }
+            if (reason != null) {
+                keep(reason, exportedSpans);
+            }
+            if (keepReason != null) {
+                exportedSpans.add(span);
+            } else if (bufferedSpans.incrementAndGet() <= maxBufferedSpans) {
+                spans.add(span);
+            } else {
+                bufferedSpans.decrementAndGet();
+                discardedSpans++;
+            }
+        }
+
+        /**
+         * @return {@code true} if the trace was not already kept
+         */
+        synchronized boolean keep(@Nonnull String reason, @Nonnull List<SpanData> exportedSpans) {
+            if (keepReason != null) {
+                return false;
+            }
+            keepReason = reason;
+            exportedSpans.addAll(spans);
+            bufferedSpans.addAndGet(-spans.size());
+            spans = null;
+            return true;
+        }
+
+        synchronized void endTrace(@Nonnull SpanData rootSpan, @Nullable String reason, @Nonnull List<SpanData> exportedSpans) {
+            if (reason == null && rootSpan.getEndEpochNanos() - rootSpan.getStartEpochNanos() > buildDurationThresholdNanos) {
+                reason = REASON_BUILD_DURATION;
+            }
+            if (reason != null) {
+                keep(reason, exportedSpans);
+            }
+            AttributesBuilder samplingAttributes = Attributes.builder();
+            if (keepReason == null) {
+                discardedSpans += spans.size();
+                bufferedSpans.addAndGet(-spans.size());
+                spans = null;
+                samplingAttributes.put(MavenOtelSemanticAttributes.MAVEN_BUILD_SAMPLING_DECISION, DECISION_ROOT_ONLY);
+            } else {
+                samplingAttributes.put(MavenOtelSemanticAttributes.MAVEN_BUILD_SAMPLING_DECISION, DECISION_KEPT);
+                samplingAttributes.put(MavenOtelSemanticAttributes.MAVEN_BUILD_SAMPLING_REASON, keepReason);
+            }
+            samplingAttributes.put(MavenOtelSemanticAttributes.MAVEN_BUILD_DISCARDED_SPANS, discardedSpans);
+            exportedSpans.add(new SampledRootSpanData(rootSpan, samplingAttributes.build()));
+        }
+    }
+
+    /**
+     * Root span enriched with the sampling decision, the root span having ended before the decision is made
+     */
+    private static class SampledRootSpanData extends DelegatingSpanData {
+        private final Attributes attributes;
+        private final int addedAttributes;
+
+        SampledRootSpanData(@Nonnull SpanData delegate, @Nonnull Attributes samplingAttributes) {
+            super(delegate);
+            this.attributes = delegate.getAttributes().toBuilder().putAll(samplingAttributes).build();
+            this.addedAttributes = attributes.size() - delegate.getAttributes().size();
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public int getTotalAttributeCount() {
+            return super.getTotalAttributeCount() + addedAttributes;
+        }
+    }
+}
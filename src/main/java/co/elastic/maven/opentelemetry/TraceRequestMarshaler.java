@@ -0,0 +1,252 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.data.StatusData;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serialize spans as an OTLP {@code ExportTraceServiceRequest} protobuf message without going through the generated
+ * protobuf classes (see {@code io.opentelemetry.exporter.otlp.internal.SpanAdapter}). The output is equivalent to
+ * the one of the {@code SpanAdapter}, including the deprecated status code.
+ */
+final class TraceRequestMarshaler {
+
+    // ExportTraceServiceRequest
+    private static final int REQUEST_RESOURCE_SPANS = 1;
+    // ResourceSpans
+    private static final int RESOURCE_SPANS_RESOURCE = 1;
+    private static final int RESOURCE_SPANS_INSTRUMENTATION_LIBRARY_SPANS = 2;
+    private static final int RESOURCE_SPANS_SCHEMA_URL = 3;
+    // Resource
+    private static final int RESOURCE_ATTRIBUTES = 1;
+    // InstrumentationLibrarySpans
+    private static final int LIBRARY_SPANS_INSTRUMENTATION_LIBRARY = 1;
+    private static final int LIBRARY_SPANS_SPANS = 2;
+    private static final int LIBRARY_SPANS_SCHEMA_URL = 3;
+    // InstrumentationLibrary
+    private static final int LIBRARY_NAME = 1;
+    private static final int LIBRARY_VERSION = 2;
+    // Span
+    private static final int SPAN_TRACE_ID = 1;
+    private static final int SPAN_SPAN_ID = 2;
+    private static final int SPAN_PARENT_SPAN_ID = 4;
+    private static final int SPAN_NAME = 5;
+    private static final int SPAN_KIND = 6;
+    private static final int SPAN_START_TIME_UNIX_NANO = 7;
+    private static final int SPAN_END_TIME_UNIX_NANO = 8;
+    private static final int SPAN_ATTRIBUTES = 9;
+    private static final int SPAN_DROPPED_ATTRIBUTES_COUNT = 10;
+    private static final int SPAN_EVENTS = 11;
+    private static final int SPAN_DROPPED_EVENTS_COUNT = 12;
+    private static final int SPAN_LINKS = 13;
+    private static final int SPAN_DROPPED_LINKS_COUNT = 14;
+    private static final int SPAN_STATUS = 15;
+    // Span.Event
+    private static final int EVENT_TIME_UNIX_NANO = 1;
+    private static final int EVENT_NAME = 2;
+    private static final int EVENT_ATTRIBUTES = 3;
+    private static final int EVENT_DROPPED_ATTRIBUTES_COUNT = 4;
+    // Span.Link
+    private static final int LINK_TRACE_ID = 1;
+    private static final int LINK_SPAN_ID = 2;
+    private static final int LINK_ATTRIBUTES = 4;
+    private static final int LINK_DROPPED_ATTRIBUTES_COUNT = 5;
+    // Status
+    private static final int STATUS_DEPRECATED_CODE = 1;
+    private static final int STATUS_MESSAGE = 2;
+    private static final int STATUS_CODE = 3;
+    private static final int STATUS_CODE_OK = 1;
+    private static final int STATUS_CODE_ERROR = 2;
+    private static final int DEPRECATED_STATUS_CODE_UNKNOWN_ERROR = 2;
+    // KeyValue
+    private static final int KEY_VALUE_KEY = 1;
+    private static final int KEY_VALUE_VALUE = 2;
+    // AnyValue
+    private static final int ANY_VALUE_STRING = 1;
+    private static final int ANY_VALUE_BOOL = 2;
+    private static final int ANY_VALUE_INT = 3;
+    private static final int ANY_VALUE_DOUBLE = 4;
+    private static final int ANY_VALUE_ARRAY = 5;
+    // ArrayValue
+    private static final int ARRAY_VALUE_VALUES = 1;
+
+    /**
+     * Average size of a serialized span of the Maven extension, used to size the buffer
+     */
+    private static final int ESTIMATED_SPAN_SIZE_IN_BYTES = 512;
+
+    private TraceRequestMarshaler() {
+    }
+
+    @Nonnull
+    static byte[] toByteArray(@Nonnull Collection<SpanData> spans) {
+        ProtobufWriter writer = new ProtobufWriter(Math.max(1024, spans.size() * ESTIMATED_SPAN_SIZE_IN_BYTES));
+        Map<Resource, Map<InstrumentationLibraryInfo, List<SpanData>>> spansByResourceAndLibrary = new LinkedHashMap<>();
+        for (SpanData span : spans) {
+            spansByResourceAndLibrary
+                    .computeIfAbsent(span.getResource(), k -> new LinkedHashMap<>())
+                    .computeIfAbsent(span.getInstrumentationLibraryInfo(), k -> new ArrayList<>())
+                    .add(span);
+        }
+        spansByResourceAndLibrary.forEach((resource, spansByLibrary) -> {
+            writer.startMessage(REQUEST_RESOURCE_SPANS);
+            writer.startMessage(RESOURCE_SPANS_RESOURCE);
+            writeAttributes(writer, RESOURCE_ATTRIBUTES, resource.getAttributes());
+            writer.endMessage();
+            spansByLibrary.forEach((library, librarySpans) -> {
+                writer.startMessage(RESOURCE_SPANS_INSTRUMENTATION_LIBRARY_SPANS);
+                writer.startMessage(LIBRARY_SPANS_INSTRUMENTATION_LIBRARY);
+                writer.writeString(LIBRARY_NAME, library.getName());
+                if (library.getVersion() != null) {
+                    writer.writeString(LIBRARY_VERSION, library.getVersion());
+                }
+                writer.endMessage();
+                for (SpanData span : librarySpans) {
+                    writeSpan(writer, span);
+                }
+                if (library.getSchemaUrl() != null) {
+                    writer.writeString(LIBRARY_SPANS_SCHEMA_URL, library.getSchemaUrl());
+                }
+                writer.endMessage();
+            });
+            if (resource.getSchemaUrl() != null) {
+                writer.writeString(RESOURCE_SPANS_SCHEMA_URL, resource.getSchemaUrl());
+            }
+            writer.endMessage();
+        });
+        return writer.toByteArray();
+    }
+
+    private static void writeSpan(@Nonnull ProtobufWriter writer, @Nonnull SpanData span) {
+        writer.startMessage(LIBRARY_SPANS_SPANS);
+        writer.writeHexBytes(SPAN_TRACE_ID, span.getTraceId());
+        writer.writeHexBytes(SPAN_SPAN_ID, span.getSpanId());
+        if (span.getParentSpanContext().isValid()) {
+            writer.writeHexBytes(SPAN_PARENT_SPAN_ID, span.getParentSpanId());
+        }
+        writer.writeString(SPAN_NAME, span.getName());
+        // SPAN_KIND_INTERNAL (1) to SPAN_KIND_CONSUMER (5), declared in the order of the SpanKind enum
+        writer.writeInt64(SPAN_KIND, span.getKind().ordinal() + 1);
+        writer.writeFixed64(SPAN_START_TIME_UNIX_NANO, span.getStartEpochNanos());
+        writer.writeFixed64(SPAN_END_TIME_UNIX_NANO, span.getEndEpochNanos());
+        writeAttributes(writer, SPAN_ATTRIBUTES, span.getAttributes());
+        writeDroppedCount(writer, SPAN_DROPPED_ATTRIBUTES_COUNT, span.getTotalAttributeCount() - span.getAttributes().size());
+        for (EventData event : span.getEvents()) {
+            writer.startMessage(SPAN_EVENTS);
+            writer.writeFixed64(EVENT_TIME_UNIX_NANO, event.getEpochNanos());
+            writer.writeString(EVENT_NAME, event.getName());
+            writeAttributes(writer, EVENT_ATTRIBUTES, event.getAttributes());
+            writeDroppedCount(writer, EVENT_DROPPED_ATTRIBUTES_COUNT, event.getTotalAttributeCount() - event.getAttributes().size());
+            writer.endMessage();
+        }
+        writeDroppedCount(writer, SPAN_DROPPED_EVENTS_COUNT, span.getTotalRecordedEvents() - span.getEvents().size());
+        for (LinkData link : span.getLinks()) {
+            SpanContext spanContext = link.getSpanContext();
+            writer.startMessage(SPAN_LINKS);
+            writer.writeHexBytes(LINK_TRACE_ID, spanContext.getTraceId());
+            writer.writeHexBytes(LINK_SPAN_ID, spanContext.getSpanId());
+            writeAttributes(writer, LINK_ATTRIBUTES, link.getAttributes());
+            writeDroppedCount(writer, LINK_DROPPED_ATTRIBUTES_COUNT, link.getTotalAttributeCount() - link.getAttributes().size());
+            writer.endMessage();
+        }
+        writeDroppedCount(writer, SPAN_DROPPED_LINKS_COUNT, span.getTotalRecordedLinks() - span.getLinks().size());
+        writeStatus(writer, span.getStatus());
+        writer.endMessage();
+    }
+
+    private static void writeStatus(@Nonnull ProtobufWriter writer, @Nonnull StatusData status) {
+        writer.startMessage(SPAN_STATUS);
+        switch (status.getStatusCode()) {
+            case OK:
+                writer.writeInt64(STATUS_CODE, STATUS_CODE_OK);
+                break;
+            case ERROR:
+                writer.writeInt64(STATUS_DEPRECATED_CODE, DEPRECATED_STATUS_CODE_UNKNOWN_ERROR);
+                writer.writeInt64(STATUS_CODE, STATUS_CODE_ERROR);
+                break;
+            default:
+                break;
+        }
+        if (!status.getDescription().isEmpty()) {
+            writer.writeString(STATUS_MESSAGE, status.getDescription());
+        }
+        writer.endMessage();
+    }
+
+    private static void writeDroppedCount(@Nonnull ProtobufWriter writer, int field, int droppedCount) {
+        if (droppedCount > 0) {
+            writer.writeInt64(field, droppedCount);
+        }
+    }
+
+    private static void writeAttributes(@Nonnull ProtobufWriter writer, int field, @Nonnull Attributes attributes) {
+        attributes.forEach((key, value) -> {
+            writer.startMessage(field);
+            writer.writeString(KEY_VALUE_KEY, key.getKey());
+            writer.startMessage(KEY_VALUE_VALUE);
+            writeAnyValue(writer, key, value);
+            writer.endMessage();
+            writer.endMessage();
+        });
+    }
+
+    private static void writeAnyValue(@Nonnull ProtobufWriter writer, @Nonnull AttributeKey<?> key, @Nonnull Object value) {
+        switch (key.getType()) {
+            case STRING:
+            case BOOLEAN:
+            case LONG:
+            case DOUBLE:
+                writeScalarValue(writer, value);
+                break;
+            case STRING_ARRAY:
+            case BOOLEAN_ARRAY:
+            case LONG_ARRAY:
+            case DOUBLE_ARRAY:
+                writer.startMessage(ANY_VALUE_ARRAY);
+                for (Object element : (List<?>) value) {
+                    writer.startMessage(ARRAY_VALUE_VALUES);
+                    writeScalarValue(writer, element);
+                    writer.endMessage();
+                }
+                writer.endMessage();
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported attribute type " + key.getType());
+        }
+    }
+
+    /**
+     * Field of the {@code AnyValue} oneof, written even if it has the default value
+     */
+    private static void writeScalarValue(@Nonnull ProtobufWriter writer, @Nonnull Object value) {
+        if (value instanceof String) {
+            writer.writeString(ANY_VALUE_STRING, (String) value);
+        } else if (value instanceof Boolean) {
+            writer.writeBool(ANY_VALUE_BOOL, (Boolean) value);
+        } else if (value instanceof Long) {
+            writer.writeInt64(ANY_VALUE_INT, (Long) value);
+        } else if (value instanceof Double) {
+            writer.writeDouble(ANY_VALUE_DOUBLE, (Double) value);
+        } else {
+            throw new IllegalArgumentException("Unsupported attribute value " + value.getClass());
+        }
+    }
+}
@@ -7,6 +7,12 @@ package co.elastic.maven.opentelemetry.semconv;
 
 import io.opentelemetry.api.common.AttributeKey;
 
+import java.util.List;
+
+import static io.opentelemetry.api.common.AttributeKey.booleanKey;
+import static io.opentelemetry.api.common.AttributeKey.doubleKey;
+import static io.opentelemetry.api.common.AttributeKey.longKey;
+import static io.opentelemetry.api.common.AttributeKey.stringArrayKey;
 import static io.opentelemetry.api.common.AttributeKey.stringKey;
 
 /**
@@ -24,6 +30,195 @@ public class MavenOtelSemanticAttributes {
     public static final AttributeKey<String> MAVEN_EXECUTION_GOAL = stringKey("maven.execution.goal");
     public static final AttributeKey<String> MAVEN_EXECUTION_LIFECYCLE_PHASE = stringKey("maven.execution.lifecyclePhase");
 
+    /**
+     * CPU time of the Maven builder thread during the mojo execution, in milliseconds, see {@code MojoResourceUsage}
+     */
+    public static final AttributeKey<Long> MAVEN_EXECUTION_CPU_TIME = longKey("maven.execution.cpu.time");
+    /**
+     * Bytes allocated by the Maven builder thread during the mojo execution
+     */
+    public static final AttributeKey<Long> MAVEN_EXECUTION_ALLOCATED_BYTES = longKey("maven.execution.allocated.bytes");
+    /**
+     * Garbage collections of the JVM during the mojo execution, including the ones caused by the concurrent mojo
+     * executions of a parallel build
+     */
+    public static final AttributeKey<Long> MAVEN_EXECUTION_GC_COUNT = longKey("maven.execution.gc.count");
+    /**
+     * Time spent in garbage collections during the mojo execution, in milliseconds
+     */
+    public static final AttributeKey<Long> MAVEN_EXECUTION_GC_TIME = longKey("maven.execution.gc.time");
+    /**
+     * Time the Maven builder thread was blocked on monitors during the mojo execution, in milliseconds, only when the
+     * thread contention monitoring of the JVM is enabled
+     */
+    public static final AttributeKey<Long> MAVEN_EXECUTION_BLOCKED_TIME = longKey("maven.execution.blocked.time");
+    /**
+     * Time the Maven builder thread waited ({@link Object#wait()}, {@link java.util.concurrent.locks.LockSupport#park()})
+     * during the mojo execution, in milliseconds, only when the thread contention monitoring of the JVM is enabled
+     */
+    public static final AttributeKey<Long> MAVEN_EXECUTION_WAITED_TIME = longKey("maven.execution.waited.time");
+    /**
+     * Median of the durations of the mojo execution in the previous builds, in milliseconds, see {@code MojoDurationBaseline}
+     */
+    public static final AttributeKey<Long> MAVEN_EXECUTION_BASELINE_P50 = longKey("maven.execution.baseline.p50");
+    /**
+     * 95th percentile of the durations of the mojo execution in the previous builds, in milliseconds
+     */
+    public static final AttributeKey<Long> MAVEN_EXECUTION_BASELINE_P95 = longKey("maven.execution.baseline.p95");
+    /**
+     * Whether the mojo execution is significantly slower than its baseline, only when the baseline is known
+     */
+    public static final AttributeKey<Boolean> MAVEN_EXECUTION_REGRESSION = booleanKey("maven.execution.regression");
+
+    public static final AttributeKey<Long> MAVEN_BUILD_DROPPED_SPANS = longKey("maven.build.spans.dropped");
+    public static final AttributeKey<List<String>> MAVEN_BUILD_DROPPED_SPANS_PROJECTS = stringArrayKey("maven.build.spans.dropped.projects");
+    public static final AttributeKey<List<String>> MAVEN_BUILD_DROPPED_SPANS_PLUGINS = stringArrayKey("maven.build.spans.dropped.plugins");
+
+    /**
+     * {@code kept} or {@code root_only}, see {@code TailSamplingSpanExporter}
+     */
+    public static final AttributeKey<String> MAVEN_BUILD_SAMPLING_DECISION = stringKey("maven.build.sampling.decision");
+    public static final AttributeKey<String> MAVEN_BUILD_SAMPLING_REASON = stringKey("maven.build.sampling.reason");
+    public static final AttributeKey<Long> MAVEN_BUILD_DISCARDED_SPANS = longKey("maven.build.spans.discarded");
+
+    public static final AttributeKey<List<String>> MAVEN_BUILD_CRITICAL_PATH_PROJECTS = stringArrayKey("maven.build.criticalPath.projects");
+    public static final AttributeKey<Long> MAVEN_BUILD_CRITICAL_PATH_DURATION = longKey("maven.build.criticalPath.duration");
+    public static final AttributeKey<List<String>> MAVEN_BUILD_PROJECTS_SLACK = stringArrayKey("maven.build.projects.slack");
+    public static final AttributeKey<Long> MAVEN_PROJECT_DURATION = longKey("maven.project.duration");
+    public static final AttributeKey<Double> MAVEN_PROJECT_CRITICAL_PATH_SHARE = doubleKey("maven.project.criticalPathShare");
+
+    public static final AttributeKey<Long> MAVEN_TEST_COUNT = longKey("maven.test.count");
+    public static final AttributeKey<Long> MAVEN_TEST_FAILURES = longKey("maven.test.failures");
+    public static final AttributeKey<Long> MAVEN_TEST_ERRORS = longKey("maven.test.errors");
+    public static final AttributeKey<Long> MAVEN_TEST_SKIPPED = longKey("maven.test.skipped");
+    /**
+     * Test cases only aggregated in the {@code maven.test.duration} histogram, without span
+     */
+    public static final AttributeKey<Long> MAVEN_TEST_AGGREGATED = longKey("maven.test.aggregated");
+    /**
+     * See {@link TestStatusValues}
+     */
+    public static final AttributeKey<String> MAVEN_TEST_STATUS = stringKey("maven.test.status");
+
+    /**
+     * Degree of concurrency of the build ({@code -T})
+     */
+    public static final AttributeKey<Long> MAVEN_BUILD_THREADS = longKey("maven.build.threads");
+    /**
+     * {@code MAVEN_OPTS} environment variable, values of the credential-like system properties masked
+     */
+    public static final AttributeKey<String> MAVEN_OPTS = stringKey("maven.opts");
+
+    public static final AttributeKey<Long> HOST_CPU_COUNT = longKey("host.cpu.count");
+    public static final AttributeKey<String> HOST_CPU_MODEL = stringKey("host.cpu.model");
+    /**
+     * Physical memory in bytes
+     */
+    public static final AttributeKey<Long> HOST_MEMORY_TOTAL = longKey("host.memory.total");
+    /**
+     * CPU quota of the cgroup in number of cores
+     */
+    public static final AttributeKey<Double> CONTAINER_CPU_LIMIT = doubleKey("container.cpu.limit");
+    /**
+     * Memory limit of the cgroup in bytes
+     */
+    public static final AttributeKey<Long> CONTAINER_MEMORY_LIMIT = longKey("container.memory.limit");
+
+    /**
+     * See {@link TransferTypeValues}
+     */
+    public static final AttributeKey<String> MAVEN_TRANSFER_TYPE = stringKey("maven.transfer.type");
+    public static final AttributeKey<String> MAVEN_TRANSFER_REPOSITORY_ID = stringKey("maven.transfer.repository.id");
+    public static final AttributeKey<String> MAVEN_TRANSFER_REPOSITORY_URL = stringKey("maven.transfer.repository.url");
+    public static final AttributeKey<String> MAVEN_TRANSFER_RESOURCE = stringKey("maven.transfer.resource");
+    public static final AttributeKey<Long> MAVEN_TRANSFER_BYTES = longKey("maven.transfer.bytes");
+    /**
+     * Bytes per second
+     */
+    public static final AttributeKey<Double> MAVEN_TRANSFER_THROUGHPUT = doubleKey("maven.transfer.throughput");
+    public static final AttributeKey<Long> MAVEN_TRANSFER_RETRIES = longKey("maven.transfer.retries");
+    public static final AttributeKey<Boolean> MAVEN_TRANSFER_NOT_FOUND = booleanKey("maven.transfer.notFound");
+    /**
+     * Transfer statistics per repository, see {@code OtelTransferListener}
+     */
+    public static final AttributeKey<List<String>> MAVEN_BUILD_TRANSFERS = stringArrayKey("maven.build.transfers");
+    /**
+     * Transfers only aggregated in {@link #MAVEN_BUILD_TRANSFERS}, without span
+     */
+    public static final AttributeKey<Long> MAVEN_BUILD_TRANSFERS_AGGREGATED = longKey("maven.build.transfers.aggregated");
+
+    /**
+     * Artifacts resolved from the local repository, see {@code OtelRepositoryListener}
+     */
+    public static final AttributeKey<Long> MAVEN_RESOLUTION_LOCAL = longKey("maven.resolution.local");
+    /**
+     * Artifacts downloaded from remote repositories
+     */
+    public static final AttributeKey<Long> MAVEN_RESOLUTION_REMOTE = longKey("maven.resolution.remote");
+    public static final AttributeKey<Long> MAVEN_RESOLUTION_METADATA_CHECKS = longKey("maven.resolution.metadataChecks");
+    public static final AttributeKey<Long> MAVEN_RESOLUTION_SNAPSHOT_CHECKS = longKey("maven.resolution.snapshotChecks");
+    public static final AttributeKey<String> MAVEN_RESOLUTION_REPOSITORY_ID = stringKey("maven.resolution.repository.id");
+    /**
+     * See {@link ResolutionTypeValues}
+     */
+    public static final AttributeKey<String> MAVEN_RESOLUTION_TYPE = stringKey("maven.resolution.type");
+    public static final AttributeKey<List<String>> MAVEN_BUILD_RESOLUTION_REPOSITORIES = stringArrayKey("maven.build.resolution.repositories");
+
+    /**
+     * Peak usage of each memory pool of the Maven JVM during the build, see {@code JvmMetricsSampler}
+     */
+    public static final AttributeKey<List<String>> MAVEN_BUILD_JVM_MEMORY_POOLS = stringArrayKey("maven.build.jvm.memory.pools");
+    public static final AttributeKey<Long> MAVEN_BUILD_JVM_GC_COUNT = longKey("maven.build.jvm.gc.count");
+    /**
+     * Milliseconds
+     */
+    public static final AttributeKey<Long> MAVEN_BUILD_JVM_GC_TIME = longKey("maven.build.jvm.gc.time");
+    public static final AttributeKey<Long> MAVEN_BUILD_JVM_THREADS_PEAK = longKey("maven.build.jvm.threads.peak");
+    /**
+     * CPU time of the Maven JVM during the build, in milliseconds
+     */
+    public static final AttributeKey<Long> MAVEN_BUILD_JVM_CPU_TIME = longKey("maven.build.jvm.cpu.time");
+    /**
+     * {@code heap} or {@code non_heap}, attribute of the JVM memory metrics
+     */
+    public static final AttributeKey<String> JVM_MEMORY_TYPE = stringKey("type");
+    public static final AttributeKey<String> JVM_MEMORY_POOL = stringKey("pool");
+    public static final AttributeKey<String> JVM_GC_NAME = stringKey("gc");
+    /**
+     * Bytes
+     */
+    public static final AttributeKey<Long> JVM_MEMORY_USED = longKey("jvm.memory.used");
+    /**
+     * Bytes
+     */
+    public static final AttributeKey<Long> JVM_MEMORY_LIMIT = longKey("jvm.memory.limit");
+
+    public static final class TestStatusValues {
+        public static final String PASSED = "passed";
+        public static final String FAILED = "failed";
+        public static final String ERROR = "error";
+        public static final String SKIPPED = "skipped";
+        private TestStatusValues(){}
+    }
+
+    public static final class TransferTypeValues {
+        public static final String DOWNLOAD = "download";
+        public static final String UPLOAD = "upload";
+        /**
+         * Check of the existence of a resource, without download
+         */
+        public static final String CHECK = "check";
+        private TransferTypeValues(){}
+    }
+
+    public static final class ResolutionTypeValues {
+        public static final String LOCAL = "local";
+        public static final String REMOTE = "remote";
+        public static final String METADATA_CHECK = "metadata_check";
+        public static final String SNAPSHOT_CHECK = "snapshot_check";
+        private ResolutionTypeValues(){}
+    }
+
     public static final class ServiceNameValues {
         public static final String SERVICE_NAME_VALUE = "maven";
         private ServiceNameValues(){}
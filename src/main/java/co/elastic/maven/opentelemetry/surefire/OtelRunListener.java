@@ -5,12 +5,10 @@
 
 package co.elastic.maven.opentelemetry.surefire;
 
-import co.elastic.maven.opentelemetry.SpanRegistry;
 import org.apache.maven.surefire.report.ReportEntry;
 import org.apache.maven.surefire.report.RunListener;
 import org.apache.maven.surefire.report.TestSetReportEntry;
 import org.codehaus.plexus.component.annotations.Component;
-import org.codehaus.plexus.component.annotations.Requirement;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,9 +20,6 @@ public class OtelRunListener implements RunListener {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    @Requirement
-    private SpanRegistry spanRegistry;
-
     @Override
     public void testSetStarting(TestSetReportEntry report) {
 
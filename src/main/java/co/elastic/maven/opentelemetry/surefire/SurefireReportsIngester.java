@@ -0,0 +1,441 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry.surefire;
+
+import co.elastic.maven.opentelemetry.MetricsSpanProcessor;
+import co.elastic.maven.opentelemetry.OtelUtils;
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes.TestStatusValues;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.semconv.trace.attributes.SemanticAttributes;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Alternative to the {@link OtelRunListener} that can't be registered in the JVMs forked by Surefire: ingests, at the
+ * end of the {@code maven-surefire-plugin:test} and {@code maven-failsafe-plugin:integration-test} mojo executions,
+ * the XML reports ({@code TEST-*.xml}) written by the mojo execution.
+ *
+ * The reports are parsed with StAX, streaming the test cases without keeping them in memory, in parallel on threads of
+ * the extension rather than on the Maven builder thread: the mojo execution span is ended with its actual end time
+ * once its reports are ingested, not stretched by the parsing, and the common {@code ForkJoinPool} used by the plugins
+ * is left alone. Each test
+ * class becomes a child span of the mojo execution span and each test case a child span of its test class, up to
+ * {@code otel.instrumentation.maven.surefire.max.test.spans} test case spans per mojo execution; the other test cases
+ * are only aggregated in the {@value MetricsSpanProcessor#TEST_DURATION_METRIC} histogram and counted on the mojo
+ * execution span.
+ *
+ * The reports don't record when the tests started: the span of a test class ends when its report was written and its
+ * test cases are laid out sequentially.
+ */
+public class SurefireReportsIngester {
+
+    static final long DEFAULT_MAX_TEST_SPANS = 1_000;
+
+    public static final long INGESTION_TIMEOUT_MILLIS = 10_000;
+
+    private static final int MAX_MESSAGE_LENGTH = 1_000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final boolean enabled;
+
+    private final long maxTestSpans;
+
+    private final XMLInputFactory xmlInputFactory;
+
+    private final ConcurrentMap<MojoExecution, Long> mojoStartTimesMillis = new ConcurrentHashMap<>();
+
+    private final Queue<CompletableFuture<Void>> pendingIngestions = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Created on the first ingestion, shutdown by {@link #awaitIngestions(long, TimeUnit)}
+     */
+    @Nullable
+    private ExecutorService executor;
+
+    public SurefireReportsIngester() {
+        this(!"false".equalsIgnoreCase(System.getProperty("otel.instrumentation.maven.surefire.reports.enabled",
+                        System.getenv("OTEL_INSTRUMENTATION_MAVEN_SUREFIRE_REPORTS_ENABLED"))),
+                OtelUtils.getLongConfiguration("otel.instrumentation.maven.surefire.max.test.spans",
+                        "OTEL_INSTRUMENTATION_MAVEN_SUREFIRE_MAX_TEST_SPANS", DEFAULT_MAX_TEST_SPANS));
+    }
+
+    SurefireReportsIngester(boolean enabled, long maxTestSpans) {
+        this.enabled = enabled;
+        this.maxTestSpans = maxTestSpans;
+        this.xmlInputFactory = XMLInputFactory.newInstance();
+        this.xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    static boolean isTestMojo(@Nonnull MojoExecution mojoExecution) {
+        String artifactId = mojoExecution.getPlugin().getArtifactId();
+        return ("maven-surefire-plugin".equals(artifactId) && "test".equals(mojoExecution.getGoal()))
+                || ("maven-failsafe-plugin".equals(artifactId) && "integration-test".equals(mojoExecution.getGoal()));
+    }
+
+    public void mojoStarted(@Nonnull MojoExecution mojoExecution) {
+        mojoStarted(mojoExecution, System.currentTimeMillis());
+    }
+
+    /**
+     * @param startTimeMillis start time of the mojo execution, the reports written before are ignored
+     */
+    public void mojoStarted(@Nonnull MojoExecution mojoExecution, long startTimeMillis) {
+        if (enabled && isTestMojo(mojoExecution)) {
+            mojoStartTimesMillis.put(mojoExecution, startTimeMillis);
+        }
+    }
+
+    /**
+     * Ingest asynchronously the reports written by the given mojo execution and then end the span of the mojo
+     * execution.
+     *
+     * @param metricsSpanProcessor {@code null} if the export of the metrics is disabled
+     * @param mojoEndEpochNanos    end time of the mojo execution span
+     * @return {@code true} if the reports are ingested, the mojo execution span is then ended by the ingestion,
+     * {@code false} if the caller has to end the mojo execution span
+     */
+    public boolean mojoEnded(@Nonnull MavenProject project, @Nonnull MojoExecution mojoExecution, @Nonnull Span mojoSpan,
+                             @Nonnull Tracer tracer, @Nullable MetricsSpanProcessor metricsSpanProcessor, long mojoEndEpochNanos) {
+        Long mojoStartTimeMillis = mojoStartTimesMillis.remove(mojoExecution);
+        if (mojoStartTimeMillis == null || (!mojoSpan.isRecording() && metricsSpanProcessor == null)) {
+            return false;
+        }
+        ExecutorService executor = getExecutor();
+        MojoExecutionReports mojoExecutionReports = new MojoExecutionReports(project, mojoExecution, mojoSpan, tracer,
+                metricsSpanProcessor, TimeUnit.MILLISECONDS.toNanos(mojoStartTimeMillis));
+        CompletableFuture<Void> ingestion = CompletableFuture
+                .supplyAsync(() -> listReportFiles(project, mojoExecution, mojoStartTimeMillis), executor)
+                .thenCompose(reportFiles -> {
+                    if (reportFiles == null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return CompletableFuture.allOf(Arrays.stream(reportFiles)
+                            .map(reportFile -> CompletableFuture.runAsync(() -> mojoExecutionReports.ingest(reportFile), executor))
+                            .toArray(CompletableFuture[]::new))
+                            .thenRun(mojoExecutionReports::addSummaryAttributes);
+                })
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        logger.warn("OpenTelemetry: Failure to ingest the Surefire reports of " + mojoExecution, throwable);
+                    }
+                    mojoSpan.end(mojoEndEpochNanos, TimeUnit.NANOSECONDS);
+                });
+        pendingIngestions.add(ingestion);
+        ingestion.whenComplete((result, throwable) -> pendingIngestions.remove(ingestion));
+        return true;
+    }
+
+    /**
+     * Wait for the reports being ingested, typically at the end of the Maven session before ending the root span
+     */
+    public void awaitIngestions(long timeout, @Nonnull TimeUnit unit) {
+        CompletableFuture<Void> ingestions = CompletableFuture.allOf(pendingIngestions.toArray(new CompletableFuture[0]));
+        try {
+            ingestions.get(timeout, unit);
+        } catch (TimeoutException e) {
+            logger.debug("OpenTelemetry: Surefire reports not ingested within {}ms, the mojo execution spans will be ended later", unit.toMillis(timeout));
+        } catch (ExecutionException e) {
+            // logged by the ingestion
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (executor != null) {
+                // the ingestions still in progress complete
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
+
+    @Nonnull
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)), runnable -> {
+                Thread thread = new Thread(runnable, "otel-surefire-reports-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * @return the reports written since the start of the mojo execution, {@code null} if the reports directory doesn't
+     * exist
+     */
+    @Nullable
+    private File[] listReportFiles(@Nonnull MavenProject project, @Nonnull MojoExecution mojoExecution, long mojoStartTimeMillis) {
+        File reportsDirectory = getReportsDirectory(project, mojoExecution);
+        // skip the reports of previous builds (e.g. no "mvn clean"), the last modified time may be truncated to the second
+        long minLastModifiedMillis = TimeUnit.SECONDS.toMillis(TimeUnit.MILLISECONDS.toSeconds(mojoStartTimeMillis));
+        File[] reportFiles = reportsDirectory.listFiles((dir, name) -> name.startsWith("TEST-") && name.endsWith(".xml")
+                && new File(dir, name).lastModified() >= minLastModifiedMillis);
+        if (reportFiles == null) {
+            logger.debug("OpenTelemetry: No Surefire reports directory {}", reportsDirectory);
+        }
+        return reportFiles;
+    }
+
+    /**
+     * The {@code reportsDirectory} parameter of the mojo if it only refers to the base directory or to the build
+     * directory of the project, otherwise its default value.
+     */
+    @Nonnull
+    static File getReportsDirectory(@Nonnull MavenProject project, @Nonnull MojoExecution mojoExecution) {
+        String buildDirectory = project.getBuild().getDirectory();
+        if (buildDirectory == null) {
+            buildDirectory = "target";
+        }
+        String defaultReportsDirectory = buildDirectory + File.separator
+                + ("maven-failsafe-plugin".equals(mojoExecution.getPlugin().getArtifactId()) ? "failsafe-reports" : "surefire-reports");
+
+        Xpp3Dom configuration = mojoExecution.getConfiguration();
+        Xpp3Dom reportsDirectoryParameter = configuration == null ? null : configuration.getChild("reportsDirectory");
+        String reportsDirectory = null;
+        if (reportsDirectoryParameter != null) {
+            reportsDirectory = reportsDirectoryParameter.getValue() == null ? reportsDirectoryParameter.getAttribute("default-value") : reportsDirectoryParameter.getValue();
+        }
+        if (reportsDirectory == null) {
+            reportsDirectory = defaultReportsDirectory;
+        } else {
+            reportsDirectory = reportsDirectory.replace("${project.build.directory}", buildDirectory);
+            if (project.getBasedir() != null) {
+                reportsDirectory = reportsDirectory
+                        .replace("${project.basedir}", project.getBasedir().getPath())
+                        .replace("${basedir}", project.getBasedir().getPath());
+            }
+            if (reportsDirectory.contains("${")) {
+                reportsDirectory = defaultReportsDirectory;
+            }
+        }
+        File file = new File(reportsDirectory);
+        return file.isAbsolute() || project.getBasedir() == null ? file : new File(project.getBasedir(), reportsDirectory);
+    }
+
+    /**
+     * @param seconds as formatted by Surefire, e.g. {@code 1,234.5}
+     */
+    static long parseSecondsAsNanos(@Nullable String seconds) {
+        if (seconds == null) {
+            return 0;
+        }
+        try {
+            return (long) (Double.parseDouble(seconds.replace(",", "")) * 1_000_000_000);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reports of a mojo execution, ingested concurrently
+     */
+    private class MojoExecutionReports {
+        final Span mojoSpan;
+        final Tracer tracer;
+        @Nullable
+        final MetricsSpanProcessor metricsSpanProcessor;
+        final long mojoStartEpochNanos;
+        final Attributes spanAttributes;
+        final Attributes passedSeries;
+        final Attributes failedSeries;
+        final Attributes errorSeries;
+        final Attributes skippedSeries;
+
+        final AtomicLong remainingTestSpans = new AtomicLong(maxTestSpans);
+        final LongAdder tests = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder aggregated = new LongAdder();
+
+        MojoExecutionReports(@Nonnull MavenProject project, @Nonnull MojoExecution mojoExecution, @Nonnull Span mojoSpan,
+                             @Nonnull Tracer tracer, @Nullable MetricsSpanProcessor metricsSpanProcessor, long mojoStartEpochNanos) {
+            this.mojoSpan = mojoSpan;
+            this.tracer = tracer;
+            this.metricsSpanProcessor = metricsSpanProcessor;
+            this.mojoStartEpochNanos = mojoStartEpochNanos;
+            // attributes of the project and of the plugin to be accounted by the LoadSheddingSpanProcessor
+            this.spanAttributes = Attributes.of(
+                    MavenOtelSemanticAttributes.MAVEN_PROJECT_GROUP_ID, project.getGroupId(),
+                    MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, project.getArtifactId(),
+                    MavenOtelSemanticAttributes.MAVEN_PLUGIN_ARTIFACT_ID, mojoExecution.getPlugin().getArtifactId());
+            this.passedSeries = spanAttributes.toBuilder().put(MavenOtelSemanticAttributes.MAVEN_TEST_STATUS, TestStatusValues.PASSED).build();
+            this.failedSeries = spanAttributes.toBuilder().put(MavenOtelSemanticAttributes.MAVEN_TEST_STATUS, TestStatusValues.FAILED).build();
+            this.errorSeries = spanAttributes.toBuilder().put(MavenOtelSemanticAttributes.MAVEN_TEST_STATUS, TestStatusValues.ERROR).build();
+            this.skippedSeries = spanAttributes.toBuilder().put(MavenOtelSemanticAttributes.MAVEN_TEST_STATUS, TestStatusValues.SKIPPED).build();
+        }
+
+        void ingest(@Nonnull File reportFile) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(reportFile))) {
+                XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+                try {
+                    ingest(reader, TimeUnit.MILLISECONDS.toNanos(reportFile.lastModified()));
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException | XMLStreamException | RuntimeException e) {
+                logger.warn("OpenTelemetry: Skip invalid Surefire report " + reportFile + ": " + e);
+            }
+        }
+
+        private void ingest(@Nonnull XMLStreamReader reader, long reportEpochNanos) throws XMLStreamException {
+            Span classSpan = null;
+            boolean classFailed = false;
+            long nextTestStartEpochNanos = 0;
+            TestCase testCase = null;
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String element = reader.getLocalName();
+                        if ("testsuite".equals(element) && classSpan == null) {
+                            String className = reader.getAttributeValue(null, "name");
+                            long classStartEpochNanos = Math.max(mojoStartEpochNanos, reportEpochNanos - parseSecondsAsNanos(reader.getAttributeValue(null, "time")));
+                            classSpan = tracer.spanBuilder(className == null ? "unknown" : className)
+                                    .setParent(Context.current().with(mojoSpan))
+                                    .setStartTimestamp(classStartEpochNanos, TimeUnit.NANOSECONDS)
+                                    .setAllAttributes(spanAttributes)
+                                    .setAttribute(SemanticAttributes.CODE_NAMESPACE, className)
+                                    .startSpan();
+                            nextTestStartEpochNanos = classStartEpochNanos;
+                        } else if ("testcase".equals(element) && classSpan != null) {
+                            testCase = new TestCase(reader.getAttributeValue(null, "classname"), reader.getAttributeValue(null, "name"),
+                                    parseSecondsAsNanos(reader.getAttributeValue(null, "time")));
+                        } else if (testCase != null && TestStatusValues.PASSED.equals(testCase.status)) {
+                            // ignore the flakyFailure and rerunFailure elements of the test cases that passed after a rerun
+                            if ("failure".equals(element)) {
+                                testCase.status = TestStatusValues.FAILED;
+                                testCase.message = reader.getAttributeValue(null, "message");
+                            } else if ("error".equals(element)) {
+                                testCase.status = TestStatusValues.ERROR;
+                                testCase.message = reader.getAttributeValue(null, "message");
+                            } else if ("skipped".equals(element)) {
+                                testCase.status = TestStatusValues.SKIPPED;
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && testCase != null && "testcase".equals(reader.getLocalName())) {
+                        endTestCase(classSpan, testCase, nextTestStartEpochNanos);
+                        classFailed |= TestStatusValues.FAILED.equals(testCase.status) || TestStatusValues.ERROR.equals(testCase.status);
+                        nextTestStartEpochNanos += testCase.durationNanos;
+                        testCase = null;
+                    }
+                }
+            } finally {
+                if (classSpan != null) {
+                    if (classFailed) {
+                        classSpan.setStatus(StatusCode.ERROR);
+                    }
+                    classSpan.end(Math.max(reportEpochNanos, nextTestStartEpochNanos), TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+
+        private void endTestCase(@Nonnull Span classSpan, @Nonnull TestCase testCase, long startEpochNanos) {
+            final Attributes series;
+            tests.increment();
+            if (TestStatusValues.FAILED.equals(testCase.status)) {
+                failures.increment();
+                series = failedSeries;
+            } else if (TestStatusValues.ERROR.equals(testCase.status)) {
+                errors.increment();
+                series = errorSeries;
+            } else if (TestStatusValues.SKIPPED.equals(testCase.status)) {
+                skipped.increment();
+                series = skippedSeries;
+            } else {
+                series = passedSeries;
+            }
+            long endEpochNanos = startEpochNanos + testCase.durationNanos;
+
+            SpanContext spanContext = classSpan.getSpanContext();
+            if (classSpan.isRecording() && remainingTestSpans.getAndDecrement() > 0) {
+                String testName = testCase.name == null ? "unknown" : testCase.name;
+                Span testSpan = tracer.spanBuilder(testName)
+                        .setParent(Context.current().with(classSpan))
+                        .setStartTimestamp(startEpochNanos, TimeUnit.NANOSECONDS)
+                        .setAllAttributes(spanAttributes)
+                        .setAttribute(SemanticAttributes.CODE_NAMESPACE, testCase.className)
+                        .setAttribute(SemanticAttributes.CODE_FUNCTION, testName)
+                        .setAttribute(MavenOtelSemanticAttributes.MAVEN_TEST_STATUS, testCase.status)
+                        .startSpan();
+                if (TestStatusValues.FAILED.equals(testCase.status) || TestStatusValues.ERROR.equals(testCase.status)) {
+                    String message = testCase.message == null ? "" : testCase.message;
+                    testSpan.setStatus(StatusCode.ERROR, message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message);
+                }
+                testSpan.end(endEpochNanos, TimeUnit.NANOSECONDS);
+                spanContext = testSpan.getSpanContext();
+            } else {
+                aggregated.increment();
+            }
+            if (metricsSpanProcessor != null) {
+                metricsSpanProcessor.recordTestDuration(series, testCase.durationNanos / 1_000_000d, endEpochNanos, spanContext);
+            }
+        }
+
+        void addSummaryAttributes() {
+            mojoSpan.setAttribute(MavenOtelSemanticAttributes.MAVEN_TEST_COUNT, tests.sum());
+            mojoSpan.setAttribute(MavenOtelSemanticAttributes.MAVEN_TEST_FAILURES, failures.sum());
+            mojoSpan.setAttribute(MavenOtelSemanticAttributes.MAVEN_TEST_ERRORS, errors.sum());
+            mojoSpan.setAttribute(MavenOtelSemanticAttributes.MAVEN_TEST_SKIPPED, skipped.sum());
+            if (aggregated.sum() > 0) {
+                mojoSpan.setAttribute(MavenOtelSemanticAttributes.MAVEN_TEST_AGGREGATED, aggregated.sum());
+            }
+        }
+    }
+
+    private static class TestCase {
+        final String className;
+        final String name;
+        final long durationNanos;
+        String status = TestStatusValues.PASSED;
+        String message;
+
+        TestCase(String className, String name, long durationNanos) {
+            this.className = className;
+            this.name = name;
+            this.durationNanos = durationNanos;
+        }
+    }
+}
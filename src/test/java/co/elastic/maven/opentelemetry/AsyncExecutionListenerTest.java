@@ -0,0 +1,221 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncExecutionListenerTest {
+
+    @Test
+    public void test_events_dispatched_in_order_before_the_end_of_the_session() {
+        RecordingExecutionListener delegate = new RecordingExecutionListener();
+        AsyncExecutionListener executionListener = new AsyncExecutionListener(delegate, 4, 10_000);
+        MavenProject project = SpanRegistryTest.newMavenProject("module-a");
+        executionListener.sessionStarted(new SimpleExecutionEvent(ExecutionEvent.Type.SessionStarted, null, null));
+        for (int i = 0; i < 20; i++) {
+            executionListener.mojoStarted(new SimpleExecutionEvent(ExecutionEvent.Type.MojoStarted, project, SpanRegistryTest.newMojoExecution("execution-" + i, "compile")));
+        }
+        executionListener.sessionEnded(new SimpleExecutionEvent(ExecutionEvent.Type.SessionEnded, null, null));
+
+        // sessionEnded returns once all the events are dispatched
+        assertEquals(22, delegate.events.size());
+        assertEquals(ExecutionEvent.Type.SessionStarted, delegate.events.get(0).getType());
+        for (int i = 0; i < 20; i++) {
+            ExecutionEvent event = delegate.events.get(i + 1);
+            assertSame(project, event.getProject());
+            assertEquals("execution-" + i, event.getMojoExecution().getExecutionId());
+        }
+        assertEquals(ExecutionEvent.Type.SessionEnded, delegate.events.get(21).getType());
+        assertTrue(delegate.dispatchThreads.stream().allMatch(thread -> thread == delegate.dispatchThreads.get(0)));
+        assertNotEquals(Thread.currentThread(), delegate.dispatchThreads.get(0));
+    }
+
+    @Test
+    public void test_events_keep_the_project_and_the_time_of_the_event() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        RecordingExecutionListener delegate = new RecordingExecutionListener() {
+            @Override
+            public void projectStarted(ExecutionEvent event) {
+                try {
+                    blocked.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.projectStarted(event);
+            }
+        };
+        AsyncExecutionListener executionListener = new AsyncExecutionListener(delegate, 16, 10_000);
+        MutableExecutionEvent event = new MutableExecutionEvent(ExecutionEvent.Type.ProjectStarted, SpanRegistryTest.newMavenProject("module-a"));
+        long beforeEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        executionListener.projectStarted(event);
+        MavenProject project = event.getProject();
+        // Maven resets the current project of the session at the end of the project
+        event.project = null;
+        Thread.sleep(50);
+        blocked.countDown();
+        executionListener.sessionEnded(new SimpleExecutionEvent(ExecutionEvent.Type.SessionEnded, null, null));
+
+        ExecutionEvent dispatchedEvent = delegate.events.get(0);
+        assertSame(project, dispatchedEvent.getProject());
+        long epochNanos = ((AsyncExecutionListener.DeferredEvent) dispatchedEvent).getEpochNanos();
+        // the time of the event, not the time of the dispatch; tolerance of the millisecond clock
+        assertTrue(epochNanos >= beforeEpochNanos - TimeUnit.MILLISECONDS.toNanos(2));
+        assertTrue(epochNanos < beforeEpochNanos + TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    public void test_exception_of_the_delegate_does_not_stop_the_dispatch() {
+        RecordingExecutionListener delegate = new RecordingExecutionListener() {
+            @Override
+            public void mojoFailed(ExecutionEvent event) {
+                throw new IllegalStateException("test");
+            }
+        };
+        AsyncExecutionListener executionListener = new AsyncExecutionListener(delegate, 16, 10_000);
+        MavenProject project = SpanRegistryTest.newMavenProject("module-a");
+        executionListener.mojoFailed(new SimpleExecutionEvent(ExecutionEvent.Type.MojoFailed, project, SpanRegistryTest.newMojoExecution("default-compile", "compile")));
+        executionListener.projectSucceeded(new SimpleExecutionEvent(ExecutionEvent.Type.ProjectSucceeded, project, null));
+        executionListener.sessionEnded(new SimpleExecutionEvent(ExecutionEvent.Type.SessionEnded, null, null));
+
+        assertEquals(2, delegate.events.size());
+        assertEquals(ExecutionEvent.Type.ProjectSucceeded, delegate.events.get(0).getType());
+    }
+
+    @Test
+    public void test_session_ended_when_the_queue_is_full() throws Exception {
+        InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+        Tracer tracer = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build().get("junit");
+        AtomicInteger finalFlushes = new AtomicInteger();
+        OpenTelemetrySdkService openTelemetrySdkService = new OpenTelemetrySdkService() {
+            @Override
+            public Tracer getTracer() {
+                return tracer;
+            }
+
+            @Override
+            public synchronized void startFinalFlush() {
+                finalFlushes.incrementAndGet();
+            }
+        };
+        CountDownLatch slowMojo = new CountDownLatch(1);
+        OtelExecutionListener delegate = new OtelExecutionListener(new SpanRegistry(), openTelemetrySdkService) {
+            @Override
+            public void mojoStarted(ExecutionEvent executionEvent) {
+                super.mojoStarted(executionEvent);
+                try {
+                    slowMojo.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        AsyncExecutionListener executionListener = new AsyncExecutionListener(delegate, 1, 200);
+        MavenSession session = OtelExecutionListenerTest.newSession("module-a");
+        MavenProject project = session.getTopLevelProject();
+        MojoExecution mojoExecution = SpanRegistryTest.newMojoExecution("default-compile", "compile");
+        executionListener.sessionStarted(newEvent(ExecutionEvent.Type.SessionStarted, session, null));
+        executionListener.projectStarted(newEvent(ExecutionEvent.Type.ProjectStarted, session, null));
+        executionListener.mojoStarted(newEvent(ExecutionEvent.Type.MojoStarted, session, mojoExecution));
+        // the consumer is held by the mojo started event: the mojo succeeded event fills the queue, the project
+        // succeeded event is skipped, the session ended event can't be enqueued
+        executionListener.mojoSucceeded(newEvent(ExecutionEvent.Type.MojoSucceeded, session, mojoExecution));
+        executionListener.projectSucceeded(newEvent(ExecutionEvent.Type.ProjectSucceeded, session, null));
+        executionListener.sessionEnded(newEvent(ExecutionEvent.Type.SessionEnded, session, null));
+
+        // the session is ended on the calling thread, with the spans left in progress
+        assertEquals(1, finalFlushes.get());
+        assertEquals(Arrays.asList("compiler:compile (default-compile) @ module-a", "com.example:module-a", "Build: com.example:module-a"),
+                spanExporter.getFinishedSpanItems().stream().map(SpanData::getName).collect(Collectors.toList()));
+        // the consumer thread stops once the slow event is dispatched
+        slowMojo.countDown();
+        executionListener.consumer.join(10_000);
+        assertFalse(executionListener.consumer.isAlive());
+        assertEquals(3, spanExporter.getFinishedSpanItems().size());
+    }
+
+    private static ExecutionEvent newEvent(ExecutionEvent.Type type, MavenSession session, MojoExecution mojoExecution) {
+        return new SimpleExecutionEvent(type, session.getTopLevelProject(), mojoExecution) {
+            @Override
+            public MavenSession getSession() {
+                return session;
+            }
+        };
+    }
+
+    static class RecordingExecutionListener extends AbstractExecutionListener {
+        final List<ExecutionEvent> events = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> dispatchThreads = Collections.synchronizedList(new ArrayList<>());
+
+        private void record(ExecutionEvent event) {
+            events.add(event);
+            dispatchThreads.add(Thread.currentThread());
+        }
+
+        @Override
+        public void sessionStarted(ExecutionEvent event) {
+            record(event);
+        }
+
+        @Override
+        public void sessionEnded(ExecutionEvent event) {
+            record(event);
+        }
+
+        @Override
+        public void projectStarted(ExecutionEvent event) {
+            record(event);
+        }
+
+        @Override
+        public void projectSucceeded(ExecutionEvent event) {
+            record(event);
+        }
+
+        @Override
+        public void mojoStarted(ExecutionEvent event) {
+            record(event);
+        }
+    }
+
+    private static class MutableExecutionEvent extends SimpleExecutionEvent {
+        MavenProject project;
+
+        MutableExecutionEvent(Type type, MavenProject project) {
+            super(type, null, null);
+            this.project = project;
+        }
+
+        @Override
+        public MavenProject getProject() {
+            return project;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.common.Attributes;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BuildEnvironmentResourceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path rootDirectory;
+    private Path cacheDirectory;
+
+    @Before
+    public void before() throws IOException {
+        rootDirectory = temporaryFolder.newFolder("root").toPath();
+        cacheDirectory = temporaryFolder.newFolder("cache").toPath();
+        write("proc/meminfo", "MemTotal:       16318792 kB\nMemFree:         1234567 kB\n");
+        write("proc/cpuinfo", "processor\t: 0\nmodel name\t: Intel(R) Xeon(R) CPU @ 2.20GHz\n\nprocessor\t: 1\nmodel name\t: Intel(R) Xeon(R) CPU @ 2.20GHz\n");
+    }
+
+    @Test
+    public void test_cgroup_v2() throws IOException {
+        write("sys/fs/cgroup/cpu.max", "150000 100000\n");
+        write("sys/fs/cgroup/memory.max", "4294967296\n");
+
+        Attributes attributes = new BuildEnvironmentResource(cacheDirectory, rootDirectory).detect();
+        assertEquals(Long.valueOf(16318792L * 1024), attributes.get(MavenOtelSemanticAttributes.HOST_MEMORY_TOTAL));
+        assertEquals("Intel(R) Xeon(R) CPU @ 2.20GHz", attributes.get(MavenOtelSemanticAttributes.HOST_CPU_MODEL));
+        assertEquals(1.5, attributes.get(MavenOtelSemanticAttributes.CONTAINER_CPU_LIMIT), 0.0001);
+        assertEquals(Long.valueOf(4294967296L), attributes.get(MavenOtelSemanticAttributes.CONTAINER_MEMORY_LIMIT));
+    }
+
+    @Test
+    public void test_cgroup_v1_unlimited() throws IOException {
+        write("sys/fs/cgroup/cpu/cpu.cfs_quota_us", "-1\n");
+        write("sys/fs/cgroup/cpu/cpu.cfs_period_us", "100000\n");
+        write("sys/fs/cgroup/memory/memory.limit_in_bytes", "9223372036854771712\n");
+
+        Attributes attributes = new BuildEnvironmentResource(cacheDirectory, rootDirectory).detect();
+        assertNull(attributes.get(MavenOtelSemanticAttributes.CONTAINER_CPU_LIMIT));
+        assertNull(attributes.get(MavenOtelSemanticAttributes.CONTAINER_MEMORY_LIMIT));
+    }
+
+    @Test
+    public void test_cache_skips_probing() throws Exception {
+        write("sys/fs/cgroup/cpu.max", "200000 100000\n");
+        Attributes detected = new BuildEnvironmentResource(cacheDirectory, rootDirectory).loadOrDetect();
+        File[] cacheFiles = cacheDirectory.toFile().listFiles();
+        assertEquals(1, cacheFiles.length);
+
+        Files.delete(rootDirectory.resolve("proc/meminfo"));
+        Files.delete(rootDirectory.resolve("sys/fs/cgroup/cpu.max"));
+        BuildEnvironmentResource buildEnvironmentResource = new BuildEnvironmentResource(cacheDirectory, rootDirectory);
+        Attributes attributes = buildEnvironmentResource.startDetection().get(10, TimeUnit.SECONDS);
+        assertEquals(detected.get(MavenOtelSemanticAttributes.HOST_MEMORY_TOTAL), attributes.get(MavenOtelSemanticAttributes.HOST_MEMORY_TOTAL));
+        assertEquals(2.0, attributes.get(MavenOtelSemanticAttributes.CONTAINER_CPU_LIMIT), 0.0001);
+        assertTrue(BuildEnvironmentResource.getRuntimeAttributes().get(MavenOtelSemanticAttributes.HOST_CPU_COUNT) > 0);
+    }
+
+    @Test
+    public void test_total_memory_size_without_proc() {
+        Long memoryTotal = BuildEnvironmentResource.getTotalMemorySize(ManagementFactory.getOperatingSystemMXBean());
+        assertNotNull(memoryTotal);
+        assertTrue(memoryTotal > 0);
+    }
+
+    @Test
+    public void test_redact_maven_opts() {
+        assertEquals("-Xmx2g -Dgpg.passphrase=*** -Dnexus.password=*** -DapiToken=*** -Dskip=true",
+                BuildEnvironmentResource.redactMavenOpts("-Xmx2g -Dgpg.passphrase=secret -Dnexus.password=\"p a s s\" -DapiToken=abc -Dskip=true"));
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = rootDirectory.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
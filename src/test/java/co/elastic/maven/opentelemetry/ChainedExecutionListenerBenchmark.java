@@ -0,0 +1,130 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent on the Maven builder thread by a mojo execution and the dispatch of its events to the
+ * {@link OtelExecutionListener}, when the events are dispatched on the builder thread ({@code sync}) or through an
+ * {@link AsyncExecutionListener} ({@code async}). The mojo itself is simulated by {@link Blackhole#consumeCPU(long)}.
+ *
+ * Run with {@code mvn test-compile exec:exec -Pbenchmark -Djmh.args=ChainedExecutionListenerBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class ChainedExecutionListenerBenchmark {
+
+    @Param({"sync", "async"})
+    public String dispatch;
+
+    /**
+     * Work of the simulated mojo, in {@link Blackhole#consumeCPU(long)} tokens
+     */
+    @Param({"0", "1000"})
+    public long mojoWork;
+
+    private SdkTracerProvider sdkTracerProvider;
+    private ExecutionListener executionListener;
+    private ExecutionEvent mojoEvent;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // measure the listener rather than the console output of the debug logs
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.INFO);
+
+        sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(BatchSpanProcessor.builder(new DiscardingSpanExporter()).build()).build();
+        Tracer tracer = sdkTracerProvider.get("io.opentelemetry.contrib.maven");
+        OpenTelemetrySdkService openTelemetrySdkService = new OpenTelemetrySdkService() {
+            @Override
+            public Tracer getTracer() {
+                return tracer;
+            }
+        };
+        SpanRegistry spanRegistry = new SpanRegistry();
+        spanRegistry.setRootSpan(tracer.spanBuilder("Build: benchmark").startSpan());
+        OtelExecutionListener otelExecutionListener = new OtelExecutionListener(spanRegistry, openTelemetrySdkService);
+
+        switch (dispatch) {
+            case "sync":
+                executionListener = new ChainedExecutionListener(otelExecutionListener, new AbstractExecutionListener());
+                break;
+            case "async":
+                // the consumer thread is a daemon thread, stopped with the fork
+                executionListener = new ChainedExecutionListener(
+                        new AsyncExecutionListener(otelExecutionListener, AsyncExecutionListener.DEFAULT_QUEUE_CAPACITY, 10_000),
+                        new AbstractExecutionListener());
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported dispatch " + dispatch);
+        }
+
+        MavenProject project = SpanRegistryTest.newMavenProject("benchmark-module");
+        mojoEvent = new SimpleExecutionEvent(ExecutionEvent.Type.MojoStarted, project, SpanRegistryTest.newMojoExecution("default-compile", "compile"));
+        executionListener.projectStarted(new SimpleExecutionEvent(ExecutionEvent.Type.ProjectStarted, project, null));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sdkTracerProvider.shutdown().join(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void mojoExecution() {
+        executionListener.mojoStarted(mojoEvent);
+        Blackhole.consumeCPU(mojoWork);
+        executionListener.mojoSucceeded(mojoEvent);
+    }
+
+    private static class DiscardingSpanExporter implements SpanExporter {
+        @Override
+        public CompletableResultCode export(Collection<SpanData> spans) {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+}
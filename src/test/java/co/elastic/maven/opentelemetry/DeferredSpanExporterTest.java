@@ -0,0 +1,111 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeferredSpanExporterTest {
+
+    @Test
+    public void test_export_handed_over_once_the_delegate_is_created() {
+        SpoolingSpanExporterTest.StubSpanExporter delegate = new SpoolingSpanExporterTest.StubSpanExporter();
+        CompletableFuture<SpanExporter> future = new CompletableFuture<>();
+        DeferredSpanExporter spanExporter = new DeferredSpanExporter(future, 10);
+        // the BatchSpanProcessor clears its batch once the export returns
+        List<SpanData> batch = new ArrayList<>(SpoolingSpanExporterTest.newSpans(3));
+        CompletableResultCode result = spanExporter.export(batch);
+        batch.clear();
+        // pending, the BatchSpanProcessor is not held
+        assertTrue(result.isSuccess());
+        CompletableResultCode shutdownResult = spanExporter.shutdown();
+
+        future.complete(delegate);
+        assertEquals(1, delegate.pendingResults.size());
+        assertEquals(3, delegate.exportedSpans.get(0).size());
+        // the shutdown waits for the export of the pending batches
+        assertFalse(shutdownResult.isDone());
+        delegate.pendingResults.get(0).succeed();
+        assertTrue(shutdownResult.isSuccess());
+        assertEquals(0, spanExporter.getDroppedSpans());
+    }
+
+    @Test
+    public void test_pending_spans_are_bounded() {
+        CompletableFuture<SpanExporter> future = new CompletableFuture<>();
+        DeferredSpanExporter spanExporter = new DeferredSpanExporter(future, 5);
+        assertTrue(spanExporter.export(SpoolingSpanExporterTest.newSpans(3)).isSuccess());
+        assertFalse(spanExporter.export(SpoolingSpanExporterTest.newSpans(3)).isSuccess());
+        assertTrue(spanExporter.export(SpoolingSpanExporterTest.newSpans(2)).isSuccess());
+        assertEquals(3, spanExporter.getDroppedSpans());
+
+        InMemorySpanExporter delegate = InMemorySpanExporter.create();
+        future.complete(delegate);
+        assertEquals(5, delegate.getFinishedSpanItems().size());
+    }
+
+    @Test
+    public void test_batch_span_processor_not_held_while_the_delegate_is_pending() {
+        CompletableFuture<SpanExporter> future = new CompletableFuture<>();
+        BatchSpanProcessor spanProcessor = BatchSpanProcessor.builder(new DeferredSpanExporter(future, 1_000))
+                .setMaxExportBatchSize(10)
+                .setExporterTimeout(30, TimeUnit.SECONDS)
+                .build();
+        Tracer tracer = SdkTracerProvider.builder().addSpanProcessor(spanProcessor).build().get("junit");
+        for (int i = 0; i < 50; i++) {
+            tracer.spanBuilder("span-" + i).startSpan().end();
+        }
+        // the worker of the BatchSpanProcessor exports the 5 batches without waiting for the delegate
+        assertTrue(spanProcessor.forceFlush().join(5, TimeUnit.SECONDS).isSuccess());
+
+        InMemorySpanExporter delegate = InMemorySpanExporter.create();
+        future.complete(delegate);
+        assertEquals(50, delegate.getFinishedSpanItems().size());
+        assertTrue(spanProcessor.shutdown().join(5, TimeUnit.SECONDS).isSuccess());
+    }
+
+    @Test
+    public void test_abandon() {
+        DeferredSpanExporter spanExporter = new DeferredSpanExporter(new CompletableFuture<>(), 10);
+        spanExporter.export(SpoolingSpanExporterTest.newSpans(1));
+        spanExporter.abandon();
+        // the pending spans are dropped
+        assertEquals(1, spanExporter.getDroppedSpans());
+        CompletableResultCode result = spanExporter.export(SpoolingSpanExporterTest.newSpans(2));
+        assertTrue(result.isDone());
+        assertFalse(result.isSuccess());
+        assertEquals(3, spanExporter.getDroppedSpans());
+        assertTrue(spanExporter.shutdown().isSuccess());
+    }
+
+    @Test
+    public void test_initialization_failure() {
+        CompletableFuture<SpanExporter> future = new CompletableFuture<>();
+        DeferredSpanExporter spanExporter = new DeferredSpanExporter(future, 10);
+        spanExporter.export(SpoolingSpanExporterTest.newSpans(1));
+        future.completeExceptionally(new IllegalStateException("invalid OTLP file"));
+        assertEquals(1, spanExporter.getDroppedSpans());
+        CompletableResultCode result = spanExporter.export(SpoolingSpanExporterTest.newSpans(1));
+        assertTrue(result.isDone());
+        assertFalse(result.isSuccess());
+        assertEquals(2, spanExporter.getDroppedSpans());
+    }
+}
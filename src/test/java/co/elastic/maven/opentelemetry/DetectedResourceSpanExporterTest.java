@@ -0,0 +1,42 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.semconv.resource.attributes.ResourceAttributes;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DetectedResourceSpanExporterTest {
+
+    @Test
+    public void test_detected_attributes_added_to_resource() {
+        InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+        Resource resource = Resource.create(Attributes.of(ResourceAttributes.SERVICE_NAME, "maven", ResourceAttributes.HOST_ARCH, "amd64"));
+        Attributes detectedAttributes = Attributes.of(MavenOtelSemanticAttributes.HOST_CPU_MODEL, "Intel(R) Xeon(R) CPU @ 2.20GHz", ResourceAttributes.HOST_ARCH, "x86_64");
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder().setResource(resource)
+                .addSpanProcessor(SimpleSpanProcessor.create(new DetectedResourceSpanExporter(spanExporter, resource, detectedAttributes))).build();
+        tracerProvider.get("junit").spanBuilder("Build: my-module").startSpan().end();
+
+        List<SpanData> spans = spanExporter.getFinishedSpanItems();
+        assertEquals(1, spans.size());
+        Attributes resourceAttributes = spans.get(0).getResource().getAttributes();
+        assertEquals("maven", resourceAttributes.get(ResourceAttributes.SERVICE_NAME));
+        assertEquals("Intel(R) Xeon(R) CPU @ 2.20GHz", resourceAttributes.get(MavenOtelSemanticAttributes.HOST_CPU_MODEL));
+        // the resource of the SDK takes precedence
+        assertEquals("amd64", resourceAttributes.get(ResourceAttributes.HOST_ARCH));
+        assertEquals("Build: my-module", spans.get(0).getName());
+    }
+}
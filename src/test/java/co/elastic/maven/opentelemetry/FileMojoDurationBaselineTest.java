@@ -0,0 +1,108 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.common.Attributes;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FileMojoDurationBaselineTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void test_durations_of_the_previous_builds_are_loaded() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("baseline").resolve("mojo-durations.bin");
+        Attributes compile = newMojoAttributes("module-a", "default-compile");
+        for (int build = 1; build <= InMemoryMojoDurationBaseline.MIN_SAMPLES; build++) {
+            FileMojoDurationBaseline baseline = newBaseline(file, FileMojoDurationBaseline.DEFAULT_MAX_FILE_SIZE);
+            assertEquals(-1, baseline.getP95Nanos(compile));
+            baseline.record(compile, TimeUnit.MILLISECONDS.toNanos(100 * build));
+            baseline.store();
+        }
+
+        FileMojoDurationBaseline baseline = newBaseline(file, FileMojoDurationBaseline.DEFAULT_MAX_FILE_SIZE);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(300), baseline.getP50Nanos(compile));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), baseline.getP95Nanos(compile));
+        assertEquals(-1, baseline.getP50Nanos(newMojoAttributes("module-b", "default-compile")));
+    }
+
+    @Test
+    public void test_rolling_window_and_bounded_file_size() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("mojo-durations.bin");
+        long maxFileSize = 8 * 1024;
+        for (int build = 0; build < 50; build++) {
+            FileMojoDurationBaseline baseline = newBaseline(file, maxFileSize);
+            for (int module = 0; module < 10; module++) {
+                // the mojo executions of module-0 are slower and slower, the other modules come and go
+                baseline.record(newMojoAttributes("module-" + (module == 0 ? 0 : build * 10 + module), "default-compile"), TimeUnit.MILLISECONDS.toNanos(build));
+            }
+            baseline.store();
+            assertTrue(Files.size(file) <= maxFileSize);
+        }
+
+        FileMojoDurationBaseline baseline = newBaseline(file, maxFileSize);
+        // last 20 durations, 30ms to 49ms
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(39), baseline.getP50Nanos(newMojoAttributes("module-0", "default-compile")));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(48), baseline.getP95Nanos(newMojoAttributes("module-0", "default-compile")));
+        // least recently recorded mojo executions evicted
+        assertTrue(baseline.getDurationWindows().size() < 50 * 9);
+    }
+
+    @Test
+    public void test_truncated_record_is_ignored_and_file_rewritten() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("mojo-durations.bin");
+        Attributes compile = newMojoAttributes("module-a", "default-compile");
+        Attributes testCompile = newMojoAttributes("module-a", "default-testCompile");
+        FileMojoDurationBaseline baseline = newBaseline(file, FileMojoDurationBaseline.DEFAULT_MAX_FILE_SIZE);
+        for (int i = 0; i < InMemoryMojoDurationBaseline.MIN_SAMPLES; i++) {
+            baseline.record(compile, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        baseline.record(testCompile, TimeUnit.MILLISECONDS.toNanos(200));
+        baseline.store();
+        // build killed while appending
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        baseline = newBaseline(file, FileMojoDurationBaseline.DEFAULT_MAX_FILE_SIZE);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), baseline.getP95Nanos(compile));
+        baseline.record(testCompile, TimeUnit.MILLISECONDS.toNanos(200));
+        baseline.store();
+
+        baseline = new FileMojoDurationBaseline(file, FileMojoDurationBaseline.DEFAULT_MAX_FILE_SIZE);
+        assertTrue(baseline.load());
+        assertEquals(1, baseline.getDurationWindows().get(InMemoryMojoDurationBaseline.getKey(testCompile)).getDurations().length);
+    }
+
+    private static FileMojoDurationBaseline newBaseline(Path file, long maxFileSize) {
+        FileMojoDurationBaseline baseline = new FileMojoDurationBaseline(file, maxFileSize);
+        baseline.startLoading();
+        return baseline;
+    }
+
+    static Attributes newMojoAttributes(String artifactId, String executionId) {
+        return Attributes.builder()
+                .put(MavenOtelSemanticAttributes.MAVEN_PROJECT_GROUP_ID, "com.example")
+                .put(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, artifactId)
+                .put(MavenOtelSemanticAttributes.MAVEN_PLUGIN_ARTIFACT_ID, "maven-compiler-plugin")
+                .put(MavenOtelSemanticAttributes.MAVEN_EXECUTION_GOAL, "compile")
+                .put(MavenOtelSemanticAttributes.MAVEN_EXECUTION_ID, executionId)
+                .build();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import org.apache.maven.plugin.MojoExecution;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ForkedProcessContextPropagatorTest {
+
+    private final ForkedProcessContextPropagator forkedProcessContextPropagator = new ForkedProcessContextPropagator();
+
+    private final Span span = SdkTracerProvider.builder().build().get("junit").spanBuilder("surefire:test").startSpan();
+
+    @Test
+    public void test_surefire_without_configuration() {
+        MojoExecution mojoExecution = SpanRegistryTest.newMojoExecution("maven-surefire-plugin", "test", "default-test");
+        forkedProcessContextPropagator.injectContext(mojoExecution, span);
+
+        Xpp3Dom environmentVariables = mojoExecution.getConfiguration().getChild("environmentVariables");
+        String expected = "00-" + span.getSpanContext().getTraceId() + "-" + span.getSpanContext().getSpanId() + "-01";
+        assertEquals(expected, environmentVariables.getChild("TRACEPARENT").getValue());
+    }
+
+    @Test
+    public void test_environment_variables_of_the_pom_are_kept() {
+        MojoExecution mojoExecution = SpanRegistryTest.newMojoExecution("exec-maven-plugin", "exec", "default-exec");
+        Xpp3Dom configuration = new Xpp3Dom("configuration");
+        Xpp3Dom environmentVariables = new Xpp3Dom("environmentVariables");
+        configuration.addChild(environmentVariables);
+        Xpp3Dom traceparent = new Xpp3Dom("TRACEPARENT");
+        traceparent.setValue("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01");
+        environmentVariables.addChild(traceparent);
+        Xpp3Dom javaHome = new Xpp3Dom("JAVA_HOME");
+        javaHome.setValue("/opt/java");
+        environmentVariables.addChild(javaHome);
+        mojoExecution.setConfiguration(configuration);
+
+        forkedProcessContextPropagator.injectContext(mojoExecution, span);
+
+        assertEquals(2, environmentVariables.getChildCount());
+        assertEquals("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01", environmentVariables.getChild("TRACEPARENT").getValue());
+    }
+
+    @Test
+    public void test_environment_variables_expression() {
+        MojoExecution mojoExecution = SpanRegistryTest.newMojoExecution("maven-failsafe-plugin", "integration-test", "default-integration-test");
+        Xpp3Dom configuration = new Xpp3Dom("configuration");
+        Xpp3Dom environmentVariables = new Xpp3Dom("environmentVariables");
+        environmentVariables.setValue("${my.environment}");
+        configuration.addChild(environmentVariables);
+        mojoExecution.setConfiguration(configuration);
+
+        forkedProcessContextPropagator.injectContext(mojoExecution, span);
+
+        assertEquals(0, environmentVariables.getChildCount());
+    }
+
+    @Test
+    public void test_other_mojos_are_not_modified() {
+        MojoExecution mojoExecution = SpanRegistryTest.newMojoExecution("exec-maven-plugin", "java", "default-java");
+        forkedProcessContextPropagator.injectContext(mojoExecution, span);
+        assertNull(mojoExecution.getConfiguration());
+    }
+}
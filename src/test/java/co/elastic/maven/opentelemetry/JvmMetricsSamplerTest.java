@@ -0,0 +1,179 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.metrics.v1.Metric;
+import io.opentelemetry.proto.metrics.v1.NumberDataPoint;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class JvmMetricsSamplerTest {
+
+    @Test
+    public void test_stopped_before_the_initialization() {
+        JvmMetricsSampler jvmMetricsSampler = new JvmMetricsSampler(10, 0);
+        jvmMetricsSampler.start();
+        // short build, the initialization may still be pending
+        jvmMetricsSampler.stop();
+
+        ExportMetricsServiceRequest request = new MetricsSpanProcessor().toExportMetricsServiceRequest(Resource.empty(), jvmMetricsSampler);
+        assertTrue(request.getResourceMetrics(0).getInstrumentationLibraryMetrics(0).getMetricsList().stream()
+                .anyMatch(metric -> metric.getName().equals(JvmMetricsSampler.MEMORY_USAGE_METRIC)));
+    }
+
+    @Test
+    public void test_samples_exported_as_metrics_with_the_build_as_exemplar() throws Exception {
+        InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build();
+        Span rootSpan = sdkTracerProvider.get("junit").spanBuilder("Build: junit").startSpan();
+
+        JvmMetricsSampler jvmMetricsSampler = new JvmMetricsSampler(10, 0);
+        jvmMetricsSampler.start();
+        try {
+            awaitInitialization(jvmMetricsSampler);
+            Thread.sleep(100);
+            System.gc();
+            jvmMetricsSampler.addBuildAttributes(rootSpan);
+        } finally {
+            jvmMetricsSampler.stop();
+        }
+        rootSpan.end();
+
+        SpanData rootSpanData = spanExporter.getFinishedSpanItems().get(0);
+        List<String> memoryPools = rootSpanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_JVM_MEMORY_POOLS);
+        assertFalse(memoryPools.isEmpty());
+        assertTrue(memoryPools.get(0), memoryPools.get(0).matches(".+: \\d+(/\\d+)? bytes"));
+        assertTrue(rootSpanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_JVM_GC_COUNT) >= 1);
+        assertTrue(rootSpanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_JVM_THREADS_PEAK) >= 1);
+
+        ExportMetricsServiceRequest request = new MetricsSpanProcessor().toExportMetricsServiceRequest(Resource.empty(), jvmMetricsSampler);
+        Map<String, Metric> metrics = request.getResourceMetrics(0).getInstrumentationLibraryMetrics(0).getMetricsList().stream()
+                .collect(Collectors.toMap(Metric::getName, Function.identity()));
+        Metric memoryUsage = metrics.get(JvmMetricsSampler.MEMORY_USAGE_METRIC);
+        assertNotNull(metrics.keySet().toString(), memoryUsage);
+        assertEquals("By", memoryUsage.getUnit());
+        // several samples per memory pool
+        assertTrue(memoryUsage.getGauge().getDataPointsCount() >= 2 * memoryPools.size());
+        NumberDataPoint exemplarDataPoint = memoryUsage.getGauge().getDataPointsList().stream()
+                .filter(dataPoint -> dataPoint.getExemplarsCount() > 0).findFirst().get();
+        assertEquals(rootSpan.getSpanContext().getTraceId(), toHex(exemplarDataPoint.getExemplars(0).getTraceId().toByteArray()));
+
+        Metric gcCount = metrics.get(JvmMetricsSampler.GC_COUNT_METRIC);
+        assertTrue(gcCount.getSum().getIsMonotonic());
+        assertTrue(gcCount.getSum().getDataPointsList().stream().anyMatch(dataPoint -> dataPoint.getAsInt() >= 1));
+        assertTrue(metrics.containsKey(JvmMetricsSampler.THREADS_METRIC));
+        assertTrue(metrics.containsKey(JvmMetricsSampler.CLASSES_METRIC));
+    }
+
+    @Test
+    public void test_memory_threshold_crossing_recorded_as_span_event() throws Exception {
+        InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build();
+        Span rootSpan = sdkTracerProvider.get("junit").spanBuilder("Build: junit").startSpan();
+
+        // without periodic sampling, threshold crossed by any allocation of the pools supporting usage thresholds
+        JvmMetricsSampler jvmMetricsSampler = new JvmMetricsSampler(0, 1);
+        jvmMetricsSampler.start();
+        try {
+            awaitInitialization(jvmMetricsSampler);
+            byte[][] allocations = new byte[64][];
+            for (int i = 0; i < allocations.length; i++) {
+                allocations[i] = new byte[1024 * 1024];
+            }
+            System.gc();
+            for (int i = 0; i < 50 && jvmMetricsSampler.getThresholdCrossingCount() == 0; i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(64, allocations.length);
+            jvmMetricsSampler.addBuildAttributes(rootSpan);
+        } finally {
+            jvmMetricsSampler.stop();
+        }
+        rootSpan.end();
+
+        List<EventData> events = spanExporter.getFinishedSpanItems().get(0).getEvents();
+        assertFalse(events.isEmpty());
+        EventData event = events.get(0);
+        assertEquals(JvmMetricsSampler.MEMORY_THRESHOLD_EXCEEDED_EVENT, event.getName());
+        assertNotNull(event.getAttributes().get(MavenOtelSemanticAttributes.JVM_MEMORY_POOL));
+        assertTrue(event.getAttributes().get(MavenOtelSemanticAttributes.JVM_MEMORY_USED) > 0);
+    }
+
+    @Test
+    public void test_peaks_of_the_jvm_not_reset() throws Exception {
+        InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build();
+        Span rootSpan = sdkTracerProvider.get("junit").spanBuilder("Build: junit").startSpan();
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        int peakThreadCount = threadMXBean.getPeakThreadCount();
+        List<MemoryPoolMXBean> memoryPoolMXBeans = ManagementFactory.getMemoryPoolMXBeans();
+        long[] peakUsages = new long[memoryPoolMXBeans.size()];
+        for (int i = 0; i < peakUsages.length; i++) {
+            MemoryUsage peakUsage = memoryPoolMXBeans.get(i).getPeakUsage();
+            peakUsages[i] = peakUsage == null ? -1 : peakUsage.getUsed();
+        }
+
+        // without periodic sampling, the peaks are still sampled
+        JvmMetricsSampler jvmMetricsSampler = new JvmMetricsSampler(0, 0);
+        jvmMetricsSampler.start();
+        try {
+            awaitInitialization(jvmMetricsSampler);
+            jvmMetricsSampler.addBuildAttributes(rootSpan);
+        } finally {
+            jvmMetricsSampler.stop();
+        }
+        rootSpan.end();
+
+        assertTrue(threadMXBean.getPeakThreadCount() >= peakThreadCount);
+        for (int i = 0; i < peakUsages.length; i++) {
+            MemoryUsage peakUsage = memoryPoolMXBeans.get(i).getPeakUsage();
+            if (peakUsage != null) {
+                assertTrue(memoryPoolMXBeans.get(i).getName(), peakUsage.getUsed() >= peakUsages[i]);
+            }
+        }
+        SpanData rootSpanData = spanExporter.getFinishedSpanItems().get(0);
+        assertFalse(rootSpanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_JVM_MEMORY_POOLS).isEmpty());
+        assertTrue(rootSpanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_JVM_THREADS_PEAK) >= 1);
+    }
+
+    private static void awaitInitialization(JvmMetricsSampler jvmMetricsSampler) throws InterruptedException {
+        for (int i = 0; i < 100 && !jvmMetricsSampler.isInitialized(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(jvmMetricsSampler.isInitialized());
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
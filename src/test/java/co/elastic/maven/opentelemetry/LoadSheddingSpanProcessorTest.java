@@ -0,0 +1,201 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class LoadSheddingSpanProcessorTest {
+
+    @Test
+    public void test_shed_mojo_spans_and_keep_root_span() {
+        List<SpanData> exportedSpans = Collections.synchronizedList(new ArrayList<>());
+        SpanExporter spanExporter = new SpanExporter() {
+            @Override
+            public CompletableResultCode export(Collection<SpanData> spans) {
+                exportedSpans.addAll(spans);
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public CompletableResultCode flush() {
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public CompletableResultCode shutdown() {
+                return CompletableResultCode.ofSuccess();
+            }
+        };
+        int maxQueueSize = 100;
+        LoadSheddingSpanProcessor spanProcessor = LoadSheddingSpanProcessor.create(spanExporter, maxQueueSize,
+                (exporter, bspMaxQueueSize) -> BatchSpanProcessor.builder(exporter)
+                        // never export during the test to fill the queue
+                        .setScheduleDelay(1, TimeUnit.HOURS)
+                        .setMaxExportBatchSize(maxQueueSize)
+                        .setMaxQueueSize(bspMaxQueueSize)
+                        .build());
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(spanProcessor).build();
+        Tracer tracer = sdkTracerProvider.get("junit");
+
+        Span rootSpan = tracer.spanBuilder("Build: com.example:parent").startSpan();
+        try (Scope ignored = rootSpan.makeCurrent()) {
+            for (String project : new String[]{"module-a", "module-b"}) {
+                Span projectSpan = tracer.spanBuilder(project)
+                        .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, project)
+                        .startSpan();
+                try (Scope ignored2 = projectSpan.makeCurrent()) {
+                    for (int i = 0; i < 60; i++) {
+                        tracer.spanBuilder("surefire:test @ " + project)
+                                .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, project)
+                                .setAttribute(MavenOtelSemanticAttributes.MAVEN_PLUGIN_ARTIFACT_ID, "maven-surefire-plugin")
+                                .startSpan()
+                                .end();
+                    }
+                }
+                projectSpan.end();
+            }
+        }
+        spanProcessor.addDroppedSpansAttributes(rootSpan);
+        rootSpan.end();
+
+        // queue filled up to 90% by module-a (61 spans) and 29 mojo spans of module-b, the 31 other mojo spans of module-b are dropped
+        assertEquals(31, spanProcessor.getDroppedSpans());
+        SpanData rootSpanData = ((ReadableSpan) rootSpan).toSpanData();
+        assertEquals(Long.valueOf(31), rootSpanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_DROPPED_SPANS));
+        assertThat(rootSpanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_DROPPED_SPANS_PROJECTS), containsInAnyOrder("module-b=31"));
+        assertThat(rootSpanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_DROPPED_SPANS_PLUGINS), containsInAnyOrder("maven-surefire-plugin=31"));
+
+        assertTrue(sdkTracerProvider.shutdown().join(10, TimeUnit.SECONDS).isSuccess());
+        assertEquals(60 + 29 + 2 + 1, exportedSpans.size());
+        assertTrue(exportedSpans.stream().anyMatch(span -> span.getName().equals("Build: com.example:parent")));
+    }
+
+    @Test
+    public void test_queue_size_reconciled_on_export_failure_and_timeout() throws Exception {
+        AtomicInteger exports = new AtomicInteger();
+        SpanExporter spanExporter = new SpanExporter() {
+            @Override
+            public CompletableResultCode export(Collection<SpanData> spans) {
+                // alternately never completed (timeout) and failed
+                return exports.incrementAndGet() % 2 == 0 ? CompletableResultCode.ofFailure() : new CompletableResultCode();
+            }
+
+            @Override
+            public CompletableResultCode flush() {
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public CompletableResultCode shutdown() {
+                return CompletableResultCode.ofSuccess();
+            }
+        };
+        int maxQueueSize = 100;
+        LoadSheddingSpanProcessor spanProcessor = LoadSheddingSpanProcessor.create(spanExporter, maxQueueSize,
+                (exporter, bspMaxQueueSize) -> BatchSpanProcessor.builder(exporter)
+                        .setScheduleDelay(10, TimeUnit.MILLISECONDS)
+                        .setExporterTimeout(20, TimeUnit.MILLISECONDS)
+                        .setMaxExportBatchSize(50)
+                        .setMaxQueueSize(bspMaxQueueSize)
+                        .build());
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(spanProcessor).build();
+        Tracer tracer = sdkTracerProvider.get("junit");
+
+        Span rootSpan = tracer.spanBuilder("Build: com.example:parent").startSpan();
+        try (Scope ignored = rootSpan.makeCurrent()) {
+            for (int wave = 0; wave < 5; wave++) {
+                for (int i = 0; i < 80; i++) {
+                    tracer.spanBuilder("surefire:test @ module-a")
+                            .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, "module-a")
+                            .setAttribute(MavenOtelSemanticAttributes.MAVEN_PLUGIN_ARTIFACT_ID, "maven-surefire-plugin")
+                            .startSpan()
+                            .end();
+                }
+                awaitEmptyQueue(spanProcessor);
+            }
+        }
+        rootSpan.end();
+
+        // the spans of the failed and timed out exports are not counted as queued, nothing is shed
+        assertEquals(0, spanProcessor.getDroppedSpans());
+        assertTrue(exports.get() >= 5);
+        sdkTracerProvider.shutdown().join(10, TimeUnit.SECONDS);
+        assertEquals(0, spanProcessor.getQueueSize());
+    }
+
+    @Test
+    public void test_root_spans_beyond_headroom_counted_as_dropped() {
+        List<SpanData> exportedSpans = Collections.synchronizedList(new ArrayList<>());
+        SpanExporter spanExporter = new SpanExporter() {
+            @Override
+            public CompletableResultCode export(Collection<SpanData> spans) {
+                exportedSpans.addAll(spans);
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public CompletableResultCode flush() {
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public CompletableResultCode shutdown() {
+                return CompletableResultCode.ofSuccess();
+            }
+        };
+        int maxQueueSize = 10;
+        LoadSheddingSpanProcessor spanProcessor = LoadSheddingSpanProcessor.create(spanExporter, maxQueueSize,
+                (exporter, bspMaxQueueSize) -> BatchSpanProcessor.builder(exporter)
+                        // never export during the test to fill the queue
+                        .setScheduleDelay(1, TimeUnit.HOURS)
+                        .setMaxExportBatchSize(1_000)
+                        .setMaxQueueSize(bspMaxQueueSize)
+                        .build());
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(spanProcessor).build();
+        Tracer tracer = sdkTracerProvider.get("junit");
+
+        int rootSpans = maxQueueSize + LoadSheddingSpanProcessor.ROOT_SPANS_HEADROOM + 4;
+        for (int i = 0; i < rootSpans; i++) {
+            tracer.spanBuilder("Build: com.example:parent-" + i).startSpan().end();
+        }
+        assertEquals(4, spanProcessor.getDroppedSpans());
+        assertEquals(maxQueueSize + LoadSheddingSpanProcessor.ROOT_SPANS_HEADROOM, spanProcessor.getQueueSize());
+
+        assertTrue(sdkTracerProvider.shutdown().join(10, TimeUnit.SECONDS).isSuccess());
+        // none dropped by the BatchSpanProcessor itself
+        assertEquals(rootSpans - 4, exportedSpans.size());
+        assertEquals(0, spanProcessor.getQueueSize());
+    }
+
+    private static void awaitEmptyQueue(LoadSheddingSpanProcessor spanProcessor) throws InterruptedException {
+        for (int i = 0; i < 500 && spanProcessor.getQueueSize() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, spanProcessor.getQueueSize());
+    }
+}
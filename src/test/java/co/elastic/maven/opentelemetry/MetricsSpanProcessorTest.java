@@ -0,0 +1,171 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import com.google.protobuf.ByteString;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.metrics.v1.HistogramDataPoint;
+import io.opentelemetry.proto.metrics.v1.Metric;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsSpanProcessorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void before() {
+        // don't write the cache of the build environment and the baseline in ~/.m2
+        System.setProperty("otel.instrumentation.maven.resource.detection.enabled", "false");
+        System.setProperty("otel.instrumentation.maven.baseline.file", temporaryFolder.getRoot().toPath().resolve("mojo-durations.bin").toString());
+    }
+
+    @After
+    public void after() {
+        System.clearProperty("otel.exporter.otlp.endpoint");
+        System.clearProperty("otel.traces.exporter");
+        System.clearProperty("otel.metrics.exporter");
+        System.clearProperty("otel.instrumentation.maven.resource.detection.enabled");
+        System.clearProperty("otel.instrumentation.maven.baseline.file");
+        GlobalOpenTelemetry.resetForTest();
+    }
+
+    @Test
+    public void test_histograms_with_exemplars() {
+        MetricsSpanProcessor metricsSpanProcessor = new MetricsSpanProcessor();
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(metricsSpanProcessor).build();
+        Span rootSpan = simulateBuild(sdkTracerProvider.get("junit"));
+
+        List<Metric> metrics = metricsSpanProcessor.toExportMetricsServiceRequest(Resource.getDefault())
+                .getResourceMetrics(0).getInstrumentationLibraryMetrics(0).getMetricsList();
+        assertEquals(3, metrics.size());
+
+        Metric mojoDurations = metrics.get(0);
+        assertEquals(MetricsSpanProcessor.MOJO_DURATION_METRIC, mojoDurations.getName());
+        assertEquals("ms", mojoDurations.getUnit());
+        // compile and testCompile goals
+        assertEquals(2, mojoDurations.getHistogram().getDataPointsCount());
+        long mojoCount = 0;
+        for (HistogramDataPoint dataPoint : mojoDurations.getHistogram().getDataPointsList()) {
+            mojoCount += dataPoint.getCount();
+            assertEquals(MetricsSpanProcessor.DURATION_BOUNDARIES_MILLIS.length + 1, dataPoint.getBucketCountsCount());
+            assertTrue(dataPoint.getExemplarsCount() > 0);
+            assertEquals(ByteString.copyFrom(rootSpan.getSpanContext().getTraceIdBytes()), dataPoint.getExemplars(0).getTraceId());
+        }
+        // 2 projects * (2 compile + 1 testCompile)
+        assertEquals(6, mojoCount);
+
+        Metric projectDurations = metrics.get(1);
+        assertEquals(MetricsSpanProcessor.PROJECT_DURATION_METRIC, projectDurations.getName());
+        assertEquals(2, projectDurations.getHistogram().getDataPointsCount());
+
+        Metric buildDurations = metrics.get(2);
+        assertEquals(MetricsSpanProcessor.BUILD_DURATION_METRIC, buildDurations.getName());
+        assertEquals(1, buildDurations.getHistogram().getDataPoints(0).getCount());
+    }
+
+    @Test
+    public void test_record_only_sampler() {
+        MetricsSpanProcessor metricsSpanProcessor = new MetricsSpanProcessor();
+        InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder()
+                .setSampler(MetricsSpanProcessor.recordOnlySampler())
+                .addSpanProcessor(metricsSpanProcessor)
+                .addSpanProcessor(SimpleSpanProcessor.create(spanExporter))
+                .build();
+        simulateBuild(sdkTracerProvider.get("junit"));
+
+        assertEquals(0, spanExporter.getFinishedSpanItems().size());
+        Metric mojoDurations = metricsSpanProcessor.toExportMetricsServiceRequest(Resource.getDefault())
+                .getResourceMetrics(0).getInstrumentationLibraryMetrics(0).getMetrics(0);
+        for (HistogramDataPoint dataPoint : mojoDurations.getHistogram().getDataPointsList()) {
+            assertTrue(dataPoint.getCount() > 0);
+            // no exemplar linking to traces that are not exported
+            assertEquals(0, dataPoint.getExemplarsCount());
+        }
+    }
+
+    @Test
+    public void test_sdk_service_metrics_only() throws Exception {
+        try (OtlpGrpcReceiverStub receiver = new OtlpGrpcReceiverStub()) {
+            System.setProperty("otel.exporter.otlp.endpoint", receiver.getEndpoint());
+            System.setProperty("otel.traces.exporter", "none");
+            System.setProperty("otel.metrics.exporter", "otlp");
+            OpenTelemetrySdkService openTelemetrySdkService = new OpenTelemetrySdkService(OtlpExportPerformanceTest.newRuntimeInformation());
+            openTelemetrySdkService.initialize();
+
+            simulateBuild(openTelemetrySdkService.getTracer());
+            openTelemetrySdkService.startFinalFlush();
+            openTelemetrySdkService.dispose();
+
+            assertEquals(0, receiver.getReceivedSpans());
+            assertEquals(1, receiver.getReceivedMetricsRequests().size());
+            ExportMetricsServiceRequest request = receiver.getReceivedMetricsRequests().get(0);
+            assertEquals("maven", request.getResourceMetrics(0).getResource().getAttributesList().stream()
+                    .filter(keyValue -> keyValue.getKey().equals("service.name")).findFirst().get().getValue().getStringValue());
+            List<String> metricNames = request.getResourceMetrics(0).getInstrumentationLibraryMetrics(0).getMetricsList().stream()
+                    .map(Metric::getName).collect(Collectors.toList());
+            assertEquals(metricNames.toString(), 3, metricNames.stream().filter(name -> name.startsWith("maven.")).count());
+            // sampled by the JvmMetricsSampler
+            assertTrue(metricNames.toString(), metricNames.contains(JvmMetricsSampler.MEMORY_USAGE_METRIC));
+        }
+    }
+
+    /**
+     * Build of 2 projects, each executing the compile, testCompile and a second compile goals
+     */
+    private static Span simulateBuild(Tracer tracer) {
+        SpanRegistry spanRegistry = new SpanRegistry();
+        OtelExecutionListener otelExecutionListener = new OtelExecutionListener(spanRegistry, new OpenTelemetrySdkService() {
+            @Override
+            public Tracer getTracer() {
+                return tracer;
+            }
+        });
+        Span rootSpan = tracer.spanBuilder("Build: com.example:parent")
+                .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_GROUP_ID, "com.example")
+                .setAttribute(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, "parent")
+                .startSpan();
+        spanRegistry.setRootSpan(rootSpan);
+        for (String artifactId : new String[]{"module-a", "module-b"}) {
+            MavenProject project = SpanRegistryTest.newMavenProject(artifactId);
+            otelExecutionListener.projectStarted(new SimpleExecutionEvent(ExecutionEvent.Type.ProjectStarted, project, null));
+            MojoExecution[] mojoExecutions = {
+                    SpanRegistryTest.newMojoExecution("default-compile", "compile"),
+                    SpanRegistryTest.newMojoExecution("default-testCompile", "testCompile"),
+                    SpanRegistryTest.newMojoExecution("java11-compile", "compile")};
+            for (MojoExecution mojoExecution : mojoExecutions) {
+                ExecutionEvent mojoEvent = new SimpleExecutionEvent(ExecutionEvent.Type.MojoStarted, project, mojoExecution);
+                otelExecutionListener.mojoStarted(mojoEvent);
+                otelExecutionListener.mojoSucceeded(mojoEvent);
+            }
+            otelExecutionListener.projectSucceeded(new SimpleExecutionEvent(ExecutionEvent.Type.ProjectSucceeded, project, null));
+        }
+        spanRegistry.removeRootSpan().end();
+        return rootSpan;
+    }
+}
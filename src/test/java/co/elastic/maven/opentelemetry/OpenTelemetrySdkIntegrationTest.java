@@ -23,30 +23,32 @@ import io.opentelemetry.semconv.resource.attributes.ResourceAttributes;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
 
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
-@Ignore
 public class OpenTelemetrySdkIntegrationTest {
 
     private static final Random RANDOM = new Random();
 
+    private OtlpGrpcReceiverStub receiver;
+
     @After
-    public void after() {
+    public void after() throws Exception {
+        receiver.close();
         GlobalOpenTelemetry.resetForTest();
     }
 
     @Before
-    public void before() {
+    public void before() throws Exception {
         GlobalOpenTelemetry.resetForTest();
+        receiver = new OtlpGrpcReceiverStub();
     }
 
     @Test
     public void testOtlpGrpcSpanExporterShutDown() {
-        String otlpEndpoint = "http://localhost:4317";
+        String otlpEndpoint = receiver.getEndpoint();
         SpanExporter otlpGrpcSpanExporter = OtlpGrpcSpanExporter.builder()
                 .setEndpoint(otlpEndpoint)
                 .build();
@@ -55,7 +57,7 @@ public class OpenTelemetrySdkIntegrationTest {
 
     @Test
     public void testMyOtlpGrpcSpanExporterShutDown() {
-        String otlpEndpoint = "http://localhost:4317";
+        String otlpEndpoint = receiver.getEndpoint();
         SpanExporter otlpGrpcSpanExporter = MyOtlpGrpcSpanExporter.builder()
                 .setEndpoint(otlpEndpoint)
                 .build();
@@ -109,5 +111,6 @@ public class OpenTelemetrySdkIntegrationTest {
                     "There should be not activity on the OTLP GRPC Exporter after this step"
             );
         }
+        Assert.assertEquals(10, receiver.getReceivedSpans());
     }
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per Maven event of the {@link OtelExecutionListener}, of the {@link SpanRegistry}, of the
+ * {@link MojoResourceUsage} sampling and of the {@link ChainedExecutionListener} dispatch. The {@code disabled} setup
+ * measures the dispatch of the Maven events when the extension is installed but no exporter is configured.
+ *
+ * Run with {@code mvn test-compile exec:exec -Pbenchmark -Djmh.args=OtelExecutionListenerBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class OtelExecutionListenerBenchmark {
+
+    /**
+     * <ul>
+     *     <li>{@code disabled}: no exporter configured, the listener is not registered</li>
+     *     <li>{@code noop}: NOOP tracer</li>
+     *     <li>{@code sdk-in-memory}: SDK with a {@link SimpleSpanProcessor} and an {@link InMemorySpanExporter}</li>
+     *     <li>{@code sdk-batch}: SDK with a {@link BatchSpanProcessor} and an exporter discarding the spans</li>
+     * </ul>
+     */
+    @Param({"disabled", "noop", "sdk-in-memory", "sdk-batch"})
+    public String tracerSetup;
+
+    private SdkTracerProvider sdkTracerProvider;
+    private InMemorySpanExporter inMemorySpanExporter;
+
+    private SpanRegistry spanRegistry;
+    private OtelExecutionListener otelExecutionListener;
+    /**
+     * Execution listener of the Maven session once the extension is registered
+     */
+    private ExecutionListener sessionExecutionListener;
+
+    private Span span;
+    private MavenProject mojoProject;
+    private MojoExecution mojoExecution;
+    private ExecutionEvent projectEvent;
+    private ExecutionEvent mojoEvent;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // measure the listener rather than the console output of the debug logs
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.INFO);
+
+        final Tracer tracer;
+        switch (tracerSetup) {
+            case "disabled":
+            case "noop":
+                tracer = OpenTelemetry.noop().getTracer("io.opentelemetry.contrib.maven");
+                break;
+            case "sdk-in-memory":
+                inMemorySpanExporter = InMemorySpanExporter.create();
+                sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(inMemorySpanExporter)).build();
+                tracer = sdkTracerProvider.get("io.opentelemetry.contrib.maven");
+                break;
+            case "sdk-batch":
+                sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(BatchSpanProcessor.builder(new DiscardingSpanExporter()).build()).build();
+                tracer = sdkTracerProvider.get("io.opentelemetry.contrib.maven");
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported tracer setup " + tracerSetup);
+        }
+        OpenTelemetrySdkService openTelemetrySdkService = new OpenTelemetrySdkService() {
+            @Override
+            public boolean isEnabled() {
+                return !"disabled".equals(tracerSetup);
+            }
+
+            @Override
+            public Tracer getTracer() {
+                return tracer;
+            }
+        };
+
+        spanRegistry = new SpanRegistry();
+        otelExecutionListener = new OtelExecutionListener(spanRegistry, openTelemetrySdkService);
+        MavenExecutionRequest request = new DefaultMavenExecutionRequest().setExecutionListener(new AbstractExecutionListener());
+        MavenSession session = OtelExecutionListenerTest.newMavenSession(request, new DefaultRepositorySystemSession());
+        OtelExecutionListener.registerOtelExecutionListener(session, otelExecutionListener);
+        sessionExecutionListener = request.getExecutionListener();
+
+        span = tracer.spanBuilder("benchmark").startSpan();
+        projectEvent = new SimpleExecutionEvent(ExecutionEvent.Type.ProjectStarted, SpanRegistryTest.newMavenProject("benchmark-module"), null);
+        mojoProject = SpanRegistryTest.newMavenProject("benchmark-mojo-module");
+        mojoExecution = SpanRegistryTest.newMojoExecution("default-compile", "compile");
+        mojoEvent = new SimpleExecutionEvent(ExecutionEvent.Type.MojoStarted, mojoProject, mojoExecution);
+
+        spanRegistry.setRootSpan(tracer.spanBuilder("Build: benchmark").startSpan());
+        // span of the project of the mojo executions, only the mojo events are measured
+        otelExecutionListener.projectStarted(new SimpleExecutionEvent(ExecutionEvent.Type.ProjectStarted, mojoProject, null));
+    }
+
+    @Setup(Level.Iteration)
+    public void resetInMemorySpanExporter() {
+        if (inMemorySpanExporter != null) {
+            inMemorySpanExporter.reset();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (sdkTracerProvider != null) {
+            sdkTracerProvider.shutdown().join(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Benchmark
+    public void projectStartedAndSucceeded() {
+        otelExecutionListener.projectStarted(projectEvent);
+        otelExecutionListener.projectSucceeded(projectEvent);
+    }
+
+    @Benchmark
+    public void mojoStartedAndSucceeded() {
+        otelExecutionListener.mojoStarted(mojoEvent);
+        otelExecutionListener.mojoSucceeded(mojoEvent);
+    }
+
+    @Benchmark
+    public void sessionMojoStartedAndSucceeded() {
+        sessionExecutionListener.mojoStarted(mojoEvent);
+        sessionExecutionListener.mojoSucceeded(mojoEvent);
+    }
+
+    @Benchmark
+    public MojoResourceUsage mojoResourceUsageSample() {
+        return MojoResourceUsage.sample();
+    }
+
+    @Benchmark
+    public Span spanRegistryPutAndRemove() {
+        spanRegistry.putSpan(span, mojoExecution, mojoProject);
+        return spanRegistry.removeSpan(mojoExecution, mojoProject);
+    }
+
+    private static class DiscardingSpanExporter implements SpanExporter {
+        @Override
+        public CompletableResultCode export(Collection<SpanData> spans) {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+}
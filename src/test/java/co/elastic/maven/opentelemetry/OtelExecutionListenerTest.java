@@ -5,15 +5,51 @@
 
 package co.elastic.maven.opentelemetry;
 
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystemSession;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class OtelExecutionListenerTest {
 
     @Test
     public void getPluginArtifactIdShortName_builtinPluginName() {
-        OtelExecutionListener otelEventSpy = new OtelExecutionListener();
+        OtelExecutionListener otelEventSpy = new OtelExecutionListener(new SpanRegistry(), new OpenTelemetrySdkService());
         String actual = otelEventSpy.getPluginArtifactIdShortName("maven-clean-plugin");
         String expected  = "clean";
         assertEquals(expected, actual);
@@ -21,9 +57,324 @@ public class OtelExecutionListenerTest {
 
     @Test
     public void getPluginArtifactIdShortName_thirdPartyPluginName() {
-        OtelExecutionListener otelEventSpy = new OtelExecutionListener();
+        OtelExecutionListener otelEventSpy = new OtelExecutionListener(new SpanRegistry(), new OpenTelemetrySdkService());
         String actual = otelEventSpy.getPluginArtifactIdShortName("spotbugs-maven-plugin");
         String expected  = "spotbugs";
         assertEquals(expected, actual);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void mojo_spans_with_project_and_plugin_attributes() {
+        InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build();
+        Tracer tracer = sdkTracerProvider.get("junit");
+        SpanRegistry spanRegistry = new SpanRegistry();
+        OtelExecutionListener otelExecutionListener = new OtelExecutionListener(spanRegistry, new OpenTelemetrySdkService() {
+            @Override
+            public Tracer getTracer() {
+                return tracer;
+            }
+        });
+        spanRegistry.setRootSpan(tracer.spanBuilder("Build: junit").startSpan());
+
+        MavenProject project = SpanRegistryTest.newMavenProject("module-a");
+        MojoExecution compile = SpanRegistryTest.newMojoExecution("default-compile", "compile");
+        MojoExecution testCompile = SpanRegistryTest.newMojoExecution("default-testCompile", "testCompile");
+        // another version of the plugin
+        MojoExecution otherCompile = SpanRegistryTest.newMojoExecution("java11-compile", "compile");
+        otherCompile.getPlugin().setVersion("3.9.0");
+
+        otelExecutionListener.projectStarted(new SimpleExecutionEvent(ExecutionEvent.Type.ProjectStarted, project, null));
+        for (MojoExecution mojoExecution : new MojoExecution[]{compile, testCompile, otherCompile}) {
+            ExecutionEvent mojoEvent = new SimpleExecutionEvent(ExecutionEvent.Type.MojoStarted, project, mojoExecution);
+            otelExecutionListener.mojoStarted(mojoEvent);
+            otelExecutionListener.mojoSucceeded(mojoEvent);
+        }
+        otelExecutionListener.projectSucceeded(new SimpleExecutionEvent(ExecutionEvent.Type.ProjectSucceeded, project, null));
+
+        List<SpanData> spans = spanExporter.getFinishedSpanItems();
+        assertEquals(4, spans.size());
+
+        SpanData compileSpan = spans.get(0);
+        assertEquals("compiler:compile (default-compile) @ module-a", compileSpan.getName());
+        // no lifecycle phase for mojo executions invoked from the command line; CPU time, allocated bytes, GC count and time
+        assertEquals(12, compileSpan.getAttributes().size());
+        assertEquals("com.example", compileSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_PROJECT_GROUP_ID));
+        assertEquals("module-a", compileSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID));
+        assertEquals("1.0-SNAPSHOT", compileSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_PROJECT_VERSION));
+        assertEquals("org.apache.maven.plugins", compileSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_PLUGIN_GROUP_ID));
+        assertEquals("maven-compiler-plugin", compileSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_PLUGIN_ARTIFACT_ID));
+        assertEquals("3.8.0", compileSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_PLUGIN_VERSION));
+        assertEquals("compile", compileSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_GOAL));
+        assertEquals("default-compile", compileSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_ID));
+
+        assertEquals("compiler:testCompile (default-testCompile) @ module-a", spans.get(1).getName());
+        assertEquals("3.9.0", spans.get(2).getAttributes().get(MavenOtelSemanticAttributes.MAVEN_PLUGIN_VERSION));
+
+        SpanData projectSpan = spans.get(3);
+        assertEquals("com.example:module-a", projectSpan.getName());
+        assertEquals(3, projectSpan.getAttributes().size());
+        assertEquals(projectSpan.getSpanId(), compileSpan.getParentSpanId());
+    }
+
+    @Test
+    public void mojo_spans_with_resource_usage() throws Exception {
+        InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build();
+        Tracer tracer = sdkTracerProvider.get("junit");
+        SpanRegistry spanRegistry = new SpanRegistry();
+        OtelExecutionListener otelExecutionListener = new OtelExecutionListener(spanRegistry, new OpenTelemetrySdkService() {
+            @Override
+            public Tracer getTracer() {
+                return tracer;
+            }
+        });
+        spanRegistry.setRootSpan(tracer.spanBuilder("Build: junit").startSpan());
+        MavenProject project = SpanRegistryTest.newMavenProject("module-a");
+        otelExecutionListener.projectStarted(new SimpleExecutionEvent(ExecutionEvent.Type.ProjectStarted, project, null));
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        boolean contentionMonitoringEnabled = threadMXBean.isThreadContentionMonitoringEnabled();
+        threadMXBean.setThreadContentionMonitoringEnabled(true);
+        try {
+            ExecutionEvent mojoEvent = new SimpleExecutionEvent(ExecutionEvent.Type.MojoStarted, project, SpanRegistryTest.newMojoExecution("default-compile", "compile"));
+            otelExecutionListener.mojoStarted(mojoEvent);
+            byte[][] allocations = new byte[10][];
+            for (int i = 0; i < allocations.length; i++) {
+                allocations[i] = new byte[1024 * 1024];
+            }
+            Object lock = new Object();
+            synchronized (lock) {
+                lock.wait(50);
+            }
+            otelExecutionListener.mojoFailed(mojoEvent);
+            assertEquals(10, allocations.length);
+        } finally {
+            threadMXBean.setThreadContentionMonitoringEnabled(contentionMonitoringEnabled);
+        }
+
+        SpanData mojoSpan = spanExporter.getFinishedSpanItems().get(0);
+        assertTrue(mojoSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_ALLOCATED_BYTES) >= 10 * 1024 * 1024);
+        assertTrue(mojoSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_CPU_TIME) >= 0);
+        assertTrue(mojoSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_GC_COUNT) >= 0);
+        assertTrue(mojoSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_GC_TIME) >= 0);
+        assertTrue(mojoSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_WAITED_TIME) >= 40);
+        assertEquals(0L, (long) mojoSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_BLOCKED_TIME));
+    }
+
+    @Test
+    public void mojo_spans_compared_to_baseline() throws Exception {
+        InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build();
+        Tracer tracer = sdkTracerProvider.get("junit");
+        InMemoryMojoDurationBaseline mojoDurationBaseline = new InMemoryMojoDurationBaseline();
+        for (String executionId : new String[]{"default-compile", "default-testCompile"}) {
+            for (int i = 0; i < InMemoryMojoDurationBaseline.MIN_SAMPLES; i++) {
+                mojoDurationBaseline.record(FileMojoDurationBaselineTest.newMojoAttributes("module-a", executionId), TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        SpanRegistry spanRegistry = new SpanRegistry();
+        OtelExecutionListener otelExecutionListener = new OtelExecutionListener(spanRegistry, new OpenTelemetrySdkService() {
+            @Override
+            public Tracer getTracer() {
+                return tracer;
+            }
+
+            @Override
+            public MojoDurationBaseline getMojoDurationBaseline() {
+                return mojoDurationBaseline;
+            }
+
+            @Override
+            public long getRegressionThresholdMillis() {
+                return 100;
+            }
+        });
+        spanRegistry.setRootSpan(tracer.spanBuilder("Build: junit").startSpan());
+        MavenProject project = SpanRegistryTest.newMavenProject("module-a");
+        otelExecutionListener.projectStarted(new SimpleExecutionEvent(ExecutionEvent.Type.ProjectStarted, project, null));
+
+        ExecutionEvent compileEvent = new SimpleExecutionEvent(ExecutionEvent.Type.MojoStarted, project, SpanRegistryTest.newMojoExecution("default-compile", "compile"));
+        otelExecutionListener.mojoStarted(compileEvent);
+        Thread.sleep(150);
+        otelExecutionListener.mojoSucceeded(compileEvent);
+        ExecutionEvent testCompileEvent = new SimpleExecutionEvent(ExecutionEvent.Type.MojoStarted, project, SpanRegistryTest.newMojoExecution("default-testCompile", "compile"));
+        otelExecutionListener.mojoStarted(testCompileEvent);
+        Thread.sleep(5);
+        otelExecutionListener.mojoSucceeded(testCompileEvent);
+
+        List<SpanData> spans = spanExporter.getFinishedSpanItems();
+        Attributes compileAttributes = spans.get(0).getAttributes();
+        assertEquals(Long.valueOf(1), compileAttributes.get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_BASELINE_P50));
+        assertEquals(Long.valueOf(1), compileAttributes.get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_BASELINE_P95));
+        assertEquals(Boolean.TRUE, compileAttributes.get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_REGRESSION));
+        // slower than the 95th percentile but within the regression threshold
+        assertEquals(Boolean.FALSE, spans.get(1).getAttributes().get(MavenOtelSemanticAttributes.MAVEN_EXECUTION_REGRESSION));
+        // the durations are recorded in the baseline
+        assertTrue(mojoDurationBaseline.getP95Nanos(FileMojoDurationBaselineTest.newMojoAttributes("module-a", "default-compile")) >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    public void sequential_and_concurrent_sessions_share_the_sdk() {
+        InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+        // the span exporter never keeps up: the queue is full after the root span of the first session, each session
+        // drops its mojo span and its project span
+        LoadSheddingSpanProcessor loadSheddingSpanProcessor = LoadSheddingSpanProcessor.create(InMemorySpanExporter.create(), 1,
+                (exporter, maxQueueSize) -> new SpanProcessor() {
+                    @Override
+                    public void onStart(Context parentContext, ReadWriteSpan span) {
+                    }
+
+                    @Override
+                    public boolean isStartRequired() {
+                        return false;
+                    }
+
+                    @Override
+                    public void onEnd(ReadableSpan span) {
+                    }
+
+                    @Override
+                    public boolean isEndRequired() {
+                        return false;
+                    }
+                });
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(spanExporter))
+                .addSpanProcessor(loadSheddingSpanProcessor).build();
+        Tracer tracer = sdkTracerProvider.get("junit");
+        OpenTelemetrySdkService openTelemetrySdkService = new OpenTelemetrySdkService() {
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+
+            @Override
+            public Tracer getTracer() {
+                return tracer;
+            }
+
+            @Override
+            LoadSheddingSpanProcessor getLoadSheddingSpanProcessor() {
+                return loadSheddingSpanProcessor;
+            }
+        };
+
+        // concurrent sessions building the same project, events interleaved
+        MavenSession firstSession = newSession("module-a");
+        MavenSession secondSession = newSession("module-a");
+        OtelExecutionListener.registerOtelExecutionListener(firstSession, openTelemetrySdkService);
+        OtelExecutionListener.registerOtelExecutionListener(secondSession, openTelemetrySdkService);
+        List<MavenSession> sessions = Arrays.asList(firstSession, secondSession);
+        for (ExecutionEvent.Type type : new ExecutionEvent.Type[]{ExecutionEvent.Type.SessionStarted, ExecutionEvent.Type.ProjectStarted,
+                ExecutionEvent.Type.MojoStarted, ExecutionEvent.Type.MojoSucceeded, ExecutionEvent.Type.ProjectSucceeded, ExecutionEvent.Type.SessionEnded}) {
+            for (MavenSession session : sessions) {
+                dispatch(session, type);
+            }
+        }
+        // following session of the same JVM
+        MavenSession thirdSession = newSession("module-a");
+        OtelExecutionListener.registerOtelExecutionListener(thirdSession, openTelemetrySdkService);
+        for (ExecutionEvent.Type type : new ExecutionEvent.Type[]{ExecutionEvent.Type.SessionStarted, ExecutionEvent.Type.ProjectStarted,
+                ExecutionEvent.Type.MojoStarted, ExecutionEvent.Type.MojoSucceeded, ExecutionEvent.Type.ProjectSucceeded, ExecutionEvent.Type.SessionEnded}) {
+            dispatch(thirdSession, type);
+        }
+
+        List<SpanData> spans = spanExporter.getFinishedSpanItems();
+        assertEquals(9, spans.size());
+        Map<String, List<SpanData>> spansPerTrace = spans.stream().collect(Collectors.groupingBy(SpanData::getTraceId));
+        assertEquals(3, spansPerTrace.size());
+        for (List<SpanData> traceSpans : spansPerTrace.values()) {
+            assertEquals(Arrays.asList("compiler:compile (default-compile) @ module-a", "com.example:module-a", "Build: com.example:module-a"),
+                    traceSpans.stream().map(SpanData::getName).collect(Collectors.toList()));
+        }
+        // the dropped spans are reported on the root span of their build, not accumulated across the sessions
+        assertEquals(6, loadSheddingSpanProcessor.getDroppedSpans());
+        for (SpanData span : spans) {
+            if (span.getName().startsWith("Build: ")) {
+                assertEquals(Long.valueOf(2), span.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_DROPPED_SPANS));
+                assertEquals(Collections.singletonList("module-a=2"), span.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_DROPPED_SPANS_PROJECTS));
+                assertEquals(Collections.singletonList("maven-compiler-plugin=1"), span.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_DROPPED_SPANS_PLUGINS));
+            }
+        }
+    }
+
+    static MavenSession newSession(String artifactId) {
+        MavenExecutionRequest request = new DefaultMavenExecutionRequest().setExecutionListener(new AbstractExecutionListener());
+        MavenSession session = newMavenSession(request, new DefaultRepositorySystemSession());
+        MavenProject project = SpanRegistryTest.newMavenProject(artifactId);
+        project.setExecutionRoot(true);
+        session.setProjects(Collections.singletonList(project));
+        return session;
+    }
+
+    /**
+     * Session without container nor projects, shared by the tests and benchmarks: all the constructors of
+     * {@link MavenSession} are deprecated in the version of Maven the extension is built against, so one is only
+     * invoked here
+     */
+    @SuppressWarnings("deprecation")
+    static MavenSession newMavenSession(MavenExecutionRequest request, RepositorySystemSession repositorySession) {
+        return new MavenSession(null, repositorySession, request, new DefaultMavenExecutionResult());
+    }
+
+    /**
+     * Dispatch the event of the given type of the build of the top level project, executing the compile goal
+     */
+    private static void dispatch(MavenSession session, ExecutionEvent.Type type) {
+        MavenProject project = session.getTopLevelProject();
+        MojoExecution mojoExecution = type == ExecutionEvent.Type.MojoStarted || type == ExecutionEvent.Type.MojoSucceeded
+                ? SpanRegistryTest.newMojoExecution("default-compile", "compile") : null;
+        ExecutionEvent event = new SimpleExecutionEvent(type, project, mojoExecution) {
+            @Override
+            public MavenSession getSession() {
+                return session;
+            }
+        };
+        ExecutionListener executionListener = session.getRequest().getExecutionListener();
+        switch (type) {
+            case SessionStarted:
+                executionListener.sessionStarted(event);
+                break;
+            case ProjectStarted:
+                executionListener.projectStarted(event);
+                break;
+            case MojoStarted:
+                executionListener.mojoStarted(event);
+                break;
+            case MojoSucceeded:
+                executionListener.mojoSucceeded(event);
+                break;
+            case ProjectSucceeded:
+                executionListener.projectSucceeded(event);
+                break;
+            case SessionEnded:
+                executionListener.sessionEnded(event);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported event type " + type);
+        }
+    }
+
+    @Test
+    public void not_registered_when_no_exporter_is_configured() throws Exception {
+        GlobalOpenTelemetry.resetForTest();
+        OpenTelemetrySdkService openTelemetrySdkService = new OpenTelemetrySdkService(OtlpExportPerformanceTest.newRuntimeInformation());
+        try {
+            openTelemetrySdkService.initialize();
+            assertFalse(openTelemetrySdkService.isEnabled());
+
+            ExecutionListener initialExecutionListener = new AbstractExecutionListener();
+            MavenExecutionRequest request = new DefaultMavenExecutionRequest().setExecutionListener(initialExecutionListener);
+            DefaultRepositorySystemSession repositorySession = new DefaultRepositorySystemSession();
+            MavenSession session = newMavenSession(request, repositorySession);
+            OtelExecutionListener.registerOtelExecutionListener(session, new OtelExecutionListener(new SpanRegistry(), openTelemetrySdkService));
+
+            assertSame(initialExecutionListener, request.getExecutionListener());
+            assertNull(repositorySession.getTransferListener());
+            assertNull(repositorySession.getRepositoryListener());
+        } finally {
+            openTelemetrySdkService.dispose();
+            GlobalOpenTelemetry.resetForTest();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.proto.metrics.v1.Metric;
+import io.opentelemetry.proto.metrics.v1.NumberDataPoint;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.apache.maven.project.DefaultDependencyResolutionRequest;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RequestTrace;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.metadata.DefaultMetadata;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.ArtifactRepository;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class OtelRepositoryListenerTest {
+
+    private final InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+    private final Tracer tracer = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build().get("junit");
+    private final SpanRegistry spanRegistry = new SpanRegistry();
+    private final OtelRepositoryListener repositoryListener = new OtelRepositoryListener(null, spanRegistry);
+    private final DefaultRepositorySystemSession repositorySession = new DefaultRepositorySystemSession();
+
+    private final LocalRepository localRepository = new LocalRepository(new File("target/local-repository"));
+    private final RemoteRepository central = new RemoteRepository.Builder("central", "default", "https://repo.maven.apache.org/maven2").build();
+    private final RemoteRepository snapshots = new RemoteRepository.Builder("snapshots", "default", "https://repo.example.com/snapshots").build();
+
+    @Test
+    public void test_counts_per_project_and_repository() {
+        MavenProject project = new MavenProject();
+        project.setGroupId("com.example");
+        project.setArtifactId("my-module");
+        RequestTrace trace = RequestTrace.newChild(null, new DefaultDependencyResolutionRequest(project, null));
+
+        for (int i = 0; i < 3; i++) {
+            repositoryListener.artifactResolved(newEvent(RepositoryEvent.EventType.ARTIFACT_RESOLVED, localRepository, trace).build());
+        }
+        repositoryListener.artifactDownloaded(newEvent(RepositoryEvent.EventType.ARTIFACT_DOWNLOADED, central, trace).build());
+        repositoryListener.artifactDownloaded(newEvent(RepositoryEvent.EventType.ARTIFACT_DOWNLOADED, central, trace)
+                .setException(new IllegalStateException("not found")).build());
+        repositoryListener.metadataDownloading(newEvent(RepositoryEvent.EventType.METADATA_DOWNLOADING, snapshots, trace)
+                .setMetadata(new DefaultMetadata("com.example", "lib", "1.0-SNAPSHOT", "maven-metadata.xml", Metadata.Nature.SNAPSHOT)).build());
+        // resolution of a plugin, outside of the dependency resolution of a project
+        repositoryListener.metadataDownloading(newEvent(RepositoryEvent.EventType.METADATA_DOWNLOADING, central, null)
+                .setMetadata(new DefaultMetadata("org.apache.maven.plugins", "maven-metadata.xml", Metadata.Nature.RELEASE_OR_SNAPSHOT)).build());
+
+        Span projectSpan = tracer.spanBuilder("com.example:my-module").startSpan();
+        repositoryListener.addProjectAttributes(project, projectSpan);
+        projectSpan.end();
+        Attributes projectAttributes = spanExporter.getFinishedSpanItems().get(0).getAttributes();
+        assertEquals(Long.valueOf(3), projectAttributes.get(MavenOtelSemanticAttributes.MAVEN_RESOLUTION_LOCAL));
+        assertEquals(Long.valueOf(1), projectAttributes.get(MavenOtelSemanticAttributes.MAVEN_RESOLUTION_REMOTE));
+        assertEquals(Long.valueOf(0), projectAttributes.get(MavenOtelSemanticAttributes.MAVEN_RESOLUTION_METADATA_CHECKS));
+        assertEquals(Long.valueOf(1), projectAttributes.get(MavenOtelSemanticAttributes.MAVEN_RESOLUTION_SNAPSHOT_CHECKS));
+
+        Span rootSpan = tracer.spanBuilder("Build: com.example:my-module").startSpan();
+        repositoryListener.addBuildAttributes(rootSpan);
+        rootSpan.end();
+        Attributes rootAttributes = spanExporter.getFinishedSpanItems().get(1).getAttributes();
+        assertEquals(Long.valueOf(1), rootAttributes.get(MavenOtelSemanticAttributes.MAVEN_RESOLUTION_METADATA_CHECKS));
+        assertEquals(Arrays.asList(
+                "central: 0 local, 1 remote, 1 metadata checks, 0 snapshot checks",
+                "local: 3 local, 0 remote, 0 metadata checks, 0 snapshot checks",
+                "snapshots: 0 local, 0 remote, 0 metadata checks, 1 snapshot checks"),
+                rootAttributes.get(MavenOtelSemanticAttributes.MAVEN_BUILD_RESOLUTION_REPOSITORIES));
+    }
+
+    @Test
+    public void test_metrics() {
+        MavenProject project = new MavenProject();
+        project.setGroupId("com.example");
+        project.setArtifactId("my-module");
+        spanRegistry.setCurrentSpan(Span.getInvalid(), project);
+        try {
+            repositoryListener.artifactResolved(newEvent(RepositoryEvent.EventType.ARTIFACT_RESOLVED, localRepository, null).build());
+            repositoryListener.artifactResolved(newEvent(RepositoryEvent.EventType.ARTIFACT_RESOLVED, localRepository, null).build());
+        } finally {
+            spanRegistry.setCurrentSpan(null, null);
+        }
+        MetricsSpanProcessor metricsSpanProcessor = new MetricsSpanProcessor();
+        repositoryListener.recordMetrics(metricsSpanProcessor);
+
+        Metric metric = metricsSpanProcessor.toExportMetricsServiceRequest(Resource.empty()).getResourceMetrics(0)
+                .getInstrumentationLibraryMetrics(0).getMetrics(0);
+        assertEquals(MetricsSpanProcessor.RESOLUTION_METRIC, metric.getName());
+        assertEquals(1, metric.getSum().getDataPointsCount());
+        NumberDataPoint dataPoint = metric.getSum().getDataPoints(0);
+        assertEquals(2, dataPoint.getAsInt());
+        assertEquals(4, dataPoint.getAttributesCount());
+    }
+
+    private RepositoryEvent.Builder newEvent(RepositoryEvent.EventType type, ArtifactRepository repository, RequestTrace trace) {
+        return new RepositoryEvent.Builder(repositorySession, type)
+                .setArtifact(new DefaultArtifact("org.example:lib:1.0"))
+                .setRepository(repository)
+                .setTrace(trace);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.apache.maven.project.DefaultDependencyResolutionRequest;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RequestTrace;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.TransferCancelledException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferResource;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OtelTransferListenerTest {
+
+    private static final String CENTRAL_URL = "https://repo.maven.apache.org/maven2/";
+
+    private final InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+    private final Tracer tracer = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build().get("junit");
+    private final SpanRegistry spanRegistry = new SpanRegistry();
+    private final DefaultRepositorySystemSession repositorySession = new DefaultRepositorySystemSession();
+
+    private MavenProject project;
+    private Span rootSpan;
+    private Span projectSpan;
+
+    @Before
+    public void before() {
+        project = new MavenProject();
+        project.setGroupId("com.example");
+        project.setArtifactId("my-module");
+        rootSpan = tracer.spanBuilder("Build: com.example:my-module").startSpan();
+        spanRegistry.setRootSpan(rootSpan);
+        projectSpan = tracer.spanBuilder("com.example:my-module").startSpan();
+        spanRegistry.putSpan(projectSpan, project);
+    }
+
+    @Test
+    public void test_download_with_retry() throws TransferCancelledException {
+        OtelTransferListener transferListener = new OtelTransferListener(null, spanRegistry, tracer, 10);
+        RequestTrace trace = RequestTrace.newChild(null, new DefaultDependencyResolutionRequest(project, null))
+                .newChild(new ArtifactRequest(new DefaultArtifact("org.example:lib:1.0"),
+                        Collections.singletonList(new RemoteRepository.Builder("central", "default", CENTRAL_URL.substring(0, CENTRAL_URL.length() - 1)).build()), null));
+        TransferResource resource = new TransferResource(CENTRAL_URL, "org/example/lib/1.0/lib-1.0.jar", null, trace);
+        TransferEvent.Builder event = new TransferEvent.Builder(repositorySession, resource).setRequestType(TransferEvent.RequestType.GET);
+
+        transferListener.transferInitiated(event.setType(TransferEvent.EventType.INITIATED).build());
+        transferListener.transferStarted(event.setType(TransferEvent.EventType.STARTED).build());
+        transferListener.transferCorrupted(event.setType(TransferEvent.EventType.CORRUPTED).build());
+        transferListener.transferStarted(event.setType(TransferEvent.EventType.STARTED).build());
+        transferListener.transferSucceeded(event.setType(TransferEvent.EventType.SUCCEEDED).setTransferredBytes(2048).build());
+
+        List<SpanData> spans = spanExporter.getFinishedSpanItems();
+        assertEquals(1, spans.size());
+        SpanData span = spans.get(0);
+        assertEquals("Download central", span.getName());
+        assertEquals(projectSpan.getSpanContext().getSpanId(), span.getParentSpanId());
+        Attributes attributes = span.getAttributes();
+        assertEquals(MavenOtelSemanticAttributes.TransferTypeValues.DOWNLOAD, attributes.get(MavenOtelSemanticAttributes.MAVEN_TRANSFER_TYPE));
+        assertEquals("central", attributes.get(MavenOtelSemanticAttributes.MAVEN_TRANSFER_REPOSITORY_ID));
+        assertEquals(Long.valueOf(2048), attributes.get(MavenOtelSemanticAttributes.MAVEN_TRANSFER_BYTES));
+        assertEquals(Long.valueOf(1), attributes.get(MavenOtelSemanticAttributes.MAVEN_TRANSFER_RETRIES));
+
+        transferListener.addTransferAttributes(rootSpan);
+        rootSpan.end();
+        List<String> transfers = spanExporter.getFinishedSpanItems().get(1).getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_TRANSFERS);
+        assertEquals(1, transfers.size());
+        assertTrue(transfers.get(0), transfers.get(0).startsWith("central: 1 downloads, 0 uploads, 0 checks, 2048 bytes in "));
+        assertTrue(transfers.get(0), transfers.get(0).endsWith(", 1 retries, 0 failures"));
+    }
+
+    @Test
+    public void test_not_found_is_not_an_error() {
+        OtelTransferListener transferListener = new OtelTransferListener(null, spanRegistry, tracer, 10);
+        spanRegistry.setCurrentSpan(projectSpan, project);
+        try {
+            TransferResource resource = new TransferResource(CENTRAL_URL, "org/example/lib/1.0/lib-1.0.pom", null, null);
+            transferListener.transferFailed(new TransferEvent.Builder(repositorySession, resource)
+                    .setType(TransferEvent.EventType.FAILED)
+                    .setException(new ArtifactNotFoundException(new DefaultArtifact("org.example:lib:pom:1.0"), null))
+                    .build());
+        } finally {
+            spanRegistry.setCurrentSpan(null, null);
+        }
+
+        SpanData span = spanExporter.getFinishedSpanItems().get(0);
+        assertEquals(projectSpan.getSpanContext().getSpanId(), span.getParentSpanId());
+        assertEquals(StatusCode.UNSET, span.getStatus().getStatusCode());
+        assertEquals(Boolean.TRUE, span.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_TRANSFER_NOT_FOUND));
+        // no repository in the request
+        assertEquals("Download " + CENTRAL_URL.substring(0, CENTRAL_URL.length() - 1), span.getName());
+    }
+
+    @Test
+    public void test_max_transfer_spans() {
+        OtelTransferListener transferListener = new OtelTransferListener(null, spanRegistry, tracer, 2);
+        for (int i = 0; i < 5; i++) {
+            TransferResource resource = new TransferResource(CENTRAL_URL, "org/example/lib/1.0/lib-1.0-" + i + ".jar", null, null);
+            transferListener.transferSucceeded(new TransferEvent.Builder(repositorySession, resource)
+                    .setType(TransferEvent.EventType.SUCCEEDED).build());
+        }
+        transferListener.addTransferAttributes(rootSpan);
+        rootSpan.end();
+
+        List<SpanData> spans = spanExporter.getFinishedSpanItems();
+        assertEquals(3, spans.size());
+        assertEquals(rootSpan.getSpanContext().getSpanId(), spans.get(0).getParentSpanId());
+        assertEquals(Long.valueOf(3), spans.get(2).getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_TRANSFERS_AGGREGATED));
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.apache.maven.rtinfo.RuntimeInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Export throughput, latency, volume and shutdown time of {@link MyOtlpGrpcSpanExporter} and {@link OpenTelemetrySdkService}
+ * against the {@link OtlpGrpcReceiverStub}. Measures are printed on stderr and the assertions are loose enough to not
+ * be flaky on a loaded CI agent.
+ */
+public class OtlpExportPerformanceTest {
+
+    private static final String[] SYSTEM_PROPERTIES = {"otel.exporter.otlp.endpoint", "otel.instrumentation.maven.shutdown.timeout", "otel.bsp.max.queue.size",
+            "otel.instrumentation.maven.resource.detection.enabled", "otel.instrumentation.maven.baseline.file"};
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private OtlpGrpcReceiverStub receiver;
+
+    @Before
+    public void before() throws Exception {
+        GlobalOpenTelemetry.resetForTest();
+        receiver = new OtlpGrpcReceiverStub();
+        // don't write the cache of the build environment and the baseline in ~/.m2
+        System.setProperty("otel.instrumentation.maven.resource.detection.enabled", "false");
+        System.setProperty("otel.instrumentation.maven.baseline.file", temporaryFolder.getRoot().toPath().resolve("mojo-durations.bin").toString());
+    }
+
+    @After
+    public void after() throws Exception {
+        receiver.close();
+        Arrays.stream(SYSTEM_PROPERTIES).forEach(System::clearProperty);
+        GlobalOpenTelemetry.resetForTest();
+    }
+
+    @Test
+    public void test_exporter_throughput_and_latency() {
+        List<SpanData> batch = SpoolingSpanExporterTest.newSpans(512);
+        int batches = 100;
+
+        MyOtlpGrpcSpanExporter spanExporter = MyOtlpGrpcSpanExporter.builder().setEndpoint(receiver.getEndpoint()).build();
+        try {
+            // warm up the channel
+            spanExporter.export(batch).join(10, TimeUnit.SECONDS);
+
+            long[] latenciesNanos = new long[batches];
+            long before = System.nanoTime();
+            for (int i = 0; i < batches; i++) {
+                long beforeExport = System.nanoTime();
+                CompletableResultCode result = spanExporter.export(batch).join(10, TimeUnit.SECONDS);
+                latenciesNanos[i] = System.nanoTime() - beforeExport;
+                assertTrue(result.isSuccess());
+            }
+            long durationNanos = System.nanoTime() - before;
+            printMeasures("MyOtlpGrpcSpanExporter", batches * batch.size(), durationNanos, latenciesNanos);
+        } finally {
+            long beforeShutdown = System.nanoTime();
+            spanExporter.close();
+            System.err.println("MyOtlpGrpcSpanExporter closed in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - beforeShutdown) + "ms");
+        }
+        assertEquals((batches + 1) * batch.size(), receiver.getReceivedSpans());
+    }
+
+    @Test
+    public void test_exporter_with_errors_and_backpressure() {
+        receiver.withErrorRatio(0.2).withLatency(5, TimeUnit.MILLISECONDS).withMaxConcurrentRequests(1);
+        List<SpanData> batch = SpoolingSpanExporterTest.newSpans(100);
+        int batches = 50;
+
+        MyOtlpGrpcSpanExporter spanExporter = MyOtlpGrpcSpanExporter.builder().setEndpoint(receiver.getEndpoint()).build();
+        int failedBatches = 0;
+        try {
+            List<CompletableResultCode> results = new ArrayList<>();
+            for (int i = 0; i < batches; i++) {
+                results.add(spanExporter.export(batch));
+            }
+            for (CompletableResultCode result : results) {
+                if (!result.join(30, TimeUnit.SECONDS).isSuccess()) {
+                    failedBatches++;
+                }
+            }
+        } finally {
+            spanExporter.close();
+        }
+        assertEquals(receiver.getRejectedRequests(), failedBatches);
+        assertEquals((batches - failedBatches) * batch.size(), receiver.getReceivedSpans());
+    }
+
+    @Test
+    public void test_exporter_compression() {
+        List<SpanData> batch = SpoolingSpanExporterTest.newSpans(512);
+
+        long uncompressedBytes = exportAndGetWireBytes(MyOtlpGrpcSpanExporter.builder().setEndpoint(receiver.getEndpoint()).build(), batch);
+        long gzipBytes = exportAndGetWireBytes(MyOtlpGrpcSpanExporter.builder().setEndpoint(receiver.getEndpoint()).setCompression("gzip").build(), batch);
+        System.err.println("MyOtlpGrpcSpanExporter: batch of " + batch.size() + " spans sent in " + uncompressedBytes + " bytes, " +
+                gzipBytes + " bytes with gzip");
+
+        assertEquals(2 * batch.size(), receiver.getReceivedSpans());
+        assertTrue("gzip: " + gzipBytes + " bytes, uncompressed: " + uncompressedBytes + " bytes", gzipBytes < uncompressedBytes * 3 / 4);
+    }
+
+    private long exportAndGetWireBytes(MyOtlpGrpcSpanExporter spanExporter, List<SpanData> batch) {
+        long before = receiver.getReceivedWireBytes();
+        try {
+            assertTrue(spanExporter.export(batch).join(10, TimeUnit.SECONDS).isSuccess());
+        } finally {
+            spanExporter.close();
+        }
+        return receiver.getReceivedWireBytes() - before;
+    }
+
+    @Test
+    public void test_exporter_splits_large_batches() throws Exception {
+        int maxMessageSize = 16 * 1024;
+        long latencyMillis = 500;
+        List<SpanData> batch = SpoolingSpanExporterTest.newSpans(2_000);
+        try (OtlpGrpcReceiverStub smallMessagesReceiver = new OtlpGrpcReceiverStub(maxMessageSize).withLatency(latencyMillis, TimeUnit.MILLISECONDS)) {
+            MyOtlpGrpcSpanExporter rejectedSpanExporter = MyOtlpGrpcSpanExporter.builder().setEndpoint(smallMessagesReceiver.getEndpoint())
+                    .setMaxRequestSize(Integer.MAX_VALUE).build();
+            try {
+                assertFalse("batch larger than the max message size", rejectedSpanExporter.export(batch).join(10, TimeUnit.SECONDS).isSuccess());
+            } finally {
+                rejectedSpanExporter.close();
+            }
+
+            MyOtlpGrpcSpanExporter spanExporter = MyOtlpGrpcSpanExporter.builder().setEndpoint(smallMessagesReceiver.getEndpoint())
+                    .setMaxRequestSize(maxMessageSize).build();
+            long durationMillis;
+            try {
+                long before = System.nanoTime();
+                assertTrue(spanExporter.export(batch).join(30, TimeUnit.SECONDS).isSuccess());
+                durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - before);
+            } finally {
+                spanExporter.close();
+            }
+            long requests = smallMessagesReceiver.getReceivedRequests();
+            System.err.println("MyOtlpGrpcSpanExporter: batch of " + batch.size() + " spans split in " + requests +
+                    " requests exported in " + durationMillis + "ms with a collector latency of " + latencyMillis + "ms");
+
+            assertEquals(batch.size(), smallMessagesReceiver.getReceivedSpans());
+            assertTrue("requests: " + requests, requests > 2);
+            // the requests are sent in parallel
+            assertTrue("Exported in " + durationMillis + "ms", durationMillis < (requests - 1) * latencyMillis);
+        }
+    }
+
+    @Test
+    public void test_sdk_service_export_and_shutdown() throws Exception {
+        int spans = 10_000;
+        System.setProperty("otel.exporter.otlp.endpoint", receiver.getEndpoint());
+        // spans are created faster than exported, size the queue to not shed any span
+        System.setProperty("otel.bsp.max.queue.size", String.valueOf(spans));
+        OpenTelemetrySdkService openTelemetrySdkService = new OpenTelemetrySdkService(newRuntimeInformation());
+        openTelemetrySdkService.initialize();
+
+        long before = System.nanoTime();
+        createSpans(openTelemetrySdkService.getTracer(), spans);
+        long durationNanos = System.nanoTime() - before;
+        System.err.println("OpenTelemetrySdkService: " + spans + " spans created in " + TimeUnit.NANOSECONDS.toMillis(durationNanos) + "ms");
+
+        long beforeShutdown = System.nanoTime();
+        openTelemetrySdkService.startFinalFlush();
+        openTelemetrySdkService.dispose();
+        long shutdownMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - beforeShutdown);
+        System.err.println("OpenTelemetrySdkService: shutdown in " + shutdownMillis + "ms");
+
+        assertEquals(spans, receiver.getReceivedSpans());
+    }
+
+    @Test
+    public void test_sdk_service_shutdown_is_bounded_with_slow_collector() throws Exception {
+        receiver.withLatency(5, TimeUnit.SECONDS);
+        System.setProperty("otel.exporter.otlp.endpoint", receiver.getEndpoint());
+        System.setProperty("otel.instrumentation.maven.shutdown.timeout", "1000");
+        OpenTelemetrySdkService openTelemetrySdkService = new OpenTelemetrySdkService(newRuntimeInformation());
+        openTelemetrySdkService.initialize();
+
+        createSpans(openTelemetrySdkService.getTracer(), 1_000);
+
+        long beforeShutdown = System.nanoTime();
+        openTelemetrySdkService.startFinalFlush();
+        openTelemetrySdkService.dispose();
+        long shutdownMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - beforeShutdown);
+        System.err.println("OpenTelemetrySdkService: shutdown with slow collector in " + shutdownMillis + "ms");
+
+        assertTrue("Shutdown in " + shutdownMillis + "ms", shutdownMillis < 4_000);
+    }
+
+    @Test
+    public void test_sdk_service_dispose_after_the_final_flush_deadline() throws Exception {
+        System.setProperty("otel.exporter.otlp.endpoint", receiver.getEndpoint());
+        System.setProperty("otel.instrumentation.maven.shutdown.timeout", "200");
+        OpenTelemetrySdkService openTelemetrySdkService = new OpenTelemetrySdkService(newRuntimeInformation());
+        openTelemetrySdkService.initialize();
+
+        createSpans(openTelemetrySdkService.getTracer(), 100);
+        openTelemetrySdkService.startFinalFlush();
+        // long-lived JVM: the service is disposed long after the final flush of the last session
+        Thread.sleep(500);
+        createSpans(openTelemetrySdkService.getTracer(), 100);
+        openTelemetrySdkService.dispose();
+
+        assertEquals("spans not diverted by the deadline of the final flush", 200, receiver.getReceivedSpans());
+    }
+
+    private static void createSpans(Tracer tracer, int count) {
+        for (int i = 0; i < count; i++) {
+            Span span = tracer.spanBuilder("span-" + i).startSpan();
+            span.setAttribute("idx", i);
+            span.end();
+        }
+    }
+
+    private static void printMeasures(String name, long spans, long durationNanos, long[] latenciesNanos) {
+        long[] sortedLatencies = latenciesNanos.clone();
+        Arrays.sort(sortedLatencies);
+        System.err.println(name + ": " + spans + " spans exported in " + TimeUnit.NANOSECONDS.toMillis(durationNanos) + "ms, " +
+                (spans * TimeUnit.SECONDS.toNanos(1) / durationNanos) + " spans/s, export latency " +
+                "p50: " + percentileMicros(sortedLatencies, 0.50) + "us, " +
+                "p95: " + percentileMicros(sortedLatencies, 0.95) + "us, " +
+                "p99: " + percentileMicros(sortedLatencies, 0.99) + "us");
+    }
+
+    private static long percentileMicros(long[] sortedValues, double percentile) {
+        int idx = (int) Math.ceil(percentile * sortedValues.length) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(sortedValues[Math.max(0, idx)]);
+    }
+
+    static RuntimeInformation newRuntimeInformation() {
+        return new RuntimeInformation() {
+            @Override
+            public String getMavenVersion() {
+                return "3.8.1";
+            }
+
+            @Override
+            public boolean isMavenVersion(String versionRange) {
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.exporter.otlp.internal.SpanAdapter;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OtlpFileReplayTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void test_replay() throws Exception {
+        Path path = newOtlpFile(4, 500);
+        try (OtlpGrpcReceiverStub receiver = new OtlpGrpcReceiverStub()) {
+            OtlpFileReplay.ReplayResult result = replay(path, receiver, 5_000, SpanBatchSplitter.DEFAULT_MAX_REQUEST_SIZE);
+
+            assertEquals(2_000, result.getExportedSpans());
+            assertEquals(0, result.getFailedSpans());
+            assertEquals(2_000, receiver.getReceivedSpans());
+            // the requests of the file are merged
+            assertEquals(1, receiver.getReceivedRequests());
+        }
+    }
+
+    @Test
+    public void test_replay_requests_capped_to_the_max_request_size() throws Exception {
+        int maxMessageSize = 16 * 1024;
+        Path path = newOtlpFile(4, 500);
+        try (OtlpGrpcReceiverStub receiver = new OtlpGrpcReceiverStub(maxMessageSize)) {
+            OtlpFileReplay.ReplayResult result = replay(path, receiver, 5_000, maxMessageSize);
+
+            assertEquals(2_000, result.getExportedSpans());
+            assertEquals(0, result.getFailedSpans());
+            assertEquals(2_000, receiver.getReceivedSpans());
+            assertTrue("requests: " + receiver.getReceivedRequests(), receiver.getReceivedRequests() > 4);
+        }
+        try (OtlpGrpcReceiverStub receiver = new OtlpGrpcReceiverStub(maxMessageSize)) {
+            OtlpFileReplay.ReplayResult result = replay(path, receiver, 5_000, Integer.MAX_VALUE);
+
+            assertEquals("request larger than the max message size", 2_000, result.getFailedSpans());
+            assertEquals(0, result.getExportedSpans());
+        }
+    }
+
+    @Test
+    public void test_split_resource_spans() {
+        ResourceSpans resourceSpans = ExportTraceServiceRequest.newBuilder()
+                .addAllResourceSpans(SpanAdapter.toProtoResourceSpans(SpoolingSpanExporterTest.newSpans(500))).build()
+                .getResourceSpans(0);
+        int maxSize = 4 * 1024;
+        List<ResourceSpans> chunks = OtlpFileReplay.split(resourceSpans, maxSize);
+
+        assertTrue(chunks.size() > 1);
+        int spanCount = 0;
+        for (ResourceSpans chunk : chunks) {
+            assertEquals(resourceSpans.getResource(), chunk.getResource());
+            assertTrue(ExportTraceServiceRequest.newBuilder().addResourceSpans(chunk).build().getSerializedSize() <= maxSize);
+            spanCount += OtlpFileReplay.getSpanCount(chunk);
+        }
+        assertEquals(500, spanCount);
+        assertEquals(1, OtlpFileReplay.split(resourceSpans, Integer.MAX_VALUE).size());
+    }
+
+    private Path newOtlpFile(int batches, int batchSize) throws Exception {
+        Path path = temporaryFolder.getRoot().toPath().resolve("opentelemetry-traces.otlp");
+        OtlpFileSpanExporter spanExporter = OtlpFileSpanExporter.create(path);
+        for (int i = 0; i < batches; i++) {
+            List<SpanData> batch = SpoolingSpanExporterTest.newSpans(batchSize);
+            assertTrue(spanExporter.export(batch).join(10, TimeUnit.SECONDS).isSuccess());
+        }
+        assertTrue(spanExporter.shutdown().join(10, TimeUnit.SECONDS).isSuccess());
+        return path;
+    }
+
+    private static OtlpFileReplay.ReplayResult replay(Path path, OtlpGrpcReceiverStub receiver, int batchSize, int maxRequestSize) throws Exception {
+        MyOtlpGrpcSpanExporter spanExporter = MyOtlpGrpcSpanExporter.builder().setEndpoint(receiver.getEndpoint()).build();
+        try {
+            return new OtlpFileReplay(spanExporter, batchSize, maxRequestSize).replay(path);
+        } finally {
+            spanExporter.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.semconv.resource.attributes.ResourceAttributes;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OtlpFileSpanExporterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void test_export_spans_as_length_delimited_requests() throws Exception {
+        Path path = temporaryFolder.getRoot().toPath().resolve("target/opentelemetry-traces.otlp");
+        OtlpFileSpanExporter spanExporter = OtlpFileSpanExporter.create(path);
+
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder()
+                .setResource(Resource.create(Attributes.of(ResourceAttributes.SERVICE_NAME, "junit")))
+                .addSpanProcessor(SimpleSpanProcessor.create(spanExporter))
+                .build();
+        Tracer tracer = sdkTracerProvider.get("junit");
+        int spanCount = 1_000;
+        for (int i = 0; i < spanCount; i++) {
+            Span span = tracer.spanBuilder("span-" + i).startSpan();
+            span.setAttribute("idx", i);
+            span.end();
+        }
+        assertTrue(sdkTracerProvider.shutdown().join(10, TimeUnit.SECONDS).isSuccess());
+
+        int actualSpanCount = 0;
+        Set<String> spanNames = new HashSet<>();
+        try (InputStream in = Files.newInputStream(path)) {
+            ExportTraceServiceRequest request;
+            while ((request = ExportTraceServiceRequest.parseDelimitedFrom(in)) != null) {
+                for (ResourceSpans resourceSpans : request.getResourceSpansList()) {
+                    actualSpanCount += OtlpFileReplay.getSpanCount(resourceSpans);
+                    resourceSpans.getInstrumentationLibrarySpansList().forEach(ils -> ils.getSpansList().forEach(span -> spanNames.add(span.getName())));
+                }
+            }
+        }
+        assertEquals(spanCount, actualSpanCount);
+        assertEquals(spanCount, spanNames.size());
+    }
+}
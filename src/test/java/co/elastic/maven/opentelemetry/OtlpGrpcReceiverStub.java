@@ -0,0 +1,185 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerStreamTracer;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceResponse;
+import io.opentelemetry.proto.collector.metrics.v1.MetricsServiceGrpc;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceResponse;
+import io.opentelemetry.proto.collector.trace.v1.TraceServiceGrpc;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in of the OTLP GRPC trace and metrics receiver of the OpenTelemetry Collector, listening on a random
+ * local port.
+ *
+ * Can inject latency, errors and backpressure (a limited number of requests processed concurrently, the other requests
+ * waiting for a permit) to test the behavior of the exporters when the collector is slow or unavailable.
+ */
+public class OtlpGrpcReceiverStub implements AutoCloseable {
+
+    private final Server server;
+
+    private volatile long latencyMillis = 0;
+    private volatile double errorRatio = 0;
+    private volatile Semaphore concurrentRequests = null;
+
+    private final AtomicLong receivedRequests = new AtomicLong();
+    private final AtomicLong receivedSpans = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong receivedWireBytes = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final List<ExportMetricsServiceRequest> receivedMetricsRequests = new CopyOnWriteArrayList<>();
+
+    public OtlpGrpcReceiverStub() throws IOException {
+        this(4 * 1024 * 1024);
+    }
+
+    /**
+     * @param maxInboundMessageSize max size of the uncompressed requests, larger requests are rejected with
+     *                              {@link Status#RESOURCE_EXHAUSTED}
+     */
+    public OtlpGrpcReceiverStub(int maxInboundMessageSize) throws IOException {
+        this.server = ServerBuilder.forPort(0)
+                .maxInboundMessageSize(maxInboundMessageSize)
+                .addStreamTracerFactory(new ServerStreamTracer.Factory() {
+                    @Override
+                    public ServerStreamTracer newServerStreamTracer(String fullMethodName, Metadata headers) {
+                        return new ServerStreamTracer() {
+                            @Override
+                            public void inboundWireSize(long bytes) {
+                                receivedWireBytes.addAndGet(bytes);
+                            }
+                        };
+                    }
+                })
+                .addService(new TraceServiceImpl())
+                .addService(new MetricsServiceImpl())
+                .build()
+                .start();
+    }
+
+    public String getEndpoint() {
+        return "http://localhost:" + server.getPort();
+    }
+
+    public OtlpGrpcReceiverStub withLatency(long latency, TimeUnit unit) {
+        this.latencyMillis = unit.toMillis(latency);
+        return this;
+    }
+
+    /**
+     * @param errorRatio ratio of the requests that fail with {@link Status#UNAVAILABLE}
+     */
+    public OtlpGrpcReceiverStub withErrorRatio(double errorRatio) {
+        this.errorRatio = errorRatio;
+        return this;
+    }
+
+    /**
+     * @param maxConcurrentRequests max number of requests processed concurrently, the other requests are blocked
+     */
+    public OtlpGrpcReceiverStub withMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.concurrentRequests = new Semaphore(maxConcurrentRequests);
+        return this;
+    }
+
+    public long getReceivedRequests() {
+        return receivedRequests.get();
+    }
+
+    public long getReceivedSpans() {
+        return receivedSpans.get();
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * @return size of the received messages, compressed or not, including the rejected ones
+     */
+    public long getReceivedWireBytes() {
+        return receivedWireBytes.get();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    public List<ExportMetricsServiceRequest> getReceivedMetricsRequests() {
+        return receivedMetricsRequests;
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class TraceServiceImpl extends TraceServiceGrpc.TraceServiceImplBase {
+        @Override
+        public void export(ExportTraceServiceRequest request, StreamObserver<ExportTraceServiceResponse> responseObserver) {
+            Semaphore concurrentRequests = OtlpGrpcReceiverStub.this.concurrentRequests;
+            try {
+                if (concurrentRequests != null) {
+                    concurrentRequests.acquire();
+                }
+                try {
+                    if (latencyMillis > 0) {
+                        Thread.sleep(latencyMillis);
+                    }
+                    if (errorRatio > 0 && ThreadLocalRandom.current().nextDouble() < errorRatio) {
+                        rejectedRequests.incrementAndGet();
+                        responseObserver.onError(Status.UNAVAILABLE.withDescription("Injected error").asRuntimeException());
+                        return;
+                    }
+                    receivedRequests.incrementAndGet();
+                    receivedBytes.addAndGet(request.getSerializedSize());
+                    for (ResourceSpans resourceSpans : request.getResourceSpansList()) {
+                        receivedSpans.addAndGet(OtlpFileReplay.getSpanCount(resourceSpans));
+                    }
+                    responseObserver.onNext(ExportTraceServiceResponse.getDefaultInstance());
+                    responseObserver.onCompleted();
+                } finally {
+                    if (concurrentRequests != null) {
+                        concurrentRequests.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                responseObserver.onError(Status.CANCELLED.asRuntimeException());
+            }
+        }
+    }
+
+    private class MetricsServiceImpl extends MetricsServiceGrpc.MetricsServiceImplBase {
+        @Override
+        public void export(ExportMetricsServiceRequest request, StreamObserver<ExportMetricsServiceResponse> responseObserver) {
+            receivedMetricsRequests.add(request);
+            responseObserver.onNext(ExportMetricsServiceResponse.getDefaultInstance());
+            responseObserver.onCompleted();
+        }
+    }
+}
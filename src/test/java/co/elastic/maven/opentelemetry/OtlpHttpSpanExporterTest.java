@@ -0,0 +1,213 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import com.sun.net.httpserver.HttpServer;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.exporter.otlp.internal.SpanAdapter;
+import io.opentelemetry.proto.collector.metrics.v1.ExportMetricsServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanLimits;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OtlpHttpSpanExporterTest {
+
+    private HttpServer server;
+    private final BlockingQueue<ReceivedRequest> receivedRequests = new LinkedBlockingQueue<>();
+    private volatile int responseCode = 200;
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            ReceivedRequest request = new ReceivedRequest();
+            request.path = exchange.getRequestURI().getPath();
+            request.contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            request.authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            request.contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            // read the whole body before decompressing it for the connection to be reused
+            request.body = readAll(exchange.getRequestBody());
+            if ("gzip".equals(request.contentEncoding)) {
+                request.body = readAll(new GZIPInputStream(new ByteArrayInputStream(request.body)));
+            }
+            receivedRequests.add(request);
+            exchange.sendResponseHeaders(responseCode, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    @Test
+    public void test_marshaler_is_equivalent_to_span_adapter() throws Exception {
+        List<SpanData> spans = newSpans();
+
+        ExportTraceServiceRequest expected = ExportTraceServiceRequest.newBuilder()
+                .addAllResourceSpans(SpanAdapter.toProtoResourceSpans(spans))
+                .build();
+        ExportTraceServiceRequest actual = ExportTraceServiceRequest.parseFrom(TraceRequestMarshaler.toByteArray(spans));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void test_export_traces_and_metrics() throws Exception {
+        OtlpHttpSpanExporter spanExporter = OtlpHttpSpanExporter.builder()
+                .setEndpoint("http://localhost:" + server.getAddress().getPort() + "/")
+                .addHeader("Authorization", "Bearer secret")
+                .build();
+        try {
+            List<SpanData> spans = newSpans();
+            assertTrue(spanExporter.export(spans).join(10, TimeUnit.SECONDS).isSuccess());
+            ReceivedRequest tracesRequest = receivedRequests.poll(10, TimeUnit.SECONDS);
+            assertEquals(OtlpHttpSpanExporter.TRACES_PATH, tracesRequest.path);
+            assertEquals("application/x-protobuf", tracesRequest.contentType);
+            assertEquals("Bearer secret", tracesRequest.authorization);
+            assertEquals(spans.size(), OtlpFileReplay.getSpanCount(ExportTraceServiceRequest.parseFrom(tracesRequest.body).getResourceSpans(0)));
+
+            ExportMetricsServiceRequest metricsRequest = new MetricsSpanProcessor().toExportMetricsServiceRequest(Resource.getDefault());
+            assertTrue(spanExporter.export(metricsRequest).join(10, TimeUnit.SECONDS).isSuccess());
+            ReceivedRequest received = receivedRequests.poll(10, TimeUnit.SECONDS);
+            assertEquals(OtlpHttpSpanExporter.METRICS_PATH, received.path);
+            assertEquals(metricsRequest, ExportMetricsServiceRequest.parseFrom(received.body));
+        } finally {
+            spanExporter.close();
+        }
+    }
+
+    @Test
+    public void test_export_failure() {
+        responseCode = 503;
+        OtlpHttpSpanExporter spanExporter = OtlpHttpSpanExporter.builder()
+                .setEndpoint("http://localhost:" + server.getAddress().getPort())
+                .setTimeout(Duration.ofSeconds(5))
+                .build();
+        try {
+            CompletableResultCode result = spanExporter.export(newSpans()).join(10, TimeUnit.SECONDS);
+            assertTrue(result.isDone());
+            assertFalse(result.isSuccess());
+        } finally {
+            spanExporter.close();
+        }
+        assertFalse("export after shutdown", spanExporter.export(newSpans()).join(1, TimeUnit.SECONDS).isSuccess());
+    }
+
+    @Test
+    public void test_gzip_compression_and_split_of_large_batches() throws Exception {
+        int maxRequestSize = 8 * 1024;
+        List<SpanData> batch = SpoolingSpanExporterTest.newSpans(1_000);
+        OtlpHttpSpanExporter spanExporter = OtlpHttpSpanExporter.builder()
+                .setEndpoint("http://localhost:" + server.getAddress().getPort())
+                .setCompression("gzip")
+                .setMaxRequestSize(maxRequestSize)
+                .build();
+        try {
+            assertTrue(spanExporter.export(batch).join(10, TimeUnit.SECONDS).isSuccess());
+        } finally {
+            spanExporter.close();
+        }
+        int spans = 0;
+        int requests = receivedRequests.size();
+        for (ReceivedRequest request : receivedRequests) {
+            assertEquals("gzip", request.contentEncoding);
+            assertTrue(request.body.length + " bytes", request.body.length <= maxRequestSize);
+            spans += OtlpFileReplay.getSpanCount(ExportTraceServiceRequest.parseFrom(request.body).getResourceSpans(0));
+        }
+        assertEquals(batch.size(), spans);
+        assertTrue("requests: " + requests, requests > 1);
+    }
+
+    /**
+     * Spans covering the encoded fields: attributes of all the types, events, links, dropped counts, status and kind
+     */
+    private static List<SpanData> newSpans() {
+        InMemorySpanExporter inMemorySpanExporter = InMemorySpanExporter.create();
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder()
+                .setResource(Resource.getDefault().merge(Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), "maven"))))
+                .setSpanLimits(SpanLimits.builder().setMaxNumberOfEvents(2).build())
+                .addSpanProcessor(SimpleSpanProcessor.create(inMemorySpanExporter))
+                .build();
+        Tracer tracer = sdkTracerProvider.get("io.opentelemetry.contrib.maven", "1.0");
+        Span rootSpan = tracer.spanBuilder("Build: com.example:my-module").setSpanKind(SpanKind.SERVER).startSpan();
+        Span mojoSpan = tracer.spanBuilder("compiler:compile (default-compile) @ my-module ✓")
+                .setParent(Context.current().with(rootSpan))
+                .addLink(rootSpan.getSpanContext(), Attributes.of(AttributeKey.longKey("link.index"), 0L))
+                .setAttribute("maven.plugin.artifactId", "maven-compiler-plugin")
+                .setAttribute("maven.build.threads", 4L)
+                .setAttribute("container.cpu.limit", 1.5)
+                .setAttribute("maven.build.failed", false)
+                .setAttribute("maven.empty", "")
+                .setAttribute(AttributeKey.stringArrayKey("maven.build.goals"), Arrays.asList("clean", "verify"))
+                .setAttribute(AttributeKey.longArrayKey("maven.longs"), Arrays.asList(-1L, Long.MAX_VALUE))
+                .setAttribute(AttributeKey.doubleArrayKey("maven.doubles"), Arrays.asList(0.5, -2.0))
+                .setAttribute(AttributeKey.booleanArrayKey("maven.booleans"), Arrays.asList(true, false))
+                .startSpan();
+        mojoSpan.addEvent("first");
+        mojoSpan.addEvent("second", Attributes.of(AttributeKey.stringKey("event.key"), "event.value"));
+        mojoSpan.addEvent("dropped");
+        mojoSpan.recordException(new IllegalStateException("boom"));
+        mojoSpan.setStatus(StatusCode.ERROR, "Compilation failure");
+        mojoSpan.end();
+        Span okSpan = tracer.spanBuilder("ok").setParent(Context.current().with(rootSpan)).setSpanKind(SpanKind.CLIENT).startSpan();
+        okSpan.setStatus(StatusCode.OK);
+        okSpan.end();
+        rootSpan.end();
+        sdkTracerProvider.get("other-library").spanBuilder("no version").startSpan().end();
+        return inMemorySpanExporter.getFinishedSpanItems();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static class ReceivedRequest {
+        String path;
+        String contentType;
+        String authorization;
+        String contentEncoding;
+        byte[] body;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.apache.maven.execution.ProjectDependencyGraph;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReactorCriticalPathTest {
+
+    private final MavenProject core = SpanRegistryTest.newMavenProject("core");
+    private final MavenProject api = SpanRegistryTest.newMavenProject("api");
+    private final MavenProject impl = SpanRegistryTest.newMavenProject("impl");
+    private final MavenProject tools = SpanRegistryTest.newMavenProject("tools");
+    private final MavenProject web = SpanRegistryTest.newMavenProject("web");
+
+    /**
+     * <pre>
+     * core (10ms) -&gt; api (5ms)   -&gt; web (20ms)
+     *             -&gt; impl (30ms) -&gt;
+     * tools (8ms)
+     * </pre>
+     */
+    private ReactorCriticalPath newReactorCriticalPath() {
+        ReactorCriticalPath reactorCriticalPath = new ReactorCriticalPath();
+        // parallel build
+        record(reactorCriticalPath, core, 0, 10);
+        record(reactorCriticalPath, tools, 0, 8);
+        record(reactorCriticalPath, api, 10, 15);
+        record(reactorCriticalPath, impl, 10, 40);
+        record(reactorCriticalPath, web, 40, 60);
+        return reactorCriticalPath;
+    }
+
+    private ProjectDependencyGraph newProjectDependencyGraph() {
+        SimpleProjectDependencyGraph graph = new SimpleProjectDependencyGraph(core, api, impl, tools, web);
+        graph.addDependency(api, core);
+        graph.addDependency(impl, core);
+        graph.addDependency(web, api);
+        graph.addDependency(web, impl);
+        return graph;
+    }
+
+    @Test
+    public void test_critical_path_and_slack() {
+        ReactorCriticalPath.Result result = newReactorCriticalPath().computeCriticalPath(newProjectDependencyGraph());
+
+        assertEquals(Arrays.asList(core, impl, web), result.criticalPath);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(60), result.criticalPathNanos);
+        assertEquals(0, TimeUnit.NANOSECONDS.toMillis(result.slacks.get(core)));
+        assertEquals(0, TimeUnit.NANOSECONDS.toMillis(result.slacks.get(impl)));
+        assertEquals(0, TimeUnit.NANOSECONDS.toMillis(result.slacks.get(web)));
+        assertEquals(25, TimeUnit.NANOSECONDS.toMillis(result.slacks.get(api)));
+        assertEquals(52, TimeUnit.NANOSECONDS.toMillis(result.slacks.get(tools)));
+    }
+
+    @Test
+    public void test_skipped_project() {
+        ReactorCriticalPath reactorCriticalPath = new ReactorCriticalPath();
+        record(reactorCriticalPath, core, 0, 10);
+        // impl failed, web skipped
+        reactorCriticalPath.projectStarted(impl, 10);
+
+        ReactorCriticalPath.Result result = reactorCriticalPath.computeCriticalPath(newProjectDependencyGraph());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), result.criticalPathNanos);
+        assertEquals(core, result.criticalPath.get(0));
+    }
+
+    @Test
+    public void test_root_span_attributes_and_events() {
+        InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build();
+        Span rootSpan = sdkTracerProvider.get("junit").spanBuilder("Build: junit").startSpan();
+
+        newReactorCriticalPath().addCriticalPath(rootSpan, newProjectDependencyGraph());
+        rootSpan.end();
+
+        SpanData spanData = spanExporter.getFinishedSpanItems().get(0);
+        assertEquals(Arrays.asList("core", "impl", "web"), spanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_CRITICAL_PATH_PROJECTS));
+        assertEquals(Long.valueOf(60), spanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_CRITICAL_PATH_DURATION));
+        assertEquals(Arrays.asList("core=0", "impl=0", "web=0", "api=25", "tools=52"), spanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_PROJECTS_SLACK));
+
+        List<EventData> events = spanData.getEvents();
+        assertEquals(3, events.size());
+        EventData implEvent = events.get(1);
+        assertEquals(ReactorCriticalPath.CRITICAL_PATH_PROJECT_EVENT, implEvent.getName());
+        assertEquals("impl", implEvent.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID));
+        assertEquals(Long.valueOf(30), implEvent.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_PROJECT_DURATION));
+        assertEquals(0.5, implEvent.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_PROJECT_CRITICAL_PATH_SHARE), 0.001);
+    }
+
+    private static void record(ReactorCriticalPath reactorCriticalPath, MavenProject project, long startMillis, long endMillis) {
+        reactorCriticalPath.projectStarted(project, TimeUnit.MILLISECONDS.toNanos(startMillis));
+        reactorCriticalPath.projectEnded(project, TimeUnit.MILLISECONDS.toNanos(endMillis));
+    }
+
+    /**
+     * Direct dependencies only, the projects being given in the build order
+     */
+    static class SimpleProjectDependencyGraph implements ProjectDependencyGraph {
+        private final List<MavenProject> sortedProjects;
+        private final Map<MavenProject, List<MavenProject>> upstreamProjects = new HashMap<>();
+        private final Map<MavenProject, List<MavenProject>> downstreamProjects = new HashMap<>();
+
+        SimpleProjectDependencyGraph(MavenProject... sortedProjects) {
+            this.sortedProjects = Arrays.asList(sortedProjects);
+        }
+
+        void addDependency(MavenProject project, MavenProject dependency) {
+            upstreamProjects.computeIfAbsent(project, p -> new ArrayList<>()).add(dependency);
+            downstreamProjects.computeIfAbsent(dependency, p -> new ArrayList<>()).add(project);
+        }
+
+        @Override
+        public List<MavenProject> getAllProjects() {
+            return sortedProjects;
+        }
+
+        @Override
+        public List<MavenProject> getSortedProjects() {
+            return sortedProjects;
+        }
+
+        @Override
+        public List<MavenProject> getDownstreamProjects(MavenProject project, boolean transitive) {
+            return downstreamProjects.getOrDefault(project, Collections.emptyList());
+        }
+
+        @Override
+        public List<MavenProject> getUpstreamProjects(MavenProject project, boolean transitive) {
+            return upstreamProjects.getOrDefault(project, Collections.emptyList());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * {@link ExecutionEvent} fixture without {@link MavenSession}
+ */
+class SimpleExecutionEvent implements ExecutionEvent {
+    private final Type type;
+    private final MavenProject project;
+    private final MojoExecution mojoExecution;
+
+    SimpleExecutionEvent(Type type, MavenProject project, MojoExecution mojoExecution) {
+        this.type = type;
+        this.project = project;
+        this.mojoExecution = mojoExecution;
+    }
+
+    @Override
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public MavenSession getSession() {
+        return null;
+    }
+
+    @Override
+    public MavenProject getProject() {
+        return project;
+    }
+
+    @Override
+    public MojoExecution getMojoExecution() {
+        return mojoExecution;
+    }
+
+    @Override
+    public Exception getException() {
+        return null;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SpanRegistryTest {
+
+    @Test
+    public void test_concurrent_mojo_start_and_end() throws Exception {
+        final int threads = 16;
+        final int projectsPerThread = 40;
+        final int mojosPerProject = 10;
+
+        final SpanRegistry spanRegistry = new SpanRegistry();
+        spanRegistry.setRootSpan(newSpan(0));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            final CountDownLatch startSignal = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int threadIdx = t;
+                results.add(executorService.submit((Callable<Integer>) () -> {
+                    startSignal.await();
+                    int endedSpans = 0;
+                    for (int p = 0; p < projectsPerThread; p++) {
+                        MavenProject project = newMavenProject("module-" + threadIdx + "-" + p);
+                        Span projectSpan = newSpan(threadIdx * 100_000 + p * 100 + 1);
+                        spanRegistry.putSpan(projectSpan, project);
+                        for (int m = 0; m < mojosPerProject; m++) {
+                            // same execution in all the projects
+                            MojoExecution mojoExecution = newMojoExecution("default-compile", "goal-" + m);
+                            Span mojoSpan = newSpan(threadIdx * 100_000 + p * 100 + m + 2);
+                            spanRegistry.putSpan(mojoSpan, mojoExecution, project);
+                            assertSame(projectSpan, spanRegistry.getSpan(project));
+                            // every other mojo execution ended with another instance, removed by value
+                            MojoExecution endedMojoExecution = m % 2 == 0 ? mojoExecution : newMojoExecution("default-compile", "goal-" + m);
+                            assertSame(mojoSpan, spanRegistry.removeSpan(endedMojoExecution, project));
+                            endedSpans++;
+                        }
+                        assertSame(projectSpan, spanRegistry.removeSpan(project));
+                        endedSpans++;
+                    }
+                    return endedSpans;
+                }));
+            }
+            startSignal.countDown();
+
+            int totalEndedSpans = 0;
+            for (Future<Integer> result : results) {
+                totalEndedSpans += result.get(30, TimeUnit.SECONDS);
+            }
+            assertEquals(threads * projectsPerThread * (mojosPerProject + 1), totalEndedSpans);
+        } finally {
+            executorService.shutdownNow();
+        }
+        // fails if mojo spans are still registered
+        spanRegistry.removeRootSpan();
+    }
+
+    @Test
+    public void test_remove_span_with_other_but_equal_instances() {
+        SpanRegistry spanRegistry = new SpanRegistry();
+        Span projectSpan = newSpan(1);
+        Span mojoSpan = newSpan(2);
+        Span otherModuleMojoSpan = newSpan(3);
+        spanRegistry.putSpan(projectSpan, newMavenProject("my-module"));
+        spanRegistry.putSpan(otherModuleMojoSpan, newMojoExecution("default-compile", "compile"), newMavenProject("my-other-module"));
+        spanRegistry.putSpan(mojoSpan, newMojoExecution("default-compile", "compile"), newMavenProject("my-module"));
+
+        assertSame(projectSpan, spanRegistry.getSpan(newMavenProject("my-module")));
+        assertSame(mojoSpan, spanRegistry.removeSpan(newMojoExecution("default-compile", "compile"), newMavenProject("my-module")));
+        assertSame(otherModuleMojoSpan, spanRegistry.removeSpan(newMojoExecution("default-compile", "compile"), newMavenProject("my-other-module")));
+        assertSame(projectSpan, spanRegistry.removeSpan(newMavenProject("my-module")));
+        try {
+            spanRegistry.removeSpan(newMavenProject("my-module"));
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void test_projects_indexed_by_identity() {
+        SpanRegistry spanRegistry = new SpanRegistry();
+        MavenProject project = newMavenProject("my-module");
+        MavenProject equalProject = newMavenProject("my-module");
+        assertEquals(project, equalProject);
+        Span projectSpan = newSpan(1);
+        Span equalProjectSpan = newSpan(2);
+        spanRegistry.putSpan(projectSpan, project);
+        spanRegistry.putSpan(equalProjectSpan, equalProject);
+
+        assertSame(equalProjectSpan, spanRegistry.removeSpan(equalProject));
+        assertSame(projectSpan, spanRegistry.removeSpan(project));
+    }
+
+    @Test
+    public void test_set_root_span_only_once() {
+        SpanRegistry spanRegistry = new SpanRegistry();
+        spanRegistry.setRootSpan(newSpan(1));
+        try {
+            spanRegistry.setRootSpan(newSpan(2));
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("Root span already defined"));
+        }
+    }
+
+    static Span newSpan(int idx) {
+        String traceId = "0af7651916cd43dd8448eb211c80319c";
+        String spanId = String.format("%016x", idx + 1);
+        return Span.wrap(SpanContext.create(traceId, spanId, TraceFlags.getSampled(), TraceState.getDefault()));
+    }
+
+    static MavenProject newMavenProject(String artifactId) {
+        MavenProject project = new MavenProject();
+        project.setGroupId("com.example");
+        project.setArtifactId(artifactId);
+        project.setVersion("1.0-SNAPSHOT");
+        return project;
+    }
+
+    static MojoExecution newMojoExecution(String executionId, String goal) {
+        return newMojoExecution("maven-compiler-plugin", goal, executionId);
+    }
+
+    public static MojoExecution newMojoExecution(String pluginArtifactId, String goal, String executionId) {
+        Plugin plugin = new Plugin();
+        plugin.setGroupId("org.apache.maven.plugins");
+        plugin.setArtifactId(pluginArtifactId);
+        plugin.setVersion("3.8.0");
+        return new MojoExecution(plugin, goal, executionId);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpoolingSpanExporterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void test_spool_in_flight_and_failed_batches() throws Exception {
+        Path spoolPath = temporaryFolder.getRoot().toPath().resolve("spool.otlp");
+        StubSpanExporter delegate = new StubSpanExporter();
+        SpoolingSpanExporter spanExporter = new SpoolingSpanExporter(delegate, OtlpFileSpanExporter.create(spoolPath));
+
+        // exported
+        CompletableResultCode exported = spanExporter.export(newSpans(2));
+        delegate.pendingResults.get(0).succeed();
+        // failed
+        spanExporter.export(newSpans(3));
+        delegate.pendingResults.get(1).fail();
+        // in flight when the deadline is exceeded
+        CompletableResultCode diverted = spanExporter.export(newSpans(5));
+
+        spanExporter.onShutdownDeadlineExceeded();
+        // the span processor doesn't wait for the diverted batch
+        assertTrue(diverted.isDone());
+        assertFalse(diverted.isSuccess());
+        // late success of the diverted batch, not counted as exported
+        delegate.pendingResults.get(2).succeed();
+        // exported after the deadline
+        assertTrue(spanExporter.export(newSpans(7)).isSuccess());
+        assertEquals("no export to the delegate after the deadline", 3, delegate.pendingResults.size());
+
+        spanExporter.shutdown();
+
+        assertTrue(exported.isSuccess());
+        assertTrue(spanExporter.hasUnexportedSpans());
+        assertEquals(3 + 5 + 7, countSpans(spoolPath));
+        assertEquals("exported spans: 2, spans spooled to " + spoolPath + ": 15, dropped spans: 0", spanExporter.getSummary());
+    }
+
+    @Test
+    public void test_drop_without_spool() {
+        StubSpanExporter delegate = new StubSpanExporter();
+        SpoolingSpanExporter spanExporter = new SpoolingSpanExporter(delegate, null);
+        spanExporter.export(newSpans(4));
+        delegate.pendingResults.get(0).succeed();
+        assertFalse(spanExporter.hasUnexportedSpans());
+
+        spanExporter.export(newSpans(6));
+        spanExporter.onShutdownDeadlineExceeded();
+        assertEquals("exported spans: 4, dropped spans: 6", spanExporter.getSummary());
+    }
+
+    @Test
+    public void test_count_spans_exported_after_close() throws Exception {
+        Path spoolPath = temporaryFolder.getRoot().toPath().resolve("spool.otlp");
+        StubSpanExporter delegate = new StubSpanExporter();
+        SpoolingSpanExporter spanExporter = new SpoolingSpanExporter(delegate, OtlpFileSpanExporter.create(spoolPath));
+        // in flight when the exporter is closed
+        CompletableResultCode inFlight = spanExporter.export(newSpans(3));
+
+        spanExporter.close();
+        assertTrue(inFlight.isDone());
+        // still queued in the span processor
+        assertFalse(spanExporter.export(newSpans(4)).isSuccess());
+
+        assertEquals(3, countSpans(spoolPath));
+        assertEquals("exported spans: 0, spans spooled to " + spoolPath + ": 3, dropped spans: 4", spanExporter.getSummary());
+    }
+
+    static int countSpans(Path path) throws Exception {
+        int spanCount = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            ExportTraceServiceRequest request;
+            while ((request = ExportTraceServiceRequest.parseDelimitedFrom(in)) != null) {
+                for (ResourceSpans resourceSpans : request.getResourceSpansList()) {
+                    spanCount += OtlpFileReplay.getSpanCount(resourceSpans);
+                }
+            }
+        }
+        return spanCount;
+    }
+
+    static List<SpanData> newSpans(int count) {
+        SdkTracerProvider sdkTracerProvider = SdkTracerProvider.builder().build();
+        List<SpanData> spans = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Span span = sdkTracerProvider.get("junit").spanBuilder("span-" + i).startSpan();
+            span.end();
+            spans.add(((ReadableSpan) span).toSpanData());
+        }
+        return spans;
+    }
+
+    static class StubSpanExporter implements SpanExporter {
+        final List<CompletableResultCode> pendingResults = Collections.synchronizedList(new ArrayList<>());
+        final List<Collection<SpanData>> exportedSpans = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public CompletableResultCode export(Collection<SpanData> spans) {
+            CompletableResultCode result = new CompletableResultCode();
+            pendingResults.add(result);
+            exportedSpans.add(spans);
+            return result;
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+}
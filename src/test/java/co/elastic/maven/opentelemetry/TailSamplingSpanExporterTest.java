@@ -0,0 +1,169 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry;
+
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class TailSamplingSpanExporterTest {
+
+    private final InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+    private final InMemoryMojoDurationBaseline mojoDurationBaseline = new InMemoryMojoDurationBaseline();
+
+    private final Attributes mojoAttributes = Attributes.builder()
+            .put(MavenOtelSemanticAttributes.MAVEN_PROJECT_GROUP_ID, "com.example")
+            .put(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID, "my-module")
+            .put(MavenOtelSemanticAttributes.MAVEN_PLUGIN_ARTIFACT_ID, "maven-compiler-plugin")
+            .put(MavenOtelSemanticAttributes.MAVEN_EXECUTION_GOAL, "compile")
+            .put(MavenOtelSemanticAttributes.MAVEN_EXECUTION_ID, "default-compile")
+            .build();
+
+    private Tracer newTracer(int maxBufferedSpans) {
+        TailSamplingSpanExporter tailSamplingSpanExporter = new TailSamplingSpanExporter(spanExporter,
+                TimeUnit.MINUTES.toNanos(10), maxBufferedSpans, 512, mojoDurationBaseline);
+        return SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(tailSamplingSpanExporter)).build().get("junit");
+    }
+
+    @Test
+    public void test_uninteresting_build_exports_root_span_only() {
+        Tracer tracer = newTracer(TailSamplingSpanExporter.DEFAULT_MAX_BUFFERED_SPANS);
+        Span rootSpan = tracer.spanBuilder("Build: my-module").startSpan();
+        for (int i = 0; i < 10; i++) {
+            // same duration for all the executions, none of them is slower than the baseline
+            tracer.spanBuilder("compile").setParent(Context.current().with(rootSpan)).setAllAttributes(mojoAttributes)
+                    .setStartTimestamp(i, TimeUnit.SECONDS).startSpan().end(i + 1, TimeUnit.SECONDS);
+        }
+        rootSpan.end();
+
+        List<SpanData> spans = spanExporter.getFinishedSpanItems();
+        assertEquals(1, spans.size());
+        Attributes attributes = spans.get(0).getAttributes();
+        assertEquals(TailSamplingSpanExporter.DECISION_ROOT_ONLY, attributes.get(MavenOtelSemanticAttributes.MAVEN_BUILD_SAMPLING_DECISION));
+        assertEquals(Long.valueOf(10), attributes.get(MavenOtelSemanticAttributes.MAVEN_BUILD_DISCARDED_SPANS));
+    }
+
+    @Test
+    public void test_failed_build_is_kept() {
+        Tracer tracer = newTracer(TailSamplingSpanExporter.DEFAULT_MAX_BUFFERED_SPANS);
+        Span rootSpan = tracer.spanBuilder("Build: my-module").startSpan();
+        Context context = Context.current().with(rootSpan);
+        tracer.spanBuilder("compile").setParent(context).startSpan().end();
+        tracer.spanBuilder("test").setParent(context).startSpan().setStatus(StatusCode.ERROR).end();
+        assertEquals(2, spanExporter.getFinishedSpanItems().size());
+        // no longer buffered once the build is known to be interesting
+        tracer.spanBuilder("jar").setParent(context).startSpan().end();
+        assertEquals(3, spanExporter.getFinishedSpanItems().size());
+        rootSpan.end();
+
+        List<SpanData> spans = spanExporter.getFinishedSpanItems();
+        assertEquals(4, spans.size());
+        Attributes attributes = spans.get(3).getAttributes();
+        assertEquals(TailSamplingSpanExporter.DECISION_KEPT, attributes.get(MavenOtelSemanticAttributes.MAVEN_BUILD_SAMPLING_DECISION));
+        assertEquals(TailSamplingSpanExporter.REASON_FAILURE, attributes.get(MavenOtelSemanticAttributes.MAVEN_BUILD_SAMPLING_REASON));
+        assertEquals(Long.valueOf(0), attributes.get(MavenOtelSemanticAttributes.MAVEN_BUILD_DISCARDED_SPANS));
+    }
+
+    @Test
+    public void test_mojo_slower_than_baseline() {
+        for (int i = 0; i < InMemoryMojoDurationBaseline.MIN_SAMPLES; i++) {
+            mojoDurationBaseline.record(mojoAttributes, TimeUnit.MILLISECONDS.toNanos(100 + i));
+        }
+        Tracer tracer = newTracer(TailSamplingSpanExporter.DEFAULT_MAX_BUFFERED_SPANS);
+        Span rootSpan = tracer.spanBuilder("Build: my-module").startSpan();
+        tracer.spanBuilder("compile").setParent(Context.current().with(rootSpan)).setAllAttributes(mojoAttributes)
+                .setStartTimestamp(1_000, TimeUnit.MILLISECONDS).startSpan()
+                .end(1_200, TimeUnit.MILLISECONDS);
+        rootSpan.end();
+
+        List<SpanData> spans = spanExporter.getFinishedSpanItems();
+        assertEquals(2, spans.size());
+        assertEquals(TailSamplingSpanExporter.REASON_MOJO_DURATION, spans.get(1).getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_SAMPLING_REASON));
+    }
+
+    @Test
+    public void test_slow_build_is_kept() {
+        Tracer tracer = newTracer(TailSamplingSpanExporter.DEFAULT_MAX_BUFFERED_SPANS);
+        Span rootSpan = tracer.spanBuilder("Build: my-module").setStartTimestamp(1, TimeUnit.MINUTES).startSpan();
+        tracer.spanBuilder("compile").setParent(Context.current().with(rootSpan)).setStartTimestamp(2, TimeUnit.MINUTES).startSpan().end(3, TimeUnit.MINUTES);
+        rootSpan.end(12, TimeUnit.MINUTES);
+
+        List<SpanData> spans = spanExporter.getFinishedSpanItems();
+        assertEquals(2, spans.size());
+        assertEquals(TailSamplingSpanExporter.REASON_BUILD_DURATION, spans.get(1).getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_SAMPLING_REASON));
+    }
+
+    @Test
+    public void test_max_buffered_spans() {
+        Tracer tracer = newTracer(2);
+        Span rootSpan = tracer.spanBuilder("Build: my-module").startSpan();
+        Context context = Context.current().with(rootSpan);
+        for (int i = 0; i < 5; i++) {
+            tracer.spanBuilder("compile").setParent(context).startSpan().end();
+        }
+        rootSpan.setStatus(StatusCode.ERROR);
+        rootSpan.end();
+
+        List<SpanData> spans = spanExporter.getFinishedSpanItems();
+        // the 2 buffered spans and the root span
+        assertEquals(3, spans.size());
+        assertEquals(Long.valueOf(3), spans.get(2).getAttributes().get(MavenOtelSemanticAttributes.MAVEN_BUILD_DISCARDED_SPANS));
+    }
+
+    @Test
+    public void test_build_without_root_span_exported_at_shutdown() {
+        List<SpanData> exportedSpans = new ArrayList<>();
+        SpanExporter recordingSpanExporter = new SpanExporter() {
+            @Override
+            public CompletableResultCode export(Collection<SpanData> spans) {
+                exportedSpans.addAll(spans);
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public CompletableResultCode flush() {
+                return CompletableResultCode.ofSuccess();
+            }
+
+            @Override
+            public CompletableResultCode shutdown() {
+                return CompletableResultCode.ofSuccess();
+            }
+        };
+        TailSamplingSpanExporter tailSamplingSpanExporter = new TailSamplingSpanExporter(recordingSpanExporter,
+                TimeUnit.MINUTES.toNanos(10), TailSamplingSpanExporter.DEFAULT_MAX_BUFFERED_SPANS, 512, mojoDurationBaseline);
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(tailSamplingSpanExporter)).build();
+        Tracer tracer = tracerProvider.get("junit");
+        Span rootSpan = tracer.spanBuilder("Build: my-module").startSpan();
+        Context context = Context.current().with(rootSpan);
+        tracer.spanBuilder("compile").setParent(context).startSpan().end();
+        tracer.spanBuilder("test").setParent(context).startSpan().end();
+        assertEquals(0, exportedSpans.size());
+
+        // the build is interrupted, its root span never ends
+        tracerProvider.shutdown().join(10, TimeUnit.SECONDS);
+
+        assertEquals(2, exportedSpans.size());
+        assertEquals(0, tailSamplingSpanExporter.getBufferedSpans());
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright The Original Author or Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package co.elastic.maven.opentelemetry.surefire;
+
+import co.elastic.maven.opentelemetry.MetricsSpanProcessor;
+import co.elastic.maven.opentelemetry.SpanRegistryTest;
+import co.elastic.maven.opentelemetry.semconv.MavenOtelSemanticAttributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.proto.metrics.v1.HistogramDataPoint;
+import io.opentelemetry.proto.metrics.v1.Metric;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.semconv.trace.attributes.SemanticAttributes;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SurefireReportsIngesterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+    private final Tracer tracer = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build().get("junit");
+
+    private MavenProject project;
+    private File reportsDirectory;
+
+    @Before
+    public void before() throws IOException {
+        project = new MavenProject();
+        project.setGroupId("com.example");
+        project.setArtifactId("my-module");
+        project.setVersion("1.0-SNAPSHOT");
+        File buildDirectory = temporaryFolder.newFolder("target");
+        project.getBuild().setDirectory(buildDirectory.getPath());
+        reportsDirectory = new File(buildDirectory, "surefire-reports");
+        reportsDirectory.mkdirs();
+    }
+
+    @Test
+    public void test_class_and_test_case_spans() throws Exception {
+        SurefireReportsIngester surefireReportsIngester = new SurefireReportsIngester(true, SurefireReportsIngester.DEFAULT_MAX_TEST_SPANS);
+        MojoExecution mojoExecution = SpanRegistryTest.newMojoExecution("maven-surefire-plugin", "test", "default-test");
+        surefireReportsIngester.mojoStarted(mojoExecution);
+        writeReport("com.example.FooTest", 3, 1);
+        writeReport("com.example.BarTest", 2, 0);
+
+        Span mojoSpan = tracer.spanBuilder("surefire:test").startSpan();
+        long mojoEndEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        assertTrue(surefireReportsIngester.mojoEnded(project, mojoExecution, mojoSpan, tracer, null, mojoEndEpochNanos));
+        surefireReportsIngester.awaitIngestions(10, TimeUnit.SECONDS);
+
+        Map<String, SpanData> spans = spanExporter.getFinishedSpanItems().stream().collect(Collectors.toMap(SpanData::getName, Function.identity()));
+        // 2 test classes, 5 test cases and the mojo execution
+        assertEquals(8, spans.size());
+
+        SpanData fooTestSpan = spans.get("com.example.FooTest");
+        assertEquals(spans.get("surefire:test").getSpanId(), fooTestSpan.getParentSpanId());
+        assertEquals(StatusCode.ERROR, fooTestSpan.getStatus().getStatusCode());
+        assertEquals(StatusCode.UNSET, spans.get("com.example.BarTest").getStatus().getStatusCode());
+
+        SpanData failedTestSpan = spans.get("com.example.FooTest#test0");
+        assertEquals(fooTestSpan.getSpanId(), failedTestSpan.getParentSpanId());
+        assertEquals(StatusCode.ERROR, failedTestSpan.getStatus().getStatusCode());
+        assertEquals("expected:<1> but was:<2>", failedTestSpan.getStatus().getDescription());
+        assertEquals("com.example.FooTest", failedTestSpan.getAttributes().get(SemanticAttributes.CODE_NAMESPACE));
+        assertEquals("my-module", failedTestSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_PROJECT_ARTIFACT_ID));
+        assertEquals(MavenOtelSemanticAttributes.TestStatusValues.FAILED, failedTestSpan.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_TEST_STATUS));
+
+        // test cases laid out sequentially
+        SpanData secondTestSpan = spans.get("com.example.FooTest#test1");
+        assertEquals(failedTestSpan.getEndEpochNanos(), secondTestSpan.getStartEpochNanos());
+        assertEquals(11_000_000, secondTestSpan.getEndEpochNanos() - secondTestSpan.getStartEpochNanos());
+
+        SpanData mojoSpanData = spans.get("surefire:test");
+        // ended by the ingestion with the end time of the mojo execution
+        assertEquals(mojoEndEpochNanos, mojoSpanData.getEndEpochNanos());
+        assertEquals(Long.valueOf(5), mojoSpanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_TEST_COUNT));
+        assertEquals(Long.valueOf(1), mojoSpanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_TEST_FAILURES));
+        assertNull(mojoSpanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_TEST_AGGREGATED));
+    }
+
+    @Test
+    public void test_large_report_aggregated_in_histogram() throws Exception {
+        SurefireReportsIngester surefireReportsIngester = new SurefireReportsIngester(true, 100);
+        MetricsSpanProcessor metricsSpanProcessor = new MetricsSpanProcessor();
+        MojoExecution mojoExecution = SpanRegistryTest.newMojoExecution("maven-surefire-plugin", "test", "default-test");
+        surefireReportsIngester.mojoStarted(mojoExecution);
+        writeReport("com.example.HugeTest", 20_000, 0);
+        writeReport("com.example.OtherTest", 10, 0);
+
+        Span mojoSpan = tracer.spanBuilder("surefire:test").startSpan();
+        assertTrue(surefireReportsIngester.mojoEnded(project, mojoExecution, mojoSpan, tracer, metricsSpanProcessor, TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())));
+        surefireReportsIngester.awaitIngestions(10, TimeUnit.SECONDS);
+
+        List<SpanData> spans = spanExporter.getFinishedSpanItems();
+        // 100 test cases, 2 test classes and the mojo execution
+        assertEquals(103, spans.size());
+        SpanData mojoSpanData = spans.get(spans.size() - 1);
+        assertEquals(Long.valueOf(20_010), mojoSpanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_TEST_COUNT));
+        assertEquals(Long.valueOf(19_910), mojoSpanData.getAttributes().get(MavenOtelSemanticAttributes.MAVEN_TEST_AGGREGATED));
+
+        Metric testDurations = metricsSpanProcessor.toExportMetricsServiceRequest(Resource.getDefault())
+                .getResourceMetrics(0).getInstrumentationLibraryMetrics(0).getMetrics(0);
+        assertEquals(MetricsSpanProcessor.TEST_DURATION_METRIC, testDurations.getName());
+        long count = 0;
+        for (HistogramDataPoint dataPoint : testDurations.getHistogram().getDataPointsList()) {
+            count += dataPoint.getCount();
+        }
+        assertEquals(20_010, count);
+    }
+
+    @Test
+    public void test_reports_of_previous_builds_and_other_mojos_are_ignored() throws Exception {
+        SurefireReportsIngester surefireReportsIngester = new SurefireReportsIngester(true, SurefireReportsIngester.DEFAULT_MAX_TEST_SPANS);
+        File previousReport = writeReport("com.example.FooTest", 3, 0);
+        previousReport.setLastModified(System.currentTimeMillis() - 60_000);
+        MojoExecution mojoExecution = SpanRegistryTest.newMojoExecution("maven-surefire-plugin", "test", "default-test");
+        surefireReportsIngester.mojoStarted(mojoExecution);
+        MojoExecution compileMojoExecution = SpanRegistryTest.newMojoExecution("maven-compiler-plugin", "compile", "default-compile");
+        surefireReportsIngester.mojoStarted(compileMojoExecution);
+
+        Span mojoSpan = tracer.spanBuilder("surefire:test").startSpan();
+        assertTrue(surefireReportsIngester.mojoEnded(project, mojoExecution, mojoSpan, tracer, null, TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())));
+        surefireReportsIngester.awaitIngestions(10, TimeUnit.SECONDS);
+        Span compileMojoSpan = tracer.spanBuilder("compiler:compile").startSpan();
+        assertFalse(surefireReportsIngester.mojoEnded(project, compileMojoExecution, compileMojoSpan, tracer, null, TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())));
+
+        assertEquals(1, spanExporter.getFinishedSpanItems().size());
+        assertEquals(Long.valueOf(0), spanExporter.getFinishedSpanItems().get(0).getAttributes().get(MavenOtelSemanticAttributes.MAVEN_TEST_COUNT));
+    }
+
+    @Test
+    public void test_reports_directory() {
+        MojoExecution failsafeMojoExecution = SpanRegistryTest.newMojoExecution("maven-failsafe-plugin", "integration-test", "default-integration-test");
+        assertEquals(new File(project.getBuild().getDirectory(), "failsafe-reports"), SurefireReportsIngester.getReportsDirectory(project, failsafeMojoExecution));
+    }
+
+    @Test
+    public void test_parse_seconds() {
+        assertEquals(1_234_500_000_000L, SurefireReportsIngester.parseSecondsAsNanos("1,234.5"));
+        assertEquals(12_000_000, SurefireReportsIngester.parseSecondsAsNanos("0.012"));
+        assertEquals(0, SurefireReportsIngester.parseSecondsAsNanos("NaN ms"));
+    }
+
+    /**
+     * Report of test cases named {@code ${className}#test${i}} of {@code (10 + i % 10)} ms, the first ones failing
+     */
+    private File writeReport(String className, int testCases, int failures) throws IOException {
+        File reportFile = new File(reportsDirectory, "TEST-" + className + ".xml");
+        try (PrintWriter out = new PrintWriter(reportFile, StandardCharsets.UTF_8.name())) {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.println("<testsuite xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" name=\"" + className + "\" time=\"" + testCases * 0.0145
+                    + "\" tests=\"" + testCases + "\" errors=\"0\" skipped=\"0\" failures=\"" + failures + "\">");
+            out.println("  <properties>");
+            out.println("    <property name=\"java.version\" value=\"11\"/>");
+            out.println("  </properties>");
+            for (int i = 0; i < testCases; i++) {
+                out.println("  <testcase name=\"" + className + "#test" + i + "\" classname=\"" + className + "\" time=\"0.0" + (10 + i % 10) + "\">");
+                if (i < failures) {
+                    out.println("    <failure message=\"expected:&lt;1&gt; but was:&lt;2&gt;\" type=\"java.lang.AssertionError\">java.lang.AssertionError: expected:&lt;1&gt; but was:&lt;2&gt;</failure>");
+                    out.println("    <system-out><![CDATA[some output]]></system-out>");
+                }
+                out.println("  </testcase>");
+            }
+            out.println("</testsuite>");
+        }
+        return reportFile;
+    }
+}